@@ -0,0 +1,76 @@
+package org.johnnei.sgp.internal.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock on a cache key which is held by at most one thread of all JVMs on the host which share the cache directory.
+ * <p>
+ * Keys are spread over a fixed amount of lock files so the directory doesn't fill up with lock files which can't be safely deleted.
+ * File locks are held per JVM, so threads within the same JVM are excluded by a {@link ReentrantLock} on the same lock file first.
+ */
+final class CacheLock implements AutoCloseable {
+
+	private static final int STRIPES = 64;
+
+	private static final ConcurrentMap<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	private final ReentrantLock localLock;
+
+	private final FileChannel channel;
+
+	private final FileLock fileLock;
+
+	private CacheLock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+		this.localLock = localLock;
+		this.channel = channel;
+		this.fileLock = fileLock;
+	}
+
+	/**
+	 * Blocks until the lock of the key is acquired.
+	 *
+	 * @param directory The directory of the cache.
+	 * @param key The key to lock.
+	 * @return The acquired lock which must be closed to release it.
+	 * @throws IOException When the lock file can't be locked.
+	 */
+	static CacheLock acquire(Path directory, String key) throws IOException {
+		Path lockFile = directory.resolve(String.format("lock-%02d", Math.floorMod(key.hashCode(), STRIPES))).toAbsolutePath().normalize();
+		ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(lockFile, file -> new ReentrantLock());
+
+		localLock.lock();
+		FileChannel channel = null;
+		try {
+			Files.createDirectories(directory);
+			channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			return new CacheLock(localLock, channel, channel.lock());
+		} catch (IOException | RuntimeException e) {
+			if (channel != null) {
+				channel.close();
+			}
+			localLock.unlock();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			fileLock.release();
+		} finally {
+			try {
+				channel.close();
+			} finally {
+				localLock.unlock();
+			}
+		}
+	}
+}
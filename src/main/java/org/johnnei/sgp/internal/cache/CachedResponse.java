@@ -0,0 +1,59 @@
+package org.johnnei.sgp.internal.cache;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A successful HTTP response which is kept by the {@link HttpResponseCache}, together with the validators to revalidate it.
+ */
+public class CachedResponse {
+
+	@CheckForNull
+	private final String entityTag;
+
+	@CheckForNull
+	private final String lastModified;
+
+	@Nonnull
+	private final Map<String, List<String>> headers;
+
+	@Nonnull
+	private final byte[] body;
+
+	/**
+	 * @param entityTag The value of the <code>ETag</code> header.
+	 * @param lastModified The value of the <code>Last-Modified</code> header.
+	 * @param headers The headers which are needed to interpret the body, like the pagination headers.
+	 * @param body The body of the response.
+	 */
+	public CachedResponse(@CheckForNull String entityTag, @CheckForNull String lastModified, @Nonnull Map<String, List<String>> headers, @Nonnull byte[] body) {
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+		this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+		this.body = body;
+	}
+
+	@CheckForNull
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	@CheckForNull
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	@Nonnull
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	@Nonnull
+	public byte[] getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,233 @@
+package org.johnnei.sgp.internal.cache;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.model.diff.DiffIndexFile;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+/**
+ * File backed cache of the hunk ranges of commit diffs. A commit can't change without changing its SHA, so an entry never becomes stale.
+ * <p>
+ * Each commit is stored in its own file in the {@link DiffIndexFile} format. Accessing an entry touches its modification time, when the files exceed the maximum size
+ * the least recently used ones are deleted.
+ * <p>
+ * Analyses which share the directory populate an entry single-flight, see {@link #get(String, String, Supplier)}. The cache is best effort:
+ * failures to read or write a file are logged and treated as a cache miss.
+ */
+public class DiffCache {
+
+	private static final Logger LOGGER = Loggers.get(DiffCache.class);
+
+	private static final String FILE_SUFFIX = ".diff.idx";
+
+	/**
+	 * The suffix of the entries written by previous versions, which are deleted on eviction.
+	 */
+	private static final String LEGACY_FILE_SUFFIX = ".diff.gz";
+
+	private static final Pattern SHA = Pattern.compile("[0-9a-f]{40}|[0-9a-f]{64}");
+
+	@Nonnull
+	private final Path cacheDirectory;
+
+	private final long maxSize;
+
+	/**
+	 * @param cacheDirectory The directory in which the diffs are stored.
+	 * @param maxSize The maximum amount of bytes the stored diffs may occupy.
+	 */
+	public DiffCache(@Nonnull Path cacheDirectory, long maxSize) {
+		this.cacheDirectory = cacheDirectory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param commitSha The full SHA of the commit.
+	 * @param shortId The SHA with which the returned diffs are labelled.
+	 * @return The cached diffs of the commit.
+	 */
+	public Optional<List<UnifiedDiff>> get(String commitSha, String shortId) {
+		if (!isCacheable(commitSha)) {
+			return Optional.empty();
+		}
+
+		Path file = toFile(commitSha);
+		if (!Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+
+		List<UnifiedDiff> diffs;
+		try {
+			// Read the entry rather than mapping it, a mapped file can't be replaced or evicted on Windows until it is garbage collected.
+			diffs = DiffIndexFile.wrap(ByteBuffer.wrap(Files.readAllBytes(file))).readDiffs(shortId);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Ignoring corrupt diff cache entry {}.", file, e);
+			return Optional.empty();
+		}
+
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			LOGGER.debug("Failed to mark diff cache entry {} as used.", file, e);
+		}
+		return Optional.of(diffs);
+	}
+
+	/**
+	 * Looks up the diffs of the commit and fetches them on a miss. Only one analysis on the host fetches the diffs of a commit at a time,
+	 * the others wait for it and read the diffs it stored.
+	 *
+	 * @param commitSha The full SHA of the commit.
+	 * @param shortId The SHA with which the returned diffs are labelled.
+	 * @param loader The function which fetches the diffs on a miss.
+	 * @return The diffs of the commit.
+	 */
+	public List<UnifiedDiff> get(String commitSha, String shortId, Supplier<List<UnifiedDiff>> loader) {
+		Optional<List<UnifiedDiff>> cachedDiffs = get(commitSha, shortId);
+		if (cachedDiffs.isPresent() || !isCacheable(commitSha)) {
+			return cachedDiffs.orElseGet(loader);
+		}
+
+		CacheLock lock;
+		try {
+			lock = CacheLock.acquire(cacheDirectory, commitSha);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to lock diff cache entry {}.", toFile(commitSha), e);
+			return loader.get();
+		}
+
+		try {
+			// Another analysis may have fetched the diffs while we were waiting for the lock.
+			cachedDiffs = get(commitSha, shortId);
+			if (cachedDiffs.isPresent()) {
+				return cachedDiffs.get();
+			}
+
+			List<UnifiedDiff> diffs = loader.get();
+			put(commitSha, diffs);
+			return diffs;
+		} finally {
+			try {
+				lock.close();
+			} catch (IOException e) {
+				LOGGER.debug("Failed to unlock diff cache entry {}.", toFile(commitSha), e);
+			}
+		}
+	}
+
+	/**
+	 * Stores the diffs of the commit and evicts the least recently used entries when the cache has grown too large.
+	 *
+	 * @param commitSha The full SHA of the commit.
+	 * @param diffs The diffs of all files which were changed in the commit.
+	 */
+	public void put(String commitSha, Collection<UnifiedDiff> diffs) {
+		if (!isCacheable(commitSha)) {
+			return;
+		}
+
+		Path file = toFile(commitSha);
+		try {
+			Files.createDirectories(cacheDirectory);
+			Path temporaryFile = Files.createTempFile(cacheDirectory, commitSha, ".tmp");
+			try {
+				DiffIndexFile.write(temporaryFile, diffs);
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to write diff cache entry {}.", file, e);
+			return;
+		}
+
+		evict();
+	}
+
+	private boolean isCacheable(String commitSha) {
+		// Only full SHAs are unique enough to be shared between projects, they also guarantee a safe file name.
+		return maxSize > 0 && commitSha != null && SHA.matcher(commitSha).matches();
+	}
+
+	private Path toFile(String commitSha) {
+		return cacheDirectory.resolve(commitSha + FILE_SUFFIX);
+	}
+
+	private void evict() {
+		deleteLegacyEntries();
+
+		List<Entry> entries = new ArrayList<>();
+		long size = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				entries.add(new Entry(file, attributes.lastModifiedTime().toMillis(), attributes.size()));
+				size += attributes.size();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to list diff cache entries in {}.", cacheDirectory, e);
+			return;
+		}
+
+		if (size <= maxSize) {
+			return;
+		}
+
+		entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+		for (Entry entry : entries) {
+			if (size <= maxSize) {
+				break;
+			}
+
+			try {
+				Files.deleteIfExists(entry.file);
+				size -= entry.size;
+			} catch (IOException e) {
+				LOGGER.debug("Failed to evict diff cache entry {}.", entry.file, e);
+			}
+		}
+	}
+
+	private void deleteLegacyEntries() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*" + LEGACY_FILE_SUFFIX)) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to delete legacy diff cache entries in {}.", cacheDirectory, e);
+		}
+	}
+
+	private static final class Entry {
+
+		private final Path file;
+
+		private final long lastUsed;
+
+		private final long size;
+
+		Entry(Path file, long lastUsed, long size) {
+			this.file = file;
+			this.lastUsed = lastUsed;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package org.johnnei.sgp.internal.cache;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * File backed cache of HTTP responses which are revalidated on every use, see
+ * {@link org.johnnei.sgp.internal.gitlab.api.v4.HttpCacheFilter}.
+ * <p>
+ * The modification time of an entry is the moment it was last stored or revalidated. Entries which haven't been revalidated within the
+ * maximum age are removed, and when the entries exceed the maximum size the least recently revalidated ones are deleted. The cache is best
+ * effort: failures to read or write a file are logged and treated as a cache miss.
+ */
+public class HttpResponseCache {
+
+	private static final Logger LOGGER = Loggers.get(HttpResponseCache.class);
+
+	private static final String FILE_SUFFIX = ".http.gz";
+
+	private static final int MAGIC = 0x53474854;
+
+	private static final int VERSION = 1;
+
+	@Nonnull
+	private final Path cacheDirectory;
+
+	private final long maxSize;
+
+	private final long maxAge;
+
+	/**
+	 * @param cacheDirectory The directory in which the responses are stored.
+	 * @param maxSize The maximum amount of bytes the stored responses may occupy.
+	 * @param maxAge The amount of milliseconds after which a response which hasn't been revalidated is evicted.
+	 */
+	public HttpResponseCache(@Nonnull Path cacheDirectory, long maxSize, long maxAge) {
+		this.cacheDirectory = cacheDirectory;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * @param key The key of the response, for example the URI of the request.
+	 * @return The cached response when it hasn't exceeded the maximum age.
+	 */
+	public Optional<CachedResponse> get(String key) {
+		Path file = toFile(key);
+		if (!Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+
+		try {
+			if (isExpired(file)) {
+				Files.deleteIfExists(file);
+				return Optional.empty();
+			}
+
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+				return Optional.of(read(input));
+			}
+		} catch (NoSuchFileException e) {
+			// Evicted by another analysis in the meantime.
+			return Optional.empty();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Ignoring unreadable HTTP cache entry {}.", file, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Marks the response as confirmed by the server to still be up to date, which resets its age.
+	 *
+	 * @param key The key of the response.
+	 */
+	public void revalidated(String key) {
+		Path file = toFile(key);
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			LOGGER.debug("Failed to mark HTTP cache entry {} as revalidated.", file, e);
+		}
+	}
+
+	/**
+	 * Stores the response and evicts entries when the cache has grown too large.
+	 *
+	 * @param key The key of the response.
+	 * @param response The response to store. Responses larger than the cache are ignored.
+	 */
+	public void put(String key, CachedResponse response) {
+		if (response.getBody().length > maxSize) {
+			return;
+		}
+
+		Path file = toFile(key);
+		try {
+			Files.createDirectories(cacheDirectory);
+			Path temporaryFile = Files.createTempFile(cacheDirectory, file.getFileName().toString(), ".tmp");
+			try {
+				try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporaryFile))))) {
+					write(output, response);
+				}
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to write HTTP cache entry {}.", file, e);
+			return;
+		}
+
+		evict();
+	}
+
+	/**
+	 * @param key The key of the response.
+	 */
+	public void remove(String key) {
+		Path file = toFile(key);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to remove HTTP cache entry {}.", file, e);
+		}
+	}
+
+	private boolean isExpired(Path file) throws IOException {
+		return Files.getLastModifiedTime(file).toMillis() + maxAge < System.currentTimeMillis();
+	}
+
+	private Path toFile(String key) {
+		// The key can contain credentials and characters which aren't allowed in a file name.
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return cacheDirectory.resolve(hex + FILE_SUFFIX);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be supported by every JVM.", e);
+		}
+	}
+
+	/**
+	 * Deletes the expired entries and then the least recently revalidated ones until the entries fit within the maximum size.
+	 */
+	private void evict() {
+		List<Entry> entries = new ArrayList<>();
+		long size = 0;
+		long now = System.currentTimeMillis();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				long revalidated = attributes.lastModifiedTime().toMillis();
+				if (revalidated + maxAge < now) {
+					Files.deleteIfExists(file);
+					continue;
+				}
+
+				entries.add(new Entry(file, revalidated, attributes.size()));
+				size += attributes.size();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to list HTTP cache entries in {}.", cacheDirectory, e);
+			return;
+		}
+
+		if (size <= maxSize) {
+			return;
+		}
+
+		entries.sort(Comparator.comparingLong(entry -> entry.revalidated));
+		for (Entry entry : entries) {
+			if (size <= maxSize) {
+				break;
+			}
+
+			try {
+				Files.deleteIfExists(entry.file);
+				size -= entry.size;
+			} catch (IOException e) {
+				LOGGER.debug("Failed to evict HTTP cache entry {}.", entry.file, e);
+			}
+		}
+	}
+
+	private static void write(DataOutput output, CachedResponse response) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		writeOptional(output, response.getEntityTag());
+		writeOptional(output, response.getLastModified());
+
+		output.writeInt(response.getHeaders().size());
+		for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+			output.writeUTF(header.getKey());
+			output.writeInt(header.getValue().size());
+			for (String value : header.getValue()) {
+				output.writeUTF(value);
+			}
+		}
+
+		output.writeInt(response.getBody().length);
+		output.write(response.getBody());
+	}
+
+	private static CachedResponse read(DataInput input) throws IOException {
+		if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+			throw new IOException("Unsupported HTTP cache format.");
+		}
+
+		String entityTag = readOptional(input);
+		String lastModified = readOptional(input);
+
+		int headerCount = input.readInt();
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		for (int i = 0; i < headerCount; i++) {
+			String name = input.readUTF();
+			int valueCount = input.readInt();
+			List<String> values = new ArrayList<>(valueCount);
+			for (int j = 0; j < valueCount; j++) {
+				values.add(input.readUTF());
+			}
+			headers.put(name, values);
+		}
+
+		byte[] body = new byte[input.readInt()];
+		input.readFully(body);
+		return new CachedResponse(entityTag, lastModified, headers, body);
+	}
+
+	private static void writeOptional(DataOutput output, String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeUTF(value);
+		}
+	}
+
+	private static String readOptional(DataInput input) throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	private static final class Entry {
+
+		private final Path file;
+
+		private final long revalidated;
+
+		private final long size;
+
+		Entry(Path file, long revalidated, long size) {
+			this.file = file;
+			this.revalidated = revalidated;
+			this.size = size;
+		}
+	}
+}
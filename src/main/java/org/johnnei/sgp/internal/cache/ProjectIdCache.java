@@ -0,0 +1,105 @@
+package org.johnnei.sgp.internal.cache;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * File backed cache which remembers the GitLab project id which belongs to a project path.
+ * <p>
+ * The cache is best effort: failures to read or write the file are logged and treated as a cache miss.
+ */
+public class ProjectIdCache {
+
+	private static final Logger LOGGER = Loggers.get(ProjectIdCache.class);
+
+	private static final String FILE_NAME = "projects.properties";
+
+	@Nonnull
+	private final Path cacheFile;
+
+	public ProjectIdCache(@Nonnull Path cacheDirectory) {
+		this.cacheFile = cacheDirectory.resolve(FILE_NAME);
+	}
+
+	/**
+	 * @param gitlabUrl The GitLab instance on which the project is hosted.
+	 * @param projectPath The <code>namespace/project</code> path of the project.
+	 * @return The cached id of the project.
+	 */
+	public Optional<Integer> get(String gitlabUrl, String projectPath) {
+		String id = load().getProperty(toKey(gitlabUrl, projectPath));
+		if (id == null) {
+			return Optional.empty();
+		}
+
+		try {
+			return Optional.of(Integer.parseInt(id));
+		} catch (NumberFormatException e) {
+			LOGGER.debug("Ignoring corrupt project id cache entry \"{}\" for \"{}\".", id, projectPath);
+			return Optional.empty();
+		}
+	}
+
+	public void put(String gitlabUrl, String projectPath, int id) {
+		Properties properties = load();
+		properties.setProperty(toKey(gitlabUrl, projectPath), Integer.toString(id));
+		store(properties);
+	}
+
+	public void remove(String gitlabUrl, String projectPath) {
+		Properties properties = load();
+		if (properties.remove(toKey(gitlabUrl, projectPath)) != null) {
+			store(properties);
+		}
+	}
+
+	private static String toKey(String gitlabUrl, String projectPath) {
+		String url = gitlabUrl;
+		while (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		return url + "/" + projectPath;
+	}
+
+	private Properties load() {
+		Properties properties = new Properties();
+		if (!Files.isRegularFile(cacheFile)) {
+			return properties;
+		}
+
+		try (InputStream inputStream = Files.newInputStream(cacheFile)) {
+			properties.load(inputStream);
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.debug("Failed to read project id cache {}.", cacheFile, e);
+			properties.clear();
+		}
+		return properties;
+	}
+
+	private void store(Properties properties) {
+		try {
+			Files.createDirectories(cacheFile.getParent());
+			Path temporaryFile = Files.createTempFile(cacheFile.getParent(), FILE_NAME, ".tmp");
+			try {
+				try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+					properties.store(outputStream, "GitLab project ids");
+				}
+				Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to write project id cache {}.", cacheFile, e);
+		}
+	}
+}
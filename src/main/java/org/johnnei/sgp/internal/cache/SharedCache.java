@@ -0,0 +1,220 @@
+package org.johnnei.sgp.internal.cache;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * File backed cache of GitLab responses which is shared by all analyses on the host, for example the jobs which analyse the modules of a
+ * commit in parallel.
+ * <p>
+ * Entries are populated single-flight: the first analysis which misses an entry fetches it while holding the lock of the key, all others
+ * wait for the lock and read the result. Entries are published by an atomic rename so they are never read partially written. As the
+ * cached responses can change on GitLab, entries expire after the configured time to live.
+ * <p>
+ * The cache is best effort: failures to lock, read or write the files are logged and fall back to fetching the value.
+ */
+public class SharedCache {
+
+	private static final Logger LOGGER = Loggers.get(SharedCache.class);
+
+	private static final String FILE_SUFFIX = ".json.gz";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+		.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+		.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+		.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private final Path cacheDirectory;
+
+	private final String namespace;
+
+	private final long timeToLive;
+
+	/**
+	 * @param cacheDirectory The directory in which the entries are stored.
+	 * @param namespace The prefix of all keys, which separates the entries of different GitLab instances.
+	 * @param timeToLive The amount of milliseconds after which an entry expires.
+	 */
+	public SharedCache(Path cacheDirectory, @Nonnull String namespace, long timeToLive) {
+		this.cacheDirectory = cacheDirectory;
+		this.namespace = namespace;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @return A cache which always fetches the value.
+	 */
+	public static SharedCache disabled() {
+		return new SharedCache(null, "", 0);
+	}
+
+	/**
+	 * @param key The key of the value.
+	 * @param type The type of the value.
+	 * @param loader The function which fetches the value on a miss.
+	 * @param <T> The type of the value.
+	 * @return The cached value, or the value from the loader when it wasn't cached.
+	 */
+	public <T> T get(String key, TypeReference<T> type, Supplier<T> loader) {
+		if (timeToLive <= 0) {
+			return loader.get();
+		}
+
+		String fileKey = hash(key);
+		Path file = cacheDirectory.resolve(fileKey + FILE_SUFFIX);
+		Optional<T> cached = read(file, type);
+		if (cached.isPresent()) {
+			return cached.get();
+		}
+
+		CacheLock lock;
+		try {
+			lock = CacheLock.acquire(cacheDirectory, fileKey);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to lock shared cache entry {}.", file, e);
+			return loader.get();
+		}
+
+		try {
+			// Another analysis may have fetched the value while we were waiting for the lock.
+			cached = read(file, type);
+			if (cached.isPresent()) {
+				return cached.get();
+			}
+
+			T value = loader.get();
+			write(file, value);
+			return value;
+		} finally {
+			release(lock, file);
+		}
+	}
+
+	/**
+	 * Removes the entry so that the next analysis fetches it again, for example because this analysis changed the value on GitLab.
+	 *
+	 * @param key The key of the value.
+	 */
+	public void invalidate(String key) {
+		if (timeToLive <= 0) {
+			return;
+		}
+
+		String fileKey = hash(key);
+		Path file = cacheDirectory.resolve(fileKey + FILE_SUFFIX);
+		CacheLock lock;
+		try {
+			lock = CacheLock.acquire(cacheDirectory, fileKey);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to lock shared cache entry {}.", file, e);
+			return;
+		}
+
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to invalidate shared cache entry {}.", file, e);
+		} finally {
+			release(lock, file);
+		}
+	}
+
+	private <T> Optional<T> read(Path file, TypeReference<T> type) {
+		if (!Files.isRegularFile(file)) {
+			return Optional.empty();
+		}
+
+		try {
+			if (isExpired(file)) {
+				return Optional.empty();
+			}
+
+			try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+				return Optional.of(MAPPER.readValue(inputStream, type));
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Ignoring unreadable shared cache entry {}.", file, e);
+			return Optional.empty();
+		}
+	}
+
+	private void write(Path file, Object value) {
+		try {
+			Path temporaryFile = Files.createTempFile(cacheDirectory, file.getFileName().toString(), ".tmp");
+			try {
+				try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(temporaryFile))) {
+					MAPPER.writeValue(outputStream, value);
+				}
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to write shared cache entry {}.", file, e);
+			return;
+		}
+
+		removeExpired();
+	}
+
+	/**
+	 * Deletes the expired entries. Entries which are concurrently being replaced are skipped as they'll be fresh again.
+	 */
+	private void removeExpired() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				if (isExpired(file)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to remove expired shared cache entries in {}.", cacheDirectory, e);
+		}
+	}
+
+	private boolean isExpired(Path file) throws IOException {
+		return Files.getLastModifiedTime(file).toMillis() + timeToLive < System.currentTimeMillis();
+	}
+
+	private static void release(CacheLock lock, Path file) {
+		try {
+			lock.close();
+		} catch (IOException e) {
+			LOGGER.debug("Failed to unlock shared cache entry {}.", file, e);
+		}
+	}
+
+	private String hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest((namespace + "\n" + key).getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be supported by every JVM.", e);
+		}
+	}
+}
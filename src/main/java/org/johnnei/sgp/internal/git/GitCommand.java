@@ -0,0 +1,151 @@
+package org.johnnei.sgp.internal.git;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Runs the git command line client on a repository.
+ * <p>
+ * The input and the error output are passed through temporary files so that the output can be consumed as a stream without risking a
+ * deadlock on one of the other pipes.
+ */
+class GitCommand {
+
+	private static final Logger LOGGER = Loggers.get(GitCommand.class);
+
+	private final Path repository;
+
+	/**
+	 * @param repository The working tree of the repository, or any directory within it.
+	 */
+	GitCommand(Path repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * @param reader The function which consumes the output of the command.
+	 * @param input The text to write to the input of the command.
+	 * @param arguments The git subcommand and its arguments.
+	 * @param <T> The type of the result.
+	 * @return The result of the reader.
+	 * @throws IllegalStateException When git fails.
+	 */
+	<T> T run(OutputReader<T> reader, @CheckForNull String input, String... arguments) {
+		Result<T> result = execute(reader, input, arguments);
+		if (result.exitCode != 0) {
+			throw new IllegalStateException(String.format("git %s failed with exit code %d: %s", arguments[0], result.exitCode, result.error));
+		}
+		return result.output;
+	}
+
+	/**
+	 * @return The lines of the output.
+	 */
+	List<String> lines(String... arguments) {
+		return run(output -> output.lines().collect(Collectors.toList()), null, arguments);
+	}
+
+	/**
+	 * @param revision The name of the commit, for example a branch.
+	 * @return The full SHA of the commit, or nothing when no commit exists with that name.
+	 */
+	Optional<String> resolveCommit(String revision) {
+		Result<String> result = execute(BufferedReader::readLine, null, "rev-parse", "--verify", "--quiet", revision + "^{commit}");
+		return result.exitCode == 0 ? Optional.ofNullable(result.output) : Optional.empty();
+	}
+
+	private <T> Result<T> execute(OutputReader<T> reader, @CheckForNull String input, String... arguments) {
+		List<String> command = new ArrayList<>();
+		command.add("git");
+		command.add("-C");
+		command.add(repository.toString());
+		// Don't escape non-ASCII characters in the file paths.
+		command.add("-c");
+		command.add("core.quotePath=false");
+		command.addAll(Arrays.asList(arguments));
+
+		LOGGER.debug("Running {}", command);
+
+		Path inputFile = null;
+		Path errorFile = null;
+		try {
+			errorFile = Files.createTempFile("sgp-git", ".err");
+			ProcessBuilder processBuilder = new ProcessBuilder(command).redirectError(errorFile.toFile());
+			if (input != null) {
+				inputFile = Files.createTempFile("sgp-git", ".in");
+				Files.write(inputFile, input.getBytes(StandardCharsets.UTF_8));
+				processBuilder.redirectInput(inputFile.toFile());
+			}
+
+			Process process = processBuilder.start();
+			T result;
+			try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+				result = reader.read(output);
+				// Drain the remainder so that git doesn't block on a full pipe.
+				while (output.read() != -1) {
+					// Discard.
+				}
+			} finally {
+				process.getOutputStream().close();
+			}
+
+			int exitCode = process.waitFor();
+			String error = exitCode == 0 ? "" : String.join("\n", Files.readAllLines(errorFile, StandardCharsets.UTF_8)).trim();
+			return new Result<>(exitCode, result, error);
+		} catch (IOException e) {
+			throw new IllegalStateException(String.format("Failed to run git %s.", arguments[0]), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(String.format("Interrupted while running git %s.", arguments[0]), e);
+		} finally {
+			deleteQuietly(inputFile);
+			deleteQuietly(errorFile);
+		}
+	}
+
+	private static void deleteQuietly(@CheckForNull Path file) {
+		if (file == null) {
+			return;
+		}
+
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to delete temporary file {}.", file, e);
+		}
+	}
+
+	private static final class Result<T> {
+
+		private final int exitCode;
+
+		private final T output;
+
+		private final String error;
+
+		Result(int exitCode, T output, String error) {
+			this.exitCode = exitCode;
+			this.output = output;
+			this.error = error;
+		}
+	}
+
+	@FunctionalInterface
+	interface OutputReader<T> {
+
+		T read(BufferedReader output) throws IOException;
+	}
+}
@@ -0,0 +1,211 @@
+package org.johnnei.sgp.internal.git;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+/**
+ * Splits the patch output of <code>git diff</code> and <code>git diff-tree --stdin</code> into a {@link UnifiedDiff} per file.
+ * <p>
+ * The hunk headers are parsed by {@link HunkRangeParser}, all other lines of the hunks are skipped. Deleted files are left out as there
+ * is nothing left to comment on.
+ */
+class GitDiffParser {
+
+	/**
+	 * The line with which <code>git diff-tree --stdin</code> announces the commit of the diffs which follow.
+	 */
+	private static final Pattern COMMIT_HEADER = Pattern.compile("[0-9a-f]{40}([0-9a-f]{24})?( \\(from [0-9a-f]+\\))?");
+
+	private static final String FILE_HEADER = "diff --git ";
+
+	private static final String NEW_PATH = "+++ ";
+
+	private static final String RENAME_TO = "rename to ";
+
+	private static final String DELETED_FILE = "deleted file mode ";
+
+	private static final String NO_FILE = "/dev/null";
+
+	private final Function<String, String> commitLabel;
+
+	private final List<UnifiedDiff> diffs = new ArrayList<>();
+
+	private String commitSha;
+
+	private String path;
+
+	private boolean deleted;
+
+	/**
+	 * The parser of the hunks of the current file, <code>null</code> when not within a file.
+	 */
+	private HunkRangeParser hunks;
+
+	/**
+	 * If the first hunk of the current file has been reached, after which the lines are no longer headers.
+	 */
+	private boolean inHunks;
+
+	/**
+	 * @param commitSha The commit to which the diffs are attributed until a commit header is encountered.
+	 * @param commitLabel Creates the SHA to which the diffs following a commit header are attributed from the full SHA.
+	 */
+	GitDiffParser(String commitSha, Function<String, String> commitLabel) {
+		this.commitSha = commitSha;
+		this.commitLabel = commitLabel;
+	}
+
+	/**
+	 * @param output The patch output of git.
+	 * @return The diffs of the files which still exist.
+	 */
+	List<UnifiedDiff> parse(BufferedReader output) throws IOException {
+		String line;
+		while ((line = output.readLine()) != null) {
+			accept(line);
+		}
+		endFile();
+		return diffs;
+	}
+
+	private void accept(String line) {
+		if (line.startsWith(FILE_HEADER)) {
+			endFile();
+			path = parseFileHeader(line.substring(FILE_HEADER.length()));
+			hunks = new HunkRangeParser();
+		} else if (COMMIT_HEADER.matcher(line).matches()) {
+			// Lines of a hunk start with a space, '+', '-' or '\\' so this can't be part of the previous file.
+			endFile();
+			int end = line.indexOf(' ');
+			commitSha = commitLabel.apply(end < 0 ? line : line.substring(0, end));
+		} else if (hunks != null && line.startsWith("@@")) {
+			inHunks = true;
+			hunks.write(line, 0, line.length());
+			hunks.write("\n", 0, 1);
+		} else if (hunks != null && !inHunks) {
+			acceptFileHeader(line);
+		}
+		// All other lines are the content of the hunks.
+	}
+
+	/**
+	 * Handles the extended header lines between <code>diff --git</code> and the first hunk.
+	 */
+	private void acceptFileHeader(String line) {
+		if (line.startsWith(NEW_PATH)) {
+			String newPath = stripTrailingTab(line.substring(NEW_PATH.length()));
+			if (NO_FILE.equals(newPath)) {
+				deleted = true;
+			} else {
+				path = stripPrefix(unquote(newPath));
+			}
+		} else if (line.startsWith(RENAME_TO)) {
+			path = unquote(line.substring(RENAME_TO.length()));
+		} else if (line.startsWith(DELETED_FILE)) {
+			deleted = true;
+		}
+	}
+
+	private void endFile() {
+		if (hunks != null && !deleted && path != null) {
+			hunks.close();
+			diffs.add(new UnifiedDiff(commitSha, path, hunks.getRanges()));
+		}
+		hunks = null;
+		path = null;
+		deleted = false;
+		inHunks = false;
+	}
+
+	/**
+	 * Extracts the new path from <code>a/old b/new</code>. This is only reliable when the paths are equal (the change has no
+	 * <code>+++</code> or <code>rename to</code> line which overrides it), in which case both halves have the same length.
+	 */
+	private static String parseFileHeader(String paths) {
+		if (paths.startsWith("\"")) {
+			int end = findClosingQuote(paths);
+			return end + 2 < paths.length() ? stripPrefix(unquote(paths.substring(end + 2))) : null;
+		}
+
+		int half = (paths.length() - 1) / 2;
+		return paths.length() % 2 == 1 ? stripPrefix(paths.substring(half + 1)) : null;
+	}
+
+	private static int findClosingQuote(String quoted) {
+		for (int i = 1; i < quoted.length(); i++) {
+			if (quoted.charAt(i) == '\\') {
+				i++;
+			} else if (quoted.charAt(i) == '"') {
+				return i;
+			}
+		}
+		return quoted.length();
+	}
+
+	private static String stripTrailingTab(String path) {
+		// Git terminates paths which contain a space with a tab.
+		return path.endsWith("\t") ? path.substring(0, path.length() - 1) : path;
+	}
+
+	private static String stripPrefix(String path) {
+		return path.startsWith("b/") ? path.substring(2) : path;
+	}
+
+	/**
+	 * Reverts the C-style quoting which git applies to paths with special characters.
+	 */
+	static String unquote(String path) {
+		if (!path.startsWith("\"") || !path.endsWith("\"") || path.length() < 2) {
+			return path;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int i = 1; i < path.length() - 1; i++) {
+			char c = path.charAt(i);
+			if (c != '\\' || i + 1 >= path.length() - 1) {
+				byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+				bytes.write(encoded, 0, encoded.length);
+				continue;
+			}
+
+			char escaped = path.charAt(++i);
+			if (escaped >= '0' && escaped <= '7' && i + 2 < path.length() - 1) {
+				bytes.write(Integer.parseInt(path.substring(i, i + 3), 8));
+				i += 2;
+			} else {
+				bytes.write(unescape(escaped));
+			}
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static char unescape(char escaped) {
+		switch (escaped) {
+			case 'a':
+				return '\u0007';
+			case 'b':
+				return '\b';
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'v':
+				return '\u000B';
+			case 'f':
+				return '\f';
+			case 'r':
+				return '\r';
+			default:
+				return escaped;
+		}
+	}
+}
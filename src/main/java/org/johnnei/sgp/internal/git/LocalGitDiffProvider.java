@@ -0,0 +1,113 @@
+package org.johnnei.sgp.internal.git;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.model.diff.DiffProvider;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
+
+/**
+ * Computes the diffs from the repository which is checked out on the machine running the analysis, by using the git command line client.
+ * <p>
+ * The diffs are equal to the ones GitLab would return: the comparison is made against the merge base of the base branch and the
+ * analysed commit, and each commit is compared against its first parent.
+ */
+public class LocalGitDiffProvider implements DiffProvider {
+
+	private static final Logger LOGGER = Loggers.get(LocalGitDiffProvider.class);
+
+	/**
+	 * The length of the short SHA as GitLab reports it.
+	 */
+	private static final int SHORT_SHA_LENGTH = 8;
+
+	private static final String[] DIFF_OPTIONS = {
+		"-r",
+		"-p",
+		"-M",
+		"-U3",
+		"--no-color",
+		"--no-ext-diff",
+		"--no-textconv",
+		"--src-prefix=a/",
+		"--dst-prefix=b/"
+	};
+
+	private final GitLabPluginConfiguration configuration;
+
+	private final GitCommand git;
+
+	public LocalGitDiffProvider(GitLabPluginConfiguration configuration) {
+		this.configuration = configuration;
+		this.git = new GitCommand(configuration.getRepositoryDirectory());
+	}
+
+	@Nonnull
+	@Override
+	public Collection<UnifiedDiff> getDiffs() {
+		String head = configuration.getCommitHash();
+		String base = resolveBase(configuration.getBaseBranch());
+
+		if (configuration.isCompareDiffMode()) {
+			return git.run(output -> new GitDiffParser(head, sha -> head).parse(output), null, concat("diff", DIFF_OPTIONS, base + "..." + head));
+		}
+
+		List<String> commits = git.lines("rev-list", "--reverse", "--topo-order", "--parents", base + ".." + head);
+		LOGGER.debug("Computing the diffs of {} commits from the local repository.", commits.size());
+		if (commits.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// Every line holds a commit followed by its parents. Limit it to the first parent like GitLab does for merge commits.
+		StringBuilder input = new StringBuilder();
+		for (String commit : commits) {
+			String[] shas = commit.split(" ");
+			input.append(shas[0]);
+			if (shas.length > 1) {
+				input.append(' ').append(shas[1]);
+			}
+			input.append('\n');
+		}
+
+		return git.run(
+			output -> new GitDiffParser(head, LocalGitDiffProvider::toShortSha).parse(output),
+			input.toString(),
+			concat("diff-tree", DIFF_OPTIONS, "--stdin", "--root")
+		);
+	}
+
+	/**
+	 * CI jobs often only have the remote tracking branch of the base branch, so that one is used when there is no local branch.
+	 */
+	private String resolveBase(String baseBranch) {
+		return Stream.of(baseBranch, "origin/" + baseBranch)
+			.map(git::resolveCommit)
+			.filter(Optional::isPresent)
+			.map(Optional::get)
+			.findFirst()
+			.orElseThrow(() -> new IllegalStateException(String.format(
+				"Base branch \"%s\" doesn't exist in the local repository. Make sure that it is fetched before the analysis.",
+				baseBranch
+			)));
+	}
+
+	private static String toShortSha(String sha) {
+		return sha.substring(0, SHORT_SHA_LENGTH);
+	}
+
+	private static String[] concat(String command, String[] options, String... arguments) {
+		String[] result = new String[1 + options.length + arguments.length];
+		result[0] = command;
+		System.arraycopy(options, 0, result, 1, options.length);
+		System.arraycopy(arguments, 0, result, 1 + options.length, arguments.length);
+		return result;
+	}
+}
@@ -0,0 +1,21 @@
+package org.johnnei.sgp.internal.gitlab;
+
+/**
+ * Defines which issues are combined into a single comment.
+ */
+public enum CommentAggregation {
+
+	/**
+	 * Every issue gets its own comment.
+	 */
+	NONE,
+	/**
+	 * Issues on the same line of the same file share a comment.
+	 */
+	LINE,
+	/**
+	 * Issues in the same file share a comment which is placed on the first line with an issue.
+	 */
+	FILE
+
+}
@@ -0,0 +1,78 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.model.MappedIssue;
+
+/**
+ * Limits the amount of inline comments placed by a single analysis. When there are more comments than the limit allows, the
+ * comments with the highest severity are placed inline and the issues of the others are listed in the summary instead.
+ */
+final class CommentBudget {
+
+	private static final Logger LOGGER = Loggers.get(CommentBudget.class);
+
+	private final List<CommentGroup> inline;
+
+	private final List<MappedIssue> overflow;
+
+	private CommentBudget(List<CommentGroup> inline, List<MappedIssue> overflow) {
+		this.inline = inline;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * @param comments The comments which should be placed, ordered by severity as returned by {@link CommentGroup#group}.
+	 * @param limit The maximum amount of inline comments, or 0 or less for no limit.
+	 */
+	static CommentBudget apply(List<CommentGroup> comments, int limit) {
+		if (limit <= 0 || comments.size() <= limit) {
+			return new CommentBudget(comments, Collections.emptyList());
+		}
+
+		// The comments are already ordered by severity, the issues of the others only need to be bucketed by their severity.
+		Severity[] severities = Severity.values();
+		List<List<MappedIssue>> buckets = new ArrayList<>(severities.length);
+		for (int i = 0; i < severities.length; i++) {
+			buckets.add(new ArrayList<>());
+		}
+		for (CommentGroup comment : comments.subList(limit, comments.size())) {
+			for (MappedIssue issue : comment.getIssues()) {
+				buckets.get(issue.getIssue().severity().ordinal()).add(issue);
+			}
+		}
+
+		List<MappedIssue> overflow = new ArrayList<>();
+		for (int i = buckets.size() - 1; i >= 0; i--) {
+			overflow.addAll(buckets.get(i));
+		}
+
+		LOGGER.info(
+			"Limiting inline comments to {} of {}, the remaining {} issues are listed in the summary.",
+			limit,
+			comments.size(),
+			overflow.size()
+		);
+		return new CommentBudget(new ArrayList<>(comments.subList(0, limit)), overflow);
+	}
+
+	/**
+	 * @return The comments which should be placed inline.
+	 */
+	List<CommentGroup> getInline() {
+		return inline;
+	}
+
+	/**
+	 * @return The issues which didn't fit within the limit, highest severity first.
+	 */
+	List<MappedIssue> getOverflow() {
+		return overflow;
+	}
+}
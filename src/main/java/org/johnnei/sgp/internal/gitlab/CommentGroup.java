@@ -0,0 +1,171 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.sonar.api.batch.rule.Severity;
+
+import org.johnnei.sgp.internal.model.MappedIssue;
+
+/**
+ * The issues which are placed in GitLab as a single comment.
+ * <p>
+ * A group of a single issue is rendered the same as a comment without aggregation. Larger groups are rendered as a header
+ * (see {@link #HEADER_PREFIX}) followed by a list with an item per issue, highest severity first. {@link ExistingCommentIndex}
+ * recognizes the header to index the issues of the list individually.
+ */
+class CommentGroup {
+
+	static final String HEADER_PREFIX = "SonarQube reported ";
+
+	static final String LINE_PREFIX = "Line ";
+
+	private final CommentAggregation aggregation;
+
+	private final String commitSha;
+
+	private final String path;
+
+	private final int line;
+
+	private final List<MappedIssue> issues;
+
+	private CommentGroup(CommentAggregation aggregation, List<MappedIssue> issues) {
+		this.aggregation = aggregation;
+		this.issues = issues;
+		this.commitSha = issues.get(0).getCommitSha();
+		this.path = issues.get(0).getPath();
+		this.line = issues.stream().mapToInt(CommitCommenter::formatLineNumber).min().getAsInt();
+	}
+
+	/**
+	 * Groups the issues according to the aggregation.
+	 *
+	 * @param issues The issues ordered from the lowest to the highest severity, as provided by
+	 * {@link org.johnnei.sgp.internal.model.SonarReport#getIssues()}.
+	 * @return The groups ordered by the severity of their first issue, highest first.
+	 */
+	static List<CommentGroup> group(Stream<MappedIssue> issues, CommentAggregation aggregation) {
+		List<MappedIssue> highestFirst = reverseSeverities(issues.collect(Collectors.toList()));
+		if (aggregation == CommentAggregation.NONE) {
+			return highestFirst.stream()
+				.map(issue -> new CommentGroup(aggregation, Collections.singletonList(issue)))
+				.collect(Collectors.toList());
+		}
+
+		Map<GroupKey, List<MappedIssue>> groups = new LinkedHashMap<>();
+		highestFirst.forEach(issue -> groups.computeIfAbsent(new GroupKey(issue, aggregation), key -> new ArrayList<>()).add(issue));
+
+		return groups.values().stream()
+			.map(group -> new CommentGroup(aggregation, group))
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Reverses the order of the runs of issues with the same severity, the order within a severity is retained.
+	 */
+	private static List<MappedIssue> reverseSeverities(List<MappedIssue> lowestFirst) {
+		List<MappedIssue> highestFirst = new ArrayList<>(lowestFirst.size());
+		int end = lowestFirst.size();
+		while (end > 0) {
+			Severity severity = lowestFirst.get(end - 1).getIssue().severity();
+			int start = end - 1;
+			while (start > 0 && lowestFirst.get(start - 1).getIssue().severity() == severity) {
+				start--;
+			}
+			highestFirst.addAll(lowestFirst.subList(start, end));
+			end = start;
+		}
+		return highestFirst;
+	}
+
+	String getCommitSha() {
+		return commitSha;
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	int getLine() {
+		return line;
+	}
+
+	List<MappedIssue> getIssues() {
+		return issues;
+	}
+
+	/**
+	 * @return The markdown text of the comment.
+	 */
+	String getMessage() {
+		if (issues.size() == 1) {
+			return CommitCommenter.formatMessage(issues.get(0));
+		}
+
+		MarkdownBuilder builder = new MarkdownBuilder()
+			.addText(String.format(
+				"%s%d issues %s.",
+				HEADER_PREFIX,
+				issues.size(),
+				aggregation == CommentAggregation.FILE ? "in this file" : "on this line"
+			))
+			.addLineBreak()
+			.addLineBreak();
+
+		for (MappedIssue issue : issues) {
+			builder.startListItem();
+			if (aggregation == CommentAggregation.FILE) {
+				builder.addText(String.format("%s%d: ", LINE_PREFIX, CommitCommenter.formatLineNumber(issue)));
+			}
+			builder
+				.addSeverityIcon(issue.getIssue().severity())
+				.addText(issue.getIssue().message())
+				.endListItem();
+		}
+
+		return builder.toString();
+	}
+
+	private static final class GroupKey {
+
+		private final String commitSha;
+
+		private final String path;
+
+		private final int line;
+
+		GroupKey(MappedIssue issue, CommentAggregation aggregation) {
+			commitSha = issue.getCommitSha();
+			path = issue.getPath();
+			line = aggregation == CommentAggregation.LINE ? CommitCommenter.formatLineNumber(issue) : 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+
+			if (!(o instanceof GroupKey)) {
+				return false;
+			}
+
+			GroupKey key = (GroupKey) o;
+			return line == key.line &&
+				Objects.equals(commitSha, key.commitSha) &&
+				Objects.equals(path, key.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(commitSha, path, line);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Compact record of the comments on the commits of an analysis, embedded in the summary comment as a hidden HTML comment.
+ * <p>
+ * For every commit the amount of comments it had after the analysis and a 64-bit fingerprint of each inline comment is kept. The next
+ * analysis only has to check that the amount of comments is unchanged to know the fingerprints are still complete, instead of listing
+ * all comments of the commit. The state is gzipped and Base64 encoded.
+ */
+class CommentLedger {
+
+	private static final Logger LOGGER = Loggers.get(CommentLedger.class);
+
+	private static final String PREFIX = "<!-- sonar-gitlab-ledger:";
+
+	private static final String SUFFIX = " -->";
+
+	private static final int MAGIC = 0x53474c44;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The maximum length of the encoded ledger, this keeps the summary well within the size limit of a note.
+	 */
+	private static final int MAX_LENGTH = 100_000;
+
+	/**
+	 * The state per commit, sorted so that equal ledgers are encoded equally.
+	 */
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	/**
+	 * @param commit The commit on which the comments are placed.
+	 * @param commentCount The amount of comments on the commit, including those of other users.
+	 * @param fingerprints The fingerprints of the inline comments on the commit, see {@link #fingerprint(String, int, String)}.
+	 */
+	void put(String commit, int commentCount, Collection<Long> fingerprints) {
+		entries.put(commit, new Entry(commentCount, new TreeSet<>(fingerprints)));
+	}
+
+	boolean contains(String commit) {
+		return entries.containsKey(commit);
+	}
+
+	boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * @return The amount of comments the commit had when the ledger was written.
+	 */
+	OptionalInt getCommentCount(String commit) {
+		Entry entry = entries.get(commit);
+		return entry == null ? OptionalInt.empty() : OptionalInt.of(entry.commentCount);
+	}
+
+	Set<Long> getFingerprints(String commit) {
+		Entry entry = entries.get(commit);
+		return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.fingerprints);
+	}
+
+	/**
+	 * @return The ledger as a hidden HTML comment, or nothing when it would exceed the size limit.
+	 */
+	Optional<String> format() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(bytes))) {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				output.writeUTF(entry.getKey());
+				output.writeInt(entry.getValue().commentCount);
+				output.writeInt(entry.getValue().fingerprints.size());
+				for (long fingerprint : entry.getValue().fingerprints) {
+					output.writeLong(fingerprint);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to write comment ledger to memory.", e);
+		}
+
+		String encoded = Base64.getEncoder().encodeToString(bytes.toByteArray());
+		if (encoded.length() > MAX_LENGTH) {
+			LOGGER.debug("Comment ledger of {} characters exceeds the limit, leaving it out of the summary.", encoded.length());
+			return Optional.empty();
+		}
+		return Optional.of(PREFIX + encoded + SUFFIX);
+	}
+
+	/**
+	 * @param note The text of a comment.
+	 * @return The ledger embedded in the comment. Nothing when the comment has none or it can't be read.
+	 */
+	static Optional<CommentLedger> parse(@CheckForNull String note) {
+		int start = note == null ? -1 : note.lastIndexOf(PREFIX);
+		int end = start < 0 ? -1 : note.indexOf(SUFFIX, start);
+		if (end < 0) {
+			return Optional.empty();
+		}
+
+		try {
+			byte[] bytes = Base64.getDecoder().decode(note.substring(start + PREFIX.length(), end).trim());
+			try (DataInputStream input = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)))) {
+				if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+					return Optional.empty();
+				}
+
+				CommentLedger ledger = new CommentLedger();
+				int commitCount = input.readInt();
+				for (int i = 0; i < commitCount; i++) {
+					String commit = input.readUTF();
+					int commentCount = input.readInt();
+					int fingerprintCount = input.readInt();
+					Set<Long> fingerprints = new TreeSet<>();
+					for (int j = 0; j < fingerprintCount; j++) {
+						fingerprints.add(input.readLong());
+					}
+					ledger.entries.put(commit, new Entry(commentCount, fingerprints));
+				}
+				return Optional.of(ledger);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.debug("Ignoring unreadable comment ledger.", e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param note The text of a comment.
+	 * @return The text without the embedded ledger.
+	 */
+	static String strip(String note) {
+		int start = note.lastIndexOf(PREFIX);
+		int end = start < 0 ? -1 : note.indexOf(SUFFIX, start);
+		if (end < 0) {
+			return note;
+		}
+		return note.substring(0, start) + note.substring(end + SUFFIX.length());
+	}
+
+	/**
+	 * @param path The file on which the comment is placed.
+	 * @param line The line on which the comment is placed.
+	 * @param message The normalized message, see {@link ExistingCommentIndex#normalize(String)}.
+	 * @return The first 64 bits of the SHA-256 hash of the location and message.
+	 */
+	static long fingerprint(String path, int line, String message) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+				.digest((path + "\n" + line + "\n" + message).getBytes(StandardCharsets.UTF_8));
+			return ByteBuffer.wrap(digest).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be supported by every JVM.", e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+
+		if (!(o instanceof CommentLedger)) {
+			return false;
+		}
+
+		return entries.equals(((CommentLedger) o).entries);
+	}
+
+	@Override
+	public int hashCode() {
+		return entries.hashCode();
+	}
+
+	private static final class Entry {
+
+		private final int commentCount;
+
+		private final Set<Long> fingerprints;
+
+		Entry(int commentCount, Set<Long> fingerprints) {
+			this.commentCount = commentCount;
+			this.fingerprints = fingerprints;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+
+			Entry entry = (Entry) o;
+			return commentCount == entry.commentCount && fingerprints.equals(entry.fingerprints);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(commentCount, fingerprints);
+		}
+	}
+}
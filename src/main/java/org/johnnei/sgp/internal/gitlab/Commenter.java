@@ -0,0 +1,17 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import org.johnnei.sgp.internal.model.SonarReport;
+
+/**
+ * Places the issues of a {@link SonarReport} in GitLab.
+ */
+public interface Commenter {
+
+	/**
+	 * Creates new comments in GitLab based on the given {@link SonarReport}.
+	 *
+	 * @param report The report to comment into GitLab.
+	 * @throws ProcessException When one or more comments couldn't be placed.
+	 */
+	void process(SonarReport report);
+}
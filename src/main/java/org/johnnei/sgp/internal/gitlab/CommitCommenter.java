@@ -1,52 +1,276 @@
 package org.johnnei.sgp.internal.gitlab;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.sonar.api.batch.rule.Severity;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import org.johnnei.sgp.internal.cache.SharedCache;
+import org.johnnei.sgp.internal.gitlab.api.v4.AsyncGitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.ExecutorAsyncGitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.PageIterator;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabUser;
 import org.johnnei.sgp.internal.model.MappedIssue;
 import org.johnnei.sgp.internal.model.SonarReport;
 
 /**
  * Action class which is responsible for updating/creating comments in GitLab.
  */
-public class CommitCommenter {
+public class CommitCommenter implements Commenter {
 
 	private static final Logger LOGGER = Loggers.get(CommitCommenter.class);
 
+	private static final GenericType<List<CommitComment>> COMMENT_LIST = new GenericType<List<CommitComment>>() {};
+
+	private static final TypeReference<List<CommitComment>> CACHED_COMMENT_LIST = new TypeReference<List<CommitComment>>() {};
+
+	/**
+	 * The maximum amount of issues listed in the summary, this keeps the summary within the size limit of a note.
+	 */
+	private static final int MAX_OVERFLOW_ROWS = 100;
+
 	@Nonnull
 	private GitLabApi gitlabApi;
 
+	private final int parallelism;
+
+	@Nonnull
+	private final CommentAggregation aggregation;
+
+	private final int commentLimit;
+
+	@Nonnull
+	private final SharedCache sharedCache;
+
+	@CheckForNull
+	private final AsyncGitLabApi asyncGitlabApi;
+
+	private final boolean trustLedger;
+
 	public CommitCommenter(@Nonnull GitLabApi gitlabApi) {
+		this(gitlabApi, 1, CommentAggregation.NONE, 0);
+	}
+
+	/**
+	 * @param gitlabApi The API to post the comments with.
+	 * @param parallelism The maximum amount of comments to post concurrently.
+	 * @param aggregation Which issues are combined into a single comment.
+	 * @param commentLimit The maximum amount of inline comments, or 0 for no limit.
+	 */
+	public CommitCommenter(@Nonnull GitLabApi gitlabApi, int parallelism, @Nonnull CommentAggregation aggregation, int commentLimit) {
+		this(gitlabApi, parallelism, aggregation, commentLimit, SharedCache.disabled());
+	}
+
+	/**
+	 * @param gitlabApi The API to post the comments with.
+	 * @param parallelism The maximum amount of comments to post concurrently.
+	 * @param aggregation Which issues are combined into a single comment.
+	 * @param commentLimit The maximum amount of inline comments, or 0 for no limit.
+	 * @param sharedCache The cache through which the existing comments are shared with the other analyses of the commits.
+	 */
+	public CommitCommenter(
+		@Nonnull GitLabApi gitlabApi,
+		int parallelism,
+		@Nonnull CommentAggregation aggregation,
+		int commentLimit,
+		@Nonnull SharedCache sharedCache
+	) {
+		this(gitlabApi, parallelism, aggregation, commentLimit, sharedCache, null, false);
+	}
+
+	/**
+	 * @param gitlabApi The API to post the comments with.
+	 * @param parallelism The maximum amount of comments to post concurrently.
+	 * @param aggregation Which issues are combined into a single comment.
+	 * @param commentLimit The maximum amount of inline comments, or 0 for no limit.
+	 * @param sharedCache The cache through which the existing comments are shared with the other analyses of the commits.
+	 * @param asyncGitlabApi The API to post the comments concurrently with, or <code>null</code> to post them on a pool of the commenter.
+	 * @param trustLedger If the comment counts in the ledger are used without verifying them with a request per commit.
+	 */
+	public CommitCommenter(
+		@Nonnull GitLabApi gitlabApi,
+		int parallelism,
+		@Nonnull CommentAggregation aggregation,
+		int commentLimit,
+		@Nonnull SharedCache sharedCache,
+		@CheckForNull AsyncGitLabApi asyncGitlabApi,
+		boolean trustLedger
+	) {
+		this.asyncGitlabApi = asyncGitlabApi;
+		this.trustLedger = trustLedger;
 		this.gitlabApi = gitlabApi;
+		this.parallelism = parallelism;
+		this.aggregation = aggregation;
+		this.commentLimit = commentLimit;
+		this.sharedCache = sharedCache;
 	}
 
 	/**
-	 * Creates new comments in GitLab based on the given {@link SonarReport}.
-	 *
-	 * @param report The report to comment into GitLab.
+	 * The existing comments of the analysed commit are always listed, its summary holds the {@link CommentLedger} of the previous
+	 * analysis. For the other commits the ledger is used when the amount of comments on them is unchanged.
+	 * <p>
+	 * GitLab can't count the comments of several commits in one request, so validating the ledger costs a single-item page per commit.
+	 * When the ledger is trusted those requests are skipped, at the cost of missing the comments which were added since the previous
+	 * analysis.
 	 */
+	@Override
 	public void process(SonarReport report) {
-		List<CommitComment> existingComments = report.getCommitShas()
-			.flatMap(commit -> fetchCommitComments(report, commit).stream())
-			.collect(Collectors.toList());
+		String buildCommit = report.getBuildCommitSha();
+		ExistingCommentIndex existingComments = new ExistingCommentIndex();
+		List<CommitComment> buildCommitComments = getCommitComments(report, buildCommit);
+		buildCommitComments.forEach(comment -> existingComments.add(buildCommit, comment));
+		CommentLedger previousLedger = findLatestLedger(buildCommitComments);
+
+		Map<String, Integer> commentCounts = new HashMap<>();
+		for (String commit : report.getCommitShas().filter(commit -> !commit.equals(buildCommit)).collect(Collectors.toList())) {
+			commentCounts.put(commit, indexCommitComments(report, commit, previousLedger, existingComments));
+		}
+
+		Set<String> commentedCommits = ConcurrentHashMap.newKeySet();
+		try {
+			CommentBudget budget = commentIssuesInline(existingComments, report, commentedCommits);
+
+			CommentLedger ledger = new CommentLedger();
+			budget.getInline().forEach(comment -> {
+				existingComments.add(comment.getCommitSha(), comment.getPath(), comment.getLine(), comment.getMessage());
+				commentCounts.computeIfPresent(comment.getCommitSha(), (commit, count) -> count + 1);
+			});
+			commentCounts.forEach((commit, count) -> ledger.put(commit, count, existingComments.getFingerprints(commit)));
+
+			// A new ledger is needed when the previous one no longer matches the amount of comments, or when there was none yet.
+			boolean ledgerOutdated = ledger.format().isPresent()
+				&& commentCounts.entrySet().stream().anyMatch(entry -> !previousLedger.getCommentCount(entry.getKey()).equals(OptionalInt.of(entry.getValue())));
+			commentSummary(existingComments, report, budget.getOverflow(), ledger, ledgerOutdated, commentedCommits);
+		} finally {
+			// The cached comments of the commits are outdated now, let the next analysis fetch them again.
+			commentedCommits.forEach(commit -> sharedCache.invalidate(getCommentsKey(report, commit)));
+		}
+	}
+
+	/**
+	 * Finds the ledger in the latest summary which was created by this plugin. Ledgers in the comments of other users are ignored, as they
+	 * could otherwise suppress issues by claiming these had already been commented.
+	 */
+	private CommentLedger findLatestLedger(List<CommitComment> comments) {
+		CommentLedger ledger = new CommentLedger();
+		OptionalInt userId = OptionalInt.empty();
+		boolean userLookedUp = false;
+		for (CommitComment comment : comments) {
+			if (comment.getPath() != null) {
+				continue;
+			}
+
+			Optional<CommentLedger> parsed = CommentLedger.parse(comment.getNote());
+			if (!parsed.isPresent()) {
+				continue;
+			}
+
+			if (!userLookedUp) {
+				userId = getCurrentUserId();
+				userLookedUp = true;
+			}
+
+			if (comment.getAuthor() != null && userId.isPresent() && userId.getAsInt() == comment.getAuthor().getId()) {
+				ledger = parsed.get();
+			} else {
+				LOGGER.debug("Ignoring comment ledger which wasn't created by this plugin.");
+			}
+		}
+		return ledger;
+	}
+
+	private OptionalInt getCurrentUserId() {
+		try {
+			GitLabUser user = gitlabApi.getUser();
+			return user == null ? OptionalInt.empty() : OptionalInt.of(user.getId());
+		} catch (ProcessingException | WebApplicationException e) {
+			LOGGER.debug("Failed to look up the user of the token, ignoring the comment ledger.", e);
+			return OptionalInt.empty();
+		}
+	}
+
+	/**
+	 * Adds the existing comments of the commit to the index, from the ledger when it is still complete or otherwise by listing them.
+	 *
+	 * @return The amount of comments on the commit.
+	 */
+	private int indexCommitComments(SonarReport report, String commit, CommentLedger ledger, ExistingCommentIndex existingComments) {
+		OptionalInt ledgerCount = ledger.getCommentCount(commit);
+		if (ledgerCount.isPresent() && (trustLedger || ledgerCount.getAsInt() == countCommitComments(report, commit))) {
+			LOGGER.debug("Using the comment ledger for commit {}.", commit);
+			existingComments.addFingerprints(commit, ledger.getFingerprints(commit));
+			return ledgerCount.getAsInt();
+		}
+
+		List<CommitComment> comments = getCommitComments(report, commit);
+		comments.forEach(comment -> existingComments.add(commit, comment));
+		return comments.size();
+	}
+
+	/**
+	 * @return The amount of comments on the commit, or <code>-1</code> when GitLab didn't report it.
+	 */
+	private int countCommitComments(SonarReport report, String commit) {
+		Response response = null;
+		try {
+			response = gitlabApi.getCommitComments(report.getProject().getId(), commit, 1, 1);
+			return PageIterator.getTotal(response);
+		} catch (IOException e) {
+			throw new IllegalStateException(String.format("Failed to count existing comments for commit %s.", commit), e);
+		} finally {
+			if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	private List<CommitComment> getCommitComments(SonarReport report, String commit) {
+		return sharedCache.get(
+			getCommentsKey(report, commit),
+			CACHED_COMMENT_LIST,
+			() -> fetchCommitComments(report, commit).collect(Collectors.toList())
+		);
+	}
 
-		commentIssuesInline(existingComments, report);
-		commentSummary(existingComments, report);
+	private static String getCommentsKey(SonarReport report, String commit) {
+		return String.format("comments/%d/%s", report.getProject().getId(), commit);
 	}
 
-	private List<CommitComment> fetchCommitComments(SonarReport report, String commit) {
+	private Stream<CommitComment> fetchCommitComments(SonarReport report, String commit) {
+		return PageIterator.stream(page -> fetchCommitCommentPage(report, commit, page), COMMENT_LIST);
+	}
+
+	private Response fetchCommitCommentPage(SonarReport report, String commit, int page) {
 		try {
-			return gitlabApi.getCommitComments(report.getProject().getId(), commit);
+			return gitlabApi.getCommitComments(report.getProject().getId(), commit, page, PageIterator.PAGE_SIZE);
 		} catch (IOException e) {
 			throw new IllegalStateException(String.format("Failed to fetch existing comments for commit %s.", commit), e);
 		}
@@ -57,24 +281,41 @@ public class CommitCommenter {
 	 *
 	 * @param existingComments The comments which are already there.
 	 * @param report The report to comment into GitLab.
+	 * @param overflow The issues which didn't fit within the limit of inline comments.
+	 * @param ledger The state of the comments on the other commits, which is embedded in the summary.
+	 * @param ledgerOutdated If the summary must be created even when it already exists, because the ledger in it is outdated.
+	 * @param commentedCommits The commits on which a comment has been created.
 	 */
-	private void commentSummary(List<CommitComment> existingComments, SonarReport report) {
-		String summary = buildSummary(report);
+	private void commentSummary(
+		ExistingCommentIndex existingComments,
+		SonarReport report,
+		List<MappedIssue> overflow,
+		CommentLedger ledger,
+		boolean ledgerOutdated,
+		Set<String> commentedCommits
+	) {
+		String summary = buildSummary(report, overflow);
 
-		boolean hasExistingSummary = existingComments.stream()
-			.filter(comment -> comment.getLine() == null)
-			.anyMatch(comment -> comment.getNote().equals(summary));
-
-		if (!hasExistingSummary) {
+		if (ledgerOutdated || !existingComments.containsSummary(report.getBuildCommitSha(), summary)) {
+			String note = ledger.isEmpty() ? summary : ledger.format().map(state -> summary + "\n\n" + state).orElse(summary);
 			try {
-				gitlabApi.createCommitComment(report.getProject().getId(), report.getBuildCommitSha(), summary, null, null, null);
+				gitlabApi.createCommitComment(report.getProject().getId(), report.getBuildCommitSha(), note, null, null, null);
+				commentedCommits.add(report.getBuildCommitSha());
 			} catch (IOException e) {
 				throw new ProcessException("Failed to post summary comment.", e);
 			}
 		}
 	}
 
-	private String buildSummary(SonarReport report) {
+	static String buildSummary(SonarReport report) {
+		return buildSummary(report, Collections.emptyList());
+	}
+
+	/**
+	 * @param report The report to summarize.
+	 * @param overflow The issues which didn't fit within the limit of inline comments. These are listed in a table.
+	 */
+	static String buildSummary(SonarReport report, List<MappedIssue> overflow) {
 		List<Severity> severitiesInOrder = Arrays.asList(
 			Severity.BLOCKER,
 			Severity.CRITICAL,
@@ -100,26 +341,70 @@ public class CommitCommenter {
 
 		}
 
+		if (!overflow.isEmpty()) {
+			addOverflowTable(summary, overflow);
+		}
+
 		summary
 			.addLineBreak()
 			.addText("Watch the comments in this conversation to review them.");
 		return summary.toString();
 	}
 
+	private static void addOverflowTable(MarkdownBuilder summary, List<MappedIssue> overflow) {
+		summary
+			.addLineBreak()
+			.addText(String.format("%d issues exceeded the limit of inline comments:", overflow.size()))
+			.addLineBreak()
+			.addLineBreak()
+			.addTableHeader("Severity", "Location", "Issue");
+
+		overflow.stream().limit(MAX_OVERFLOW_ROWS).forEach(issue -> summary.addTableRow(
+			new MarkdownBuilder().addSeverityIcon(issue.getIssue().severity()).toString().trim(),
+			String.format("%s:%d", issue.getPath(), formatLineNumber(issue)),
+			issue.getIssue().message()
+		));
+
+		if (overflow.size() > MAX_OVERFLOW_ROWS) {
+			summary
+				.addLineBreak()
+				.addText(String.format("And %d more issues which are not listed.", overflow.size() - MAX_OVERFLOW_ROWS))
+				.addLineBreak();
+		}
+	}
+
 	/**
 	 * Creates the inline comments based on the given {@link SonarReport}.
 	 *
 	 * @param existingComments The comments which are already there.
 	 * @param report The report to comment into GitLab.
+	 * @param commentedCommits The commits on which a comment has been created.
+	 * @return The division of the issues into inline comments, which have all been created, and the overflow.
 	 */
-	private void commentIssuesInline(List<CommitComment> existingComments, SonarReport report) {
-		boolean allCommentsSucceeded = report.getIssues()
-			.filter(issue -> !isExisting(issue, existingComments))
-			.allMatch(mappedIssue -> postComment(report, mappedIssue));
+	private CommentBudget commentIssuesInline(ExistingCommentIndex existingComments, SonarReport report, Set<String> commentedCommits) {
+		CommentBudget budget = CommentBudget.apply(
+			CommentGroup.group(report.getIssues().filter(issue -> !isExisting(issue, existingComments)), aggregation),
+			commentLimit
+		);
+		List<CommentGroup> comments = budget.getInline();
+
+		// Every comment is attempted, so that a single failure doesn't leave the remaining issues unreported.
+		long failures;
+		if (parallelism <= 1) {
+			failures = comments.stream().filter(comment -> !postComment(report, comment, commentedCommits)).count();
+		} else {
+			failures = postCommentsConcurrently(report, comments, commentedCommits);
+		}
 
-		if (!allCommentsSucceeded) {
-			throw new ProcessException("One or more comments failed to be added to the commit.");
+		if (failures > 0) {
+			throw new ProcessException(String.format(
+				"One or more comments failed to be added to the commit (%d of %d).",
+				failures,
+				comments.size()
+			));
 		}
+
+		return budget;
 	}
 
 	/**
@@ -127,7 +412,7 @@ public class CommitCommenter {
 	 * @param existingComments The comments which are already existing.
 	 * @return <code>true</code> when a comment with the same text on the same line has been found.
 	 */
-	private static boolean isExisting(MappedIssue issue, List<CommitComment> existingComments) {
+	private static boolean isExisting(MappedIssue issue, ExistingCommentIndex existingComments) {
 		LOGGER.debug(
 			"isExisting(issue[path={}, line={}, message={}], existingComments.size={})",
 			issue.getPath(),
@@ -135,54 +420,139 @@ public class CommitCommenter {
 			issue.getIssue().message(),
 			existingComments.size()
 		);
-		return existingComments.stream()
-			.filter(comment -> comment.getPath() != null)
-			.filter(comment -> Objects.equals(comment.getPath(), issue.getPath()))
-			.filter(comment -> Objects.equals(comment.getLine(), Integer.toString(formatLineNumber(issue))))
-			.anyMatch(comment -> comment.getNote().endsWith(issue.getIssue().message()));
+		return existingComments.containsInline(
+			issue.getCommitSha(),
+			issue.getPath(),
+			formatLineNumber(issue),
+			issue.getIssue().message()
+		);
+	}
+
+	/**
+	 * Posts the comments with at most {@link #parallelism} requests in flight. A failed comment doesn't stop the others from being posted.
+	 *
+	 * @return The amount of comments which failed to be created.
+	 */
+	private long postCommentsConcurrently(SonarReport report, List<CommentGroup> comments, Set<String> commentedCommits) {
+		if (comments.isEmpty()) {
+			return 0;
+		}
+
+		ExecutorService executor = null;
+		AsyncGitLabApi asyncApi = asyncGitlabApi;
+		if (asyncApi == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(Math.min(parallelism, comments.size()), runnable -> {
+				Thread thread = new Thread(runnable, "GitLab Comment Publisher #" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			asyncApi = new ExecutorAsyncGitLabApi(gitlabApi, executor);
+		}
+
+		try {
+			Semaphore inFlight = new Semaphore(parallelism);
+			List<CompletableFuture<Boolean>> results = new ArrayList<>(comments.size());
+			for (CommentGroup comment : comments) {
+				inFlight.acquire();
+				CompletableFuture<Void> request = asyncApi.createCommitComment(
+					report.getProject().getId(),
+					comment.getCommitSha(),
+					comment.getMessage(),
+					comment.getPath(),
+					comment.getLine(),
+					"new"
+				);
+				results.add(request.handle((ignored, failure) -> {
+					inFlight.release();
+					return onCommentPosted(comment, failure, commentedCommits);
+				}));
+			}
+
+			long failures = 0;
+			for (CompletableFuture<Boolean> result : results) {
+				if (!result.join()) {
+					failures++;
+				}
+			}
+			return failures;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProcessException("Interrupted while posting comments.", e);
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ProcessException("Failed to post comment.", e.getCause());
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * @param failure The reason the comment wasn't created, or <code>null</code> when it was.
+	 * @return <code>true</code> when the comment was successfully created. Otherwise <code>false</code>.
+	 */
+	private static boolean onCommentPosted(CommentGroup comment, @CheckForNull Throwable failure, Set<String> commentedCommits) {
+		if (failure == null) {
+			commentedCommits.add(comment.getCommitSha());
+			return true;
+		}
+
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+		if (cause instanceof IOException || cause instanceof ProcessingException || cause instanceof WebApplicationException) {
+			LOGGER.warn("Failed to create comment for in {}:{}.", comment.getPath(), comment.getLine(), cause);
+			return false;
+		}
+		throw new CompletionException(cause);
 	}
 
 	/**
 	 * Creates an inline comment on the commit.
 	 *
 	 * @param report The Sonar report information.
-	 * @param mappedIssue The issue which should be reported.
+	 * @param comment The issues which should be reported.
+	 * @param commentedCommits The commits on which a comment has been created, to which the commit of this comment is added.
 	 * @return <code>true</code> when the comment was successfully created. Otherwise <code>false</code>.
 	 */
-	private boolean postComment(SonarReport report, MappedIssue mappedIssue) {
-		MarkdownBuilder messageBuilder = new MarkdownBuilder();
-		messageBuilder.addSeverityIcon(mappedIssue.getIssue().severity());
-		messageBuilder.addText(mappedIssue.getIssue().message());
-
+	private boolean postComment(SonarReport report, CommentGroup comment, Set<String> commentedCommits) {
 		try {
 			gitlabApi.createCommitComment(
 				report.getProject().getId(),
-				mappedIssue.getCommitSha(),
-				messageBuilder.toString(),
-				mappedIssue.getPath(),
-				formatLineNumber(mappedIssue),
+				comment.getCommitSha(),
+				comment.getMessage(),
+				comment.getPath(),
+				comment.getLine(),
 				"new"
 			);
+			commentedCommits.add(comment.getCommitSha());
 			return true;
-		} catch (IOException e) {
-			LOGGER.warn("Failed to create comment for in {}:{}.", mappedIssue.getPath(), mappedIssue.getIssue().line(), e);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			LOGGER.warn("Failed to create comment for in {}:{}.", comment.getPath(), comment.getLine(), e);
 			return false;
 		}
 	}
 
-	private static int formatLineNumber(MappedIssue mappedIssue) {
+	static String formatMessage(MappedIssue mappedIssue) {
+		MarkdownBuilder messageBuilder = new MarkdownBuilder();
+		messageBuilder.addSeverityIcon(mappedIssue.getIssue().severity());
+		messageBuilder.addText(mappedIssue.getIssue().message());
+		return messageBuilder.toString();
+	}
+
+	static int formatLineNumber(MappedIssue mappedIssue) {
 		int line;
 
 		if (mappedIssue.getIssue().line() == null) {
 			line = mappedIssue.getDiff()
-				.getRanges()
-				.stream()
-				.findAny()
+				.getHunkIndex()
+				.getFirstLine()
 				.orElseThrow(() -> new IllegalStateException(String.format(
 					"New File Level issue but there is no diff range in file: %s",
 					mappedIssue.getPath()
-				)))
-				.getStart();
+				)));
 		} else {
 			line = mappedIssue.getIssue().line();
 		}
@@ -1,19 +1,35 @@
 package org.johnnei.sgp.internal.gitlab;
 
 import javax.annotation.Nonnull;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import org.johnnei.sgp.internal.cache.DiffCache;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.PageIterator;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommit;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.diff.DiffProvider;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
 
@@ -21,10 +37,14 @@ import static org.sonar.api.batch.InstantiationStrategy.PER_BATCH;
 
 @BatchSide
 @InstantiationStrategy(PER_BATCH)
-public class DiffFetcher {
+public class DiffFetcher implements DiffProvider {
 
 	private static final Logger LOGGER = Loggers.get(DiffFetcher.class);
 
+	private static final GenericType<List<GitLabCommitDiff>> COMMIT_DIFF_LIST = new GenericType<List<GitLabCommitDiff>>() {};
+
+	private static final TypeReference<GitLabCommitComparison> COMMIT_COMPARISON = new TypeReference<GitLabCommitComparison>() {};
+
 	private final GitLabPluginConfiguration configuration;
 
 	public DiffFetcher(GitLabPluginConfiguration configuration) {
@@ -32,28 +52,127 @@ public class DiffFetcher {
 	}
 
 	@Nonnull
+	@Override
 	public Collection<UnifiedDiff> getDiffs() {
 		GitLabApi gitlabAPI = configuration.createGitLabConnection();
 
-		GitLabCommitComparison compare;
+		int projectId = configuration.getProject().getId();
+		String baseBranch = configuration.getBaseBranch();
+		String commitHash = configuration.getCommitHash();
+		GitLabCommitComparison compare = configuration.createSharedCache().get(
+			String.format("compare/%d/%s/%s", projectId, baseBranch, commitHash),
+			COMMIT_COMPARISON,
+			() -> compareCommits(gitlabAPI, projectId, baseBranch, commitHash)
+		);
+
+		if (configuration.isCompareDiffMode()) {
+			if (compare.getDiffs() != null) {
+				return getCompareDiffs(compare);
+			}
+			LOGGER.warn("GitLab did not return the combined diff of the comparison, falling back to fetching the diff per commit.");
+		}
 
+		DiffCache diffCache = createDiffCache();
+		int parallelism = configuration.getDiffParallelism();
+		if (parallelism <= 1 || compare.getCommits().size() <= 1) {
+			return compare.getCommits().stream()
+				.flatMap(commit -> getCommitDiff(gitlabAPI, diffCache, commit).stream())
+				.collect(Collectors.toList());
+		}
+
+		return fetchCommitDiffsConcurrently(gitlabAPI, diffCache, new ArrayList<>(compare.getCommits()), parallelism);
+	}
+
+	private static GitLabCommitComparison compareCommits(GitLabApi gitlabAPI, int projectId, String baseBranch, String commitHash) {
 		try {
-			compare = gitlabAPI.compareCommits(configuration.getProject().getId(), configuration.getBaseBranch(), configuration.getCommitHash());
+			return gitlabAPI.compareCommits(projectId, baseBranch, commitHash);
 		} catch (IOException e) {
 			throw new IllegalStateException("Failed to fetch compare diff.", e);
 		}
+	}
+
+	private DiffCache createDiffCache() {
+		long maxSize = configuration.getDiffCacheSize();
+		if (maxSize <= 0) {
+			return null;
+		}
+		return new DiffCache(configuration.getCacheDirectory().resolve("diffs"), maxSize);
+	}
 
-		return compare.getCommits().stream()
-			.flatMap(commit -> fetchCommitDiff(gitlabAPI, commit))
+	/**
+	 * Creates the diffs based on the combined diff of the comparison. As the diff isn't split per commit, all changes are attributed to the
+	 * analysed commit.
+	 */
+	private Collection<UnifiedDiff> getCompareDiffs(GitLabCommitComparison compare) {
+		String commitHash = configuration.getCommitHash();
+		return compare.getDiffs().stream()
+			.filter(diff -> !diff.getDeletedFile())
+			.map(diff -> new UnifiedDiff(commitHash, diff))
 			.collect(Collectors.toList());
 	}
 
+	/**
+	 * Fetches the diffs of the commits with at most <code>parallelism</code> requests in flight. The diffs are returned in the order of the
+	 * commits. The first failure cancels all outstanding requests.
+	 */
+	private Collection<UnifiedDiff> fetchCommitDiffsConcurrently(GitLabApi gitlabAPI, DiffCache diffCache, List<GitLabCommit> commits, int parallelism) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, commits.size()), runnable -> {
+			Thread thread = new Thread(runnable, "GitLab Diff Fetcher #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			CompletionService<List<UnifiedDiff>> completionService = new ExecutorCompletionService<>(executor);
+			List<Future<List<UnifiedDiff>>> futures = commits.stream()
+				.map(commit -> completionService.submit(() -> getCommitDiff(gitlabAPI, diffCache, commit)))
+				.collect(Collectors.toList());
+
+			// Wait in order of completion so that a failure is noticed as soon as it happens.
+			for (int i = 0; i < futures.size(); i++) {
+				completionService.take().get();
+			}
+
+			List<UnifiedDiff> diffs = new ArrayList<>();
+			for (Future<List<UnifiedDiff>> future : futures) {
+				diffs.addAll(future.get());
+			}
+			return diffs;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while fetching commit diffs.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to fetch commit diff", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Looks up the diff of the commit in the cache and only fetches it from GitLab when it isn't cached yet.
+	 */
+	private List<UnifiedDiff> getCommitDiff(GitLabApi gitlabAPI, DiffCache diffCache, GitLabCommit commit) {
+		if (diffCache == null) {
+			return fetchCommitDiff(gitlabAPI, commit).collect(Collectors.toList());
+		}
+
+		return diffCache.get(commit.getId(), commit.getShortId(), () -> fetchCommitDiff(gitlabAPI, commit).collect(Collectors.toList()));
+	}
+
 	private Stream<UnifiedDiff> fetchCommitDiff(GitLabApi gitlabAPI, GitLabCommit commit) {
+		LOGGER.debug("Fetching Diff for {}", commit.getShortId());
+		return PageIterator.stream(page -> fetchCommitDiffPage(gitlabAPI, commit, page), COMMIT_DIFF_LIST)
+			.filter(diff -> !diff.getDeletedFile())
+			.map(diff -> new UnifiedDiff(commit.getShortId(), diff));
+	}
+
+	private Response fetchCommitDiffPage(GitLabApi gitlabAPI, GitLabCommit commit, int page) {
 		try {
-			LOGGER.debug("Fetching Diff for {}", commit.getShortId());
-			return gitlabAPI.getCommitDiffs(configuration.getProject().getId(), commit.getShortId()).stream()
-				.filter(diff -> !diff.getDeletedFile())
-				.map(diff -> new UnifiedDiff(commit.getShortId(), diff));
+			return gitlabAPI.getCommitDiffs(configuration.getProject().getId(), commit.getShortId(), page, PageIterator.PAGE_SIZE);
 		} catch (IOException e) {
 			throw new IllegalStateException("Failed to fetch commit diff", e);
 		}
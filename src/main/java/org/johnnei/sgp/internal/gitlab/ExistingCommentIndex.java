@@ -0,0 +1,206 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment;
+
+/**
+ * Hash index of the comments which already exist on the analysed commits or merge request.
+ * <p>
+ * Each comment is kept as the 64-bit fingerprint of its path, line and message per commit (see
+ * {@link CommentLedger#fingerprint(String, int, String)}), the notes themselves are not retained. The message is normalized by stripping
+ * the severity icon which {@link MarkdownBuilder#addSeverityIcon} puts in front of it. Comments which aggregate multiple issues (see
+ * {@link CommentGroup}) are indexed per issue.
+ * <p>
+ * As the fingerprints are the same as those in the {@link CommentLedger}, the inline comments of a commit can also be taken from it.
+ * <p>
+ * Inline comments without a severity icon, such as those of older versions or edited by a user, are also kept as text. Like before the
+ * index existed, such a comment matches an issue on the same line when it ends with the message of the issue.
+ */
+class ExistingCommentIndex {
+
+	/**
+	 * The line of comments which aren't placed on a line, like the summary.
+	 */
+	private static final int NO_LINE = -1;
+
+	/**
+	 * The fingerprints of the inline comments per commit.
+	 */
+	private final Map<String, Set<Long>> fingerprints = new HashMap<>();
+
+	/**
+	 * The fingerprints of the comments which aren't placed on a file, like the summary, per commit.
+	 */
+	private final Map<String, Set<Long>> summaryFingerprints = new HashMap<>();
+
+	/**
+	 * The notes of the inline comments without a severity icon per commit, by the fingerprint of their path and line.
+	 */
+	private final Map<String, Map<Long, List<String>>> unrecognizedNotes = new HashMap<>();
+
+	/**
+	 * @param commit The commit on which the comment was placed.
+	 * @param comment The existing comment.
+	 */
+	void add(String commit, CommitComment comment) {
+		Integer line = null;
+		if (comment.getLine() != null) {
+			try {
+				line = Integer.parseInt(comment.getLine());
+			} catch (NumberFormatException e) {
+				// Such a comment can't match any issue.
+				return;
+			}
+		}
+
+		add(commit, comment.getPath(), line, comment.getNote());
+	}
+
+	/**
+	 * @param commit The commit on which the comment was placed, or <code>null</code> for comments on a merge request.
+	 * @param path The file on which the comment was placed, or <code>null</code> when it isn't placed on a file.
+	 * @param line The line on which the comment was placed, or <code>null</code> when it isn't placed on a line.
+	 * @param note The text of the comment.
+	 */
+	void add(@CheckForNull String commit, @CheckForNull String path, @CheckForNull Integer line, @CheckForNull String note) {
+		if (note == null) {
+			return;
+		}
+
+		int noteLine = line == null ? NO_LINE : line;
+		if (note.startsWith(CommentGroup.HEADER_PREFIX)) {
+			addAggregated(commit, path, noteLine, note);
+		} else if (path == null) {
+			// The ledger changes with every analysis, while the summary itself can remain the same.
+			index(commit, null, noteLine, normalize(CommentLedger.strip(note)));
+		} else {
+			index(commit, path, noteLine, normalize(note));
+			if (noteLine != NO_LINE && !startsWithIcon(note)) {
+				unrecognizedNotes
+					.computeIfAbsent(commit, key -> new HashMap<>())
+					.computeIfAbsent(CommentLedger.fingerprint(path, noteLine, ""), key -> new ArrayList<>())
+					.add(note);
+			}
+		}
+	}
+
+	/**
+	 * @param commit The commit on which the inline comments are placed.
+	 * @param commitFingerprints The fingerprints of the inline comments, see {@link CommentLedger#fingerprint(String, int, String)}.
+	 */
+	void addFingerprints(String commit, Collection<Long> commitFingerprints) {
+		fingerprints.computeIfAbsent(commit, key -> new HashSet<>()).addAll(commitFingerprints);
+	}
+
+	/**
+	 * @return The fingerprints of the inline comments on the commit.
+	 */
+	Set<Long> getFingerprints(String commit) {
+		return Collections.unmodifiableSet(fingerprints.getOrDefault(commit, Collections.emptySet()));
+	}
+
+	/**
+	 * Indexes every list item of an aggregated comment as if it was a comment on its own.
+	 */
+	private void addAggregated(@CheckForNull String commit, @CheckForNull String path, int noteLine, String note) {
+		for (String item : note.split("\n")) {
+			if (!item.startsWith("- ")) {
+				continue;
+			}
+
+			String message = item.substring(2);
+			int line = noteLine;
+			int separator = message.indexOf(": ");
+			if (message.startsWith(CommentGroup.LINE_PREFIX) && separator > CommentGroup.LINE_PREFIX.length()) {
+				try {
+					line = Integer.parseInt(message.substring(CommentGroup.LINE_PREFIX.length(), separator));
+					message = message.substring(separator + 2);
+				} catch (NumberFormatException e) {
+					// The message itself starts with "Line ", the item is of a comment per line.
+				}
+			}
+
+			index(commit, path, line, normalize(message));
+		}
+	}
+
+	private void index(@CheckForNull String commit, @CheckForNull String path, int line, String message) {
+		if (path == null) {
+			summaryFingerprints.computeIfAbsent(commit, key -> new HashSet<>()).add(summaryFingerprint(message));
+		} else if (line != NO_LINE) {
+			fingerprints.computeIfAbsent(commit, key -> new HashSet<>()).add(CommentLedger.fingerprint(path, line, message));
+		}
+		// Comments on a file but not on a line can't match an issue, every issue is commented on a line.
+	}
+
+	/**
+	 * @return <code>true</code> when a comment with the same message exists on the same line, or a comment without a severity icon on
+	 * the same line ends with the message.
+	 */
+	boolean containsInline(String commit, String path, int line, String message) {
+		long fingerprint = CommentLedger.fingerprint(path, line, normalize(message));
+		Set<Long> commitFingerprints = fingerprints.get(commit);
+		if (commitFingerprints != null && commitFingerprints.contains(fingerprint)) {
+			return true;
+		}
+
+		List<String> notes = unrecognizedNotes.getOrDefault(commit, Collections.emptyMap()).get(CommentLedger.fingerprint(path, line, ""));
+		if (notes == null || notes.stream().noneMatch(note -> note.endsWith(message))) {
+			return false;
+		}
+
+		// Record the match, so the ledger of this analysis lets the next one find the comment without its text.
+		fingerprints.computeIfAbsent(commit, key -> new HashSet<>()).add(fingerprint);
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> when the exact summary has already been placed on the commit.
+	 */
+	boolean containsSummary(String commit, String summary) {
+		Set<Long> commitFingerprints = summaryFingerprints.get(commit);
+		return commitFingerprints != null && commitFingerprints.contains(summaryFingerprint(normalize(summary)));
+	}
+
+	int size() {
+		return fingerprints.values().stream().mapToInt(Set::size).sum() + summaryFingerprints.values().stream().mapToInt(Set::size).sum();
+	}
+
+	private static long summaryFingerprint(String message) {
+		return CommentLedger.fingerprint("", NO_LINE, message);
+	}
+
+	/**
+	 * Strips the leading severity icon (ex. <code>":bangbang: "</code>) and surrounding whitespace.
+	 */
+	static String normalize(String message) {
+		if (startsWithIcon(message)) {
+			return message.substring(message.indexOf(':', 1) + 2).trim();
+		}
+		return message.trim();
+	}
+
+	private static boolean startsWithIcon(String message) {
+		int iconEnd = message.indexOf(':', 1);
+		return message.startsWith(":") && iconEnd > 1 && message.startsWith(" ", iconEnd + 1) && isIconName(message, iconEnd);
+	}
+
+	private static boolean isIconName(String message, int iconEnd) {
+		for (int i = 1; i < iconEnd; i++) {
+			char c = message.charAt(i);
+			if ((c < 'a' || c > 'z') && c != '_') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
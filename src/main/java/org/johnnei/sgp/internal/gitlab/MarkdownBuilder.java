@@ -36,6 +36,29 @@ public class MarkdownBuilder {
 		return this;
 	}
 
+	/**
+	 * Adds the header row of a table and the row which separates it from the content.
+	 */
+	public MarkdownBuilder addTableHeader(String... headers) {
+		addTableRow(headers);
+		for (int i = 0; i < headers.length; i++) {
+			builder.append("| --- ");
+		}
+		builder.append("|");
+		return addLineBreak();
+	}
+
+	/**
+	 * Adds a row to a table. The cells are escaped so that they can't break out of the table.
+	 */
+	public MarkdownBuilder addTableRow(String... cells) {
+		for (String cell : cells) {
+			builder.append("| ").append(cell.replace("|", "\\|").replace('\n', ' ')).append(" ");
+		}
+		builder.append("|");
+		return addLineBreak();
+	}
+
 	public MarkdownBuilder addSeverityIcon(Severity severity) {
 		switch (severity) {
 			case INFO:
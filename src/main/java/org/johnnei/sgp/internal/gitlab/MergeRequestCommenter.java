@@ -0,0 +1,219 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.PageIterator;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabDraftNote;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestDiff;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestVersion;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNote;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNotePosition;
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.SonarReport;
+
+/**
+ * Action class which places the issues as draft notes on a merge request and publishes them with a single request.
+ * <p>
+ * Publishing at once causes GitLab to send a single notification instead of one per issue. When creating a draft fails nothing
+ * is published, the drafts which were created are picked up and published by the next analysis.
+ */
+public class MergeRequestCommenter implements Commenter {
+
+	private static final Logger LOGGER = Loggers.get(MergeRequestCommenter.class);
+
+	private static final GenericType<List<GitLabNote>> NOTE_LIST = new GenericType<List<GitLabNote>>() {};
+
+	private static final String POSITION_TYPE_TEXT = "text";
+
+	@Nonnull
+	private final GitLabApi gitlabApi;
+
+	private final int mergeRequestIid;
+
+	@Nonnull
+	private final CommentAggregation aggregation;
+
+	private final int commentLimit;
+
+	public MergeRequestCommenter(@Nonnull GitLabApi gitlabApi, int mergeRequestIid) {
+		this(gitlabApi, mergeRequestIid, CommentAggregation.NONE, 0);
+	}
+
+	/**
+	 * @param gitlabApi The API to create the notes with.
+	 * @param mergeRequestIid The IID of the merge request to place the notes on.
+	 * @param aggregation Which issues are combined into a single note.
+	 * @param commentLimit The maximum amount of notes on the diff, or 0 for no limit.
+	 */
+	public MergeRequestCommenter(@Nonnull GitLabApi gitlabApi, int mergeRequestIid, @Nonnull CommentAggregation aggregation, int commentLimit) {
+		this.gitlabApi = gitlabApi;
+		this.mergeRequestIid = mergeRequestIid;
+		this.aggregation = aggregation;
+		this.commentLimit = commentLimit;
+	}
+
+	@Override
+	public void process(SonarReport report) {
+		int projectId = report.getProject().getId();
+		GitLabMergeRequestVersion version = fetchLatestVersion(projectId);
+
+		ExistingCommentIndex existingNotes = new ExistingCommentIndex();
+		PageIterator.stream(page -> fetchNotePage(projectId, page), NOTE_LIST)
+			.forEach(note -> addNote(existingNotes, note.getBody(), note.getPosition()));
+		List<GitLabDraftNote> pendingDrafts = fetchDraftNotes(projectId);
+		pendingDrafts.forEach(draft -> addNote(existingNotes, draft.getNote(), draft.getPosition()));
+
+		CommentBudget budget = CommentBudget.apply(
+			CommentGroup.group(report.getIssues().filter(issue -> !isExisting(issue, existingNotes)), aggregation),
+			commentLimit
+		);
+		Map<String, GitLabMergeRequestDiff> diffs = budget.getInline().isEmpty() ? Collections.emptyMap() : fetchDiffs(projectId, version);
+		for (CommentGroup note : budget.getInline()) {
+			createDraftNote(projectId, version, diffs.get(note.getPath()), note);
+		}
+
+		int createdDrafts = budget.getInline().size();
+		String summary = CommitCommenter.buildSummary(report, budget.getOverflow());
+		if (!existingNotes.containsSummary(null, summary)) {
+			createSummaryDraftNote(projectId, summary);
+			createdDrafts++;
+		}
+
+		if (createdDrafts == 0 && pendingDrafts.isEmpty()) {
+			LOGGER.debug("No new notes for merge request !{}.", mergeRequestIid);
+			return;
+		}
+
+		try {
+			gitlabApi.publishDraftNotes(projectId, mergeRequestIid);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new ProcessException(String.format("Failed to publish the draft notes of merge request !%d.", mergeRequestIid), e);
+		}
+	}
+
+	private GitLabMergeRequestVersion fetchLatestVersion(int projectId) {
+		List<GitLabMergeRequestVersion> versions;
+		try {
+			versions = gitlabApi.getMergeRequestVersions(projectId, mergeRequestIid);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new ProcessException(String.format("Failed to fetch the versions of merge request !%d.", mergeRequestIid), e);
+		}
+
+		if (versions == null || versions.isEmpty()) {
+			throw new ProcessException(String.format("Merge request !%d has no diff to place notes on.", mergeRequestIid));
+		}
+
+		return versions.get(0);
+	}
+
+	/**
+	 * Fetches the diffs of the version, which are needed to position notes on unchanged lines.
+	 *
+	 * @return The diffs of the version by their new path.
+	 */
+	private Map<String, GitLabMergeRequestDiff> fetchDiffs(int projectId, GitLabMergeRequestVersion version) {
+		GitLabMergeRequestVersion versionWithDiffs;
+		try {
+			versionWithDiffs = gitlabApi.getMergeRequestVersion(projectId, mergeRequestIid, version.getId());
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new ProcessException(String.format("Failed to fetch the diffs of merge request !%d.", mergeRequestIid), e);
+		}
+
+		if (versionWithDiffs == null) {
+			return Collections.emptyMap();
+		}
+
+		return versionWithDiffs.getDiffs().stream()
+			.collect(Collectors.toMap(GitLabMergeRequestDiff::getNewPath, Function.identity(), (a, b) -> a));
+	}
+
+	private Response fetchNotePage(int projectId, int page) {
+		try {
+			return gitlabApi.getMergeRequestNotes(projectId, mergeRequestIid, page, PageIterator.PAGE_SIZE);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new IllegalStateException(String.format("Failed to fetch existing notes of merge request !%d.", mergeRequestIid), e);
+		}
+	}
+
+	private List<GitLabDraftNote> fetchDraftNotes(int projectId) {
+		try {
+			return gitlabApi.getDraftNotes(projectId, mergeRequestIid);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new IllegalStateException(String.format("Failed to fetch draft notes of merge request !%d.", mergeRequestIid), e);
+		}
+	}
+
+	private static void addNote(ExistingCommentIndex existingNotes, String note, GitLabNotePosition position) {
+		if (position == null) {
+			existingNotes.add(null, null, null, note);
+		} else {
+			existingNotes.add(null, position.getNewPath(), position.getNewLine(), note);
+		}
+	}
+
+	private static boolean isExisting(MappedIssue issue, ExistingCommentIndex existingNotes) {
+		return existingNotes.containsInline(null, issue.getPath(), CommitCommenter.formatLineNumber(issue), issue.getIssue().message());
+	}
+
+	/**
+	 * Places the note on the diff. GitLab rejects a note on an unchanged line unless it is identified by both its old and new line.
+	 *
+	 * @param diff The diff of the file of the note, or <code>null</code> when the version has no diff for it.
+	 */
+	private void createDraftNote(int projectId, GitLabMergeRequestVersion version, @CheckForNull GitLabMergeRequestDiff diff, CommentGroup note) {
+		String oldPath = note.getPath();
+		Integer oldLine = null;
+		if (diff != null) {
+			oldPath = diff.getOldPath();
+			OptionalInt unchangedLine = diff.getLineMap().getOldLine(note.getLine());
+			oldLine = unchangedLine.isPresent() ? unchangedLine.getAsInt() : null;
+		}
+
+		try {
+			gitlabApi.createDraftNote(
+				projectId,
+				mergeRequestIid,
+				note.getMessage(),
+				POSITION_TYPE_TEXT,
+				version.getBaseCommitSha(),
+				version.getStartCommitSha(),
+				version.getHeadCommitSha(),
+				oldPath,
+				note.getPath(),
+				oldLine,
+				note.getLine()
+			);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new ProcessException(String.format(
+				"Failed to create draft note for %s:%d on merge request !%d.",
+				note.getPath(),
+				note.getLine(),
+				mergeRequestIid
+			), e);
+		}
+	}
+
+	private void createSummaryDraftNote(int projectId, String summary) {
+		try {
+			gitlabApi.createDraftNote(projectId, mergeRequestIid, summary, null, null, null, null, null, null, null, null);
+		} catch (IOException | ProcessingException | WebApplicationException e) {
+			throw new ProcessException(String.format("Failed to create summary draft note on merge request !%d.", mergeRequestIid), e);
+		}
+	}
+}
@@ -4,11 +4,9 @@ import java.io.IOException;
 
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.InstantiationStrategy;
-import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.batch.rule.Severity;
 
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
-import org.johnnei.sgp.internal.model.MappedIssue;
 import org.johnnei.sgp.internal.model.SonarReport;
 import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
 
@@ -50,9 +48,6 @@ public class PipelineBreaker {
 	}
 
 	private boolean hasCriticalOrWorseIssue(SonarReport report) {
-		return report.getIssues()
-			.map(MappedIssue::getIssue)
-			.map(PostJobIssue::severity)
-			.anyMatch(severity -> severity == Severity.CRITICAL || severity == Severity.BLOCKER);
+		return report.countIssuesWithSeverity(Severity.CRITICAL) > 0 || report.countIssuesWithSeverity(Severity.BLOCKER) > 0;
 	}
 }
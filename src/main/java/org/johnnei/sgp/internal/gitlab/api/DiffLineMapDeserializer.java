@@ -0,0 +1,36 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import org.johnnei.sgp.internal.model.diff.DiffLineMap;
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
+
+/**
+ * Deserializes a unified diff string into the {@link DiffLineMap} of its unchanged lines.
+ * <p>
+ * Like {@link HunkRangeDeserializer} the text of the token is streamed into a {@link HunkRangeParser}.
+ */
+public class DiffLineMapDeserializer extends JsonDeserializer<DiffLineMap> {
+
+	@Override
+	public DiffLineMap deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+			throw context.wrongTokenException(parser, DiffLineMap.class, JsonToken.VALUE_STRING, "Expected the diff to be a string.");
+		}
+
+		HunkRangeParser hunkRangeParser = new HunkRangeParser(true);
+		parser.getText(hunkRangeParser);
+		hunkRangeParser.close();
+		return hunkRangeParser.getLineMap();
+	}
+
+	@Override
+	public DiffLineMap getNullValue(DeserializationContext context) {
+		return DiffLineMap.empty();
+	}
+}
@@ -0,0 +1,38 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
+
+/**
+ * Deserializes a unified diff string into its {@link HunkRange}s.
+ * <p>
+ * The text of the token is streamed into a {@link HunkRangeParser} so the diff is never turned into a {@link String}.
+ */
+public class HunkRangeDeserializer extends JsonDeserializer<List<HunkRange>> {
+
+	@Override
+	public List<HunkRange> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+			throw context.wrongTokenException(parser, List.class, JsonToken.VALUE_STRING, "Expected the diff to be a string.");
+		}
+
+		HunkRangeParser hunkRangeParser = new HunkRangeParser();
+		parser.getText(hunkRangeParser);
+		hunkRangeParser.close();
+		return hunkRangeParser.getRanges();
+	}
+
+	@Override
+	public List<HunkRange> getNullValue(DeserializationContext context) {
+		return Collections.emptyList();
+	}
+}
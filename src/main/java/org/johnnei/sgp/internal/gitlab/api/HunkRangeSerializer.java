@@ -0,0 +1,27 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+
+/**
+ * Serializes {@link HunkRange}s as a unified diff which only consists of the hunk headers, so that {@link HunkRangeDeserializer} reads
+ * back the same ranges.
+ */
+public class HunkRangeSerializer extends JsonSerializer<List<HunkRange>> {
+
+	@Override
+	public void serialize(List<HunkRange> ranges, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		StringBuilder diff = new StringBuilder();
+		for (HunkRange range : ranges) {
+			// The range of the old file isn't retained, but is required by the format.
+			diff.append("@@ -0,0 +").append(range.getStart()).append(',').append(range.getLineCount()).append(" @@\n");
+		}
+		generator.writeString(diff.toString());
+	}
+}
@@ -0,0 +1,41 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabUser;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitlabCommitStatus;
+
+/**
+ * Non-blocking counterpart of {@link GitLabApi} for the endpoints used to analyse a commit, which allows many requests to be in flight at
+ * once.
+ * <p>
+ * Failures complete the returned future exceptionally with the exception thrown by the blocking call as cause.
+ */
+public interface AsyncGitLabApi {
+
+	CompletableFuture<GitLabProject> getProject(long id);
+
+	CompletableFuture<GitLabUser> getUser();
+
+	/**
+	 * @return A page of {@link org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment}. Should be consumed by {@link PageIterator}.
+	 */
+	CompletableFuture<Response> getCommitComments(long id, String commit, int page, int perPage);
+
+	CompletableFuture<Void> createCommitComment(int id, String buildCommitSha, String summary, String path, Integer line, String lineType);
+
+	CompletableFuture<GitLabCommitComparison> compareCommits(long id, String baseBranch, String commitHash);
+
+	/**
+	 * @return A page of {@link org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff}. Should be consumed by {@link PageIterator}.
+	 */
+	CompletableFuture<Response> getCommitDiffs(long id, String shortId, int page, int perPage);
+
+	CompletableFuture<GitlabCommitStatus> createCommitStatus(int id, String buildCommitSha, String status, String name, String description);
+
+	CompletableFuture<Collection<GitlabCommitStatus>> getCommitStatuses(int project, String commit);
+}
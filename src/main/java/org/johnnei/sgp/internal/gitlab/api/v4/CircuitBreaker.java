@@ -0,0 +1,67 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import java.time.Clock;
+
+/**
+ * Stops sending requests to a GitLab instance which keeps failing.
+ * <p>
+ * After a number of consecutive failures the circuit opens and requests are rejected without being sent. Once the open
+ * duration has passed a single trial request is let through: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+
+	private final Clock clock;
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private int consecutiveFailures;
+
+	private long openUntil;
+
+	private boolean trialInFlight;
+
+	/**
+	 * @param failureThreshold The amount of consecutive failures which opens the circuit.
+	 * @param openMillis The amount of milliseconds the circuit stays open.
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this(failureThreshold, openMillis, Clock.systemUTC());
+	}
+
+	CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+		this.clock = clock;
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * @return <code>true</code> when a request may be sent.
+	 */
+	public synchronized boolean allowRequest() {
+		if (consecutiveFailures < failureThreshold) {
+			return true;
+		}
+
+		if (clock.millis() < openUntil || trialInFlight) {
+			return false;
+		}
+
+		trialInFlight = true;
+		return true;
+	}
+
+	public synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		trialInFlight = false;
+	}
+
+	public synchronized void onFailure() {
+		consecutiveFailures++;
+		trialInFlight = false;
+		if (consecutiveFailures >= failureThreshold) {
+			openUntil = clock.millis() + openMillis;
+		}
+	}
+}
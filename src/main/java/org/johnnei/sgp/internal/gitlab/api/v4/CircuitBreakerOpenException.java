@@ -0,0 +1,15 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown when a request isn't sent because the {@link CircuitBreaker} is open.
+ */
+public class CircuitBreakerOpenException extends ProcessingException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitBreakerOpenException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,93 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabUser;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitlabCommitStatus;
+
+/**
+ * {@link AsyncGitLabApi} which runs the calls of a (thread-safe) {@link GitLabApi} on the given {@link Executor}. Resteasy 3.1 client
+ * proxies can't return a {@link java.util.concurrent.CompletionStage} themselves.
+ */
+public class ExecutorAsyncGitLabApi implements AsyncGitLabApi {
+
+	@Nonnull
+	private final GitLabApi gitlabApi;
+
+	@Nonnull
+	private final Executor executor;
+
+	public ExecutorAsyncGitLabApi(@Nonnull GitLabApi gitlabApi, @Nonnull Executor executor) {
+		this.gitlabApi = Objects.requireNonNull(gitlabApi, "GitLab API is required to execute calls.");
+		this.executor = Objects.requireNonNull(executor, "Executor is required to execute calls.");
+	}
+
+	@Override
+	public CompletableFuture<GitLabProject> getProject(long id) {
+		return supply(() -> gitlabApi.getProject(id));
+	}
+
+	@Override
+	public CompletableFuture<GitLabUser> getUser() {
+		return supply(gitlabApi::getUser);
+	}
+
+	@Override
+	public CompletableFuture<Response> getCommitComments(long id, String commit, int page, int perPage) {
+		return supply(() -> gitlabApi.getCommitComments(id, commit, page, perPage));
+	}
+
+	@Override
+	public CompletableFuture<Void> createCommitComment(int id, String buildCommitSha, String summary, String path, Integer line, String lineType) {
+		return supply(() -> {
+			gitlabApi.createCommitComment(id, buildCommitSha, summary, path, line, lineType);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<GitLabCommitComparison> compareCommits(long id, String baseBranch, String commitHash) {
+		return supply(() -> gitlabApi.compareCommits(id, baseBranch, commitHash));
+	}
+
+	@Override
+	public CompletableFuture<Response> getCommitDiffs(long id, String shortId, int page, int perPage) {
+		return supply(() -> gitlabApi.getCommitDiffs(id, shortId, page, perPage));
+	}
+
+	@Override
+	public CompletableFuture<GitlabCommitStatus> createCommitStatus(int id, String buildCommitSha, String status, String name, String description) {
+		return supply(() -> gitlabApi.createCommitStatus(id, buildCommitSha, status, name, description));
+	}
+
+	@Override
+	public CompletableFuture<Collection<GitlabCommitStatus>> getCommitStatuses(int project, String commit) {
+		return supply(() -> gitlabApi.getCommitStatuses(project, commit));
+	}
+
+	private <T> CompletableFuture<T> supply(ApiCall<T> call) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return call.execute();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	@FunctionalInterface
+	private interface ApiCall<T> {
+
+		T execute() throws IOException;
+
+	}
+}
@@ -1,6 +1,7 @@
 package org.johnnei.sgp.internal.gitlab.api.v4;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.Encoded;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -9,6 +10,7 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
@@ -16,6 +18,9 @@ import java.util.List;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabDraftNote;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestVersion;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNote;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabSession;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabUser;
@@ -34,14 +39,40 @@ public interface GitLabApi {
 	@Path("/projects/{id}")
 	GitLabProject getProject(@PathParam("id") long id);
 
+	/**
+	 * @param path The full path (<code>namespace/project</code>) of the project. The value is URL-encoded by the client (including the slash)
+	 * as GitLab requires.
+	 * @return The project at the given path.
+	 */
+	@GET
+	@Path("/projects/{path}")
+	GitLabProject getProjectByPath(@Encoded @PathParam("path") String path);
+
 	@GET
 	@Path("/projects")
 	Collection<GitLabProject> getProjects();
 
+	/**
+	 * @return A page of {@link GitLabProject} matching the search. Should be consumed by {@link PageIterator}.
+	 */
+	@GET
+	@Path("/projects")
+	Response searchProjects(@QueryParam("search") String search, @QueryParam("page") int page, @QueryParam("per_page") int perPage);
+
 	@GET
 	@Path("/projects/{id}/repository/commits/{sha}/comments")
 	List<CommitComment> getCommitComments(@PathParam("id") long id, @PathParam("sha") String commit) throws IOException;
 
+	/**
+	 * @return A page of {@link CommitComment}. Should be consumed by {@link PageIterator}.
+	 */
+	@GET
+	@Path("/projects/{id}/repository/commits/{sha}/comments")
+	Response getCommitComments(@PathParam("id") long id,
+		@PathParam("sha") String commit,
+		@QueryParam("page") int page,
+		@QueryParam("per_page") int perPage) throws IOException;
+
 	@POST
 	@Path("/projects/{id}/repository/commits/{sha}/comments")
 	void createCommitComment(@PathParam("id") int id,
@@ -59,6 +90,16 @@ public interface GitLabApi {
 	@Path("/projects/{id}/repository/commits/{sha}/diff")
 	Collection<GitLabCommitDiff> getCommitDiffs(@PathParam("id") long id, @PathParam("sha") String shortId) throws IOException;
 
+	/**
+	 * @return A page of {@link GitLabCommitDiff}. Should be consumed by {@link PageIterator}.
+	 */
+	@GET
+	@Path("/projects/{id}/repository/commits/{sha}/diff")
+	Response getCommitDiffs(@PathParam("id") long id,
+		@PathParam("sha") String shortId,
+		@QueryParam("page") int page,
+		@QueryParam("per_page") int perPage) throws IOException;
+
 	@POST
 	@Path("/projects/{id}/statuses/{sha}")
 	GitlabCommitStatus createCommitStatus(@PathParam("id") int id,
@@ -67,6 +108,64 @@ public interface GitLabApi {
 		@QueryParam("name") String name,
 		@QueryParam("description") String description) throws IOException;
 
+	/**
+	 * @return The versions of the merge request diff, the latest first.
+	 */
+	@GET
+	@Path("/projects/{id}/merge_requests/{iid}/versions")
+	List<GitLabMergeRequestVersion> getMergeRequestVersions(@PathParam("id") int id, @PathParam("iid") int iid) throws IOException;
+
+	/**
+	 * @return The version of the merge request diff, including the diffs of the files.
+	 */
+	@GET
+	@Path("/projects/{id}/merge_requests/{iid}/versions/{version_id}")
+	GitLabMergeRequestVersion getMergeRequestVersion(@PathParam("id") int id,
+		@PathParam("iid") int iid,
+		@PathParam("version_id") int versionId) throws IOException;
+
+	/**
+	 * @return A page of {@link GitLabNote}. Should be consumed by {@link PageIterator}.
+	 */
+	@GET
+	@Path("/projects/{id}/merge_requests/{iid}/notes")
+	Response getMergeRequestNotes(@PathParam("id") int id,
+		@PathParam("iid") int iid,
+		@QueryParam("page") int page,
+		@QueryParam("per_page") int perPage) throws IOException;
+
+	/**
+	 * @return The unpublished draft notes of the user on the merge request.
+	 */
+	@GET
+	@Path("/projects/{id}/merge_requests/{iid}/draft_notes")
+	List<GitLabDraftNote> getDraftNotes(@PathParam("id") int id, @PathParam("iid") int iid) throws IOException;
+
+	/**
+	 * Creates a draft note. When the position parameters are <code>null</code> the note is placed on the merge request itself instead of
+	 * on the diff.
+	 */
+	@POST
+	@Path("/projects/{id}/merge_requests/{iid}/draft_notes")
+	void createDraftNote(@PathParam("id") int id,
+		@PathParam("iid") int iid,
+		@QueryParam("note") String note,
+		@QueryParam("position[position_type]") String positionType,
+		@QueryParam("position[base_sha]") String baseSha,
+		@QueryParam("position[start_sha]") String startSha,
+		@QueryParam("position[head_sha]") String headSha,
+		@QueryParam("position[old_path]") String oldPath,
+		@QueryParam("position[new_path]") String newPath,
+		@QueryParam("position[old_line]") Integer oldLine,
+		@QueryParam("position[new_line]") Integer newLine) throws IOException;
+
+	/**
+	 * Publishes all draft notes of the user on the merge request at once.
+	 */
+	@POST
+	@Path("/projects/{id}/merge_requests/{iid}/draft_notes/bulk_publish")
+	void publishDraftNotes(@PathParam("id") int id, @PathParam("iid") int iid) throws IOException;
+
 	@GET
 	@Path("/user")
 	GitLabUser getUser();
@@ -0,0 +1,166 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.cache.CachedResponse;
+import org.johnnei.sgp.internal.cache.HttpResponseCache;
+
+/**
+ * Makes the GET requests conditional on the response in the {@link HttpResponseCache}. When GitLab answers that the response is unchanged
+ * (<code>304 Not Modified</code>), the cached response is passed on as if GitLab had sent it again.
+ * <p>
+ * Responses are only cached when they carry an <code>ETag</code> or <code>Last-Modified</code> header, as they can't be revalidated
+ * otherwise. Diffs are never cached, as they would have to be buffered as a whole while they are meant to be streamed (see
+ * {@link #STREAMED_PATHS}).
+ */
+public class HttpCacheFilter implements ClientRequestFilter, ClientResponseFilter {
+
+	private static final Logger LOGGER = Loggers.get(HttpCacheFilter.class);
+
+	static final String CACHED_RESPONSE_PROPERTY = HttpCacheFilter.class.getName() + ".cachedResponse";
+
+	/**
+	 * The headers which are needed to read a cached response, the pagination of GitLab in particular.
+	 */
+	static final List<String> CACHED_HEADERS = Arrays.asList(
+		HttpHeaders.CONTENT_TYPE,
+		"Link",
+		"X-Next-Page",
+		"X-Page",
+		"X-Per-Page",
+		"X-Prev-Page",
+		"X-Total",
+		"X-Total-Pages"
+	);
+
+	/**
+	 * The endpoints which return diffs. Their responses are parsed while they stream in, so buffering them would hold entire diffs in memory.
+	 */
+	static final Pattern STREAMED_PATHS = Pattern.compile("/repository/(commits/[^/]+/diff|compare)$|/merge_requests/[^/]+/versions/[^/]+$");
+
+	private final HttpResponseCache cache;
+
+	private final String scope;
+
+	/**
+	 * @param cache The cache to store the responses in.
+	 * @param scope The prefix of the keys, which separates the responses of different users.
+	 */
+	public HttpCacheFilter(HttpResponseCache cache, String scope) {
+		this.cache = Objects.requireNonNull(cache);
+		this.scope = Objects.requireNonNull(scope);
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		if (!isCacheable(requestContext)) {
+			return;
+		}
+
+		cache.get(getKey(requestContext)).ifPresent(cached -> {
+			requestContext.setProperty(CACHED_RESPONSE_PROPERTY, cached);
+			if (cached.getEntityTag() != null) {
+				requestContext.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, cached.getEntityTag());
+			}
+			if (cached.getLastModified() != null) {
+				requestContext.getHeaders().putSingle(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+			}
+		});
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+		if (!isCacheable(requestContext)) {
+			return;
+		}
+
+		String key = getKey(requestContext);
+		Object cached = requestContext.getProperty(CACHED_RESPONSE_PROPERTY);
+		if (responseContext.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && cached instanceof CachedResponse) {
+			LOGGER.debug("Using cached response for {}.", requestContext.getUri());
+			replay((CachedResponse) cached, responseContext);
+			cache.revalidated(key);
+			return;
+		}
+
+		if (responseContext.getStatus() != Response.Status.OK.getStatusCode()) {
+			return;
+		}
+
+		String entityTag = responseContext.getHeaderString(HttpHeaders.ETAG);
+		String lastModified = responseContext.getHeaderString(HttpHeaders.LAST_MODIFIED);
+		if (entityTag == null && lastModified == null) {
+			if (cached != null) {
+				cache.remove(key);
+			}
+			return;
+		}
+
+		byte[] body = responseContext.hasEntity() ? readFully(responseContext.getEntityStream()) : new byte[0];
+		responseContext.setEntityStream(new ByteArrayInputStream(body));
+		cache.put(key, new CachedResponse(entityTag, lastModified, getCachedHeaders(responseContext), body));
+	}
+
+	private static boolean isCacheable(ClientRequestContext requestContext) {
+		return HttpMethod.GET.equals(requestContext.getMethod()) && !STREAMED_PATHS.matcher(requestContext.getUri().getPath()).find();
+	}
+
+	private String getKey(ClientRequestContext requestContext) {
+		return scope + "\n" + requestContext.getUri();
+	}
+
+	private static void replay(CachedResponse cached, ClientResponseContext responseContext) {
+		responseContext.setStatus(Response.Status.OK.getStatusCode());
+		for (Map.Entry<String, List<String>> header : cached.getHeaders().entrySet()) {
+			// The headers of the 304 response are newer, only restore the ones which it omitted.
+			if (responseContext.getHeaderString(header.getKey()) == null) {
+				responseContext.getHeaders().put(header.getKey(), new ArrayList<>(header.getValue()));
+			}
+		}
+		responseContext.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+		responseContext.setEntityStream(new ByteArrayInputStream(cached.getBody()));
+	}
+
+	private static Map<String, List<String>> getCachedHeaders(ClientResponseContext responseContext) {
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		for (String name : CACHED_HEADERS) {
+			List<String> values = responseContext.getHeaders().get(name);
+			if (values != null && !values.isEmpty()) {
+				headers.put(name, new ArrayList<>(values));
+			}
+		}
+		return headers;
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream input = inputStream) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+		}
+		return body.toByteArray();
+	}
+}
@@ -0,0 +1,160 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator which lazily walks over the pages of a GitLab list endpoint. A page is only requested once all items of the previous page
+ * have been consumed, so at most one page is held in memory.
+ * <p>
+ * The next page is determined by the <code>X-Next-Page</code> header, or the <code>Link</code> header with relation <code>next</code>
+ * when the former is absent.
+ *
+ * @param <T> The type of the items on the pages.
+ */
+public class PageIterator<T> implements Iterator<T> {
+
+	/**
+	 * The maximum amount of items which GitLab allows on a single page.
+	 */
+	public static final int PAGE_SIZE = 100;
+
+	static final String NEXT_PAGE_HEADER = "X-Next-Page";
+
+	static final String TOTAL_HEADER = "X-Total";
+
+	@Nonnull
+	private final IntFunction<Response> pageFetcher;
+
+	@Nonnull
+	private final GenericType<List<T>> pageType;
+
+	@Nonnull
+	private Iterator<T> currentPage;
+
+	private int nextPage;
+
+	/**
+	 * @param pageFetcher Function which requests the page with the given (1-based) number.
+	 * @param pageType The type of the entity of the pages.
+	 */
+	public PageIterator(@Nonnull IntFunction<Response> pageFetcher, @Nonnull GenericType<List<T>> pageType) {
+		this.pageFetcher = Objects.requireNonNull(pageFetcher, "Page fetcher is required to request pages.");
+		this.pageType = Objects.requireNonNull(pageType, "Page type is required to read pages.");
+		this.currentPage = Collections.emptyIterator();
+		this.nextPage = 1;
+	}
+
+	/**
+	 * @param pageFetcher Function which requests the page with the given (1-based) number.
+	 * @param pageType The type of the entity of the pages.
+	 * @param <T> The type of the items on the pages.
+	 * @return A lazy sequential stream over the items on all pages.
+	 */
+	public static <T> Stream<T> stream(@Nonnull IntFunction<Response> pageFetcher, @Nonnull GenericType<List<T>> pageType) {
+		Iterator<T> iterator = new PageIterator<>(pageFetcher, pageType);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext() && nextPage > 0) {
+			fetchPage();
+		}
+
+		return currentPage.hasNext();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return currentPage.next();
+	}
+
+	private void fetchPage() {
+		int page = nextPage;
+		Response response = pageFetcher.apply(page);
+		try {
+			if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+				throw new WebApplicationException(String.format("Failed to fetch page %d.", page), response);
+			}
+
+			List<T> items = response.readEntity(pageType);
+			currentPage = items == null ? Collections.emptyIterator() : items.iterator();
+			nextPage = getNextPage(response);
+
+			if (nextPage <= page) {
+				// Guard against servers which don't move forward.
+				nextPage = 0;
+			}
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * @param response The response of a page request.
+	 * @return The number of the next page or <code>0</code> when this was the last page.
+	 */
+	static int getNextPage(Response response) {
+		String nextPageHeader = response.getHeaderString(NEXT_PAGE_HEADER);
+		if (nextPageHeader != null && !nextPageHeader.trim().isEmpty()) {
+			return parsePage(nextPageHeader.trim());
+		}
+
+		Link link = response.getLink("next");
+		if (link == null || link.getUri() == null || link.getUri().getRawQuery() == null) {
+			return 0;
+		}
+
+		for (String parameter : link.getUri().getRawQuery().split("&")) {
+			if (parameter.startsWith("page=")) {
+				return parsePage(parameter.substring("page=".length()));
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @param response The response of a page request.
+	 * @return The amount of items on all pages together, or <code>-1</code> when GitLab didn't report it. GitLab leaves it out for very
+	 * large lists.
+	 */
+	public static int getTotal(Response response) {
+		String totalHeader = response.getHeaderString(TOTAL_HEADER);
+		if (totalHeader == null || totalHeader.trim().isEmpty()) {
+			return -1;
+		}
+
+		try {
+			return Integer.parseInt(totalHeader.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static int parsePage(String page) {
+		try {
+			return Integer.parseInt(page);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
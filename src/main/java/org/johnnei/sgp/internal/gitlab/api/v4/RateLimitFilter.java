@@ -0,0 +1,92 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Holds back requests according to the {@link RateLimiter} and feeds it with the rate limit headers of GitLab.
+ */
+public class RateLimitFilter implements ClientRequestFilter, ClientResponseFilter {
+
+	private static final Logger LOGGER = Loggers.get(RateLimitFilter.class);
+
+	static final String REMAINING_HEADER = "RateLimit-Remaining";
+	static final String RESET_HEADER = "RateLimit-Reset";
+	static final String RETRY_AFTER_HEADER = "Retry-After";
+
+	private final RateLimiter rateLimiter;
+
+	public RateLimitFilter(RateLimiter rateLimiter) {
+		this.rateLimiter = Objects.requireNonNull(rateLimiter);
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext) throws IOException {
+		try {
+			rateLimiter.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the GitLab rate limit.", e);
+		}
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+		Long remaining = parseLong(responseContext.getHeaderString(REMAINING_HEADER));
+		Long reset = parseLong(responseContext.getHeaderString(RESET_HEADER));
+		if (remaining != null && reset != null) {
+			// GitLab reports the reset as epoch seconds.
+			rateLimiter.onQuota(remaining, reset * 1000);
+		}
+
+		String retryAfter = responseContext.getHeaderString(RETRY_AFTER_HEADER);
+		if (retryAfter != null) {
+			long delay = parseRetryAfter(retryAfter);
+			LOGGER.info("GitLab requested to retry after {}ms.", delay);
+			rateLimiter.onRetryAfter(delay);
+		}
+	}
+
+	/**
+	 * @param retryAfter Either the amount of seconds or the HTTP date after which to retry.
+	 * @return The amount of milliseconds to wait.
+	 */
+	static long parseRetryAfter(String retryAfter) {
+		Long seconds = parseLong(retryAfter);
+		if (seconds != null) {
+			return Math.max(0, seconds * 1000);
+		}
+
+		try {
+			ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+			return Math.max(0, Duration.between(Instant.now(), date.toInstant()).toMillis());
+		} catch (DateTimeParseException e) {
+			LOGGER.debug("Ignoring malformed {} header \"{}\".", RETRY_AFTER_HEADER, retryAfter);
+			return 0;
+		}
+	}
+
+	private static Long parseLong(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
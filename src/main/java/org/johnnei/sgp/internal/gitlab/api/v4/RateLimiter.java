@@ -0,0 +1,128 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import java.time.Clock;
+
+/**
+ * Token bucket which limits the rate of requests to GitLab.
+ * <p>
+ * Next to the configured rate the limiter follows the quota which GitLab reports on its responses. Once the remaining
+ * quota runs low the requests are spread evenly over the time until the quota resets, when it is exhausted or GitLab
+ * asks to retry later the requests are held back entirely.
+ */
+public class RateLimiter {
+
+	/**
+	 * The remaining quota below which requests are spread over the time until the quota resets.
+	 */
+	static final int LOW_QUOTA = 10;
+
+	private final Clock clock;
+
+	/**
+	 * The configured rate. A value of 0 or less disables the token bucket.
+	 */
+	private final double permitsPerMilli;
+
+	private final double capacity;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	private long pausedUntil;
+
+	/**
+	 * The remaining quota as reported by GitLab minus the permits handed out since, or <code>-1</code> when unknown.
+	 */
+	private long quotaRemaining = -1;
+
+	private long quotaResetAt;
+
+	private long nextSpreadPermit;
+
+	/**
+	 * @param permitsPerSecond The maximum amount of requests per second. A value of 0 or less only limits on the quota reported by GitLab.
+	 */
+	public RateLimiter(int permitsPerSecond) {
+		this(permitsPerSecond, Clock.systemUTC());
+	}
+
+	RateLimiter(int permitsPerSecond, Clock clock) {
+		this.clock = clock;
+		this.permitsPerMilli = permitsPerSecond / 1000d;
+		this.capacity = Math.max(1, permitsPerSecond);
+		this.tokens = capacity;
+		this.lastRefill = clock.millis();
+	}
+
+	/**
+	 * Blocks until a request may be sent.
+	 *
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public void acquire() throws InterruptedException {
+		long wait;
+		while ((wait = tryAcquire()) > 0) {
+			Thread.sleep(wait);
+		}
+	}
+
+	/**
+	 * Attempts to take a permit.
+	 *
+	 * @return <code>0</code> when the permit was taken. Otherwise the amount of milliseconds to wait before trying again.
+	 */
+	synchronized long tryAcquire() {
+		long now = clock.millis();
+		if (now < pausedUntil) {
+			return pausedUntil - now;
+		}
+
+		boolean quotaKnown = quotaRemaining >= 0 && now < quotaResetAt;
+		if (quotaKnown && quotaRemaining == 0) {
+			return quotaResetAt - now;
+		}
+
+		if (quotaKnown && quotaRemaining < LOW_QUOTA && now < nextSpreadPermit) {
+			return nextSpreadPermit - now;
+		}
+
+		if (permitsPerMilli > 0) {
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerMilli);
+			lastRefill = now;
+			if (tokens < 1) {
+				return (long) Math.ceil((1 - tokens) / permitsPerMilli);
+			}
+			tokens -= 1;
+		}
+
+		if (quotaKnown) {
+			if (quotaRemaining < LOW_QUOTA) {
+				nextSpreadPermit = now + (quotaResetAt - now) / quotaRemaining;
+			}
+			quotaRemaining--;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Updates the quota based on the <code>RateLimit-Remaining</code> and <code>RateLimit-Reset</code> headers.
+	 *
+	 * @param remaining The amount of requests which may still be made.
+	 * @param resetAtMillis The epoch millisecond at which the quota resets.
+	 */
+	public synchronized void onQuota(long remaining, long resetAtMillis) {
+		quotaRemaining = Math.max(0, remaining);
+		quotaResetAt = resetAtMillis;
+	}
+
+	/**
+	 * Holds back all requests based on the <code>Retry-After</code> header.
+	 *
+	 * @param delayMillis The amount of milliseconds to wait before sending the next request.
+	 */
+	public synchronized void onRetryAfter(long delayMillis) {
+		pausedUntil = Math.max(pausedUntil, clock.millis() + delayMillis);
+	}
+}
@@ -0,0 +1,188 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.PUT;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Wraps a {@link GitLabApi} to retry failed requests and to stop sending requests once GitLab keeps failing.
+ * <p>
+ * Idempotent requests (GET, PUT, DELETE) are retried on connection failures, 429 and 5xx responses. Other requests could create
+ * duplicates when retried after they reached GitLab, so those are only retried when GitLab certainly didn't process them: when the
+ * connection couldn't be made, on 429 and on 503.
+ */
+public class ResilientGitLabApi implements InvocationHandler {
+
+	private static final Logger LOGGER = Loggers.get(ResilientGitLabApi.class);
+
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private final GitLabApi delegate;
+
+	private final RetryPolicy retryPolicy;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final AtomicInteger retryCount = new AtomicInteger();
+
+	public ResilientGitLabApi(GitLabApi delegate, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+		this.delegate = delegate;
+		this.retryPolicy = retryPolicy;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * @return The API which applies the retries and circuit breaker.
+	 */
+	public GitLabApi proxy() {
+		return (GitLabApi) Proxy.newProxyInstance(GitLabApi.class.getClassLoader(), new Class<?>[] { GitLabApi.class }, this);
+	}
+
+	/**
+	 * @return The amount of requests which have been retried.
+	 */
+	public int getRetryCount() {
+		return retryCount.get();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return method.invoke(this, args);
+		}
+
+		boolean idempotent = isIdempotent(method);
+		for (int retry = 0; ; retry++) {
+			if (!circuitBreaker.allowRequest()) {
+				throw new CircuitBreakerOpenException(String.format("Not calling %s as GitLab has been failing repeatedly.", method.getName()));
+			}
+
+			Object result;
+			try {
+				result = method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				Failure failure = classify(cause, idempotent);
+				recordOutcome(failure);
+				if (!failure.retryable || !retryPolicy.canRetry(retry)) {
+					throw cause;
+				}
+
+				LOGGER.debug("{} failed, retrying.", method.getName(), cause);
+				awaitRetry(retry, cause);
+				continue;
+			}
+
+			if (result instanceof Response) {
+				Failure failure = classify(((Response) result).getStatus(), idempotent);
+				recordOutcome(failure);
+				if (failure.retryable && retryPolicy.canRetry(retry)) {
+					LOGGER.debug("{} returned status {}, retrying.", method.getName(), ((Response) result).getStatus());
+					((Response) result).close();
+					awaitRetry(retry, null);
+					continue;
+				}
+			} else {
+				circuitBreaker.onSuccess();
+			}
+
+			return result;
+		}
+	}
+
+	private void recordOutcome(Failure failure) {
+		if (failure.countsAsFailure) {
+			circuitBreaker.onFailure();
+		} else {
+			circuitBreaker.onSuccess();
+		}
+	}
+
+	private void awaitRetry(int retry, Throwable cause) {
+		retryCount.incrementAndGet();
+		try {
+			Thread.sleep(retryPolicy.getBackoff(retry));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProcessingException("Interrupted while waiting to retry the GitLab request.", cause == null ? e : cause);
+		}
+	}
+
+	private static boolean isIdempotent(Method method) {
+		return method.isAnnotationPresent(GET.class) ||
+			method.isAnnotationPresent(HEAD.class) ||
+			method.isAnnotationPresent(PUT.class) ||
+			method.isAnnotationPresent(DELETE.class);
+	}
+
+	private static Failure classify(Throwable throwable, boolean idempotent) {
+		if (throwable instanceof WebApplicationException) {
+			Response response = ((WebApplicationException) throwable).getResponse();
+			return response == null ? Failure.NONE : classify(response.getStatus(), idempotent);
+		}
+
+		if (throwable instanceof ProcessingException || throwable instanceof IOException) {
+			return idempotent || isConnectFailure(throwable) ? Failure.RETRYABLE : Failure.FATAL;
+		}
+
+		return Failure.NONE;
+	}
+
+	private static Failure classify(int status, boolean idempotent) {
+		if (status == TOO_MANY_REQUESTS) {
+			// The instance is healthy but busy, the rate limiter takes care of slowing down.
+			return Failure.THROTTLED;
+		}
+
+		if (status >= 500) {
+			return idempotent || status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode() ? Failure.RETRYABLE : Failure.FATAL;
+		}
+
+		return Failure.NONE;
+	}
+
+	private static boolean isConnectFailure(Throwable throwable) {
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConnectException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private enum Failure {
+		/**
+		 * The call succeeded or failed in a way which says nothing about the health of GitLab (ex. 404).
+		 */
+		NONE(false, false),
+		THROTTLED(false, true),
+		RETRYABLE(true, true),
+		/**
+		 * A failure which can't be retried without risking a duplicate.
+		 */
+		FATAL(true, false);
+
+		private final boolean countsAsFailure;
+
+		private final boolean retryable;
+
+		Failure(boolean countsAsFailure, boolean retryable) {
+			this.countsAsFailure = countsAsFailure;
+			this.retryable = retryable;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how often and how long after a failed request to GitLab it will be retried.
+ */
+public class RetryPolicy {
+
+	private final int maxRetries;
+
+	private final long initialBackoffMillis;
+
+	private final long maxBackoffMillis;
+
+	/**
+	 * @param maxRetries The amount of times a request will be retried before giving up.
+	 * @param initialBackoffMillis The backoff before the first retry. Every next retry doubles the backoff.
+	 * @param maxBackoffMillis The upper bound of the backoff.
+	 */
+	public RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * @param retry The number of the retry which is about to be made, starting at 0.
+	 * @return <code>true</code> when the request may be retried.
+	 */
+	public boolean canRetry(int retry) {
+		return retry < maxRetries;
+	}
+
+	/**
+	 * Calculates the exponential backoff with jitter. Half of the backoff is fixed and the other half is random so that concurrent requests
+	 * which failed together don't retry together.
+	 *
+	 * @param retry The number of the retry which is about to be made, starting at 0.
+	 * @return The amount of milliseconds to wait before retrying.
+	 */
+	public long getBackoff(int retry) {
+		long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(retry, 30));
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+}
@@ -8,6 +8,8 @@ public class CommitComment {
 
 	private String path;
 
+	private GitLabUser author;
+
 	public String getLine() {
 		return line;
 	}
@@ -19,4 +21,8 @@ public class CommitComment {
 	public String getPath() {
 		return path;
 	}
+
+	public GitLabUser getAuthor() {
+		return author;
+	}
 }
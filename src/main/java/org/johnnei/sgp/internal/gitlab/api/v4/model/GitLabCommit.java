@@ -4,9 +4,15 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class GitLabCommit {
 
+	private String id;
+
 	@JsonProperty("short_id")
 	private String shortId;
 
+	public String getId() {
+		return id;
+	}
+
 	public String getShortId() {
 		return shortId;
 	}
@@ -6,7 +6,16 @@ public class GitLabCommitComparison {
 
 	private Collection<GitLabCommit> commits;
 
+	private Collection<GitLabCommitDiff> diffs;
+
 	public Collection<GitLabCommit> getCommits() {
 		return commits;
 	}
+
+	/**
+	 * @return The combined diff of all commits in the comparison.
+	 */
+	public Collection<GitLabCommitDiff> getDiffs() {
+		return diffs;
+	}
 }
@@ -1,13 +1,28 @@
 package org.johnnei.sgp.internal.gitlab.api.v4.model;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import org.johnnei.sgp.internal.gitlab.api.HunkRangeDeserializer;
+import org.johnnei.sgp.internal.gitlab.api.HunkRangeSerializer;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
 
 public class GitLabCommitDiff {
 
 	@JsonProperty("new_path")
 	private String newPath;
 
-	private String diff;
+	/**
+	 * The hunk ranges of the diff. The diff text itself is never retained as only the ranges are used.
+	 */
+	@JsonProperty("diff")
+	@JsonDeserialize(using = HunkRangeDeserializer.class)
+	@JsonSerialize(using = HunkRangeSerializer.class)
+	private List<HunkRange> hunkRanges = Collections.emptyList();
 
 	@JsonProperty("old_path")
 	private String oldPath;
@@ -31,8 +46,8 @@ public class GitLabCommitDiff {
 		return newPath;
 	}
 
-	public String getDiff() {
-		return diff;
+	public List<HunkRange> getHunkRanges() {
+		return hunkRanges;
 	}
 
 	public String getOldPath() {
@@ -0,0 +1,19 @@
+package org.johnnei.sgp.internal.gitlab.api.v4.model;
+
+/**
+ * A note on a merge request which is only visible to its author until it is published.
+ */
+public class GitLabDraftNote {
+
+	private String note;
+
+	private GitLabNotePosition position;
+
+	public String getNote() {
+		return note;
+	}
+
+	public GitLabNotePosition getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,38 @@
+package org.johnnei.sgp.internal.gitlab.api.v4.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import org.johnnei.sgp.internal.gitlab.api.DiffLineMapDeserializer;
+import org.johnnei.sgp.internal.model.diff.DiffLineMap;
+
+/**
+ * The diff of a file within a version of a merge request, on which the notes are positioned.
+ */
+public class GitLabMergeRequestDiff {
+
+	@JsonProperty("new_path")
+	private String newPath;
+
+	@JsonProperty("old_path")
+	private String oldPath;
+
+	/**
+	 * The unchanged lines of the diff. The diff text itself is never retained.
+	 */
+	@JsonProperty("diff")
+	@JsonDeserialize(using = DiffLineMapDeserializer.class)
+	private DiffLineMap lineMap = DiffLineMap.empty();
+
+	public String getNewPath() {
+		return newPath;
+	}
+
+	public String getOldPath() {
+		return oldPath;
+	}
+
+	public DiffLineMap getLineMap() {
+		return lineMap;
+	}
+}
@@ -0,0 +1,48 @@
+package org.johnnei.sgp.internal.gitlab.api.v4.model;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A version of the diff of a merge request. The SHAs are needed to position notes on the diff.
+ */
+public class GitLabMergeRequestVersion {
+
+	private int id;
+
+	@JsonProperty("base_commit_sha")
+	private String baseCommitSha;
+
+	@JsonProperty("start_commit_sha")
+	private String startCommitSha;
+
+	@JsonProperty("head_commit_sha")
+	private String headCommitSha;
+
+	/**
+	 * The diffs of the files, only included when a single version is fetched.
+	 */
+	private List<GitLabMergeRequestDiff> diffs = Collections.emptyList();
+
+	public int getId() {
+		return id;
+	}
+
+	public String getBaseCommitSha() {
+		return baseCommitSha;
+	}
+
+	public String getStartCommitSha() {
+		return startCommitSha;
+	}
+
+	public String getHeadCommitSha() {
+		return headCommitSha;
+	}
+
+	public List<GitLabMergeRequestDiff> getDiffs() {
+		return diffs;
+	}
+}
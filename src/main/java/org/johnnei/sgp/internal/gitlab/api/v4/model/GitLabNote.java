@@ -0,0 +1,19 @@
+package org.johnnei.sgp.internal.gitlab.api.v4.model;
+
+/**
+ * A note on a merge request. Notes on the diff have a position.
+ */
+public class GitLabNote {
+
+	private String body;
+
+	private GitLabNotePosition position;
+
+	public String getBody() {
+		return body;
+	}
+
+	public GitLabNotePosition getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,20 @@
+package org.johnnei.sgp.internal.gitlab.api.v4.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class GitLabNotePosition {
+
+	@JsonProperty("new_path")
+	private String newPath;
+
+	@JsonProperty("new_line")
+	private Integer newLine;
+
+	public String getNewPath() {
+		return newPath;
+	}
+
+	public Integer getNewLine() {
+		return newLine;
+	}
+}
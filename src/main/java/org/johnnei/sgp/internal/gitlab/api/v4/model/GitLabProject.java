@@ -1,5 +1,7 @@
 package org.johnnei.sgp.internal.gitlab.api.v4.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class GitLabProject {
 
 	private int id;
@@ -8,6 +10,9 @@ public class GitLabProject {
 
 	private GitLabNamespace namespace;
 
+	@JsonProperty("path_with_namespace")
+	private String pathWithNamespace;
+
 	public int getId() {
 		return id;
 	}
@@ -19,4 +24,11 @@ public class GitLabProject {
 	public GitLabNamespace getNamespace() {
 		return namespace;
 	}
+
+	/**
+	 * @return The URL path of the project, which can differ from the names of the project and its namespace.
+	 */
+	public String getPathWithNamespace() {
+		return pathWithNamespace;
+	}
 }
@@ -1,22 +1,40 @@
 package org.johnnei.sgp.internal.model;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import org.sonar.api.batch.rule.Severity;
 
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
-import org.johnnei.sgp.internal.sorting.IssueSeveritySorter;
 
 /**
  * Created by Johnnei on 2016-11-12.
  */
 public class SonarReport {
 
+	private static final Severity[] SEVERITIES = Severity.values();
+
+	/**
+	 * The issues bucketed by severity, from the lowest to the highest severity. Within a severity the original order is retained.
+	 */
+	@Nonnull
+	private final MappedIssue[] issues;
+
+	@Nonnull
+	private final Map<Severity, Integer> severityHistogram;
+
 	@Nonnull
-	private final Collection<MappedIssue> issues;
+	private final List<String> commitShas;
 
 	@Nonnull
 	private final GitLabProject project;
@@ -27,15 +45,45 @@ public class SonarReport {
 	private SonarReport(@Nonnull Builder builder) {
 		buildCommitSha = Objects.requireNonNull(builder.buildCommitSha, "Commit hash is required to know which commit to comment on.");
 		project = Objects.requireNonNull(builder.project, "Project is required to know where the commit is.");
-		issues = Objects.requireNonNull(builder.issues, "Issues are required to be a nonnull collection in order to be able to comment.");
+		Collection<MappedIssue> unsortedIssues = Objects.requireNonNull(
+			builder.issues,
+			"Issues are required to be a nonnull collection in order to be able to comment."
+		);
+
+		// Count the issues per severity and use the counts to place each issue in its bucket, a single pass without comparisons.
+		int[] counts = new int[SEVERITIES.length];
+		Set<String> commits = new LinkedHashSet<>();
+		for (MappedIssue issue : unsortedIssues) {
+			counts[issue.getIssue().severity().ordinal()]++;
+			commits.add(issue.getCommitSha());
+		}
+
+		severityHistogram = new EnumMap<>(Severity.class);
+		int[] offsets = new int[SEVERITIES.length];
+		int offset = 0;
+		for (Severity severity : SEVERITIES) {
+			severityHistogram.put(severity, counts[severity.ordinal()]);
+			offsets[severity.ordinal()] = offset;
+			offset += counts[severity.ordinal()];
+		}
+
+		issues = new MappedIssue[offset];
+		for (MappedIssue issue : unsortedIssues) {
+			issues[offsets[issue.getIssue().severity().ordinal()]++] = issue;
+		}
+
+		commitShas = Collections.unmodifiableList(new ArrayList<>(commits));
 	}
 
+	/**
+	 * @return The issues ordered from the lowest to the highest severity.
+	 */
 	public Stream<MappedIssue> getIssues() {
-		return issues.stream().sorted(new IssueSeveritySorter());
+		return Arrays.stream(issues);
 	}
 
 	public Stream<String> getCommitShas() {
-		return issues.stream().map(MappedIssue::getCommitSha).distinct();
+		return commitShas.stream();
 	}
 
 	/**
@@ -44,9 +92,7 @@ public class SonarReport {
 	 * @return The amount of issues with the given severity.
 	 */
 	public long countIssuesWithSeverity(Severity severity) {
-		return issues.stream()
-			.filter(mappedIssue -> mappedIssue.getIssue().severity() == severity)
-			.count();
+		return severityHistogram.get(severity);
 	}
 
 	@Nonnull
@@ -63,7 +109,7 @@ public class SonarReport {
 	 * @return The amount of issues reported by SonarQube.
 	 */
 	public int getIssueCount() {
-		return issues.size();
+		return issues.length;
 	}
 
 	public static class Builder {
@@ -0,0 +1,39 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import javax.annotation.CheckForNull;
+import java.util.List;
+import java.util.Optional;
+
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Index of the diffs of an analysis by their path, to find the diffs which belong to an {@link InputFile}.
+ * <p>
+ * Implementations are safe to use from multiple threads.
+ */
+public interface DiffIndex {
+
+	/**
+	 * Checks if the name of the file is one of the changed files. This is a cheaper check than {@link #getDiffs(InputFile)}, which makes
+	 * it suitable to reject the unchanged files of a large codebase.
+	 *
+	 * @param inputFile The file to check.
+	 * @return <code>false</code> when none of the diffs can belong to the file.
+	 */
+	boolean mayContain(InputFile inputFile);
+
+	/**
+	 * @param inputFile The file to find the diffs of.
+	 * @return The diffs of the file in the order in which they were given to the index.
+	 */
+	List<UnifiedDiff> getDiffs(InputFile inputFile);
+
+	/**
+	 * Finds the diff of the file which changed the line, without materializing the diffs of the file which didn't.
+	 *
+	 * @param inputFile The file to find the diff of.
+	 * @param line The line which must be part of the diff, or <code>null</code> to accept any diff which has hunks.
+	 * @return The first diff, in the order in which they were given to the index, which contains the line.
+	 */
+	Optional<UnifiedDiff> findDiff(InputFile inputFile, @CheckForNull Integer line);
+}
@@ -0,0 +1,523 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * {@link DiffIndex} which reads the diffs from a compact binary file instead of keeping them on the heap. The file is mapped into memory,
+ * so {@link #findDiff(InputFile, Integer)} checks the lines within the file and only materializes the diff which contains the line. The
+ * diffs of unchanged files and of lines without issues are never read.
+ * <p>
+ * The file consists of a header of big-endian ints followed by the tables in this order:
+ * <ol>
+ *     <li>commits: the offset and length of each distinct commit SHA in the string table</li>
+ *     <li>paths: the offset and length of each distinct path, sorted by their UTF-8 bytes, and the first entry and amount of entries in
+ *     the path diffs table</li>
+ *     <li>path diffs: the indices of the diffs grouped by path, in the original order</li>
+ *     <li>file names: the sorted distinct hash codes of the file names, for {@link #mayContain(InputFile)}</li>
+ *     <li>diffs: the commit index, path index (<code>-1</code> when absent), the first entry and amount of entries in the ranges
+ *     table and the first entry and amount of entries in the lines table</li>
+ *     <li>ranges: the start and line count of each hunk range, in the order of the diff</li>
+ *     <li>lines: the start and end (exclusive) of the merged ranges of each diff in ascending order, to binary search a line</li>
+ *     <li>strings: the UTF-8 encoded commits and paths</li>
+ * </ol>
+ * The index only uses absolute reads on the buffer, which makes it safe to use from multiple threads. A materialized diff is cached by its
+ * entry, so all issues on a diff share the same instance and the heap grows with the amount of diffs which have issues rather than with the
+ * amount of issues.
+ */
+public class DiffIndexFile implements DiffIndex {
+
+	private static final int MAGIC = 0x53474449;
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_INTS = 10;
+
+	private static final int COMMIT_INTS = 2;
+
+	private static final int PATH_INTS = 4;
+
+	private static final int DIFF_INTS = 6;
+
+	private static final int RANGE_INTS = 2;
+
+	private static final int LINE_INTS = 2;
+
+	private static final int[] NO_ENTRIES = new int[0];
+
+	private final ByteBuffer buffer;
+
+	private final Map<Integer, UnifiedDiff> diffsByEntry;
+
+	private final String[] commits;
+
+	private final int pathCount;
+
+	private final int fileNameCount;
+
+	private final int diffCount;
+
+	private final int pathsStart;
+
+	private final int pathDiffsStart;
+
+	private final int fileNamesStart;
+
+	private final int diffsStart;
+
+	private final int rangesStart;
+
+	private final int linesStart;
+
+	private final int stringsStart;
+
+	private DiffIndexFile(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (this.buffer.remaining() < HEADER_INTS * Integer.BYTES || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported diff index format.");
+		}
+
+		int commitCount = this.buffer.getInt(8);
+		pathCount = this.buffer.getInt(12);
+		int pathDiffCount = this.buffer.getInt(16);
+		fileNameCount = this.buffer.getInt(20);
+		diffCount = this.buffer.getInt(24);
+		int rangeCount = this.buffer.getInt(28);
+		int lineCount = this.buffer.getInt(32);
+		int stringLength = this.buffer.getInt(36);
+
+		long commitsStart = HEADER_INTS * Integer.BYTES;
+		long expectedPathsStart = commitsStart + intsToBytes(commitCount, COMMIT_INTS);
+		long expectedPathDiffsStart = expectedPathsStart + intsToBytes(pathCount, PATH_INTS);
+		long expectedFileNamesStart = expectedPathDiffsStart + intsToBytes(pathDiffCount, 1);
+		long expectedDiffsStart = expectedFileNamesStart + intsToBytes(fileNameCount, 1);
+		long expectedRangesStart = expectedDiffsStart + intsToBytes(diffCount, DIFF_INTS);
+		long expectedLinesStart = expectedRangesStart + intsToBytes(rangeCount, RANGE_INTS);
+		long expectedStringsStart = expectedLinesStart + intsToBytes(lineCount, LINE_INTS);
+		if (stringLength < 0 || expectedStringsStart + stringLength != this.buffer.remaining()) {
+			throw corrupt();
+		}
+
+		pathsStart = (int) expectedPathsStart;
+		pathDiffsStart = (int) expectedPathDiffsStart;
+		fileNamesStart = (int) expectedFileNamesStart;
+		diffsStart = (int) expectedDiffsStart;
+		rangesStart = (int) expectedRangesStart;
+		linesStart = (int) expectedLinesStart;
+		stringsStart = (int) expectedStringsStart;
+		diffsByEntry = new ConcurrentHashMap<>();
+
+		// Validate the references once, so the lookups can trust them.
+		commits = new String[commitCount];
+		for (int i = 0; i < commitCount; i++) {
+			int position = (int) commitsStart + i * COMMIT_INTS * Integer.BYTES;
+			commits[i] = readString(position, stringLength);
+		}
+
+		for (int i = 0; i < pathCount; i++) {
+			int position = pathsStart + i * PATH_INTS * Integer.BYTES;
+			checkRange(this.buffer.getInt(position), this.buffer.getInt(position + 4), stringLength);
+			checkRange(this.buffer.getInt(position + 8), this.buffer.getInt(position + 12), pathDiffCount);
+		}
+
+		for (int i = 0; i < pathDiffCount; i++) {
+			checkIndex(this.buffer.getInt(pathDiffsStart + i * Integer.BYTES), 0, diffCount);
+		}
+
+		for (int i = 0; i < diffCount; i++) {
+			int position = diffsStart + i * DIFF_INTS * Integer.BYTES;
+			checkIndex(this.buffer.getInt(position), -1, commitCount);
+			checkIndex(this.buffer.getInt(position + 4), -1, pathCount);
+			checkRange(this.buffer.getInt(position + 8), this.buffer.getInt(position + 12), rangeCount);
+			checkRange(this.buffer.getInt(position + 16), this.buffer.getInt(position + 20), lineCount);
+		}
+	}
+
+	/**
+	 * Writes the diffs in the format which can be read by {@link #map(Path)}.
+	 *
+	 * @param file The file to write the index to.
+	 * @param diffs The diffs to index.
+	 * @throws IOException When the file can't be written.
+	 */
+	public static void write(Path file, Collection<UnifiedDiff> diffs) throws IOException {
+		Map<String, Integer> commits = new LinkedHashMap<>();
+		Map<String, List<Integer>> diffsByPath = new HashMap<>();
+		TreeSet<Integer> fileNames = new TreeSet<>();
+		int rangeCount = 0;
+		int lineCount = 0;
+
+		int diffIndex = 0;
+		for (UnifiedDiff diff : diffs) {
+			if (diff.getCommitSha() != null) {
+				commits.putIfAbsent(diff.getCommitSha(), commits.size());
+			}
+			if (diff.getFilepath() != null) {
+				diffsByPath.computeIfAbsent(diff.getFilepath(), key -> new ArrayList<>()).add(diffIndex);
+				fileNames.add(DiffPathIndex.getFileName(diff.getFilepath()).hashCode());
+			}
+			rangeCount += diff.getRanges().size();
+			lineCount += diff.getHunkIndex().getMergedRangeCount();
+			diffIndex++;
+		}
+
+		Map<String, byte[]> encodedPaths = new HashMap<>();
+		diffsByPath.keySet().forEach(path -> encodedPaths.put(path, path.getBytes(StandardCharsets.UTF_8)));
+		List<String> paths = new ArrayList<>(diffsByPath.keySet());
+		paths.sort((a, b) -> compare(encodedPaths.get(a), encodedPaths.get(b)));
+
+		Map<String, Integer> pathIndices = new HashMap<>();
+		for (int i = 0; i < paths.size(); i++) {
+			pathIndices.put(paths.get(i), i);
+		}
+
+		ByteArrayOutputStream strings = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(commits.size());
+			output.writeInt(paths.size());
+			output.writeInt(diffsByPath.values().stream().mapToInt(List::size).sum());
+			output.writeInt(fileNames.size());
+			output.writeInt(diffs.size());
+			output.writeInt(rangeCount);
+			output.writeInt(lineCount);
+			output.writeInt(commits.keySet().stream().mapToInt(commit -> commit.getBytes(StandardCharsets.UTF_8).length).sum()
+				+ encodedPaths.values().stream().mapToInt(path -> path.length).sum());
+
+			for (String commit : commits.keySet()) {
+				byte[] bytes = commit.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(strings.size());
+				output.writeInt(bytes.length);
+				strings.write(bytes);
+			}
+
+			int pathDiffOffset = 0;
+			for (String path : paths) {
+				byte[] bytes = encodedPaths.get(path);
+				int pathDiffCount = diffsByPath.get(path).size();
+				output.writeInt(strings.size());
+				output.writeInt(bytes.length);
+				output.writeInt(pathDiffOffset);
+				output.writeInt(pathDiffCount);
+				strings.write(bytes);
+				pathDiffOffset += pathDiffCount;
+			}
+
+			for (String path : paths) {
+				for (int index : diffsByPath.get(path)) {
+					output.writeInt(index);
+				}
+			}
+
+			for (int fileName : fileNames) {
+				output.writeInt(fileName);
+			}
+
+			int rangeOffset = 0;
+			int lineOffset = 0;
+			for (UnifiedDiff diff : diffs) {
+				int lines = diff.getHunkIndex().getMergedRangeCount();
+				output.writeInt(diff.getCommitSha() == null ? -1 : commits.get(diff.getCommitSha()));
+				output.writeInt(diff.getFilepath() == null ? -1 : pathIndices.get(diff.getFilepath()));
+				output.writeInt(rangeOffset);
+				output.writeInt(diff.getRanges().size());
+				output.writeInt(lineOffset);
+				output.writeInt(lines);
+				rangeOffset += diff.getRanges().size();
+				lineOffset += lines;
+			}
+
+			for (UnifiedDiff diff : diffs) {
+				for (HunkRange range : diff.getRanges()) {
+					output.writeInt(range.getStart());
+					output.writeInt(range.getLineCount());
+				}
+			}
+
+			for (UnifiedDiff diff : diffs) {
+				HunkIndex hunkIndex = diff.getHunkIndex();
+				for (int i = 0; i < hunkIndex.getMergedRangeCount(); i++) {
+					output.writeInt(hunkIndex.getMergedRangeStart(i));
+					output.writeInt(hunkIndex.getMergedRangeEnd(i));
+				}
+			}
+
+			strings.writeTo(output);
+		}
+	}
+
+	/**
+	 * Maps the index file into memory. The file may be deleted once it is mapped on platforms which allow that.
+	 *
+	 * @param file The file written by {@link #write(Path, Collection)}.
+	 * @return The index backed by the file.
+	 * @throws IOException When the file can't be read or isn't a valid index.
+	 */
+	public static DiffIndexFile map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw corrupt();
+			}
+			return new DiffIndexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param buffer The content of a file written by {@link #write(Path, Collection)}.
+	 * @return The index backed by the buffer.
+	 * @throws IOException When the buffer isn't a valid index.
+	 */
+	public static DiffIndexFile wrap(ByteBuffer buffer) throws IOException {
+		return new DiffIndexFile(buffer);
+	}
+
+	@Override
+	public boolean mayContain(InputFile inputFile) {
+		String path = inputFile.relativePath();
+		if (path == null) {
+			path = inputFile.absolutePath();
+		}
+
+		int fileName = DiffPathIndex.getFileName(path).hashCode();
+		int low = 0;
+		int high = fileNameCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = buffer.getInt(fileNamesStart + middle * Integer.BYTES);
+			if (value < fileName) {
+				low = middle + 1;
+			} else if (value > fileName) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public List<UnifiedDiff> getDiffs(InputFile inputFile) {
+		int[] entries = findEntries(inputFile.absolutePath());
+		if (entries.length == 0) {
+			return Collections.emptyList();
+		}
+
+		List<UnifiedDiff> diffs = new ArrayList<>(entries.length);
+		for (int entry : entries) {
+			diffs.add(getDiff(entry));
+		}
+		return Collections.unmodifiableList(diffs);
+	}
+
+	@Override
+	public Optional<UnifiedDiff> findDiff(InputFile inputFile, @CheckForNull Integer line) {
+		for (int entry : findEntries(inputFile.absolutePath())) {
+			int position = diffsStart + entry * DIFF_INTS * Integer.BYTES;
+			boolean hasHunks = buffer.getInt(position + 12) > 0;
+			if (hasHunks && (line == null || containsLine(buffer.getInt(position + 16), buffer.getInt(position + 20), line))) {
+				return Optional.of(getDiff(entry));
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Reads all diffs in the index.
+	 *
+	 * @param commitSha The SHA to label the diffs with instead of the stored one, or <code>null</code> to keep the stored SHA.
+	 * @return The diffs in the order in which they were written.
+	 */
+	public List<UnifiedDiff> readDiffs(@CheckForNull String commitSha) {
+		List<UnifiedDiff> diffs = new ArrayList<>(diffCount);
+		for (int i = 0; i < diffCount; i++) {
+			diffs.add(readDiff(i, commitSha));
+		}
+		return diffs;
+	}
+
+	/**
+	 * @return The entries in the diffs table of the diffs of the file, in the order in which they were written.
+	 */
+	private int[] findEntries(String absolutePath) {
+		byte[] path = absolutePath.replace('\\', '/').getBytes(StandardCharsets.UTF_8);
+
+		int[] matches = NO_ENTRIES;
+		int matchedPaths = 0;
+		for (int from = 0; from < path.length; from++) {
+			if (from > 0 && path[from - 1] != '/') {
+				continue;
+			}
+
+			int pathIndex = findPath(path, from);
+			if (pathIndex < 0) {
+				continue;
+			}
+
+			int position = pathsStart + pathIndex * PATH_INTS * Integer.BYTES;
+			int first = buffer.getInt(position + 8);
+			int count = buffer.getInt(position + 12);
+			int[] extended = Arrays.copyOf(matches, matches.length + count);
+			for (int i = 0; i < count; i++) {
+				extended[matches.length + i] = buffer.getInt(pathDiffsStart + (first + i) * Integer.BYTES);
+			}
+			matches = extended;
+			matchedPaths++;
+		}
+
+		if (matchedPaths > 1) {
+			// Multiple nested paths matched (ex. "module/src/Main.java" and "src/Main.java"), restore the original order.
+			Arrays.sort(matches);
+		}
+		return matches;
+	}
+
+	/**
+	 * Binary searches the merged ranges of a diff in the lines table.
+	 */
+	private boolean containsLine(int lineOffset, int lineCount, int line) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int position = linesStart + (lineOffset + middle) * LINE_INTS * Integer.BYTES;
+			if (line < buffer.getInt(position)) {
+				high = middle - 1;
+			} else if (line >= buffer.getInt(position + 4)) {
+				low = middle + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private UnifiedDiff getDiff(int entry) {
+		return diffsByEntry.computeIfAbsent(entry, key -> readDiff(key, null));
+	}
+
+	private int findPath(byte[] path, int from) {
+		int low = 0;
+		int high = pathCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = comparePath(middle, path, from);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	private int comparePath(int pathIndex, byte[] path, int from) {
+		int position = pathsStart + pathIndex * PATH_INTS * Integer.BYTES;
+		int offset = stringsStart + buffer.getInt(position);
+		int length = buffer.getInt(position + 4);
+		int otherLength = path.length - from;
+
+		for (int i = 0; i < Math.min(length, otherLength); i++) {
+			int comparison = Integer.compare(buffer.get(offset + i) & 0xFF, path[from + i] & 0xFF);
+			if (comparison != 0) {
+				return comparison;
+			}
+		}
+		return Integer.compare(length, otherLength);
+	}
+
+	private UnifiedDiff readDiff(int diffIndex, @CheckForNull String commitSha) {
+		int position = diffsStart + diffIndex * DIFF_INTS * Integer.BYTES;
+		int commitIndex = buffer.getInt(position);
+		int pathIndex = buffer.getInt(position + 4);
+		int rangeOffset = buffer.getInt(position + 8);
+		int rangeCount = buffer.getInt(position + 12);
+
+		String filepath = null;
+		if (pathIndex >= 0) {
+			filepath = decode(pathsStart + pathIndex * PATH_INTS * Integer.BYTES);
+		}
+
+		List<HunkRange> ranges = new ArrayList<>(rangeCount);
+		for (int i = 0; i < rangeCount; i++) {
+			int rangePosition = rangesStart + (rangeOffset + i) * RANGE_INTS * Integer.BYTES;
+			ranges.add(new HunkRange(buffer.getInt(rangePosition), buffer.getInt(rangePosition + 4)));
+		}
+
+		if (commitSha == null && commitIndex >= 0) {
+			commitSha = commits[commitIndex];
+		}
+		return new UnifiedDiff(commitSha, filepath, ranges);
+	}
+
+	private String readString(int position, int stringLength) throws IOException {
+		checkRange(buffer.getInt(position), buffer.getInt(position + 4), stringLength);
+		return decode(position);
+	}
+
+	private String decode(int position) {
+		byte[] bytes = new byte[buffer.getInt(position + 4)];
+		ByteBuffer string = buffer.duplicate();
+		string.position(stringsStart + buffer.getInt(position));
+		string.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long intsToBytes(int count, int intsPerEntry) throws IOException {
+		if (count < 0) {
+			throw corrupt();
+		}
+		return (long) count * intsPerEntry * Integer.BYTES;
+	}
+
+	private static void checkIndex(int index, int min, int count) throws IOException {
+		if (index < min || index >= count) {
+			throw corrupt();
+		}
+	}
+
+	private static void checkRange(int offset, int length, int count) throws IOException {
+		if (offset < 0 || length < 0 || (long) offset + length > count) {
+			throw corrupt();
+		}
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int comparison = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+			if (comparison != 0) {
+				return comparison;
+			}
+		}
+		return Integer.compare(a.length, b.length);
+	}
+
+	private static IOException corrupt() {
+		return new IOException("Corrupt diff index.");
+	}
+}
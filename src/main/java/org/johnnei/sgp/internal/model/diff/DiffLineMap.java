@@ -0,0 +1,99 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+
+/**
+ * Maps the unchanged lines within the hunks of a diff to their line in the old file.
+ * <p>
+ * GitLab identifies an unchanged line in a diff by both its old and new line, while an added line only has a new line. The unchanged
+ * lines are stored as runs of consecutive lines in primitive arrays, so the diff text doesn't need to be retained.
+ */
+public final class DiffLineMap {
+
+	private static final DiffLineMap EMPTY = new DiffLineMap(new int[0], new int[0], new int[0]);
+
+	/**
+	 * The new line of the first line of each run in ascending order.
+	 */
+	private final int[] newStarts;
+
+	/**
+	 * The old line of the first line of the run at the same index in {@link #newStarts}.
+	 */
+	private final int[] oldStarts;
+
+	/**
+	 * The amount of lines in the run at the same index in {@link #newStarts}.
+	 */
+	private final int[] lengths;
+
+	private DiffLineMap(int[] newStarts, int[] oldStarts, int[] lengths) {
+		this.newStarts = newStarts;
+		this.oldStarts = oldStarts;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * @return The map of a diff without unchanged lines.
+	 */
+	public static DiffLineMap empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param newLine The line in the new file.
+	 * @return The line in the old file when the line is an unchanged line within a hunk. Empty when the line was added or isn't in the diff.
+	 */
+	public OptionalInt getOldLine(int newLine) {
+		int index = Arrays.binarySearch(newStarts, newLine);
+		if (index < 0) {
+			// The run with the greatest start before the line is the only one which can contain it.
+			index = -index - 2;
+		}
+
+		if (index < 0 || newLine >= newStarts[index] + lengths[index]) {
+			return OptionalInt.empty();
+		}
+		return OptionalInt.of(oldStarts[index] + newLine - newStarts[index]);
+	}
+
+	/**
+	 * Collects the unchanged lines of a diff in the order in which they appear.
+	 */
+	static final class Builder {
+
+		private int[] newStarts = new int[8];
+
+		private int[] oldStarts = new int[8];
+
+		private int[] lengths = new int[8];
+
+		private int runs;
+
+		void addUnchangedLine(int newLine, int oldLine) {
+			int last = runs - 1;
+			if (last >= 0 && newStarts[last] + lengths[last] == newLine && oldStarts[last] + lengths[last] == oldLine) {
+				lengths[last]++;
+				return;
+			}
+
+			if (runs == newStarts.length) {
+				newStarts = Arrays.copyOf(newStarts, runs * 2);
+				oldStarts = Arrays.copyOf(oldStarts, runs * 2);
+				lengths = Arrays.copyOf(lengths, runs * 2);
+			}
+			newStarts[runs] = newLine;
+			oldStarts[runs] = oldLine;
+			lengths[runs] = 1;
+			runs++;
+		}
+
+		DiffLineMap build() {
+			if (runs == 0) {
+				return EMPTY;
+			}
+			return new DiffLineMap(Arrays.copyOf(newStarts, runs), Arrays.copyOf(oldStarts, runs), Arrays.copyOf(lengths, runs));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Heap based {@link DiffIndex} of the diffs by their path.
+ * <p>
+ * The diff paths are relative to the repository root while input files are known by their absolute path. A diff belongs
+ * to a file when its path equals one of the <code>/</code> separated suffixes of the absolute path, so a lookup costs
+ * one map lookup per path segment instead of a scan over all diffs. Lookups are cached per input file key.
+ * <p>
+ * The index is safe to use from multiple threads: the diffs are not modified after construction and the cache is concurrent.
+ */
+public class DiffPathIndex implements DiffIndex {
+
+	private static final Pattern SANATIZE_PATH_PATTERN = Pattern.compile("\\\\");
+
+	private final Collection<UnifiedDiff> diffs;
+
+	private final Map<String, List<UnifiedDiff>> diffsByPath;
+
+	private final Map<String, List<UnifiedDiff>> diffsByFileKey;
+
+	private final Set<String> fileNames;
+
+	public DiffPathIndex(Collection<UnifiedDiff> diffs) {
+		this.diffs = Collections.unmodifiableList(new ArrayList<>(diffs));
+		diffsByPath = new HashMap<>();
+		diffsByFileKey = new ConcurrentHashMap<>();
+		fileNames = new HashSet<>();
+		for (UnifiedDiff diff : this.diffs) {
+			if (diff.getFilepath() != null) {
+				diffsByPath.computeIfAbsent(diff.getFilepath(), key -> new ArrayList<>()).add(diff);
+				fileNames.add(getFileName(diff.getFilepath()));
+			}
+		}
+	}
+
+	@Override
+	public boolean mayContain(InputFile inputFile) {
+		String path = inputFile.relativePath();
+		if (path == null) {
+			path = inputFile.absolutePath();
+		}
+
+		return fileNames.contains(getFileName(path));
+	}
+
+	@Override
+	public List<UnifiedDiff> getDiffs(InputFile inputFile) {
+		String key = inputFile.key();
+		if (key == null) {
+			return findDiffs(inputFile.absolutePath());
+		}
+
+		return diffsByFileKey.computeIfAbsent(key, ignored -> findDiffs(inputFile.absolutePath()));
+	}
+
+	@Override
+	public Optional<UnifiedDiff> findDiff(InputFile inputFile, @CheckForNull Integer line) {
+		return getDiffs(inputFile).stream()
+			.filter(diff -> !diff.getHunkIndex().isEmpty())
+			.filter(diff -> line == null || diff.getHunkIndex().containsLine(line))
+			.findFirst();
+	}
+
+	static String getFileName(String path) {
+		return path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+	}
+
+	private List<UnifiedDiff> findDiffs(String absolutePath) {
+		String path = SANATIZE_PATH_PATTERN.matcher(absolutePath).replaceAll("/");
+
+		List<UnifiedDiff> matches = diffsByPath.getOrDefault(path, Collections.emptyList());
+		List<List<UnifiedDiff>> allMatches = null;
+
+		for (int separator = path.indexOf('/'); separator >= 0; separator = path.indexOf('/', separator + 1)) {
+			List<UnifiedDiff> suffixMatches = diffsByPath.get(path.substring(separator + 1));
+			if (suffixMatches == null) {
+				continue;
+			}
+
+			if (matches.isEmpty()) {
+				matches = suffixMatches;
+			} else {
+				if (allMatches == null) {
+					allMatches = new ArrayList<>();
+					allMatches.add(matches);
+				}
+				allMatches.add(suffixMatches);
+			}
+		}
+
+		if (allMatches == null) {
+			return matches;
+		}
+
+		// Multiple nested paths matched (ex. "module/src/Main.java" and "src/Main.java"), restore the original order.
+		Set<UnifiedDiff> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+		allMatches.forEach(matched::addAll);
+		return diffs.stream().filter(matched::contains).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,16 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Source of the changes between the base branch and the analysed commit.
+ */
+public interface DiffProvider {
+
+	/**
+	 * @return The diffs of the files which still exist after the changes, attributed to the commit which should be commented.
+	 */
+	@Nonnull
+	Collection<UnifiedDiff> getDiffs();
+}
@@ -0,0 +1,132 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.OptionalInt;
+
+/**
+ * Immutable index over the {@link HunkRange}s of a diff which answers {@link #containsLine(int)} by binary search.
+ * <p>
+ * The ranges are sorted and overlapping or adjacent ranges are merged so the starts and ends can be packed into
+ * primitive arrays.
+ */
+public final class HunkIndex {
+
+	private static final int[] NO_LINES = new int[0];
+
+	/**
+	 * The first line of each range in ascending order.
+	 */
+	private final int[] starts;
+
+	/**
+	 * The line after the last line of each range, the range at the same index in {@link #starts}.
+	 */
+	private final int[] ends;
+
+	private final int hunkCount;
+
+	private final int firstLine;
+
+	private HunkIndex(int[] starts, int[] ends, int hunkCount, int firstLine) {
+		this.starts = starts;
+		this.ends = ends;
+		this.hunkCount = hunkCount;
+		this.firstLine = firstLine;
+	}
+
+	/**
+	 * @param ranges The ranges in the order in which they appear in the diff.
+	 * @return The index of the given ranges.
+	 */
+	public static HunkIndex of(Collection<HunkRange> ranges) {
+		if (ranges.isEmpty()) {
+			return new HunkIndex(NO_LINES, NO_LINES, 0, 0);
+		}
+
+		// Pack each non-empty range into a single long so they can be sorted on start without boxing.
+		long[] packed = new long[ranges.size()];
+		int count = 0;
+		for (HunkRange range : ranges) {
+			if (range.getLineCount() > 0) {
+				packed[count++] = ((long) range.getStart() << 32) | ((range.getStart() + range.getLineCount()) & 0xFFFFFFFFL);
+			}
+		}
+		Arrays.sort(packed, 0, count);
+
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		int merged = 0;
+		for (int i = 0; i < count; i++) {
+			int start = (int) (packed[i] >>> 32);
+			int end = (int) packed[i];
+
+			if (merged > 0 && start <= ends[merged - 1]) {
+				ends[merged - 1] = Math.max(ends[merged - 1], end);
+			} else {
+				starts[merged] = start;
+				ends[merged] = end;
+				merged++;
+			}
+		}
+
+		return new HunkIndex(
+			Arrays.copyOf(starts, merged),
+			Arrays.copyOf(ends, merged),
+			ranges.size(),
+			ranges.iterator().next().getStart()
+		);
+	}
+
+	/**
+	 * @param line The line number to test.
+	 * @return <code>true</code> when the line is within any of the ranges. Otherwise <code>false</code>.
+	 */
+	public boolean containsLine(int line) {
+		int index = Arrays.binarySearch(starts, line);
+		if (index >= 0) {
+			return true;
+		}
+
+		// The range with the greatest start before the line is the only one which can contain it.
+		int candidate = -index - 2;
+		return candidate >= 0 && line < ends[candidate];
+	}
+
+	/**
+	 * @return The amount of merged ranges.
+	 */
+	int getMergedRangeCount() {
+		return starts.length;
+	}
+
+	/**
+	 * @param index The index of the merged range.
+	 * @return The first line of the merged range.
+	 */
+	int getMergedRangeStart(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * @param index The index of the merged range.
+	 * @return The line after the last line of the merged range.
+	 */
+	int getMergedRangeEnd(int index) {
+		return ends[index];
+	}
+
+	/**
+	 * @return <code>true</code> when the diff has no hunks at all.
+	 */
+	public boolean isEmpty() {
+		return hunkCount == 0;
+	}
+
+	/**
+	 * @return The start of the first hunk in the diff.
+	 */
+	public OptionalInt getFirstLine() {
+		return isEmpty() ? OptionalInt.empty() : OptionalInt.of(firstLine);
+	}
+}
@@ -28,6 +28,10 @@ public class HunkRange {
 		return start;
 	}
 
+	public int getLineCount() {
+		return lineCount;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -0,0 +1,289 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import javax.annotation.CheckForNull;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts the {@link HunkRange}s from a unified diff which is written to it in arbitrary chunks.
+ * <p>
+ * Only the hunk header line which is currently being written is buffered, all other lines are discarded as they stream
+ * by. This allows a diff to be consumed without ever holding it in memory as a whole.
+ */
+public class HunkRangeParser extends Writer {
+
+	private final List<HunkRange> ranges = new ArrayList<>();
+
+	/**
+	 * The start of the current line. Holds at most the first two characters unless the line is a hunk header.
+	 */
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * If the remainder of the current line can be ignored as it is not a hunk header.
+	 */
+	private boolean skipLine;
+
+	/**
+	 * The position of the next character to read from {@link #line} while parsing a hunk header.
+	 */
+	private int position;
+
+	/**
+	 * If the previous character ended a line with a carriage return, which makes a directly following line feed part of the same line end.
+	 */
+	private boolean afterCarriageReturn;
+
+	/**
+	 * Collects the unchanged lines of the hunks, or <code>null</code> when only the ranges are needed.
+	 */
+	@CheckForNull
+	private final DiffLineMap.Builder lineMap;
+
+	private int oldLine;
+
+	private int newLine;
+
+	private int oldRemaining;
+
+	private int newRemaining;
+
+	public HunkRangeParser() {
+		this(false);
+	}
+
+	/**
+	 * @param mapLines <code>true</code> to also collect the {@link DiffLineMap} of the diff.
+	 */
+	public HunkRangeParser(boolean mapLines) {
+		lineMap = mapLines ? new DiffLineMap.Builder() : null;
+	}
+
+	/**
+	 * @param diff The unified diff to parse.
+	 * @return The ranges of the hunks within the diff.
+	 */
+	public static List<HunkRange> parse(String diff) {
+		HunkRangeParser parser = new HunkRangeParser();
+		parser.write(diff, 0, diff.length());
+		parser.close();
+		return parser.getRanges();
+	}
+
+	@Override
+	public void write(char[] buffer, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			accept(buffer[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			accept(str.charAt(i));
+		}
+	}
+
+	@Override
+	public void flush() {
+		// Ranges are only complete once the line ends, nothing to flush.
+	}
+
+	/**
+	 * Completes the last line when the diff doesn't end with a line terminator.
+	 */
+	@Override
+	public void close() {
+		endLine();
+	}
+
+	private void accept(char c) {
+		boolean lineFeedAfterCarriageReturn = afterCarriageReturn && c == '\n';
+		afterCarriageReturn = c == '\r';
+		if (lineFeedAfterCarriageReturn) {
+			return;
+		}
+
+		if (c == '\n' || c == '\r') {
+			endLine();
+		} else if (!skipLine) {
+			line.append(c);
+			skipLine = line.length() == 2 && !isHeader();
+		}
+	}
+
+	private boolean isHeader() {
+		return line.length() >= 2 && line.charAt(0) == '@' && line.charAt(1) == '@';
+	}
+
+	private void endLine() {
+		if (isHeader()) {
+			ranges.add(parseHeader());
+		} else if (lineMap != null) {
+			mapLine();
+		}
+		line.setLength(0);
+		skipLine = false;
+	}
+
+	/**
+	 * Parses the hunk header in {@link #line} in the form of <code>@@ -a,b +c,d @@</code> in which the line counts are
+	 * optional. The characters are scanned in place to avoid creating intermediate strings for every hunk.
+	 *
+	 * @return The range of the hunk in the new file.
+	 * @see <a href="https://en.wikipedia.org/wiki/Diff_utility#Unified_format">Unified format</a>
+	 */
+	private HunkRange parseHeader() {
+		position = 0;
+		expect('@');
+		expect('@');
+		expectWhitespace();
+		expect('-');
+
+		// The range of the old file is only needed to map the lines, an overflow leaves the lines of the hunk unmapped.
+		int oldBegin = parseLenientNumber();
+		int oldLines = skip(',') ? parseLenientNumber() : 1;
+
+		expectWhitespace();
+		expect('+');
+		int begin = parseNumber();
+
+		// The line count is not mandatory, I've only found cases in which it failed to on addition with size 1 so default the lines to 1.
+		int lines = skip(',') ? parseNumber() : 1;
+
+		expectWhitespace();
+		expect('@');
+		expect('@');
+
+		boolean mapHunk = oldBegin >= 0 && oldLines >= 0;
+		oldLine = oldBegin;
+		newLine = begin;
+		oldRemaining = mapHunk ? oldLines : 0;
+		newRemaining = mapHunk ? lines : 0;
+		return new HunkRange(begin, lines);
+	}
+
+	/**
+	 * Advances the line numbers of the current hunk by the line in {@link #line}, which holds at least its first character.
+	 */
+	private void mapLine() {
+		if (oldRemaining <= 0 && newRemaining <= 0) {
+			return;
+		}
+
+		// Some tools strip the trailing whitespace of the diff, which turns an empty unchanged line into an empty line.
+		char type = line.length() == 0 ? ' ' : line.charAt(0);
+		if (type == ' ') {
+			lineMap.addUnchangedLine(newLine++, oldLine++);
+			oldRemaining--;
+			newRemaining--;
+		} else if (type == '+') {
+			newLine++;
+			newRemaining--;
+		} else if (type == '-') {
+			oldLine++;
+			oldRemaining--;
+		}
+	}
+
+	private boolean skip(char expected) {
+		if (position < line.length() && line.charAt(position) == expected) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char expected) {
+		if (!skip(expected)) {
+			throw malformedHeader();
+		}
+	}
+
+	/**
+	 * Equivalent of the <code>\p{IsWhite_Space}</code> character class.
+	 */
+	private void expectWhitespace() {
+		if (position >= line.length()) {
+			throw malformedHeader();
+		}
+
+		char c = line.charAt(position);
+		if (!isWhiteSpace(c)) {
+			throw malformedHeader();
+		}
+		position++;
+	}
+
+	/**
+	 * Unlike {@link Character#isWhitespace(char)} this excludes the separators U+001C to U+001F, which aren't White_Space.
+	 */
+	private static boolean isWhiteSpace(char c) {
+		return (c >= '\t' && c <= '\r') || c == ' ' || c == '\u0085' || Character.isSpaceChar(c);
+	}
+
+	private void skipNumber() {
+		int begin = position;
+		while (position < line.length() && isDigit(line.charAt(position))) {
+			position++;
+		}
+
+		if (position == begin) {
+			throw malformedHeader();
+		}
+	}
+
+	private int parseNumber() {
+		int begin = position;
+		skipNumber();
+
+		int value = 0;
+		for (int i = begin; i < position; i++) {
+			int digit = line.charAt(i) - '0';
+			if (value > (Integer.MAX_VALUE - digit) / 10) {
+				throw new NumberFormatException("For input string: \"" + line.substring(begin, position) + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * @return The number, or <code>-1</code> when it doesn't fit in an int.
+	 */
+	private int parseLenientNumber() {
+		try {
+			return parseNumber();
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private IllegalArgumentException malformedHeader() {
+		return new IllegalArgumentException("Failed to parse hunk header: " + line);
+	}
+
+	/**
+	 * @return The ranges of the hunk headers which have been fully written so far.
+	 */
+	public List<HunkRange> getRanges() {
+		return Collections.unmodifiableList(ranges);
+	}
+
+	/**
+	 * @return The unchanged lines of the lines which have been fully written so far.
+	 * @throws IllegalStateException When the parser doesn't map the lines.
+	 */
+	public DiffLineMap getLineMap() {
+		if (lineMap == null) {
+			throw new IllegalStateException("The lines of the diff are not being mapped.");
+		}
+		return lineMap.build();
+	}
+}
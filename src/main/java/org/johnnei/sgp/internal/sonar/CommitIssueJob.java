@@ -1,32 +1,31 @@
 package org.johnnei.sgp.internal.sonar;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.InstantiationStrategy;
-import org.sonar.api.batch.fs.InputComponent;
-import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.postjob.PostJob;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.PostJobDescriptor;
-import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import org.johnnei.sgp.internal.git.LocalGitDiffProvider;
+import org.johnnei.sgp.internal.gitlab.Commenter;
 import org.johnnei.sgp.internal.gitlab.CommitCommenter;
 import org.johnnei.sgp.internal.gitlab.DiffFetcher;
+import org.johnnei.sgp.internal.gitlab.MergeRequestCommenter;
 import org.johnnei.sgp.internal.gitlab.PipelineBreaker;
 import org.johnnei.sgp.internal.model.MappedIssue;
 import org.johnnei.sgp.internal.model.SonarReport;
+import org.johnnei.sgp.internal.model.diff.DiffIndex;
+import org.johnnei.sgp.internal.model.diff.DiffIndexFile;
+import org.johnnei.sgp.internal.model.diff.DiffPathIndex;
+import org.johnnei.sgp.internal.model.diff.DiffProvider;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 import org.johnnei.sgp.internal.util.Stopwatch;
 import org.johnnei.sgp.sonar.GitLabPlugin;
@@ -40,10 +39,13 @@ import static org.sonar.api.batch.InstantiationStrategy.PER_BATCH;
 @InstantiationStrategy(PER_BATCH)
 public class CommitIssueJob implements PostJob {
 
-	private static final Pattern SANATIZE_PATH_PATTERN = Pattern.compile("\\\\");
-
 	private static final Logger LOGGER = Loggers.get(CommitIssueJob.class);
 
+	/**
+	 * The amount of diffs from which they are indexed in a memory mapped file instead of on the heap.
+	 */
+	static final int MAPPED_INDEX_THRESHOLD = 1000;
+
 	private final GitLabPluginConfiguration configuration;
 
 	private final DiffFetcher diffFetcher;
@@ -63,19 +65,85 @@ public class CommitIssueJob implements PostJob {
 			.requireProperty(GitLabPlugin.GITLAB_COMMIT_HASH);
 	}
 
-	CommitCommenter createCommenter() {
-		return new CommitCommenter(configuration.createGitLabConnection());
+	DiffProvider createDiffProvider() {
+		if (configuration.isLocalDiffSource()) {
+			return new LocalGitDiffProvider(configuration);
+		}
+
+		return diffFetcher;
+	}
+
+	/**
+	 * Indexes the diffs. Large changes, such as formatting the entire codebase, are written to a memory mapped file so the diffs don't
+	 * have to be kept on the heap while the issues are mapped.
+	 *
+	 * @param diffs The diffs of the analysis.
+	 * @return The index of the diffs.
+	 */
+	DiffIndex createDiffIndex(Collection<UnifiedDiff> diffs) {
+		if (diffs.size() < MAPPED_INDEX_THRESHOLD) {
+			return new DiffPathIndex(diffs);
+		}
+
+		Path file = null;
+		try {
+			Path workingDirectory = configuration.getWorkingDirectory();
+			Files.createDirectories(workingDirectory);
+			file = Files.createTempFile(workingDirectory, "gitlab-", ".diff.idx");
+			DiffIndexFile.write(file, diffs);
+			return DiffIndexFile.map(file);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write diff index, indexing {} diffs in memory instead.", diffs.size(), e);
+			return new DiffPathIndex(diffs);
+		} finally {
+			if (file != null) {
+				deleteIndexFile(file);
+			}
+		}
+	}
+
+	private static void deleteIndexFile(Path file) {
+		try {
+			// The mapping stays valid after the delete, the space is released once it is garbage collected.
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// Windows doesn't allow deleting a mapped file.
+			LOGGER.debug("Failed to delete diff index {}, it will be deleted on exit.", file, e);
+			file.toFile().deleteOnExit();
+		}
+	}
+
+	Commenter createCommenter() {
+		if (configuration.isMergeRequestMode()) {
+			return new MergeRequestCommenter(
+				configuration.createGitLabConnection(),
+				configuration.getMergeRequestIid(),
+				configuration.getCommentAggregation(),
+				configuration.getCommentLimit()
+			);
+		}
+
+		return new CommitCommenter(
+			configuration.createGitLabConnection(),
+			configuration.getCommentParallelism(),
+			configuration.getCommentAggregation(),
+			configuration.getCommentLimit(),
+			configuration.createSharedCache(),
+			configuration.createAsyncGitLabConnection(),
+			configuration.isCommentLedgerTrusted()
+		);
 	}
 
 	@Override
 	public void execute(@Nonnull PostJobContext context) {
-		CommitCommenter commitCommenter = createCommenter();
+		Commenter commenter = createCommenter();
 
-		final Collection<UnifiedDiff> diffs = diffFetcher.getDiffs();
-		Iterable<PostJobIssue> iterable = context.issues();
-		Collection<MappedIssue> issues = StreamSupport.stream(iterable.spliterator(), false)
-			.flatMap(issue -> mapIssueToFile(issue, diffs))
-			.collect(Collectors.toList());
+		IssueMapper issueMapper = new IssueMapper(
+			createDiffIndex(createDiffProvider().getDiffs()),
+			configuration.getMappingParallelism(),
+			configuration.isNewIssuesOnly()
+		);
+		Collection<MappedIssue> issues = issueMapper.map(context.issues());
 
 		Stopwatch stopwatch = new Stopwatch();
 		stopwatch.start("Creating comments in GitLab.");
@@ -86,59 +154,11 @@ public class CommitIssueJob implements PostJob {
 			.setProject(configuration.getProject())
 			.build();
 
-		commitCommenter.process(report);
+		commenter.process(report);
 
 		stopwatch.stop();
 
 		pipelineBreaker.process(report);
 	}
 
-	/**
-	 * Attempts to map an issue to a file in the git repository.
-	 * @param issue The issue to map.
-	 * @return The Stream containing the mapped issue or an empty stream on failure.
-	 */
-	private Stream<MappedIssue> mapIssueToFile(PostJobIssue issue, Collection<UnifiedDiff> diffs) {
-		List<UnifiedDiff> paths = findDiffByPath(issue.inputComponent(), diffs);
-		if (paths.isEmpty()) {
-			LOGGER.warn("Failed to find file for \"{}\" in \"{}\"", issue.message(), issue.inputComponent());
-			return Stream.empty();
-		}
-
-		return findDiff(issue, paths).map(diff -> Stream.of(new MappedIssue(issue, diff, diff.getFilepath()))).orElseGet(() -> {
-			LOGGER.warn("Failed to find diff for issue \"{}\" in \"{}\"", issue.message(), issue.inputComponent());
-			return Stream.empty();
-		});
-	}
-
-	private List<UnifiedDiff> findDiffByPath(@CheckForNull InputComponent inputComponent, Collection<UnifiedDiff> diffs) {
-		if (inputComponent == null || !inputComponent.isFile()) {
-			return Collections.emptyList();
-		}
-
-		InputFile inputFile = (InputFile) inputComponent;
-
-		String issueFilePath = SANATIZE_PATH_PATTERN.matcher(inputFile.absolutePath()).replaceAll("/");
-		return diffs.stream()
-			.filter(diff -> issueFilePath.endsWith(diff.getFilepath()))
-			.collect(Collectors.toList());
-	}
-
-	/**
-	 * Matches the issue to a diff.
-	 * @param issue The issue to match.
-	 * @param diffs The list of diffs in the commit.
-	 * @return <code>true</code> when the issue is on a modified line. Otherwise <code>false</code>.
-	 */
-	private static Optional<UnifiedDiff> findDiff(PostJobIssue issue, Collection<UnifiedDiff> diffs) {
-		Stream<UnifiedDiff> stream = diffs.stream()
-			.filter(diff -> !diff.getRanges().isEmpty());
-
-		if (issue.line() != null) {
-			stream = stream.filter(diff -> diff.getRanges().stream().anyMatch(range -> range.containsLine(issue.line())));
-		}
-
-		return stream.findAny();
-	}
-
 }
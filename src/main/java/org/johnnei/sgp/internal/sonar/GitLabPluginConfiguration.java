@@ -1,23 +1,53 @@
 package org.johnnei.sgp.internal.sonar;
 
 import javax.annotation.CheckForNull;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.ext.RuntimeDelegate;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.jboss.resteasy.client.jaxrs.ProxyBuilder;
 import org.jboss.resteasy.client.jaxrs.ProxyConfig;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.Startable;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import org.johnnei.sgp.internal.cache.HttpResponseCache;
+import org.johnnei.sgp.internal.cache.ProjectIdCache;
+import org.johnnei.sgp.internal.cache.SharedCache;
+import org.johnnei.sgp.internal.gitlab.CommentAggregation;
 import org.johnnei.sgp.internal.gitlab.api.JacksonConfigurator;
+import org.johnnei.sgp.internal.gitlab.api.v4.AsyncGitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.AuthFilter;
+import org.johnnei.sgp.internal.gitlab.api.v4.CircuitBreaker;
+import org.johnnei.sgp.internal.gitlab.api.v4.ExecutorAsyncGitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.HttpCacheFilter;
+import org.johnnei.sgp.internal.gitlab.api.v4.PageIterator;
+import org.johnnei.sgp.internal.gitlab.api.v4.RateLimitFilter;
+import org.johnnei.sgp.internal.gitlab.api.v4.RateLimiter;
+import org.johnnei.sgp.internal.gitlab.api.v4.ResilientGitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.RetryPolicy;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
 import org.johnnei.sgp.internal.util.Stopwatch;
 import org.johnnei.sgp.sonar.GitLabPlugin;
@@ -27,18 +57,65 @@ import org.johnnei.sgp.sonar.GitLabPlugin;
  */
 @BatchSide
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
-public class GitLabPluginConfiguration {
+public class GitLabPluginConfiguration implements Startable {
 
 	private static final Logger LOGGER = Loggers.get(GitLabPluginConfiguration.class);
 
+	private static final String SONAR_USER_HOME = "sonar.userHome";
+
+	private static final String PROJECT_BASE_DIR = "sonar.projectBaseDir";
+
+	private static final GenericType<List<GitLabProject>> PROJECT_LIST = new GenericType<List<GitLabProject>>() {};
+
+	/**
+	 * The upper bound of the exponential backoff between retries.
+	 */
+	private static final long MAX_RETRY_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
 	private final Settings settings;
 
 	private GitLabProject project;
 
+	private ResteasyClient client;
+
+	private GitLabApi gitlabApi;
+
+	private ResilientGitLabApi resilientApi;
+
+	private ExecutorService asyncExecutor;
+
+	private AsyncGitLabApi asyncGitlabApi;
+
 	public GitLabPluginConfiguration(Settings settings) {
 		this.settings = settings;
 	}
 
+	@Override
+	public void start() {
+		// The connection is lazily created on first use.
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+			asyncExecutor = null;
+		}
+		asyncGitlabApi = null;
+
+		if (resilientApi != null) {
+			LOGGER.info("Retried {} GitLab requests.", resilientApi.getRetryCount());
+			resilientApi = null;
+		}
+
+		if (client != null) {
+			LOGGER.debug("Closing GitLab connection pool.");
+			client.close();
+			client = null;
+		}
+		gitlabApi = null;
+	}
+
 	public boolean isEnabled() {
 		return isNotBlank(settings.getString(GitLabPlugin.GITLAB_COMMIT_HASH));
 	}
@@ -51,7 +128,17 @@ public class GitLabPluginConfiguration {
 		return settings.getString(GitLabPlugin.GITLAB_AUTH_TOKEN);
 	}
 
-	public GitLabApi createGitLabConnection() {
+	/**
+	 * Gets the connection to the GitLab instance. The connection is created on the first call and is shared by all callers
+	 * for the remainder of the batch.
+	 *
+	 * @return The shared connection to the GitLab instance.
+	 */
+	public synchronized GitLabApi createGitLabConnection() {
+		if (gitlabApi != null) {
+			return gitlabApi;
+		}
+
 		String url = getGitLabUrl();
 		String token = getGitLabToken();
 		if (isBlank(url)) {
@@ -61,19 +148,66 @@ public class GitLabPluginConfiguration {
 			throw new IllegalArgumentException("GitLab user token hasn't been set.");
 		}
 
-		return createConnection(url, token);
+		gitlabApi = createConnection(url, token);
+		return gitlabApi;
+	}
+
+	/**
+	 * Gets the non-blocking connection to the GitLab instance. The calls are executed on the shared connection (see
+	 * {@link #createGitLabConnection()}) by a dedicated pool which is sized to the amount of pooled HTTP connections.
+	 *
+	 * @return The shared non-blocking connection to the GitLab instance.
+	 */
+	public synchronized AsyncGitLabApi createAsyncGitLabConnection() {
+		if (asyncGitlabApi != null) {
+			return asyncGitlabApi;
+		}
+
+		GitLabApi api = createGitLabConnection();
+		AtomicInteger threadCount = new AtomicInteger();
+		asyncExecutor = Executors.newFixedThreadPool(getMaxConnections(), runnable -> {
+			Thread thread = new Thread(runnable, "GitLab API #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		asyncGitlabApi = new ExecutorAsyncGitLabApi(api, asyncExecutor);
+		return asyncGitlabApi;
 	}
 
 	GitLabApi createConnection(String url, String token) {
 		RuntimeDelegate.setInstance(new ResteasyProviderFactory());
 
-		ResteasyWebTarget target = new ResteasyClientBuilder()
+		int maxConnections = getMaxConnections();
+		CloseableHttpClient httpClient = HttpClientBuilder.create()
+			.useSystemProperties()
+			.setMaxConnPerRoute(maxConnections)
+			.setMaxConnTotal(maxConnections)
+			.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+			.evictExpiredConnections()
+			.evictIdleConnections(getIdleTimeout(), TimeUnit.SECONDS)
+			.build();
+
+		ResteasyClientBuilder clientBuilder = new ResteasyClientBuilder()
+			.httpEngine(new ApacheHttpClient43Engine(httpClient, true))
 			.register(JacksonConfigurator.class)
 			.register(new AuthFilter(token))
-			.build()
-			.target(url);
+			.register(new RateLimitFilter(new RateLimiter(getRateLimit())));
+
+		long httpCacheSize = getHttpCacheSize();
+		if (httpCacheSize > 0) {
+			HttpResponseCache httpCache = new HttpResponseCache(getCacheDirectory().resolve("http"), httpCacheSize, getHttpCacheAge());
+			clientBuilder.register(new HttpCacheFilter(httpCache, token));
+		}
+
+		client = clientBuilder.build();
+		ResteasyWebTarget target = client.target(url);
 		ProxyConfig config = new ProxyConfig(this.getClass().getClassLoader(), null, null);
-		return ProxyBuilder.proxy(GitLabApi.class, target, config);
+		resilientApi = new ResilientGitLabApi(
+			ProxyBuilder.proxy(GitLabApi.class, target, config),
+			new RetryPolicy(getRetries(), getRetryBackoff(), MAX_RETRY_BACKOFF),
+			new CircuitBreaker(getCircuitThreshold(), TimeUnit.SECONDS.toMillis(getCircuitOpenDuration()))
+		);
+		return resilientApi.proxy();
 	}
 
 	public void initialiseProject() throws IOException {
@@ -85,20 +219,72 @@ public class GitLabPluginConfiguration {
 		Stopwatch stopwatch = new Stopwatch();
 		stopwatch.start("Looking up GitLab project.");
 		GitLabApi gitlabApi = createGitLabConnection();
-		project = gitlabApi.getProjects().stream()
-			.filter(p -> {
-				String name = String.format("%s/%s", p.getNamespace().getName(), p.getName());
-				LOGGER.debug("Filtering \"{}\" = \"{}\"", name, projectName);
-				return projectName.equals(name);
-			})
-			.findAny()
-			.orElseThrow(() -> new IllegalArgumentException(String.format(
-				"Failed to find project '%s'. Is the user authorized to access the project?",
-				projectName
-			)));
+		ProjectIdCache projectIdCache = new ProjectIdCache(getCacheDirectory());
+
+		project = projectIdCache.get(getGitLabUrl(), projectName)
+			.flatMap(id -> findProjectById(gitlabApi, id, projectName))
+			.orElseGet(() -> {
+				projectIdCache.remove(getGitLabUrl(), projectName);
+				return resolveProject(gitlabApi, projectName);
+			});
+
+		projectIdCache.put(getGitLabUrl(), projectName, project.getId());
 		stopwatch.stop();
 	}
 
+	private static Optional<GitLabProject> findProjectById(GitLabApi gitlabApi, int id, String projectName) {
+		LOGGER.debug("Using cached id {} for project \"{}\".", id, projectName);
+		try {
+			return Optional.of(gitlabApi.getProject(id)).filter(p -> isProject(p, projectName));
+		} catch (NotFoundException e) {
+			LOGGER.debug("Cached project id {} no longer exists.", id, e);
+			return Optional.empty();
+		}
+	}
+
+	private static GitLabProject resolveProject(GitLabApi gitlabApi, String projectName) {
+		return findProjectByPath(gitlabApi, projectName)
+			.orElseGet(() -> searchProject(gitlabApi, projectName)
+				.orElseThrow(() -> new IllegalArgumentException(String.format(
+					"Failed to find project '%s'. Is the user authorized to access the project?",
+					projectName
+				))));
+	}
+
+	private static Optional<GitLabProject> findProjectByPath(GitLabApi gitlabApi, String projectName) {
+		try {
+			return Optional.of(gitlabApi.getProjectByPath(projectName));
+		} catch (NotFoundException e) {
+			LOGGER.debug("Project \"{}\" is not a project path, falling back to search.", projectName, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Searches the project by name page by page until the project is found.
+	 */
+	private static Optional<GitLabProject> searchProject(GitLabApi gitlabApi, String projectName) {
+		String search = projectName.substring(projectName.lastIndexOf('/') + 1);
+		return PageIterator.stream(page -> gitlabApi.searchProjects(search, page, PageIterator.PAGE_SIZE), PROJECT_LIST)
+			.filter(p -> isProject(p, projectName))
+			.findFirst();
+	}
+
+	/**
+	 * Checks if the project is the configured one. The configured name is either the URL path of the project, which is how it is looked
+	 * up directly, or the name of the namespace and project as shown in GitLab.
+	 */
+	private static boolean isProject(GitLabProject project, String projectName) {
+		// GitLab resolves the paths case insensitively.
+		if (projectName.equalsIgnoreCase(project.getPathWithNamespace())) {
+			return true;
+		}
+
+		String name = String.format("%s/%s", project.getNamespace().getName(), project.getName());
+		LOGGER.debug("Filtering \"{}\" = \"{}\"", name, projectName);
+		return projectName.equals(name);
+	}
+
 	public GitLabProject getProject() {
 		return project;
 	}
@@ -115,6 +301,211 @@ public class GitLabPluginConfiguration {
 		return settings.getBoolean(GitLabPlugin.GITLAB_BREAK_PIPELINE);
 	}
 
+	/**
+	 * @return <code>true</code> when only the issues which are new according to SonarQube should be commented.
+	 */
+	public boolean isNewIssuesOnly() {
+		return settings.getBoolean(GitLabPlugin.GITLAB_NEW_ISSUES_ONLY);
+	}
+
+	/**
+	 * @return The directory in which information can be cached between analyses.
+	 */
+	public Path getCacheDirectory() {
+		String cacheDirectory = settings.getString(GitLabPlugin.GITLAB_CACHE_DIR);
+		if (isNotBlank(cacheDirectory)) {
+			return Paths.get(cacheDirectory);
+		}
+
+		String sonarHome = settings.getString(SONAR_USER_HOME);
+		if (isNotBlank(sonarHome)) {
+			return Paths.get(sonarHome, "gitlab");
+		}
+
+		return Paths.get(System.getProperty("user.home"), ".sonar", "gitlab");
+	}
+
+	/**
+	 * @return The maximum amount of bytes which the cached commit diffs may occupy. 0 when the diffs should not be cached.
+	 */
+	public long getDiffCacheSize() {
+		return getNonNegativeInt(GitLabPlugin.GITLAB_CACHE_DIFF_SIZE, GitLabPlugin.GITLAB_CACHE_DIFF_SIZE_DEFAULT) * 1024L * 1024L;
+	}
+
+	/**
+	 * @return The maximum amount of bytes which the cached HTTP responses may occupy. 0 when the responses should not be cached.
+	 */
+	public long getHttpCacheSize() {
+		return getNonNegativeInt(GitLabPlugin.GITLAB_CACHE_HTTP_SIZE, GitLabPlugin.GITLAB_CACHE_HTTP_SIZE_DEFAULT) * 1024L * 1024L;
+	}
+
+	/**
+	 * @return The amount of milliseconds after which a cached HTTP response which hasn't been revalidated is evicted.
+	 */
+	public long getHttpCacheAge() {
+		return TimeUnit.SECONDS.toMillis(getPositiveInt(GitLabPlugin.GITLAB_CACHE_HTTP_AGE, GitLabPlugin.GITLAB_CACHE_HTTP_AGE_DEFAULT));
+	}
+
+	/**
+	 * @return The cache of the GitLab responses which are shared between the analyses on this host.
+	 */
+	public SharedCache createSharedCache() {
+		int timeToLive = getNonNegativeInt(GitLabPlugin.GITLAB_CACHE_SHARED_TTL, GitLabPlugin.GITLAB_CACHE_SHARED_TTL_DEFAULT);
+		if (timeToLive == 0) {
+			return SharedCache.disabled();
+		}
+
+		String url = getGitLabUrl();
+		while (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		return new SharedCache(getCacheDirectory().resolve("shared"), url, TimeUnit.SECONDS.toMillis(timeToLive));
+	}
+
+	/**
+	 * @return <code>true</code> when the combined diff of the comparison should be used instead of the diff per commit.
+	 */
+	public boolean isCompareDiffMode() {
+		return GitLabPlugin.GITLAB_DIFF_MODE_COMPARE.equalsIgnoreCase(settings.getString(GitLabPlugin.GITLAB_DIFF_MODE));
+	}
+
+	/**
+	 * @return <code>true</code> when the diffs should be computed from the local repository instead of fetched from GitLab.
+	 */
+	public boolean isLocalDiffSource() {
+		return GitLabPlugin.GITLAB_DIFF_SOURCE_GIT.equalsIgnoreCase(settings.getString(GitLabPlugin.GITLAB_DIFF_SOURCE));
+	}
+
+	/**
+	 * @return The directory of the analysed project, which is within the checked out repository.
+	 */
+	public Path getRepositoryDirectory() {
+		String baseDirectory = settings.getString(PROJECT_BASE_DIR);
+		return isNotBlank(baseDirectory) ? Paths.get(baseDirectory) : Paths.get("").toAbsolutePath();
+	}
+
+	/**
+	 * @return The working directory of the analysis, in which temporary files are created.
+	 */
+	public Path getWorkingDirectory() {
+		String workingDirectory = settings.getString(CoreProperties.WORKING_DIRECTORY);
+		if (isBlank(workingDirectory)) {
+			workingDirectory = CoreProperties.WORKING_DIRECTORY_DEFAULT_VALUE;
+		}
+		return getRepositoryDirectory().resolve(workingDirectory);
+	}
+
+	/**
+	 * @return The maximum amount of commit diffs to fetch concurrently.
+	 */
+	public int getDiffParallelism() {
+		return getPositiveInt(GitLabPlugin.GITLAB_DIFF_PARALLELISM, GitLabPlugin.GITLAB_DIFF_PARALLELISM_DEFAULT);
+	}
+
+	/**
+	 * @return The amount of threads to map the issues onto the diffs with.
+	 */
+	public int getMappingParallelism() {
+		return getPositiveInt(GitLabPlugin.GITLAB_MAPPING_PARALLELISM, GitLabPlugin.GITLAB_MAPPING_PARALLELISM_DEFAULT);
+	}
+
+	/**
+	 * @return The maximum amount of comments to post concurrently.
+	 */
+	public int getCommentParallelism() {
+		return getPositiveInt(GitLabPlugin.GITLAB_COMMENT_PARALLELISM, GitLabPlugin.GITLAB_COMMENT_PARALLELISM_DEFAULT);
+	}
+
+	/**
+	 * @return Which issues are combined into a single comment. Defaults to a comment per issue.
+	 */
+	public CommentAggregation getCommentAggregation() {
+		String aggregation = settings.getString(GitLabPlugin.GITLAB_COMMENT_AGGREGATION);
+		if (GitLabPlugin.GITLAB_COMMENT_AGGREGATION_LINE.equalsIgnoreCase(aggregation)) {
+			return CommentAggregation.LINE;
+		} else if (GitLabPlugin.GITLAB_COMMENT_AGGREGATION_FILE.equalsIgnoreCase(aggregation)) {
+			return CommentAggregation.FILE;
+		}
+
+		return CommentAggregation.NONE;
+	}
+
+	/**
+	 * @return The maximum amount of inline comments per analysis, or 0 when all comments should be placed.
+	 */
+	public int getCommentLimit() {
+		return Math.max(0, settings.getInt(GitLabPlugin.GITLAB_COMMENT_LIMIT));
+	}
+
+	/**
+	 * @return <code>true</code> when the comment counts in the ledger of the previous analysis are used without verifying them.
+	 */
+	public boolean isCommentLedgerTrusted() {
+		return settings.getBoolean(GitLabPlugin.GITLAB_COMMENT_LEDGER_TRUST);
+	}
+
+	/**
+	 * @return The IID of the merge request on which the issues should be placed, or 0 when they should be placed on the commits.
+	 */
+	public int getMergeRequestIid() {
+		return Math.max(0, settings.getInt(GitLabPlugin.GITLAB_MERGE_REQUEST));
+	}
+
+	/**
+	 * @return <code>true</code> when the issues should be placed as draft notes on a merge request.
+	 */
+	public boolean isMergeRequestMode() {
+		return getMergeRequestIid() > 0;
+	}
+
+	/**
+	 * @return The maximum amount of requests per second, or 0 when only the rate limit of GitLab itself applies.
+	 */
+	int getRateLimit() {
+		return Math.max(0, settings.getInt(GitLabPlugin.GITLAB_HTTP_RATE_LIMIT));
+	}
+
+	int getRetries() {
+		return getNonNegativeInt(GitLabPlugin.GITLAB_HTTP_RETRIES, GitLabPlugin.GITLAB_HTTP_RETRIES_DEFAULT);
+	}
+
+	int getRetryBackoff() {
+		return getNonNegativeInt(GitLabPlugin.GITLAB_HTTP_RETRY_BACKOFF, GitLabPlugin.GITLAB_HTTP_RETRY_BACKOFF_DEFAULT);
+	}
+
+	int getCircuitThreshold() {
+		return getPositiveInt(GitLabPlugin.GITLAB_HTTP_CIRCUIT_THRESHOLD, GitLabPlugin.GITLAB_HTTP_CIRCUIT_THRESHOLD_DEFAULT);
+	}
+
+	int getCircuitOpenDuration() {
+		return getPositiveInt(GitLabPlugin.GITLAB_HTTP_CIRCUIT_OPEN, GitLabPlugin.GITLAB_HTTP_CIRCUIT_OPEN_DEFAULT);
+	}
+
+	int getMaxConnections() {
+		return getPositiveInt(GitLabPlugin.GITLAB_HTTP_MAX_CONNECTIONS, GitLabPlugin.GITLAB_HTTP_MAX_CONNECTIONS_DEFAULT);
+	}
+
+	int getIdleTimeout() {
+		return getPositiveInt(GitLabPlugin.GITLAB_HTTP_IDLE_TIMEOUT, GitLabPlugin.GITLAB_HTTP_IDLE_TIMEOUT_DEFAULT);
+	}
+
+	private int getPositiveInt(String key, int defaultValue) {
+		int value = settings.getInt(key);
+		if (value <= 0) {
+			return defaultValue;
+		}
+
+		return value;
+	}
+
+	private int getNonNegativeInt(String key, int defaultValue) {
+		if (!settings.hasKey(key)) {
+			return defaultValue;
+		}
+
+		return Math.max(0, settings.getInt(key));
+	}
+
 	private static boolean isNotBlank(@CheckForNull String string) {
 		return !isBlank(string);
 	}
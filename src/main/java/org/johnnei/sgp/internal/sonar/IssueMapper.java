@@ -0,0 +1,134 @@
+package org.johnnei.sgp.internal.sonar;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.diff.DiffIndex;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+/**
+ * Maps the issues reported by SonarQube onto the diffs in which they were introduced.
+ * <p>
+ * The mapping only reads the {@link DiffIndex} and the diffs, which allows the issues to be mapped on multiple threads. The
+ * mapped issues are in the same order as the issues they were mapped from, regardless of the parallelism.
+ */
+class IssueMapper {
+
+	private static final Logger LOGGER = Loggers.get(IssueMapper.class);
+
+	private final DiffIndex diffs;
+
+	private final int parallelism;
+
+	private final boolean newIssuesOnly;
+
+	IssueMapper(DiffIndex diffs, int parallelism) {
+		this(diffs, parallelism, false);
+	}
+
+	/**
+	 * @param diffs The diffs to map the issues onto.
+	 * @param parallelism The amount of threads to map the issues with.
+	 * @param newIssuesOnly <code>true</code> when issues which aren't new should be rejected without mapping them.
+	 */
+	IssueMapper(DiffIndex diffs, int parallelism, boolean newIssuesOnly) {
+		this.diffs = diffs;
+		this.parallelism = parallelism;
+		this.newIssuesOnly = newIssuesOnly;
+	}
+
+	/**
+	 * @param issues The issues to map.
+	 * @return The issues which are on a changed line, in the order of the given issues.
+	 */
+	List<MappedIssue> map(Iterable<PostJobIssue> issues) {
+		int issueCount = 0;
+		List<PostJobIssue> issueList = new ArrayList<>();
+		for (PostJobIssue issue : issues) {
+			issueCount++;
+			if (!newIssuesOnly || issue.isNew()) {
+				issueList.add(issue);
+			}
+		}
+
+		if (issueList.size() < issueCount) {
+			LOGGER.info("Ignoring {} of {} issues which aren't new.", issueCount - issueList.size(), issueCount);
+		}
+
+		return parallelism <= 1 ? mapSequentially(issueList) : mapInParallel(issueList);
+	}
+
+	private List<MappedIssue> mapSequentially(List<PostJobIssue> issues) {
+		return issues.stream().flatMap(this::mapIssueToFile).collect(Collectors.toList());
+	}
+
+	private List<MappedIssue> mapInParallel(List<PostJobIssue> issues) {
+		AtomicInteger threadCount = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("GitLab Issue Mapper #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+
+		try {
+			// A parallel stream started from within a pool runs its tasks in that pool instead of the common pool.
+			return pool.submit(() -> issues.parallelStream().flatMap(this::mapIssueToFile).collect(Collectors.toList())).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while mapping issues.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to map issues.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Attempts to map an issue to a file in the git repository.
+	 * @param issue The issue to map.
+	 * @return The Stream containing the mapped issue or an empty stream on failure.
+	 */
+	private Stream<MappedIssue> mapIssueToFile(PostJobIssue issue) {
+		InputFile inputFile = findChangedFile(issue.inputComponent());
+		Optional<UnifiedDiff> diff = inputFile == null ? Optional.empty() : diffs.findDiff(inputFile, issue.line());
+		if (diff.isPresent()) {
+			return Stream.of(new MappedIssue(issue, diff.get(), diff.get().getFilepath()));
+		}
+
+		if (inputFile == null || diffs.getDiffs(inputFile).isEmpty()) {
+			LOGGER.warn("Failed to find file for \"{}\" in \"{}\"", issue.message(), issue.inputComponent());
+		} else {
+			LOGGER.warn("Failed to find diff for issue \"{}\" in \"{}\"", issue.message(), issue.inputComponent());
+		}
+		return Stream.empty();
+	}
+
+	@CheckForNull
+	private InputFile findChangedFile(@CheckForNull InputComponent inputComponent) {
+		if (inputComponent == null || !inputComponent.isFile()) {
+			return null;
+		}
+
+		InputFile inputFile = (InputFile) inputComponent;
+		return diffs.mayContain(inputFile) ? inputFile : null;
+	}
+}
@@ -41,6 +41,13 @@ import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
 		description = "The commit which will be considered responsible for all new issues",
 		global = false
 	),
+	@Property(
+		key = GitLabPlugin.GITLAB_MERGE_REQUEST,
+		name = "GitLab Merge Request",
+		description = "The IID of the merge request of the analysed commit. When set the issues are placed as draft notes on the merge request which are published at once, instead of as commit comments.",
+		type = PropertyType.INTEGER,
+		global = false
+	),
 	@Property(
 		key = GitLabPlugin.GITLAB_BASE_BRANCH,
 		name = "Git base branch",
@@ -55,6 +62,181 @@ import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
 		defaultValue = "true",
 		type = PropertyType.BOOLEAN,
 		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_NEW_ISSUES_ONLY,
+		name = "Only New Issues",
+		description = "If only the issues which SonarQube considers new should be commented. Other issues are rejected before they are " +
+			"matched with the changes, which keeps the analysis fast on large codebases.",
+		defaultValue = "false",
+		type = PropertyType.BOOLEAN,
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_MAX_CONNECTIONS,
+		name = "GitLab HTTP Connections",
+		description = "The maximum amount of pooled connections which will be kept open to the GitLab instance.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_MAX_CONNECTIONS_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_IDLE_TIMEOUT,
+		name = "GitLab HTTP Idle Timeout",
+		description = "The amount of seconds after which an unused pooled connection to the GitLab instance will be closed.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_IDLE_TIMEOUT_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_DIFF_MODE,
+		name = "GitLab Diff Mode",
+		description = "How the changes are fetched from GitLab. 'commits' fetches the diff of every commit and comments on the commit which " +
+			"introduced the issue. 'compare' uses the combined diff of the comparison in a single request and comments all issues on the analysed commit.",
+		defaultValue = GitLabPlugin.GITLAB_DIFF_MODE_COMMITS,
+		type = PropertyType.SINGLE_SELECT_LIST,
+		options = { GitLabPlugin.GITLAB_DIFF_MODE_COMMITS, GitLabPlugin.GITLAB_DIFF_MODE_COMPARE },
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_DIFF_SOURCE,
+		name = "GitLab Diff Source",
+		description = "Where the changes are taken from. 'gitlab' fetches them through the GitLab API. 'git' computes them from the repository " +
+			"which is checked out for the analysis, which requires the git command line client and the base branch to be fetched.",
+		defaultValue = GitLabPlugin.GITLAB_DIFF_SOURCE_GITLAB,
+		type = PropertyType.SINGLE_SELECT_LIST,
+		options = { GitLabPlugin.GITLAB_DIFF_SOURCE_GITLAB, GitLabPlugin.GITLAB_DIFF_SOURCE_GIT },
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_COMMENT_LIMIT,
+		name = "GitLab Inline Comment Limit",
+		description = "The maximum amount of inline comments placed by an analysis. The comments with the highest severity are placed " +
+			"first, the remaining issues are listed in the summary. A value of 0 places all comments.",
+		defaultValue = "" + GitLabPlugin.GITLAB_COMMENT_LIMIT_DEFAULT,
+		type = PropertyType.INTEGER,
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_COMMENT_AGGREGATION,
+		name = "GitLab Comment Aggregation",
+		description = "Which issues are combined into a single comment. 'none' places a comment per issue. 'line' combines the issues on " +
+			"the same line. 'file' combines the issues in the same file into a comment on the first line with an issue.",
+		defaultValue = GitLabPlugin.GITLAB_COMMENT_AGGREGATION_NONE,
+		type = PropertyType.SINGLE_SELECT_LIST,
+		options = { GitLabPlugin.GITLAB_COMMENT_AGGREGATION_NONE, GitLabPlugin.GITLAB_COMMENT_AGGREGATION_LINE, GitLabPlugin.GITLAB_COMMENT_AGGREGATION_FILE },
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_MAPPING_PARALLELISM,
+		name = "GitLab Issue Mapping Parallelism",
+		description = "The amount of threads which map the reported issues onto the diffs. A value of 1 maps the issues on the analysis thread.",
+		defaultValue = "" + GitLabPlugin.GITLAB_MAPPING_PARALLELISM_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_DIFF_PARALLELISM,
+		name = "GitLab Diff Fetch Parallelism",
+		description = "The maximum amount of commit diffs which are fetched concurrently. A value of 1 fetches the diffs one by one.",
+		defaultValue = "" + GitLabPlugin.GITLAB_DIFF_PARALLELISM_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_RATE_LIMIT,
+		name = "GitLab HTTP Rate Limit",
+		description = "The maximum amount of requests per second which are sent to the GitLab instance. A value of 0 only slows down when the " +
+			"rate limit headers reported by GitLab indicate that the quota is running out.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_RATE_LIMIT_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_RETRIES,
+		name = "GitLab HTTP Retries",
+		description = "The amount of times a failed request to the GitLab instance is retried. Requests which create data are only retried when " +
+			"GitLab certainly didn't process them.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_RETRIES_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_RETRY_BACKOFF,
+		name = "GitLab HTTP Retry Backoff",
+		description = "The amount of milliseconds to wait before the first retry. Every next retry doubles the wait, with some random jitter.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_RETRY_BACKOFF_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_CIRCUIT_THRESHOLD,
+		name = "GitLab HTTP Circuit Breaker Threshold",
+		description = "The amount of consecutive failed requests after which no requests are sent to the GitLab instance for a while.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_CIRCUIT_THRESHOLD_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_HTTP_CIRCUIT_OPEN,
+		name = "GitLab HTTP Circuit Breaker Duration",
+		description = "The amount of seconds no requests are sent to the GitLab instance after the circuit breaker threshold has been reached.",
+		defaultValue = "" + GitLabPlugin.GITLAB_HTTP_CIRCUIT_OPEN_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_COMMENT_PARALLELISM,
+		name = "GitLab Comment Parallelism",
+		description = "The maximum amount of comments which are posted concurrently. A value of 1 posts the comments one by one.",
+		defaultValue = "" + GitLabPlugin.GITLAB_COMMENT_PARALLELISM_DEFAULT,
+		type = PropertyType.INTEGER
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_COMMENT_LEDGER_TRUST,
+		name = "GitLab Trust Comment Ledger",
+		description = "The summary on the analysed commit holds a ledger of the comments on the other commits of the analysis, so a rerun " +
+			"doesn't have to list them. By default the ledger is verified with one single-item request per commit, which lists the comments " +
+			"again when their amount has changed. Trusting the ledger skips these requests, but misses the comments placed since the previous " +
+			"summary, such as those of an analysis which failed before posting its summary. Their issues may then be commented twice.",
+		defaultValue = "false",
+		type = PropertyType.BOOLEAN,
+		project = true
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_CACHE_DIR,
+		name = "GitLab Cache Directory",
+		description = "The directory in which information which doesn't change between analyses (ex. project ids) is stored. Defaults to a 'gitlab' directory within the SonarQube user home.",
+		global = false
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_CACHE_DIFF_SIZE,
+		name = "GitLab Diff Cache Size",
+		description = "The maximum size in megabytes of the commit diffs which are cached in the cache directory. The least recently used diffs " +
+			"are evicted first. Disabled by default, set a size such as 64 to reuse the diffs between analyses on the same runner.",
+		defaultValue = "" + GitLabPlugin.GITLAB_CACHE_DIFF_SIZE_DEFAULT,
+		type = PropertyType.INTEGER,
+		global = false
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_CACHE_SHARED_TTL,
+		name = "GitLab Shared Cache Time To Live",
+		description = "The amount of seconds for which the compared commits and the existing commit comments are shared between analyses " +
+			"which use the same cache directory, such as parallel jobs on the same commit. Only one of the analyses fetches them from GitLab " +
+			"while the others wait for its result. A value of 0 disables sharing.",
+		defaultValue = "" + GitLabPlugin.GITLAB_CACHE_SHARED_TTL_DEFAULT,
+		type = PropertyType.INTEGER,
+		global = false
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_CACHE_HTTP_SIZE,
+		name = "GitLab HTTP Cache Size",
+		description = "The maximum size in megabytes of the GitLab responses which are cached in the cache directory. Cached responses are " +
+			"revalidated with a conditional request, GitLab only sends the response again when it has changed. Disabled by default, set a size " +
+			"such as 32 to enable it. The responses, including those of private projects, are stored unencrypted, so only enable it when the " +
+			"cache directory can't be read by others.",
+		defaultValue = "" + GitLabPlugin.GITLAB_CACHE_HTTP_SIZE_DEFAULT,
+		type = PropertyType.INTEGER,
+		global = false
+	),
+	@Property(
+		key = GitLabPlugin.GITLAB_CACHE_HTTP_AGE,
+		name = "GitLab HTTP Cache Age",
+		description = "The amount of seconds after which a cached GitLab response which hasn't been revalidated is evicted.",
+		defaultValue = "" + GitLabPlugin.GITLAB_CACHE_HTTP_AGE_DEFAULT,
+		type = PropertyType.INTEGER,
+		global = false
 	)
 })
 public class GitLabPlugin implements Plugin {
@@ -64,7 +246,54 @@ public class GitLabPlugin implements Plugin {
 	public static final String GITLAB_PROJECT_NAME = "sonar.gitlab.analyse.project";
 	public static final String GITLAB_COMMIT_HASH = "sonar.gitlab.analyse.commit";
 	public static final String GITLAB_BASE_BRANCH = "sonar.gitlab.analyse.base";
+	public static final String GITLAB_MERGE_REQUEST = "sonar.gitlab.analyse.mergerequest";
 	public static final String GITLAB_BREAK_PIPELINE = "sonar.gitlab.pipeline.break";
+	public static final String GITLAB_NEW_ISSUES_ONLY = "sonar.gitlab.issues.new.only";
+	public static final String GITLAB_HTTP_MAX_CONNECTIONS = "sonar.gitlab.http.connections";
+	public static final String GITLAB_HTTP_IDLE_TIMEOUT = "sonar.gitlab.http.idle.timeout";
+	public static final String GITLAB_CACHE_DIR = "sonar.gitlab.cache.dir";
+	public static final String GITLAB_CACHE_DIFF_SIZE = "sonar.gitlab.cache.diff.size";
+	public static final String GITLAB_CACHE_SHARED_TTL = "sonar.gitlab.cache.shared.ttl";
+	public static final String GITLAB_CACHE_HTTP_SIZE = "sonar.gitlab.cache.http.size";
+	public static final String GITLAB_CACHE_HTTP_AGE = "sonar.gitlab.cache.http.age";
+	public static final String GITLAB_DIFF_PARALLELISM = "sonar.gitlab.diff.parallelism";
+	public static final String GITLAB_MAPPING_PARALLELISM = "sonar.gitlab.mapping.parallelism";
+	public static final String GITLAB_DIFF_MODE = "sonar.gitlab.diff.mode";
+	public static final String GITLAB_DIFF_SOURCE = "sonar.gitlab.diff.source";
+	public static final String GITLAB_HTTP_RATE_LIMIT = "sonar.gitlab.http.rate";
+	public static final String GITLAB_COMMENT_PARALLELISM = "sonar.gitlab.comment.parallelism";
+	public static final String GITLAB_COMMENT_AGGREGATION = "sonar.gitlab.comment.aggregation";
+	public static final String GITLAB_COMMENT_LIMIT = "sonar.gitlab.comment.limit";
+	public static final String GITLAB_COMMENT_LEDGER_TRUST = "sonar.gitlab.comment.ledger.trust";
+	public static final String GITLAB_HTTP_RETRIES = "sonar.gitlab.http.retries";
+	public static final String GITLAB_HTTP_RETRY_BACKOFF = "sonar.gitlab.http.retry.backoff";
+	public static final String GITLAB_HTTP_CIRCUIT_THRESHOLD = "sonar.gitlab.http.circuit.threshold";
+	public static final String GITLAB_HTTP_CIRCUIT_OPEN = "sonar.gitlab.http.circuit.open";
+
+	public static final String GITLAB_DIFF_MODE_COMMITS = "commits";
+	public static final String GITLAB_DIFF_MODE_COMPARE = "compare";
+	public static final String GITLAB_DIFF_SOURCE_GITLAB = "gitlab";
+	public static final String GITLAB_DIFF_SOURCE_GIT = "git";
+
+	public static final String GITLAB_COMMENT_AGGREGATION_NONE = "none";
+	public static final String GITLAB_COMMENT_AGGREGATION_LINE = "line";
+	public static final String GITLAB_COMMENT_AGGREGATION_FILE = "file";
+
+	public static final int GITLAB_HTTP_MAX_CONNECTIONS_DEFAULT = 10;
+	public static final int GITLAB_HTTP_IDLE_TIMEOUT_DEFAULT = 30;
+	public static final int GITLAB_DIFF_PARALLELISM_DEFAULT = 1;
+	public static final int GITLAB_MAPPING_PARALLELISM_DEFAULT = 1;
+	public static final int GITLAB_HTTP_RATE_LIMIT_DEFAULT = 0;
+	public static final int GITLAB_COMMENT_PARALLELISM_DEFAULT = 1;
+	public static final int GITLAB_COMMENT_LIMIT_DEFAULT = 0;
+	public static final int GITLAB_HTTP_RETRIES_DEFAULT = 3;
+	public static final int GITLAB_HTTP_RETRY_BACKOFF_DEFAULT = 500;
+	public static final int GITLAB_HTTP_CIRCUIT_THRESHOLD_DEFAULT = 5;
+	public static final int GITLAB_HTTP_CIRCUIT_OPEN_DEFAULT = 30;
+	public static final int GITLAB_CACHE_DIFF_SIZE_DEFAULT = 0;
+	public static final int GITLAB_CACHE_SHARED_TTL_DEFAULT = 0;
+	public static final int GITLAB_CACHE_HTTP_SIZE_DEFAULT = 0;
+	public static final int GITLAB_CACHE_HTTP_AGE_DEFAULT = 7 * 24 * 60 * 60;
 
 	@Override
 	public void define(Context context) {
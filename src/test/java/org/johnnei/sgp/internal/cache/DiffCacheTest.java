@@ -0,0 +1,155 @@
+package org.johnnei.sgp.internal.cache;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiffCacheTest {
+
+	private static final String SHA_A = "a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0";
+
+	private static final String SHA_B = "b2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0";
+
+	private static final String SHA_C = "c2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path cacheDirectory;
+
+	private DiffCache cut;
+
+	@Before
+	public void setUp() {
+		cacheDirectory = temporaryFolder.getRoot().toPath().resolve("diffs");
+		cut = new DiffCache(cacheDirectory, 1024 * 1024);
+	}
+
+	@Test
+	public void testGetMissing() {
+		assertThat("Nothing has been cached yet.", cut.get(SHA_A, "a2b4").isPresent(), is(false));
+	}
+
+	@Test
+	public void testPutAndGet() {
+		List<HunkRange> ranges = Arrays.asList(new HunkRange(20, 3), new HunkRange(5, 0), new HunkRange(1000000, 12));
+		cut.put(SHA_A, Arrays.asList(new UnifiedDiff("a2b4", "src/Main.java", ranges), new UnifiedDiff("a2b4", "src/Ünïcode.java", Collections.emptyList())));
+
+		Optional<List<UnifiedDiff>> diffs = new DiffCache(cacheDirectory, 1024 * 1024).get(SHA_A, "a2b4");
+
+		assertThat("Diffs should be stored on disk.", diffs.isPresent(), is(true));
+		assertThat("All files should be cached.", diffs.get().size(), equalTo(2));
+		assertThat("Commit should be labelled by the given id.", diffs.get().get(0).getCommitSha(), equalTo("a2b4"));
+		assertThat("Path should be restored.", diffs.get().get(0).getFilepath(), equalTo("src/Main.java"));
+		assertThat("Ranges should be restored in order.", new ArrayList<>(diffs.get().get(0).getRanges()), equalTo(ranges));
+		assertThat("Path should be restored.", diffs.get().get(1).getFilepath(), equalTo("src/Ünïcode.java"));
+		assertThat("Ranges should be restored.", diffs.get().get(1).getRanges().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testAbbreviatedShaIsNotCached() {
+		cut.put("a2b4c6d8", Collections.singletonList(new UnifiedDiff("a2b4c6d8", "src/Main.java", Collections.emptyList())));
+
+		assertThat("Abbreviated SHAs are ambiguous.", cut.get("a2b4c6d8", "a2b4c6d8").isPresent(), is(false));
+		assertThat("Nothing should have been written.", Files.exists(cacheDirectory), is(false));
+	}
+
+	@Test
+	public void testDisabled() {
+		cut = new DiffCache(cacheDirectory, 0);
+		cut.put(SHA_A, Collections.singletonList(new UnifiedDiff("a2b4", "src/Main.java", Collections.emptyList())));
+
+		assertThat("Nothing should have been written.", Files.exists(cacheDirectory), is(false));
+	}
+
+	@Test
+	public void testCorruptEntry() throws Exception {
+		Files.createDirectories(cacheDirectory);
+		Files.write(cacheDirectory.resolve(SHA_A + ".diff.idx"), "not a diff".getBytes());
+
+		assertThat("Corrupt entries should be a miss.", cut.get(SHA_A, "a2b4").isPresent(), is(false));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		cut.put(SHA_A, Collections.singletonList(new UnifiedDiff("a2b4", "src/A.java", Collections.singletonList(new HunkRange(1, 1)))));
+		cut.put(SHA_B, Collections.singletonList(new UnifiedDiff("b2b4", "src/B.java", Collections.singletonList(new HunkRange(1, 1)))));
+		long entrySize = Files.size(cacheDirectory.resolve(SHA_A + ".diff.idx"));
+
+		Files.setLastModifiedTime(cacheDirectory.resolve(SHA_A + ".diff.idx"), FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(cacheDirectory.resolve(SHA_B + ".diff.idx"), FileTime.fromMillis(2000));
+		// Using A makes B the least recently used entry.
+		cut.get(SHA_A, "a2b4");
+
+		cut = new DiffCache(cacheDirectory, entrySize * 2 + entrySize / 2);
+		cut.put(SHA_C, Collections.singletonList(new UnifiedDiff("c2b4", "src/C.java", Collections.singletonList(new HunkRange(1, 1)))));
+
+		assertThat("Recently used entry should be kept.", cut.get(SHA_A, "a2b4").isPresent(), is(true));
+		assertThat("Least recently used entry should be evicted.", cut.get(SHA_B, "b2b4").isPresent(), is(false));
+		assertThat("New entry should be kept.", cut.get(SHA_C, "c2b4").isPresent(), is(true));
+	}
+
+	@Test
+	public void testPutDeletesLegacyEntries() throws Exception {
+		Files.createDirectories(cacheDirectory);
+		Files.write(cacheDirectory.resolve(SHA_B + ".diff.gz"), "old format".getBytes());
+
+		cut.put(SHA_A, Collections.singletonList(new UnifiedDiff("a2b4", "src/A.java", Collections.singletonList(new HunkRange(1, 1)))));
+
+		assertThat("Entries of the previous format can't be read anymore.", Files.exists(cacheDirectory.resolve(SHA_B + ".diff.gz")), is(false));
+		assertThat(cut.get(SHA_A, "a2b4").isPresent(), is(true));
+	}
+
+	@Test(timeout = 10000)
+	public void testGetSingleFlight() throws Exception {
+		int analyses = 4;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(analyses);
+		ExecutorService executor = Executors.newFixedThreadPool(analyses);
+		try {
+			List<Future<List<UnifiedDiff>>> results = new ArrayList<>();
+			for (int i = 0; i < analyses; i++) {
+				DiffCache cache = new DiffCache(cacheDirectory, 1024 * 1024);
+				results.add(executor.submit(() -> {
+					started.countDown();
+					started.await();
+					return cache.get(SHA_A, "a2b4", () -> {
+						loads.incrementAndGet();
+						return Collections.singletonList(new UnifiedDiff("a2b4", "src/A.java", Collections.singletonList(new HunkRange(1, 1))));
+					});
+				}));
+			}
+
+			for (Future<List<UnifiedDiff>> result : results) {
+				assertThat("All analyses should get the diffs.", result.get().get(0).getFilepath(), equalTo("src/A.java"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat("Only one analysis should have fetched the diffs.", loads.get(), equalTo(1));
+	}
+
+}
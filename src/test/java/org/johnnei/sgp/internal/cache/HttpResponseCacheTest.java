@@ -0,0 +1,133 @@
+package org.johnnei.sgp.internal.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HttpResponseCacheTest {
+
+	private static final long MAX_AGE = 60_000;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path cacheDirectory;
+
+	private HttpResponseCache cut;
+
+	@Before
+	public void setUp() {
+		cacheDirectory = temporaryFolder.getRoot().toPath().resolve("http");
+		cut = new HttpResponseCache(cacheDirectory, 1024 * 1024, MAX_AGE);
+	}
+
+	@Test
+	public void testPutAndGet() {
+		Map<String, List<String>> headers = Collections.singletonMap("Link", Arrays.asList("<https://gitlab.example.com?page=2>; rel=\"next\"", "<https://gitlab.example.com?page=3>; rel=\"last\""));
+		cut.put("https://gitlab.example.com/api/v4/projects/1", new CachedResponse("W/\"a2b4\"", null, headers, "{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+
+		CachedResponse response = new HttpResponseCache(cacheDirectory, 1024 * 1024, MAX_AGE).get("https://gitlab.example.com/api/v4/projects/1")
+			.orElseThrow(AssertionError::new);
+
+		assertThat(response.getEntityTag(), equalTo("W/\"a2b4\""));
+		assertThat(response.getLastModified(), nullValue());
+		assertThat(response.getHeaders(), equalTo(headers));
+		assertThat(new String(response.getBody(), StandardCharsets.UTF_8), equalTo("{\"id\":1}"));
+		assertThat("Other key", cut.get("https://gitlab.example.com/api/v4/projects/2").isPresent(), is(false));
+	}
+
+	@Test
+	public void testGetExpired() throws Exception {
+		cut.put("key", new CachedResponse(null, "Wed, 21 Oct 2015 07:28:00 GMT", Collections.emptyMap(), new byte[0]));
+		setLastModifiedTime(System.currentTimeMillis() - MAX_AGE - 1000);
+
+		assertThat("Response should be evicted once it exceeds the maximum age.", cut.get("key").isPresent(), is(false));
+		assertThat(countFiles(), equalTo(0));
+	}
+
+	@Test
+	public void testRevalidated() throws Exception {
+		cut.put("key", new CachedResponse("\"a2b4\"", null, Collections.emptyMap(), new byte[0]));
+		setLastModifiedTime(System.currentTimeMillis() - MAX_AGE - 1000);
+
+		cut.revalidated("key");
+
+		assertThat("Revalidation should reset the age.", cut.get("key").isPresent(), is(true));
+	}
+
+	@Test
+	public void testPutEvictsLeastRecentlyRevalidated() throws Exception {
+		cut = new HttpResponseCache(cacheDirectory, 1500, MAX_AGE);
+		cut.put("first", new CachedResponse("\"1\"", null, Collections.emptyMap(), randomBytes(1000)));
+		setLastModifiedTime(System.currentTimeMillis() - 1000);
+
+		cut.put("second", new CachedResponse("\"2\"", null, Collections.emptyMap(), randomBytes(1000)));
+
+		assertThat(cut.get("first").isPresent(), is(false));
+		assertThat(cut.get("second").isPresent(), is(true));
+	}
+
+	@Test
+	public void testPutIgnoresResponseLargerThanCache() throws Exception {
+		cut = new HttpResponseCache(cacheDirectory, 10, MAX_AGE);
+		cut.put("key", new CachedResponse("\"1\"", null, Collections.emptyMap(), new byte[11]));
+
+		assertThat(cut.get("key").isPresent(), is(false));
+	}
+
+	@Test
+	public void testGetCorruptEntry() throws Exception {
+		cut.put("key", new CachedResponse("\"1\"", null, Collections.emptyMap(), new byte[0]));
+		Files.write(findFile(), new byte[] { 1, 2, 3 });
+
+		assertThat("Corrupt entries should be treated as a miss.", cut.get("key").isPresent(), is(false));
+	}
+
+	private void setLastModifiedTime(long millis) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory)) {
+			for (Path file : files) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(millis));
+			}
+		}
+	}
+
+	private Path findFile() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory)) {
+			return files.iterator().next();
+		}
+	}
+
+	private int countFiles() throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory)) {
+			for (Path ignored : files) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+}
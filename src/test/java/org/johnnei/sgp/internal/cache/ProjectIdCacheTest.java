@@ -0,0 +1,56 @@
+package org.johnnei.sgp.internal.cache;
+
+import java.nio.file.Files;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ProjectIdCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private ProjectIdCache cut;
+
+	@Before
+	public void setUp() {
+		cut = new ProjectIdCache(temporaryFolder.getRoot().toPath().resolve("gitlab"));
+	}
+
+	@Test
+	public void testGetMissing() {
+		assertThat("Nothing has been cached yet.", cut.get("http://localhost", "root/project"), equalTo(Optional.empty()));
+	}
+
+	@Test
+	public void testPutAndGet() {
+		cut.put("http://localhost/", "root/project", 42);
+
+		ProjectIdCache other = new ProjectIdCache(temporaryFolder.getRoot().toPath().resolve("gitlab"));
+		assertThat("Id should be stored on disk.", other.get("http://localhost", "root/project"), equalTo(Optional.of(42)));
+		assertThat("Other instance should not match.", other.get("http://example.com", "root/project"), equalTo(Optional.empty()));
+	}
+
+	@Test
+	public void testRemove() {
+		cut.put("http://localhost", "root/project", 42);
+		cut.remove("http://localhost", "root/project");
+
+		assertThat("Id should have been removed.", cut.get("http://localhost", "root/project"), equalTo(Optional.empty()));
+	}
+
+	@Test
+	public void testCorruptEntry() throws Exception {
+		Files.createDirectories(temporaryFolder.getRoot().toPath().resolve("gitlab"));
+		Files.write(temporaryFolder.getRoot().toPath().resolve("gitlab").resolve("projects.properties"), "http\\://localhost/root/project=abc".getBytes());
+
+		assertThat("Corrupt entries should be a miss.", cut.get("http://localhost", "root/project"), equalTo(Optional.empty()));
+	}
+
+}
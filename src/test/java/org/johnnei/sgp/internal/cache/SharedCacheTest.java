@@ -0,0 +1,171 @@
+package org.johnnei.sgp.internal.cache;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommit;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+
+public class SharedCacheTest {
+
+	private static final TypeReference<List<String>> STRING_LIST = new TypeReference<List<String>>() {};
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path cacheDirectory;
+
+	private SharedCache cut;
+
+	@Before
+	public void setUp() {
+		cacheDirectory = temporaryFolder.getRoot().toPath().resolve("shared");
+		cut = new SharedCache(cacheDirectory, "http://localhost", 60_000);
+	}
+
+	@Test
+	public void testGet() {
+		AtomicInteger loads = new AtomicInteger();
+
+		List<String> first = cut.get("key", STRING_LIST, () -> Arrays.asList("a", "b", Integer.toString(loads.incrementAndGet())));
+		List<String> second = new SharedCache(cacheDirectory, "http://localhost", 60_000)
+			.get("key", STRING_LIST, () -> Arrays.asList("a", "b", Integer.toString(loads.incrementAndGet())));
+
+		assertThat("Value should only be loaded once.", loads.get(), equalTo(1));
+		assertThat(first, contains("a", "b", "1"));
+		assertThat("Value should be read from disk.", second, contains("a", "b", "1"));
+	}
+
+	@Test
+	public void testGetOtherNamespace() {
+		cut.get("key", STRING_LIST, () -> Arrays.asList("a"));
+
+		List<String> value = new SharedCache(cacheDirectory, "http://example.com", 60_000).get("key", STRING_LIST, () -> Arrays.asList("b"));
+
+		assertThat("Entries of other GitLab instances should not be used.", value, contains("b"));
+	}
+
+	@Test
+	public void testGetExpired() throws Exception {
+		cut.get("key", STRING_LIST, () -> Arrays.asList("a"));
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*.json.gz")) {
+			for (Path file : files) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+			}
+		}
+
+		assertThat("Expired entry should be loaded again.", cut.get("key", STRING_LIST, () -> Arrays.asList("b")), contains("b"));
+	}
+
+	@Test
+	public void testInvalidate() {
+		cut.get("key", STRING_LIST, () -> Arrays.asList("a"));
+		cut.invalidate("key");
+
+		assertThat("Invalidated entry should be loaded again.", cut.get("key", STRING_LIST, () -> Arrays.asList("b")), contains("b"));
+	}
+
+	@Test
+	public void testDisabled() {
+		cut = SharedCache.disabled();
+
+		cut.get("key", STRING_LIST, () -> Arrays.asList("a"));
+
+		assertThat("Disabled cache should always load.", cut.get("key", STRING_LIST, () -> Arrays.asList("b")), contains("b"));
+	}
+
+	@Test(timeout = 10000)
+	public void testGetSingleFlight() throws Exception {
+		int analyses = 6;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(analyses);
+		ExecutorService executor = Executors.newFixedThreadPool(analyses);
+		try {
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < analyses; i++) {
+				// Every analysis uses its own instance, as separate JVMs would.
+				SharedCache cache = new SharedCache(cacheDirectory, "http://localhost", 60_000);
+				results.add(executor.submit(() -> {
+					started.countDown();
+					started.await();
+					return cache.get("key", STRING_LIST, () -> {
+						loads.incrementAndGet();
+						try {
+							TimeUnit.MILLISECONDS.sleep(100);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return Arrays.asList("a");
+					});
+				}));
+			}
+
+			for (Future<List<String>> result : results) {
+				assertThat("All analyses should get the value.", result.get(), contains("a"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat("Only one analysis should have loaded the value.", loads.get(), equalTo(1));
+	}
+
+	@Test
+	public void testGetComparison() throws Exception {
+		ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		GitLabCommitComparison comparison = mapper.readValue(
+			"{\"commits\":[{\"id\":\"a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0\",\"short_id\":\"a2b4c6d8\"}]," +
+				"\"diffs\":[{\"new_path\":\"src/Main.java\",\"diff\":\"@@ -1,2 +1,3 @@\\n a\\n+b\\n\",\"deleted_file\":true}]}",
+			GitLabCommitComparison.class
+		);
+		TypeReference<GitLabCommitComparison> type = new TypeReference<GitLabCommitComparison>() {};
+
+		cut.get("compare", type, () -> comparison);
+		GitLabCommitComparison cached = cut.get("compare", type, () -> null);
+
+		GitLabCommit commit = cached.getCommits().iterator().next();
+		GitLabCommitDiff diff = cached.getDiffs().iterator().next();
+		assertThat(commit.getId(), equalTo("a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0"));
+		assertThat(commit.getShortId(), equalTo("a2b4c6d8"));
+		assertThat(diff.getNewPath(), equalTo("src/Main.java"));
+		assertThat(diff.getDeletedFile(), equalTo(true));
+		assertThat(diff.getHunkRanges(), contains(new HunkRange(1, 3)));
+	}
+
+	@Test
+	public void testGetComparisonWithoutDiffs() throws Exception {
+		GitLabCommitComparison comparison = new ObjectMapper().readValue("{\"commits\":[]}", GitLabCommitComparison.class);
+		TypeReference<GitLabCommitComparison> type = new TypeReference<GitLabCommitComparison>() {};
+
+		cut.get("compare", type, () -> comparison);
+
+		assertThat("Missing diffs should remain missing.", cut.get("compare", type, () -> null).getDiffs(), nullValue());
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.johnnei.sgp.internal.git;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+
+public class GitDiffParserTest {
+
+	private static final String SHA = "a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0";
+
+	@Test
+	public void testParse() throws Exception {
+		String output = SHA + "\n" +
+			"diff --git a/src/Main.java b/src/Main.java\n" +
+			"index de98044..7be73ce 100644\n" +
+			"--- a/src/Main.java\n" +
+			"+++ b/src/Main.java\n" +
+			"@@ -1,3 +1,3 @@\n" +
+			" a\n" +
+			"-b\n" +
+			"+++ b/Content.java\n" +
+			"@@ -10 +10,2 @@ class Main {\n" +
+			"+c\n" +
+			"diff --git a/src/Old.java b/src/Old.java\n" +
+			"deleted file mode 100644\n" +
+			"--- a/src/Old.java\n" +
+			"+++ /dev/null\n" +
+			"@@ -1 +0,0 @@\n" +
+			"-a\n" +
+			"diff --git a/src/image.png b/src/image.png\n" +
+			"new file mode 100644\n" +
+			"Binary files /dev/null and b/src/image.png differ\n";
+
+		List<UnifiedDiff> diffs = parse(output);
+
+		assertThat("Deleted file should be left out.", diffs.size(), equalTo(2));
+		assertThat(diffs.get(0).getCommitSha(), equalTo("a2b4c6d8"));
+		assertThat(diffs.get(0).getFilepath(), equalTo("src/Main.java"));
+		assertThat("Content lines should not be mistaken for headers.", diffs.get(0).getRanges(), contains(new HunkRange(1, 3), new HunkRange(10, 2)));
+		assertThat("Binary file should have no hunks.", diffs.get(1).getFilepath(), equalTo("src/image.png"));
+		assertThat(diffs.get(1).getRanges(), empty());
+	}
+
+	@Test
+	public void testParseRename() throws Exception {
+		String output = "diff --git a/src/Old Name.java b/src/New Name.java\n" +
+			"similarity index 100%\n" +
+			"rename from src/Old Name.java\n" +
+			"rename to src/New Name.java\n";
+
+		List<UnifiedDiff> diffs = parse(output);
+
+		assertThat(diffs.get(0).getCommitSha(), equalTo("head"));
+		assertThat(diffs.get(0).getFilepath(), equalTo("src/New Name.java"));
+	}
+
+	@Test
+	public void testParseQuotedPaths() throws Exception {
+		String output = "diff --git \"a/src/Tab\\tName.java\" \"b/src/Tab\\tName.java\"\n" +
+			"new file mode 100644\n" +
+			"--- /dev/null\n" +
+			"+++ \"b/src/Tab\\tName.java\"\t\n" +
+			"@@ -0,0 +1 @@\n" +
+			"+x\n" +
+			"diff --git a/src/With Space.java b/src/With Space.java\n" +
+			"old mode 100644\n" +
+			"new mode 100755\n";
+
+		List<UnifiedDiff> diffs = parse(output);
+
+		assertThat(diffs.get(0).getFilepath(), equalTo("src/Tab\tName.java"));
+		assertThat(diffs.get(1).getFilepath(), equalTo("src/With Space.java"));
+	}
+
+	@Test
+	public void testUnquote() {
+		assertThat(GitDiffParser.unquote("src/Plain.java"), equalTo("src/Plain.java"));
+		assertThat(GitDiffParser.unquote("\"src/\\\"Quoted\\\"\\\\.java\""), equalTo("src/\"Quoted\"\\.java"));
+		assertThat("Octal escapes are UTF-8 bytes.", GitDiffParser.unquote("\"src/\\303\\251.java\""), equalTo("src/é.java"));
+	}
+
+	private static List<UnifiedDiff> parse(String output) throws Exception {
+		return new GitDiffParser("head", sha -> sha.substring(0, 8)).parse(new BufferedReader(new StringReader(output)));
+	}
+}
@@ -0,0 +1,182 @@
+package org.johnnei.sgp.internal.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LocalGitDiffProviderTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path repository;
+
+	private GitLabPluginConfiguration configurationMock;
+
+	private String firstCommit;
+
+	private String secondCommit;
+
+	private String mergeCommit;
+
+	@Before
+	public void setUp() throws Exception {
+		assumeTrue("git is required to create the repository.", isGitAvailable());
+
+		repository = temporaryFolder.newFolder("repository").toPath();
+		git("init", "-q");
+		git("config", "user.email", "sonar@example.com");
+		git("config", "user.name", "Sonar");
+		git("config", "commit.gpgsign", "false");
+		git("checkout", "-q", "-b", "master");
+
+		write("src/Main.java", lines(1, 10));
+		write("src/Old.java", lines(1, 3));
+		write("src/Other.java", lines(1, 20));
+		commit("Initial commit");
+
+		git("checkout", "-q", "-b", "feature");
+		write("src/Main.java", lines(1, 4) + "changed\n" + lines(6, 10));
+		write("src/New File.java", lines(1, 2));
+		firstCommit = commit("Change main");
+
+		git("rm", "-q", "src/Old.java");
+		git("mv", "src/Other.java", "src/Renamed.java");
+		write("src/Renamed.java", lines(1, 19) + "changed\n");
+		secondCommit = commit("Rename other");
+
+		// Changes on the base branch after the feature branched off are not part of the feature.
+		git("checkout", "-q", "master");
+		write("src/Main.java", "changed\n" + lines(2, 10));
+		commit("Change main on master");
+
+		git("checkout", "-q", "-b", "topic", secondCommit);
+		write("src/Topic.java", lines(1, 1));
+		commit("Add topic");
+		git("checkout", "-q", "feature");
+		git("merge", "-q", "--no-ff", "-m", "Merge topic", "topic");
+		mergeCommit = git("rev-parse", "HEAD").trim();
+
+		configurationMock = mock(GitLabPluginConfiguration.class);
+		when(configurationMock.getRepositoryDirectory()).thenReturn(repository);
+		when(configurationMock.getBaseBranch()).thenReturn("master");
+		when(configurationMock.getCommitHash()).thenReturn(mergeCommit);
+	}
+
+	@Test
+	public void testGetDiffs() {
+		List<UnifiedDiff> diffs = new ArrayList<>(new LocalGitDiffProvider(configurationMock).getDiffs());
+
+		assertThat("Deleted files should be left out.", describe(diffs), equalTo(Arrays.asList(
+			firstCommit.substring(0, 8) + " src/Main.java [HunkRange{start=2, lineCount=7}]",
+			firstCommit.substring(0, 8) + " src/New File.java [HunkRange{start=1, lineCount=2}]",
+			secondCommit.substring(0, 8) + " src/Renamed.java [HunkRange{start=17, lineCount=4}]",
+			describeTopicCommit() + " src/Topic.java [HunkRange{start=1, lineCount=1}]",
+			mergeCommit.substring(0, 8) + " src/Topic.java [HunkRange{start=1, lineCount=1}]"
+		)));
+	}
+
+	@Test
+	public void testGetDiffsCompareMode() {
+		when(configurationMock.isCompareDiffMode()).thenReturn(true);
+
+		List<UnifiedDiff> diffs = new ArrayList<>(new LocalGitDiffProvider(configurationMock).getDiffs());
+
+		assertThat("All changes should be attributed to the analysed commit.", describe(diffs), equalTo(Arrays.asList(
+			mergeCommit + " src/Main.java [HunkRange{start=2, lineCount=7}]",
+			mergeCommit + " src/New File.java [HunkRange{start=1, lineCount=2}]",
+			mergeCommit + " src/Renamed.java [HunkRange{start=17, lineCount=4}]",
+			mergeCommit + " src/Topic.java [HunkRange{start=1, lineCount=1}]"
+		)));
+	}
+
+	@Test
+	public void testGetDiffsRemoteBaseBranch() throws Exception {
+		git("update-ref", "refs/remotes/origin/develop", "master");
+		when(configurationMock.getBaseBranch()).thenReturn("develop");
+
+		assertThat("Remote tracking branch should be used.", new LocalGitDiffProvider(configurationMock).getDiffs().size(), equalTo(5));
+	}
+
+	@Test
+	public void testGetDiffsMissingBaseBranch() {
+		thrown.expect(IllegalStateException.class);
+		thrown.expectMessage("develop");
+
+		when(configurationMock.getBaseBranch()).thenReturn("develop");
+
+		new LocalGitDiffProvider(configurationMock).getDiffs();
+	}
+
+	@Test
+	public void testGetDiffsWithoutChanges() throws Exception {
+		when(configurationMock.getCommitHash()).thenReturn(git("rev-parse", "master").trim());
+
+		assertThat(new LocalGitDiffProvider(configurationMock).getDiffs().size(), equalTo(0));
+	}
+
+	private String describeTopicCommit() {
+		return git("rev-parse", "--short=8", mergeCommit + "^2").trim();
+	}
+
+	private static List<String> describe(List<UnifiedDiff> diffs) {
+		return diffs.stream()
+			.map(diff -> diff.getCommitSha() + " " + diff.getFilepath() + " " + diff.getRanges())
+			.collect(Collectors.toList());
+	}
+
+	private static String lines(int from, int to) {
+		return IntStream.rangeClosed(from, to).mapToObj(i -> "line " + i + "\n").collect(Collectors.joining());
+	}
+
+	private void write(String path, String content) throws IOException {
+		Path file = repository.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String commit(String message) {
+		git("add", "-A");
+		git("commit", "-q", "-m", message);
+		return git("rev-parse", "HEAD").trim();
+	}
+
+	private String git(String... arguments) {
+		return new GitCommand(repository).run(output -> output.lines().collect(Collectors.joining("\n")), null, arguments);
+	}
+
+	private static boolean isGitAvailable() {
+		try {
+			return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
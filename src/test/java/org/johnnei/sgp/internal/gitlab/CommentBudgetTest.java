@@ -0,0 +1,90 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.rule.Severity;
+
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.test.MockIssue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommentBudgetTest {
+
+	private UnifiedDiff diff;
+
+	private MappedIssue minor;
+
+	private MappedIssue blocker;
+
+	private MappedIssue major;
+
+	private MappedIssue critical;
+
+	@Before
+	public void setUp() {
+		diff = mock(UnifiedDiff.class);
+		when(diff.getCommitSha()).thenReturn("a2b4");
+
+		minor = issue(1, Severity.MINOR);
+		blocker = issue(2, Severity.BLOCKER);
+		major = issue(3, Severity.MAJOR);
+		critical = issue(4, Severity.CRITICAL);
+	}
+
+	@Test
+	public void testApplyWithoutLimit() {
+		List<CommentGroup> comments = CommentGroup.group(Stream.of(minor, major, critical, blocker), CommentAggregation.NONE);
+
+		CommentBudget cut = CommentBudget.apply(comments, 0);
+
+		assertThat(cut.getInline(), sameInstance(comments));
+		assertThat(cut.getOverflow(), empty());
+	}
+
+	@Test
+	public void testApplyWithinLimit() {
+		List<CommentGroup> comments = CommentGroup.group(Stream.of(minor, blocker), CommentAggregation.NONE);
+
+		CommentBudget cut = CommentBudget.apply(comments, 2);
+
+		assertThat(cut.getInline(), sameInstance(comments));
+		assertThat(cut.getOverflow(), empty());
+	}
+
+	@Test
+	public void testApplyHighestSeverityFirst() {
+		List<CommentGroup> comments = CommentGroup.group(Stream.of(minor, major, critical, blocker), CommentAggregation.NONE);
+
+		CommentBudget cut = CommentBudget.apply(comments, 2);
+
+		List<MappedIssue> inline = cut.getInline().stream().map(comment -> comment.getIssues().get(0)).collect(Collectors.toList());
+		assertThat(inline, contains(blocker, critical));
+		assertThat(cut.getOverflow(), contains(major, minor));
+	}
+
+	@Test
+	public void testApplyOverflowsAllIssuesOfAggregatedComment() {
+		MappedIssue info = issue(3, Severity.INFO);
+		List<CommentGroup> comments = CommentGroup.group(Stream.of(info, major, blocker), CommentAggregation.LINE);
+
+		CommentBudget cut = CommentBudget.apply(comments, 1);
+
+		assertThat(cut.getInline().get(0).getIssues(), contains(blocker));
+		assertThat(cut.getOverflow(), contains(major, info));
+	}
+
+	private MappedIssue issue(int line, Severity severity) {
+		return new MappedIssue(MockIssue.mockInlineIssue("src/Main.java", line, severity, severity.name()), diff, "src/Main.java");
+	}
+}
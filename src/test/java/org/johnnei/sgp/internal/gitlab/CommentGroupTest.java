@@ -0,0 +1,114 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.rule.Severity;
+
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.test.MockIssue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommentGroupTest {
+
+	private UnifiedDiff diff;
+
+	private MappedIssue minorOnLine3;
+
+	private MappedIssue criticalOnLine3;
+
+	private MappedIssue majorOnLine7;
+
+	private MappedIssue otherFile;
+
+	@Before
+	public void setUp() {
+		diff = mock(UnifiedDiff.class);
+		when(diff.getCommitSha()).thenReturn("a2b4");
+
+		minorOnLine3 = issue("src/Main.java", 3, Severity.MINOR, "Minor issue");
+		criticalOnLine3 = issue("src/Main.java", 3, Severity.CRITICAL, "Critical issue");
+		majorOnLine7 = issue("src/Main.java", 7, Severity.MAJOR, "Major issue");
+		otherFile = issue("src/Other.java", 3, Severity.INFO, "Info issue");
+	}
+
+	@Test
+	public void testGroupNone() {
+		List<CommentGroup> groups = group(CommentAggregation.NONE);
+
+		assertThat(groups, hasSize(4));
+		assertThat("Highest severity should be placed first.", groups.get(0).getMessage(), equalTo(":bangbang: Critical issue"));
+		assertThat(groups.get(0).getLine(), equalTo(3));
+		assertThat(groups.get(3).getMessage(), equalTo(":information_source: Info issue"));
+	}
+
+	@Test
+	public void testGroupLine() {
+		List<CommentGroup> groups = group(CommentAggregation.LINE);
+
+		assertThat(groups, hasSize(3));
+		CommentGroup line3 = groups.get(0);
+		assertThat("Highest severity should be listed first.", line3.getIssues(), contains(criticalOnLine3, minorOnLine3));
+		assertThat(line3.getLine(), equalTo(3));
+		assertThat(line3.getMessage(), equalTo(
+			"SonarQube reported 2 issues on this line.\n" +
+			"\n" +
+			"- :bangbang: Critical issue\n" +
+			"- :grey_exclamation: Minor issue\n"
+		));
+		assertThat("A single issue should be rendered as without aggregation.", groups.get(1).getMessage(), equalTo(":exclamation: Major issue"));
+	}
+
+	@Test
+	public void testGroupFile() {
+		List<CommentGroup> groups = group(CommentAggregation.FILE);
+
+		assertThat(groups, hasSize(2));
+		CommentGroup main = groups.get(0);
+		assertThat(main.getPath(), equalTo("src/Main.java"));
+		assertThat(main.getCommitSha(), equalTo("a2b4"));
+		assertThat("The comment should be placed on the first line with an issue.", main.getLine(), equalTo(3));
+		assertThat(main.getMessage(), equalTo(
+			"SonarQube reported 3 issues in this file.\n" +
+			"\n" +
+			"- Line 3: :bangbang: Critical issue\n" +
+			"- Line 7: :exclamation: Major issue\n" +
+			"- Line 3: :grey_exclamation: Minor issue\n"
+		));
+	}
+
+	@Test
+	public void testAggregatedMessageIsIndexedPerIssue() {
+		for (CommentAggregation aggregation : CommentAggregation.values()) {
+			ExistingCommentIndex index = new ExistingCommentIndex();
+			group(aggregation).forEach(group -> index.add(group.getCommitSha(), group.getPath(), group.getLine(), group.getMessage()));
+
+			for (MappedIssue issue : new MappedIssue[] { minorOnLine3, criticalOnLine3, majorOnLine7, otherFile }) {
+				assertThat(
+					String.format("%s should be found for %s", issue.getIssue().message(), aggregation),
+					index.containsInline("a2b4", issue.getPath(), issue.getIssue().line(), issue.getIssue().message()),
+					is(true)
+				);
+			}
+		}
+	}
+
+	private List<CommentGroup> group(CommentAggregation aggregation) {
+		// The report provides the issues from the lowest to the highest severity.
+		return CommentGroup.group(Stream.of(otherFile, minorOnLine3, majorOnLine7, criticalOnLine3), aggregation);
+	}
+
+	private MappedIssue issue(String path, int line, Severity severity, String message) {
+		return new MappedIssue(MockIssue.mockInlineIssue(path, line, severity, message), diff, path);
+	}
+}
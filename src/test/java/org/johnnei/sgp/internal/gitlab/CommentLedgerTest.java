@@ -0,0 +1,71 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.OptionalInt;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class CommentLedgerTest {
+
+	@Test
+	public void testFormatAndParse() {
+		CommentLedger cut = new CommentLedger();
+		cut.put("a2b4", 3, Arrays.asList(5L, -7L, Long.MAX_VALUE));
+		cut.put("c3d5", 0, Collections.emptyList());
+
+		String note = "SonarQube analysis reported 3 issues.\n\n" + cut.format().orElseThrow(AssertionError::new);
+		CommentLedger parsed = CommentLedger.parse(note).orElseThrow(AssertionError::new);
+
+		assertThat(parsed, equalTo(cut));
+		assertThat(parsed.getCommentCount("a2b4"), equalTo(OptionalInt.of(3)));
+		assertThat(parsed.getFingerprints("a2b4"), equalTo(new HashSet<>(Arrays.asList(5L, -7L, Long.MAX_VALUE))));
+		assertThat(parsed.getCommentCount("e4f6"), equalTo(OptionalInt.empty()));
+	}
+
+	@Test
+	public void testFormatIsStable() {
+		CommentLedger first = new CommentLedger();
+		first.put("a2b4", 2, Arrays.asList(1L, 2L));
+		first.put("c3d5", 1, Collections.singletonList(3L));
+		CommentLedger second = new CommentLedger();
+		second.put("c3d5", 1, Collections.singletonList(3L));
+		second.put("a2b4", 2, Arrays.asList(2L, 1L));
+
+		assertThat("Equal ledgers must result in an equal summary.", second.format(), equalTo(first.format()));
+	}
+
+	@Test
+	public void testParseWithoutLedger() {
+		assertThat(CommentLedger.parse("SonarQube analysis reported 0 issues.").isPresent(), is(false));
+		assertThat(CommentLedger.parse(null).isPresent(), is(false));
+		assertThat("Corrupt ledger", CommentLedger.parse("<!-- sonar-gitlab-ledger:bm90IGd6aXA= -->").isPresent(), is(false));
+		assertThat("Invalid Base64", CommentLedger.parse("<!-- sonar-gitlab-ledger:!! -->").isPresent(), is(false));
+	}
+
+	@Test
+	public void testStrip() {
+		CommentLedger ledger = new CommentLedger();
+		ledger.put("a2b4", 1, Collections.singletonList(1L));
+		String summary = "SonarQube analysis reported 1 issues.\n\n";
+
+		assertThat(CommentLedger.strip(summary + ledger.format().orElseThrow(AssertionError::new)), equalTo(summary));
+		assertThat(CommentLedger.strip(summary), equalTo(summary));
+	}
+
+	@Test
+	public void testFingerprint() {
+		long fingerprint = CommentLedger.fingerprint("src/Main.java", 12, "Fix this.");
+
+		assertThat(CommentLedger.fingerprint("src/Main.java", 12, "Fix this."), equalTo(fingerprint));
+		assertThat(CommentLedger.fingerprint("src/Main.java", 13, "Fix this."), not(equalTo(fingerprint)));
+		assertThat(CommentLedger.fingerprint("src/Other.java", 12, "Fix this."), not(equalTo(fingerprint)));
+		assertThat(CommentLedger.fingerprint("src/Main.java", 12, "Fix that."), not(equalTo(fingerprint)));
+	}
+}
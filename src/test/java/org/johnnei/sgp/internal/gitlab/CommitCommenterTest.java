@@ -1,47 +1,71 @@
 package org.johnnei.sgp.internal.gitlab;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.mockito.ArgumentCaptor;
 import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.batch.rule.Severity;
 
+import org.johnnei.sgp.internal.cache.SharedCache;
+import org.johnnei.sgp.internal.gitlab.api.v4.CircuitBreakerOpenException;
+import org.johnnei.sgp.internal.gitlab.api.v4.AsyncGitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabUser;
 import org.johnnei.sgp.internal.model.MappedIssue;
 import org.johnnei.sgp.internal.model.SonarReport;
+import org.johnnei.sgp.internal.model.diff.HunkIndex;
 import org.johnnei.sgp.internal.model.diff.HunkRange;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 import org.johnnei.sgp.test.MockIssue;
+import org.johnnei.sgp.test.MockPage;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.isA;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class CommitCommenterTest {
 
+	private static final int USER_ID = 7;
+
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private final String hash = "a2b4";
 
 	private final String path = "/my/file.java";
@@ -66,7 +90,7 @@ public class CommitCommenterTest {
 		thrown.expect(IllegalStateException.class);
 		thrown.expectCause(isA(IOException.class));
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -75,7 +99,7 @@ public class CommitCommenterTest {
 		when(reportMock.getBuildCommitSha()).thenReturn(hash);
 		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
 
-		when(apiMock.getCommitComments(projectId, hash)).thenThrow(new IOException("Test exception path"));
+		doThrow(new IOException("Test exception path")).when(apiMock).getCommitComments(projectId, hash, 1, 100);
 
 		CommitCommenter cut = new CommitCommenter(apiMock);
 
@@ -84,7 +108,7 @@ public class CommitCommenterTest {
 
 	@Test
 	public void testProcess() throws Exception {
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 		PostJobIssue issueMock = mock(PostJobIssue.class);
@@ -136,7 +160,7 @@ public class CommitCommenterTest {
 
 	@Test
 	public void testProcessIssueOnFile() throws Exception {
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 		PostJobIssue issueMock = mock(PostJobIssue.class);
@@ -157,10 +181,8 @@ public class CommitCommenterTest {
 
 		when(reportMock.countIssuesWithSeverity(Severity.CRITICAL)).thenReturn(1L);
 
-		HunkRange hunkRange = mock(HunkRange.class);
-		when(hunkRange.getStart()).thenReturn(5);
-
-		when(diff.getRanges()).thenReturn(Collections.singletonList(hunkRange));
+		HunkIndex index = HunkIndex.of(Collections.singletonList(new HunkRange(5, 1)));
+		when(diff.getHunkIndex()).thenReturn(index);
 
 		CommitCommenter cut = new CommitCommenter(apiMock);
 
@@ -196,14 +218,16 @@ public class CommitCommenterTest {
 		thrown.expect(IllegalStateException.class);
 		thrown.expectMessage("diff");
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
-		when(apiMock.getCommitComments(projectId, hash)).thenReturn(Collections.emptyList());
+		Response commentPage = MockPage.empty();
+		doReturn(commentPage).when(apiMock).getCommitComments(projectId, hash, 1, 100);
 
 		when(projectMock.getId()).thenReturn(projectId);
-		when(diff.getRanges()).thenReturn(Collections.emptyList());
+		HunkIndex index = HunkIndex.of(Collections.emptyList());
+		when(diff.getHunkIndex()).thenReturn(index);
 
 		PostJobIssue fileIssueMock = MockIssue.mockFileIssue(new File(path));
 
@@ -221,7 +245,7 @@ public class CommitCommenterTest {
 	public void testProcessExcludeExistingWithFileComments() throws Exception {
 		String summary = "SonarQube analysis reported 0 issues.\n\nWatch the comments in this conversation to review them.";
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -235,12 +259,12 @@ public class CommitCommenterTest {
 		when(summaryMock.getLine()).thenReturn(null);
 		when(summaryMock.getNote()).thenReturn(summary);
 
-		when(apiMock.getCommitComments(projectId, hash)).thenReturn(Arrays.asList(commentMock, summaryMock));
+		Response commentPage = MockPage.of(Arrays.asList(commentMock, summaryMock));
+		doReturn(commentPage).when(apiMock).getCommitComments(projectId, hash, 1, 100);
 
 		when(projectMock.getId()).thenReturn(projectId);
-		HunkRange rangeMock = mock(HunkRange.class);
-		when(rangeMock.getStart()).thenReturn(line);
-		when(diff.getRanges()).thenReturn(Collections.singletonList(rangeMock));
+		HunkIndex index = HunkIndex.of(Collections.singletonList(new HunkRange(line, 1)));
+		when(diff.getHunkIndex()).thenReturn(index);
 
 		PostJobIssue fileIssueMock = MockIssue.mockFileIssue(new File(path));
 
@@ -253,7 +277,7 @@ public class CommitCommenterTest {
 
 		cut.process(reportMock);
 
-		verify(apiMock).getCommitComments(projectId, hash);
+		verify(apiMock).getCommitComments(projectId, hash, 1, 100);
 		verifyNoMoreInteractions(apiMock);
 	}
 
@@ -261,7 +285,7 @@ public class CommitCommenterTest {
 	public void testProcessExistingFileLevelIssue() throws Exception {
 		String summary = "SonarQube analysis reported 0 issues.\n\nWatch the comments in this conversation to review them.";
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -275,7 +299,8 @@ public class CommitCommenterTest {
 		when(summaryMock.getLine()).thenReturn(null);
 		when(summaryMock.getNote()).thenReturn(summary);
 
-		when(apiMock.getCommitComments(projectId, hash)).thenReturn(Arrays.asList(commentMock, summaryMock));
+		Response commentPage = MockPage.of(Arrays.asList(commentMock, summaryMock));
+		doReturn(commentPage).when(apiMock).getCommitComments(projectId, hash, 1, 100);
 
 		when(projectMock.getId()).thenReturn(projectId);
 
@@ -290,7 +315,7 @@ public class CommitCommenterTest {
 
 		cut.process(reportMock);
 
-		verify(apiMock).getCommitComments(projectId, hash);
+		verify(apiMock).getCommitComments(projectId, hash, 1, 100);
 		verifyNoMoreInteractions(apiMock);
 	}
 
@@ -299,7 +324,7 @@ public class CommitCommenterTest {
 		// On the second analysis a comparison against the Summary should not cause issues.
 		String summary = "SonarQube analysis reported 0 issues.\n\nWatch the comments in this conversation to review them.";
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -313,7 +338,8 @@ public class CommitCommenterTest {
 		when(summaryMock.getLine()).thenReturn(null);
 		when(summaryMock.getNote()).thenReturn(summary);
 
-		when(apiMock.getCommitComments(projectId, hash)).thenReturn(Arrays.asList(commentMock, summaryMock));
+		Response commentPage = MockPage.of(Arrays.asList(commentMock, summaryMock));
+		doReturn(commentPage).when(apiMock).getCommitComments(projectId, hash, 1, 100);
 
 		when(projectMock.getId()).thenReturn(projectId);
 
@@ -329,7 +355,7 @@ public class CommitCommenterTest {
 
 		cut.process(reportMock);
 
-		verify(apiMock).getCommitComments(projectId, hash);
+		verify(apiMock).getCommitComments(projectId, hash, 1, 100);
 		verify(apiMock).createCommitComment(
 			eq(projectId),
 			eq(hash),
@@ -346,7 +372,7 @@ public class CommitCommenterTest {
 		thrown.expect(ProcessException.class);
 		thrown.expectMessage("comments failed");
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -364,7 +390,7 @@ public class CommitCommenterTest {
 		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
 		when(reportMock.getProject()).thenReturn(projectMock);
 
-		doThrow(new IOException("Test exception path")).when(apiMock).createCommitComment(
+		doThrow(new ServerErrorException(Response.Status.BAD_GATEWAY)).when(apiMock).createCommitComment(
 			anyInt(),
 			anyString(),
 			anyString(),
@@ -383,7 +409,7 @@ public class CommitCommenterTest {
 		thrown.expect(ProcessException.class);
 		thrown.expectMessage("summary comment");
 
-		GitLabApi apiMock = mock(GitLabApi.class);
+		GitLabApi apiMock = mockApi();
 		GitLabProject projectMock = mock(GitLabProject.class);
 		SonarReport reportMock = mock(SonarReport.class);
 
@@ -415,4 +441,457 @@ public class CommitCommenterTest {
 		cut.process(reportMock);
 	}
 
+	@Test
+	public void testProcessConcurrently() throws Exception {
+		GitLabApi apiMock = mockApi();
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		List<MappedIssue> issues = new ArrayList<>();
+		for (int i = 1; i <= 20; i++) {
+			issues.add(new MappedIssue(MockIssue.mockInlineIssue(path, i, Severity.MAJOR, "Issue " + i), diff, path));
+		}
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, 4, CommentAggregation.NONE, 0);
+
+		cut.process(reportMock);
+
+		for (int i = 1; i <= 20; i++) {
+			verify(apiMock).createCommitComment(eq(projectId), eq(hash), contains("Issue " + i), eq(path), eq(i), eq("new"));
+		}
+		verify(apiMock).createCommitComment(eq(projectId), eq(hash), anyString(), isNull(String.class), isNull(Integer.class), isNull(String.class));
+	}
+
+	@Test
+	public void testProcessConcurrentlyThroughAsyncApi() throws Exception {
+		GitLabApi apiMock = mockApi();
+		AsyncGitLabApi asyncApiMock = mock(AsyncGitLabApi.class);
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		List<MappedIssue> issues = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			issues.add(new MappedIssue(MockIssue.mockInlineIssue(path, i, Severity.MAJOR, "Issue " + i), diff, path));
+		}
+		CompletableFuture<Void> failure = new CompletableFuture<>();
+		failure.completeExceptionally(new ServerErrorException(Response.Status.BAD_GATEWAY));
+		when(asyncApiMock.createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), anyInt(), eq("new")))
+			.thenReturn(CompletableFuture.completedFuture(null));
+		when(asyncApiMock.createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(2), eq("new"))).thenReturn(failure);
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, 2, CommentAggregation.NONE, 0, SharedCache.disabled(), asyncApiMock, false);
+
+		try {
+			cut.process(reportMock);
+			throw new AssertionError("The failed comment should have been reported.");
+		} catch (ProcessException e) {
+			assertThat(e.getMessage(), containsString("(1 of 5)"));
+		}
+
+		for (int i = 1; i <= 5; i++) {
+			verify(asyncApiMock).createCommitComment(eq(projectId), eq(hash), contains("Issue " + i), eq(path), eq(i), eq("new"));
+		}
+		verify(apiMock, never()).createCommitComment(anyInt(), anyString(), anyString(), eq(path), anyInt(), anyString());
+	}
+
+	@Test
+	public void testProcessConcurrentlyFailure() throws Exception {
+		thrown.expect(ProcessException.class);
+		thrown.expectMessage("One or more comments");
+
+		GitLabApi apiMock = mockApi();
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		List<MappedIssue> issues = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			issues.add(new MappedIssue(MockIssue.mockInlineIssue(path, i, Severity.MAJOR, "Issue " + i), diff, path));
+		}
+		doThrow(new ServerErrorException(Response.Status.BAD_GATEWAY)).when(apiMock).createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(3), eq("new"));
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, 2, CommentAggregation.NONE, 0);
+
+		cut.process(reportMock);
+	}
+
+	@Test
+	public void testProcessPostsRemainingCommentsAfterFailure() throws Exception {
+		assertRemainingCommentsArePosted(1, new ServerErrorException(Response.Status.BAD_GATEWAY));
+	}
+
+	@Test
+	public void testProcessConcurrentlyPostsRemainingCommentsAfterFailure() throws Exception {
+		assertRemainingCommentsArePosted(2, new ProcessingException("Connection reset"));
+	}
+
+	@Test
+	public void testProcessReportsOpenCircuitAsFailedComment() throws Exception {
+		assertRemainingCommentsArePosted(2, new CircuitBreakerOpenException("Test exception path"));
+	}
+
+	private void assertRemainingCommentsArePosted(int parallelism, Exception failure) throws Exception {
+		GitLabApi apiMock = mockApi();
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		List<MappedIssue> issues = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			issues.add(new MappedIssue(MockIssue.mockInlineIssue(path, i, Severity.MAJOR, "Issue " + i), diff, path));
+		}
+		doThrow(failure).when(apiMock).createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(2), eq("new"));
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, parallelism, CommentAggregation.NONE, 0);
+
+		try {
+			cut.process(reportMock);
+			throw new AssertionError("The failed comment should have been reported.");
+		} catch (ProcessException e) {
+			assertThat(e.getMessage(), containsString("(1 of 5)"));
+		}
+
+		for (int i = 1; i <= 5; i++) {
+			verify(apiMock).createCommitComment(eq(projectId), eq(hash), contains("Issue " + i), eq(path), eq(i), eq("new"));
+		}
+	}
+
+	@Test
+	public void testProcessAggregatedPerLine() throws Exception {
+		GitLabApi apiMock = mockApi();
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		// Ordered from the lowest to the highest severity like the report provides them.
+		List<MappedIssue> issues = Arrays.asList(
+			new MappedIssue(MockIssue.mockInlineIssue(path, line, Severity.MINOR, "Issue 1"), diff, path),
+			new MappedIssue(MockIssue.mockInlineIssue(path, line, Severity.MAJOR, "Issue 3"), diff, path),
+			new MappedIssue(MockIssue.mockInlineIssue(path, line + 1, Severity.MAJOR, "Issue 4"), diff, path),
+			new MappedIssue(MockIssue.mockInlineIssue(path, line, Severity.BLOCKER, "Issue 2"), diff, path)
+		);
+		CommitComment existing = mock(CommitComment.class);
+		when(existing.getPath()).thenReturn(path);
+		when(existing.getLine()).thenReturn(Integer.toString(line + 1));
+		when(existing.getNote()).thenReturn("SonarQube reported 2 issues on this line.\n\n- :exclamation: Issue 4\n- :exclamation: Issue 5\n");
+		doReturn(MockPage.of(Collections.singletonList(existing))).when(apiMock).getCommitComments(projectId, hash, 1, 100);
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, 1, CommentAggregation.LINE, 0);
+
+		cut.process(reportMock);
+
+		verify(apiMock).createCommitComment(
+			projectId,
+			hash,
+			"SonarQube reported 3 issues on this line.\n\n" +
+				"- :negative_squared_cross_mark: Issue 2\n" +
+				"- :exclamation: Issue 3\n" +
+				"- :grey_exclamation: Issue 1\n",
+			path,
+			line,
+			"new"
+		);
+		verify(apiMock, never()).createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(line + 1), eq("new"));
+	}
+
+	@Test
+	public void testProcessWithCommentLimit() throws Exception {
+		GitLabApi apiMock = mockApi();
+		GitLabProject projectMock = mock(GitLabProject.class);
+		SonarReport reportMock = mock(SonarReport.class);
+
+		when(projectMock.getId()).thenReturn(projectId);
+		List<MappedIssue> issues = Arrays.asList(
+			new MappedIssue(MockIssue.mockInlineIssue(path, 1, Severity.MINOR, "Issue 1"), diff, path),
+			new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue | 3"), diff, path),
+			new MappedIssue(MockIssue.mockInlineIssue(path, 2, Severity.BLOCKER, "Issue 2"), diff, path)
+		);
+
+		when(reportMock.getIssues()).thenReturn(issues.stream());
+		when(reportMock.getIssueCount()).thenReturn(3);
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		CommitCommenter cut = new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 1);
+
+		cut.process(reportMock);
+
+		verify(apiMock).createCommitComment(eq(projectId), eq(hash), contains("Issue 2"), eq(path), eq(2), eq("new"));
+		verify(apiMock, never()).createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(1), eq("new"));
+		verify(apiMock, never()).createCommitComment(eq(projectId), eq(hash), anyString(), eq(path), eq(3), eq("new"));
+
+		ArgumentCaptor<String> summaryCaptor = ArgumentCaptor.forClass(String.class);
+		verify(apiMock).createCommitComment(
+			eq(projectId),
+			eq(hash),
+			summaryCaptor.capture(),
+			isNull(String.class),
+			isNull(Integer.class),
+			isNull(String.class)
+		);
+		assertThat(summaryCaptor.getValue(), containsString(
+			"2 issues exceeded the limit of inline comments:\n" +
+			"\n" +
+			"| Severity | Location | Issue |\n" +
+			"| --- | --- | --- |\n" +
+			"| :exclamation: | /my/file.java:3 | Issue \\| 3 |\n" +
+			"| :grey_exclamation: | /my/file.java:1 | Issue 1 |\n"
+		));
+	}
+
+	@Test
+	public void testProcessSharesExistingComments() throws Exception {
+		String summary = "SonarQube analysis reported 0 issues.\n\nWatch the comments in this conversation to review them.";
+		ObjectMapper mapper = new ObjectMapper();
+		List<CommitComment> comments = Arrays.asList(
+			mapper.readValue(String.format("{\"line\":\"%d\",\"path\":\"%s\",\"note\":\"%s\"}", line, path, message), CommitComment.class),
+			mapper.readValue(mapper.writeValueAsString(Collections.singletonMap("note", summary)), CommitComment.class)
+		);
+
+		GitLabApi apiMock = mock(GitLabApi.class);
+		when(apiMock.getCommitComments(projectId, hash, 1, 100)).thenAnswer(invocation -> MockPage.of(comments));
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+
+		SonarReport reportMock = mock(SonarReport.class);
+		PostJobIssue issueMock = MockIssue.mockInlineIssue(path, line, Severity.CRITICAL, message);
+		when(reportMock.getIssues()).thenAnswer(invocation -> Stream.of(new MappedIssue(issueMock, diff, path)));
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenAnswer(invocation -> Stream.of(hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		SharedCache sharedCache = new SharedCache(temporaryFolder.getRoot().toPath(), "http://localhost", 60_000);
+		new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 0, sharedCache).process(reportMock);
+		new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 0, sharedCache).process(reportMock);
+
+		verify(apiMock, times(1)).getCommitComments(projectId, hash, 1, 100);
+		verify(apiMock, never()).createCommitComment(anyInt(), anyString(), anyString(), anyString(), anyInt(), anyString());
+
+		PostJobIssue newIssueMock = MockIssue.mockInlineIssue("/not/my/file.java", 88, Severity.MAJOR, message);
+		when(reportMock.getIssues()).thenAnswer(invocation -> Stream.of(new MappedIssue(newIssueMock, diff, "/not/my/file.java")));
+		new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 0, sharedCache).process(reportMock);
+		new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 0, sharedCache).process(reportMock);
+
+		// The comment created by the third analysis must be seen by the fourth.
+		verify(apiMock, times(2)).getCommitComments(projectId, hash, 1, 100);
+	}
+
+	@Test
+	public void testProcessUsesLedgerOfPreviousAnalysis() throws Exception {
+		String otherHash = "c3d5";
+		UnifiedDiff otherDiff = mock(UnifiedDiff.class);
+		when(otherDiff.getCommitSha()).thenReturn(otherHash);
+
+		CommitComment commentMock = mock(CommitComment.class);
+		when(commentMock.getLine()).thenReturn(Integer.toString(line));
+		when(commentMock.getPath()).thenReturn(path);
+		when(commentMock.getNote()).thenReturn(":bangbang: " + message);
+
+		GitLabApi apiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(commentMock))).when(apiMock).getCommitComments(projectId, otherHash, 1, 100);
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+
+		SonarReport reportMock = mock(SonarReport.class);
+		PostJobIssue issueMock = MockIssue.mockInlineIssue(path, line, Severity.CRITICAL, message);
+		when(reportMock.getIssues()).thenAnswer(invocation -> Stream.of(new MappedIssue(issueMock, otherDiff, path)));
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenAnswer(invocation -> Stream.of(otherHash, hash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		new CommitCommenter(apiMock).process(reportMock);
+
+		ArgumentCaptor<String> summaryCaptor = ArgumentCaptor.forClass(String.class);
+		verify(apiMock).createCommitComment(eq(projectId), eq(hash), summaryCaptor.capture(), isNull(String.class), isNull(Integer.class), isNull(String.class));
+		verify(apiMock, never()).createCommitComment(anyInt(), anyString(), anyString(), eq(path), anyInt(), anyString());
+		assertThat(summaryCaptor.getValue(), containsString("<!-- sonar-gitlab-ledger:"));
+
+		CommitComment summaryMock = mock(CommitComment.class);
+		when(summaryMock.getNote()).thenReturn(summaryCaptor.getValue());
+		GitLabUser author = mockUser(USER_ID);
+		when(summaryMock.getAuthor()).thenReturn(author);
+		GitLabApi secondApiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(summaryMock))).when(secondApiMock).getCommitComments(projectId, hash, 1, 100);
+		Response countPage = MockPage.empty();
+		when(countPage.getHeaderString("X-Total")).thenReturn("1");
+		doReturn(countPage).when(secondApiMock).getCommitComments(projectId, otherHash, 1, 1);
+
+		new CommitCommenter(secondApiMock).process(reportMock);
+
+		// The comments of the other commit are known from the ledger, they don't have to be listed.
+		verify(secondApiMock).getCommitComments(projectId, hash, 1, 100);
+		verify(secondApiMock).getCommitComments(projectId, otherHash, 1, 1);
+		verify(secondApiMock).getUser();
+		verifyNoMoreInteractions(secondApiMock);
+	}
+
+	@Test
+	public void testProcessIgnoresLedgerOfOtherUser() throws Exception {
+		String otherHash = "c3d5";
+		UnifiedDiff otherDiff = mock(UnifiedDiff.class);
+		when(otherDiff.getCommitSha()).thenReturn(otherHash);
+
+		// A forged ledger which claims that the issue has already been commented.
+		CommentLedger ledger = new CommentLedger();
+		ledger.put(otherHash, 0, Collections.singletonList(CommentLedger.fingerprint(path, line, ":bangbang: " + message)));
+		CommitComment summaryMock = mock(CommitComment.class);
+		when(summaryMock.getNote()).thenReturn("SonarQube analysis reported 0 issues.\n\n" + ledger.format().orElseThrow(AssertionError::new));
+		GitLabUser author = mockUser(USER_ID + 1);
+		when(summaryMock.getAuthor()).thenReturn(author);
+
+		GitLabApi apiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(summaryMock))).when(apiMock).getCommitComments(projectId, hash, 1, 100);
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+
+		SonarReport reportMock = mock(SonarReport.class);
+		PostJobIssue issueMock = MockIssue.mockInlineIssue(path, line, Severity.CRITICAL, message);
+		when(reportMock.getIssues()).thenReturn(Stream.of(new MappedIssue(issueMock, otherDiff, path)));
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(otherHash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		new CommitCommenter(apiMock).process(reportMock);
+
+		verify(apiMock).getCommitComments(projectId, otherHash, 1, 100);
+		verify(apiMock).createCommitComment(eq(projectId), eq(otherHash), contains(message), eq(path), eq(line), eq("new"));
+	}
+
+	@Test
+	public void testProcessAddsLedgerToUnchangedSummary() throws Exception {
+		String otherHash = "c3d5";
+		SonarReport reportMock = mock(SonarReport.class);
+		when(reportMock.getIssues()).thenAnswer(invocation -> Stream.empty());
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenAnswer(invocation -> Stream.of(otherHash, hash));
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		// The summary of a version which didn't write a ledger yet.
+		String summary = CommitCommenter.buildSummary(reportMock);
+		CommitComment summaryMock = mock(CommitComment.class);
+		when(summaryMock.getNote()).thenReturn(summary);
+		GitLabApi apiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(summaryMock))).when(apiMock).getCommitComments(projectId, hash, 1, 100);
+
+		new CommitCommenter(apiMock).process(reportMock);
+
+		verify(apiMock).createCommitComment(eq(projectId), eq(hash), contains("<!-- sonar-gitlab-ledger:"), isNull(String.class), isNull(Integer.class), isNull(String.class));
+	}
+
+	@Test
+	public void testProcessListsCommentsWhenLedgerIsStale() throws Exception {
+		String otherHash = "c3d5";
+		UnifiedDiff otherDiff = mock(UnifiedDiff.class);
+		when(otherDiff.getCommitSha()).thenReturn(otherHash);
+
+		CommentLedger ledger = new CommentLedger();
+		ledger.put(otherHash, 1, Collections.emptyList());
+		CommitComment summaryMock = mock(CommitComment.class);
+		when(summaryMock.getNote()).thenReturn("SonarQube analysis reported 0 issues.\n\n" + ledger.format().orElseThrow(AssertionError::new));
+		GitLabUser author = mockUser(USER_ID);
+		when(summaryMock.getAuthor()).thenReturn(author);
+
+		CommitComment commentMock = mock(CommitComment.class);
+		when(commentMock.getLine()).thenReturn(Integer.toString(line));
+		when(commentMock.getPath()).thenReturn(path);
+		when(commentMock.getNote()).thenReturn(":bangbang: " + message);
+
+		GitLabApi apiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(summaryMock))).when(apiMock).getCommitComments(projectId, hash, 1, 100);
+		Response countPage = MockPage.empty();
+		when(countPage.getHeaderString("X-Total")).thenReturn("2");
+		doReturn(countPage).when(apiMock).getCommitComments(projectId, otherHash, 1, 1);
+		doReturn(MockPage.of(Arrays.asList(summaryMock, commentMock))).when(apiMock).getCommitComments(projectId, otherHash, 1, 100);
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+
+		SonarReport reportMock = mock(SonarReport.class);
+		PostJobIssue issueMock = MockIssue.mockInlineIssue(path, line, Severity.CRITICAL, message);
+		when(reportMock.getIssues()).thenReturn(Stream.of(new MappedIssue(issueMock, otherDiff, path)));
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(otherHash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		new CommitCommenter(apiMock).process(reportMock);
+
+		verify(apiMock).getCommitComments(projectId, otherHash, 1, 100);
+		verify(apiMock, never()).createCommitComment(anyInt(), anyString(), anyString(), eq(path), anyInt(), anyString());
+	}
+
+	@Test
+	public void testProcessTrustedLedgerSkipsCountingComments() throws Exception {
+		String otherHash = "c3d5";
+		UnifiedDiff otherDiff = mock(UnifiedDiff.class);
+		when(otherDiff.getCommitSha()).thenReturn(otherHash);
+
+		CommentLedger ledger = new CommentLedger();
+		// The fingerprints are taken of the messages without their severity icon.
+		ledger.put(otherHash, 1, Collections.singletonList(CommentLedger.fingerprint(path, line, message)));
+		CommitComment summaryMock = mock(CommitComment.class);
+		when(summaryMock.getNote()).thenReturn("SonarQube analysis reported 0 issues.\n\n" + ledger.format().orElseThrow(AssertionError::new));
+		GitLabUser author = mockUser(USER_ID);
+		when(summaryMock.getAuthor()).thenReturn(author);
+
+		GitLabApi apiMock = mockApi();
+		doReturn(MockPage.of(Collections.singletonList(summaryMock))).when(apiMock).getCommitComments(projectId, hash, 1, 100);
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+
+		SonarReport reportMock = mock(SonarReport.class);
+		PostJobIssue issueMock = MockIssue.mockInlineIssue(path, line, Severity.CRITICAL, message);
+		when(reportMock.getIssues()).thenReturn(Stream.of(new MappedIssue(issueMock, otherDiff, path)));
+		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		when(reportMock.getCommitShas()).thenReturn(Stream.of(otherHash));
+		when(reportMock.getProject()).thenReturn(projectMock);
+
+		new CommitCommenter(apiMock, 1, CommentAggregation.NONE, 0, SharedCache.disabled(), null, true).process(reportMock);
+
+		verify(apiMock, never()).getCommitComments(eq((long) projectId), eq(otherHash), anyInt(), anyInt());
+		verify(apiMock, never()).createCommitComment(anyInt(), anyString(), anyString(), eq(path), anyInt(), anyString());
+	}
+
+	private static GitLabApi mockApi() throws IOException {
+		GitLabApi apiMock = mock(GitLabApi.class);
+		when(apiMock.getCommitComments(anyLong(), anyString(), anyInt(), anyInt())).thenAnswer(invocation -> MockPage.empty());
+		GitLabUser user = mockUser(USER_ID);
+		when(apiMock.getUser()).thenReturn(user);
+		return apiMock;
+	}
+
+	private static GitLabUser mockUser(int id) {
+		GitLabUser user = mock(GitLabUser.class);
+		when(user.getId()).thenReturn(id);
+		return user;
+	}
+
 }
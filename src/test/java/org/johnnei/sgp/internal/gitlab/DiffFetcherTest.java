@@ -1,30 +1,46 @@
 package org.johnnei.sgp.internal.gitlab;
 
+import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import org.johnnei.sgp.internal.cache.SharedCache;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommit;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitComparison;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
+import org.johnnei.sgp.test.MockPage;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.isA;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -33,6 +49,9 @@ public class DiffFetcherTest {
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	@Mock
 	private GitLabApi gitlabApiMock;
 
@@ -45,6 +64,7 @@ public class DiffFetcherTest {
 	public void setUp() throws Exception {
 		cut = new DiffFetcher(gitLabPluginConfigurationMock);
 		when(gitLabPluginConfigurationMock.createGitLabConnection()).thenReturn(gitlabApiMock);
+		when(gitLabPluginConfigurationMock.createSharedCache()).thenReturn(SharedCache.disabled());
 	}
 
 	@Test
@@ -76,9 +96,10 @@ public class DiffFetcherTest {
 
 		GitLabCommitDiff commitDiff = mock(GitLabCommitDiff.class);
 		when(commitDiff.getDeletedFile()).thenReturn(false);
-		when(commitDiff.getDiff()).thenReturn(diff);
+		when(commitDiff.getHunkRanges()).thenReturn(HunkRangeParser.parse(diff));
 
-		when(gitlabApiMock.getCommitDiffs(5, hash)).thenReturn(Collections.singletonList(commitDiff));
+		Response diffPage = MockPage.of(Collections.singletonList(commitDiff));
+		when(gitlabApiMock.getCommitDiffs(5, hash, 1, 100)).thenReturn(diffPage);
 
 		List<UnifiedDiff> diffs = (List<UnifiedDiff>) cut.getDiffs();
 
@@ -126,9 +147,167 @@ public class DiffFetcherTest {
 		when(comparison.getCommits()).thenReturn(Collections.singletonList(commit));
 
 		when(gitlabApiMock.compareCommits(5, "develop", hash)).thenReturn(comparison);
-		when(gitlabApiMock.getCommitDiffs(5, hash)).thenThrow(new IOException("Test Exception path"));
+		when(gitlabApiMock.getCommitDiffs(5, hash, 1, 100)).thenThrow(new IOException("Test Exception path"));
+
+		cut.getDiffs();
+	}
+
+	@Test
+	public void testGetDiffsConcurrently() throws Exception {
+		GitLabProject project = mock(GitLabProject.class);
+		when(project.getId()).thenReturn(5);
+
+		when(gitLabPluginConfigurationMock.getBaseBranch()).thenReturn("develop");
+		when(gitLabPluginConfigurationMock.getCommitHash()).thenReturn("c3");
+		when(gitLabPluginConfigurationMock.getProject()).thenReturn(project);
+		when(gitLabPluginConfigurationMock.getDiffParallelism()).thenReturn(3);
+
+		List<GitLabCommit> commits = Arrays.asList(mockCommit("c1"), mockCommit("c2"), mockCommit("c3"));
+		GitLabCommitComparison comparison = mock(GitLabCommitComparison.class);
+		when(comparison.getCommits()).thenReturn(commits);
+		when(gitlabApiMock.compareCommits(5, "develop", "c3")).thenReturn(comparison);
+
+		CountDownLatch laterCommitsFetched = new CountDownLatch(2);
+		for (GitLabCommit commit : commits) {
+			Response diffPage = MockPage.of(Collections.singletonList(mockCommitDiff("src/" + commit.getShortId() + ".java")));
+			when(gitlabApiMock.getCommitDiffs(5, commit.getShortId(), 1, 100)).thenAnswer(invocation -> {
+				if ("c1".equals(commit.getShortId())) {
+					// Let the first commit complete last to verify that the order doesn't depend on completion.
+					laterCommitsFetched.await(5, TimeUnit.SECONDS);
+				} else {
+					laterCommitsFetched.countDown();
+				}
+				return diffPage;
+			});
+		}
+
+		List<UnifiedDiff> diffs = (List<UnifiedDiff>) cut.getDiffs();
+
+		assertThat("Diffs should be in commit order.", diffs.stream().map(UnifiedDiff::getCommitSha).collect(Collectors.toList()), equalTo(Arrays.asList("c1", "c2", "c3")));
+		assertThat("Diffs should be in commit order.", diffs.stream().map(UnifiedDiff::getFilepath).collect(Collectors.toList()), equalTo(Arrays.asList("src/c1.java", "src/c2.java", "src/c3.java")));
+	}
+
+	@Test(timeout = 5000)
+	public void testGetDiffsConcurrentlyFailsFast() throws Exception {
+		thrown.expect(IllegalStateException.class);
+		thrown.expectMessage("diff");
+		thrown.expectCause(isA(IOException.class));
+
+		GitLabProject project = mock(GitLabProject.class);
+		when(project.getId()).thenReturn(5);
+
+		when(gitLabPluginConfigurationMock.getBaseBranch()).thenReturn("develop");
+		when(gitLabPluginConfigurationMock.getCommitHash()).thenReturn("c2");
+		when(gitLabPluginConfigurationMock.getProject()).thenReturn(project);
+		when(gitLabPluginConfigurationMock.getDiffParallelism()).thenReturn(2);
+
+		List<GitLabCommit> commits = Arrays.asList(mockCommit("c1"), mockCommit("c2"));
+		GitLabCommitComparison comparison = mock(GitLabCommitComparison.class);
+		when(comparison.getCommits()).thenReturn(commits);
+		when(gitlabApiMock.compareCommits(5, "develop", "c2")).thenReturn(comparison);
+
+		// The first commit never completes unless it gets cancelled.
+		when(gitlabApiMock.getCommitDiffs(5, "c1", 1, 100)).thenAnswer(invocation -> {
+			new CountDownLatch(1).await();
+			return MockPage.empty();
+		});
+		when(gitlabApiMock.getCommitDiffs(5, "c2", 1, 100)).thenThrow(new IOException("Test Exception path"));
+
+		cut.getDiffs();
+	}
+
+	@Test
+	public void testGetDiffsCompareMode() throws Exception {
+		GitLabProject project = mock(GitLabProject.class);
+		when(project.getId()).thenReturn(5);
+
+		when(gitLabPluginConfigurationMock.getBaseBranch()).thenReturn("develop");
+		when(gitLabPluginConfigurationMock.getCommitHash()).thenReturn("c2");
+		when(gitLabPluginConfigurationMock.getProject()).thenReturn(project);
+		when(gitLabPluginConfigurationMock.isCompareDiffMode()).thenReturn(true);
+
+		GitLabCommitDiff deletedDiff = mockCommitDiff("src/Old.java");
+		when(deletedDiff.getDeletedFile()).thenReturn(true);
+
+		List<GitLabCommit> commits = Arrays.asList(mockCommit("c1"), mockCommit("c2"));
+		List<GitLabCommitDiff> commitDiffs = Arrays.asList(mockCommitDiff("src/Main.java"), deletedDiff);
+		GitLabCommitComparison comparison = mock(GitLabCommitComparison.class);
+		when(comparison.getCommits()).thenReturn(commits);
+		when(comparison.getDiffs()).thenReturn(commitDiffs);
+		when(gitlabApiMock.compareCommits(5, "develop", "c2")).thenReturn(comparison);
+
+		List<UnifiedDiff> diffs = (List<UnifiedDiff>) cut.getDiffs();
+
+		assertThat("Only the changed file should be returned.", diffs, hasSize(1));
+		assertThat("Diff should be attributed to the analysed commit.", diffs.get(0).getCommitSha(), equalTo("c2"));
+		assertThat("Diff should be for the changed file.", diffs.get(0).getFilepath(), equalTo("src/Main.java"));
+		verify(gitlabApiMock, never()).getCommitDiffs(anyLong(), anyString(), anyInt(), anyInt());
+	}
+
+	@Test
+	public void testGetDiffsCompareModeWithoutDiffs() throws Exception {
+		GitLabProject project = mock(GitLabProject.class);
+		when(project.getId()).thenReturn(5);
+
+		when(gitLabPluginConfigurationMock.getBaseBranch()).thenReturn("develop");
+		when(gitLabPluginConfigurationMock.getCommitHash()).thenReturn("c1");
+		when(gitLabPluginConfigurationMock.getProject()).thenReturn(project);
+		when(gitLabPluginConfigurationMock.isCompareDiffMode()).thenReturn(true);
+
+		GitLabCommit commit = mockCommit("c1");
+		GitLabCommitComparison comparison = mock(GitLabCommitComparison.class);
+		when(comparison.getCommits()).thenReturn(Collections.singletonList(commit));
+		when(comparison.getDiffs()).thenReturn(null);
+		when(gitlabApiMock.compareCommits(5, "develop", "c1")).thenReturn(comparison);
+
+		Response diffPage = MockPage.of(Collections.singletonList(mockCommitDiff("src/Main.java")));
+		when(gitlabApiMock.getCommitDiffs(5, "c1", 1, 100)).thenReturn(diffPage);
+
+		assertThat("Diff should have been fetched per commit instead.", cut.getDiffs(), hasSize(1));
+	}
+
+	@Test
+	public void testGetDiffsFromCache() throws Exception {
+		GitLabProject project = mock(GitLabProject.class);
+		when(project.getId()).thenReturn(5);
+
+		when(gitLabPluginConfigurationMock.getBaseBranch()).thenReturn("develop");
+		when(gitLabPluginConfigurationMock.getCommitHash()).thenReturn("a2b4");
+		when(gitLabPluginConfigurationMock.getProject()).thenReturn(project);
+		when(gitLabPluginConfigurationMock.getCacheDirectory()).thenReturn(temporaryFolder.getRoot().toPath());
+		when(gitLabPluginConfigurationMock.getDiffCacheSize()).thenReturn(1024L * 1024);
+
+		GitLabCommit commit = mockCommit("a2b4");
+		when(commit.getId()).thenReturn("a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0a2b4c6d8e0");
+		GitLabCommitComparison comparison = mock(GitLabCommitComparison.class);
+		when(comparison.getCommits()).thenReturn(Collections.singletonList(commit));
+		when(gitlabApiMock.compareCommits(5, "develop", "a2b4")).thenReturn(comparison);
+
+		GitLabCommitDiff commitDiff = mockCommitDiff("src/Main.java");
+		Response diffPage = MockPage.of(Collections.singletonList(commitDiff));
+		when(gitlabApiMock.getCommitDiffs(5, "a2b4", 1, 100)).thenReturn(diffPage);
 
 		cut.getDiffs();
+		List<UnifiedDiff> diffs = (List<UnifiedDiff>) new DiffFetcher(gitLabPluginConfigurationMock).getDiffs();
+
+		assertThat("Cached diff should have been returned.", diffs, hasSize(1));
+		assertThat("Incorrect hash for diff", diffs.get(0).getCommitSha(), equalTo("a2b4"));
+		assertThat("Incorrect path for diff", diffs.get(0).getFilepath(), equalTo("src/Main.java"));
+		assertThat("Incorrect ranges for diff", new ArrayList<>(diffs.get(0).getRanges()), equalTo(commitDiff.getHunkRanges()));
+		verify(gitlabApiMock, times(1)).getCommitDiffs(5, "a2b4", 1, 100);
+	}
+
+	private static GitLabCommit mockCommit(String hash) {
+		GitLabCommit commit = mock(GitLabCommit.class);
+		when(commit.getShortId()).thenReturn(hash);
+		return commit;
+	}
+
+	private static GitLabCommitDiff mockCommitDiff(String path) {
+		GitLabCommitDiff commitDiff = mock(GitLabCommitDiff.class);
+		when(commitDiff.getNewPath()).thenReturn(path);
+		when(commitDiff.getHunkRanges()).thenReturn(HunkRangeParser.parse("--- a/" + path + "\n+++ b/" + path + "\n@@ -1,1 +1,1 @@\n-a\n+b\n"));
+		return commitDiff;
 	}
 
 }
@@ -0,0 +1,117 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.CommitComment;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExistingCommentIndexTest {
+
+	@Test
+	public void testContainsInline() {
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment("src/Main.java", "12", ":bangbang: Remove this violation!"));
+
+		assertThat(cut.containsInline("a2b4", "src/Main.java", 12, "Remove this violation!"), is(true));
+		assertThat("Other commit", cut.containsInline("c3d5", "src/Main.java", 12, "Remove this violation!"), is(false));
+		assertThat("Other path", cut.containsInline("a2b4", "src/Other.java", 12, "Remove this violation!"), is(false));
+		assertThat("Other line", cut.containsInline("a2b4", "src/Main.java", 13, "Remove this violation!"), is(false));
+		assertThat("Other message", cut.containsInline("a2b4", "src/Main.java", 12, "Remove this!"), is(false));
+	}
+
+	@Test
+	public void testContainsInlineBySuffixWithoutIcon() {
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment("src/Main.java", "12", ":custom-icon: Remove this violation!"));
+
+		assertThat(cut.containsInline("a2b4", "src/Main.java", 12, "Remove this violation!"), is(true));
+		assertThat("Other line", cut.containsInline("a2b4", "src/Main.java", 13, "Remove this violation!"), is(false));
+		assertThat("Other message", cut.containsInline("a2b4", "src/Main.java", 12, "Remove this!"), is(false));
+		assertThat(
+			"The match should be kept in the fingerprints for the ledger.",
+			cut.getFingerprints("a2b4"),
+			hasItem(CommentLedger.fingerprint("src/Main.java", 12, "Remove this violation!"))
+		);
+	}
+
+	@Test
+	public void testContainsSummary() {
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment(null, null, "SonarQube analysis reported 0 issues."));
+
+		assertThat(cut.containsSummary("a2b4", "SonarQube analysis reported 0 issues."), is(true));
+		assertThat(cut.containsSummary("a2b4", "SonarQube analysis reported 1 issues."), is(false));
+		assertThat(cut.containsInline("a2b4", null, 1, "SonarQube analysis reported 0 issues."), is(false));
+	}
+
+	@Test
+	public void testContainsInlineAggregated() {
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment("src/Main.java", "12", "SonarQube reported 2 issues on this line.\n\n- :bangbang: Fix this.\n- :information_source: Line is too long.\n"));
+		cut.add("a2b4", mockComment("src/Other.java", "3", "SonarQube reported 2 issues in this file.\n\n- Line 3: :bangbang: Fix this.\n- Line 9: :exclamation: Fix that.\n"));
+
+		assertThat(cut.containsInline("a2b4", "src/Main.java", 12, "Fix this."), is(true));
+		assertThat("Messages starting with 'Line' should not be mistaken for a line number.", cut.containsInline("a2b4", "src/Main.java", 12, "Line is too long."), is(true));
+		assertThat(cut.containsInline("a2b4", "src/Other.java", 3, "Fix this."), is(true));
+		assertThat(cut.containsInline("a2b4", "src/Other.java", 9, "Fix that."), is(true));
+		assertThat("Other line", cut.containsInline("a2b4", "src/Other.java", 3, "Fix that."), is(false));
+	}
+
+	@Test
+	public void testIgnoresUnusableComments() {
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment("src/Main.java", "12", null));
+		cut.add("a2b4", mockComment("src/Main.java", "twelve", "Remove this violation!"));
+
+		assertThat(cut.size(), equalTo(0));
+	}
+
+	@Test
+	public void testContainsSummaryWithLedger() {
+		CommentLedger ledger = new CommentLedger();
+		ledger.put("c3d5", 1, Collections.singletonList(1L));
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.add("a2b4", mockComment(null, null, "SonarQube analysis reported 0 issues.\n\n" + ledger.format().orElseThrow(AssertionError::new)));
+
+		assertThat("The ledger should be ignored.", cut.containsSummary("a2b4", "SonarQube analysis reported 0 issues."), is(true));
+	}
+
+	@Test
+	public void testContainsInlineFingerprint() {
+		ExistingCommentIndex source = new ExistingCommentIndex();
+		source.add("a2b4", mockComment("src/Main.java", "12", ":bangbang: Remove this violation!"));
+		source.add("a2b4", mockComment(null, null, "SonarQube analysis reported 1 issues."));
+
+		ExistingCommentIndex cut = new ExistingCommentIndex();
+		cut.addFingerprints("a2b4", source.getFingerprints("a2b4"));
+
+		assertThat("Only inline comments have a fingerprint.", source.getFingerprints("a2b4").size(), equalTo(1));
+		assertThat(cut.containsInline("a2b4", "src/Main.java", 12, ":exclamation: Remove this violation!"), is(true));
+		assertThat("Other commit", cut.containsInline("c3d5", "src/Main.java", 12, "Remove this violation!"), is(false));
+		assertThat("Other line", cut.containsInline("a2b4", "src/Main.java", 13, "Remove this violation!"), is(false));
+	}
+
+	@Test
+	public void testNormalize() {
+		assertThat(ExistingCommentIndex.normalize(":negative_squared_cross_mark: Fix this."), equalTo("Fix this."));
+		assertThat(ExistingCommentIndex.normalize("Fix this. "), equalTo("Fix this."));
+		assertThat("Only icons are stripped", ExistingCommentIndex.normalize(":Fix: this."), equalTo(":Fix: this."));
+		assertThat(ExistingCommentIndex.normalize(":bangbang:Fix this."), equalTo(":bangbang:Fix this."));
+	}
+
+	private static CommitComment mockComment(String path, String line, String note) {
+		CommitComment comment = mock(CommitComment.class);
+		when(comment.getPath()).thenReturn(path);
+		when(comment.getLine()).thenReturn(line);
+		when(comment.getNote()).thenReturn(note);
+		return comment;
+	}
+}
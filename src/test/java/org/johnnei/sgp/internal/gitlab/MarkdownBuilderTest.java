@@ -40,6 +40,18 @@ public class MarkdownBuilderTest {
 		assertThat("A linebreak is a linebreak. (duh?)", cut.toString(), equalTo("\n"));
 	}
 
+	@Test
+	public void testAddTable() throws Exception {
+		cut.addTableHeader("Severity", "Issue");
+		cut.addTableRow("Major", "Use a | b\ninstead.");
+
+		assertThat("Cells should be escaped so they stay within the table.", cut.toString(), equalTo(
+			"| Severity | Issue |\n" +
+			"| --- | --- |\n" +
+			"| Major | Use a \\| b instead. |\n"
+		));
+	}
+
 	@Test
 	public void testAddSeverityIconInfo() throws Exception {
 		cut.addSeverityIcon(Severity.INFO);
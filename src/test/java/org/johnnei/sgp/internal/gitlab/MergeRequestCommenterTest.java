@@ -0,0 +1,354 @@
+package org.johnnei.sgp.internal.gitlab;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ProcessingException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.config.Settings;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabDraftNote;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestDiff;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestVersion;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNote;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNotePosition;
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.SonarReport;
+import org.johnnei.sgp.internal.model.diff.DiffLineMap;
+import org.johnnei.sgp.internal.model.diff.HunkIndex;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.internal.sonar.GitLabPluginConfiguration;
+import org.johnnei.sgp.sonar.GitLabPlugin;
+import org.johnnei.sgp.test.MockIssue;
+import org.johnnei.sgp.test.MockPage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MergeRequestCommenterTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private final int projectId = 42;
+
+	private final int iid = 7;
+
+	private final String path = "src/Main.java";
+
+	private GitLabApi apiMock;
+
+	private SonarReport reportMock;
+
+	private UnifiedDiff diff;
+
+	private GitLabMergeRequestVersion version;
+
+	@Before
+	public void setUp() throws Exception {
+		apiMock = mock(GitLabApi.class);
+		version = mock(GitLabMergeRequestVersion.class);
+		when(version.getBaseCommitSha()).thenReturn("base");
+		when(version.getStartCommitSha()).thenReturn("start");
+		when(version.getHeadCommitSha()).thenReturn("head");
+		when(version.getId()).thenReturn(2);
+		when(apiMock.getMergeRequestVersions(projectId, iid)).thenReturn(Collections.singletonList(version));
+		when(apiMock.getMergeRequestVersion(projectId, iid, 2)).thenReturn(version);
+		when(apiMock.getMergeRequestNotes(eq(projectId), eq(iid), anyInt(), anyInt())).thenAnswer(invocation -> MockPage.empty());
+		when(apiMock.getDraftNotes(projectId, iid)).thenReturn(Collections.emptyList());
+
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getId()).thenReturn(projectId);
+		reportMock = mock(SonarReport.class);
+		when(reportMock.getProject()).thenReturn(projectMock);
+		when(reportMock.getIssueCount()).thenReturn(2);
+		when(reportMock.countIssuesWithSeverity(Severity.MAJOR)).thenReturn(2L);
+
+		diff = mock(UnifiedDiff.class);
+		when(diff.getCommitSha()).thenReturn("head");
+		when(diff.getHunkIndex()).thenReturn(HunkIndex.of(Collections.singletonList(new HunkRange(1, 10))));
+	}
+
+	@Test
+	public void testProcess() throws Exception {
+		MappedIssue issueA = new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue A"), diff, path);
+		MappedIssue issueB = new MappedIssue(MockIssue.mockInlineIssue(path, 5, Severity.MAJOR, "Issue B"), diff, path);
+		when(reportMock.getIssues()).thenReturn(Stream.of(issueA, issueB));
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+
+		verify(apiMock).createDraftNote(projectId, iid, ":exclamation: Issue A", "text", "base", "start", "head", path, path, null, 3);
+		verify(apiMock).createDraftNote(projectId, iid, ":exclamation: Issue B", "text", "base", "start", "head", path, path, null, 5);
+		verify(apiMock).createDraftNote(
+			eq(projectId), eq(iid), startsWith("SonarQube analysis reported 2 issues."),
+			isNull(String.class), isNull(String.class), isNull(String.class), isNull(String.class), isNull(String.class), isNull(String.class), isNull(Integer.class), isNull(Integer.class)
+		);
+		verify(apiMock).publishDraftNotes(projectId, iid);
+	}
+
+	@Test
+	public void testProcessPositionsUnchangedLinesByOldLine() throws Exception {
+		HunkRangeParser parser = new HunkRangeParser(true);
+		parser.write("@@ -1,3 +1,4 @@\n a\n+b\n c\n d\n");
+		parser.close();
+		DiffLineMap lineMap = parser.getLineMap();
+		GitLabMergeRequestDiff mergeRequestDiff = mock(GitLabMergeRequestDiff.class);
+		when(mergeRequestDiff.getNewPath()).thenReturn(path);
+		when(mergeRequestDiff.getOldPath()).thenReturn("src/Old.java");
+		when(mergeRequestDiff.getLineMap()).thenReturn(lineMap);
+		when(version.getDiffs()).thenReturn(Collections.singletonList(mergeRequestDiff));
+
+		MappedIssue issueA = new MappedIssue(MockIssue.mockInlineIssue(path, 2, Severity.MAJOR, "Issue A"), diff, path);
+		MappedIssue issueB = new MappedIssue(MockIssue.mockInlineIssue(path, 4, Severity.MAJOR, "Issue B"), diff, path);
+		when(reportMock.getIssues()).thenReturn(Stream.of(issueA, issueB));
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+
+		verify(apiMock).createDraftNote(projectId, iid, ":exclamation: Issue A", "text", "base", "start", "head", "src/Old.java", path, null, 2);
+		verify(apiMock).createDraftNote(projectId, iid, ":exclamation: Issue B", "text", "base", "start", "head", "src/Old.java", path, 3, 4);
+	}
+
+	@Test
+	public void testProcessDoesNotFetchDiffsWithoutInlineNotes() throws Exception {
+		when(reportMock.getIssues()).thenReturn(Stream.empty());
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+
+		verify(apiMock, never()).getMergeRequestVersion(anyInt(), anyInt(), anyInt());
+	}
+
+	@Test
+	public void testProcessSkipsExistingNotes() throws Exception {
+		String summary = CommitCommenter.buildSummary(reportMock);
+		List<GitLabNote> notes = Arrays.asList(note(":exclamation: Issue A", path, 3), note(summary, null, null));
+		when(apiMock.getMergeRequestNotes(eq(projectId), eq(iid), anyInt(), anyInt())).thenAnswer(invocation -> MockPage.of(notes));
+		MappedIssue issue = new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue A"), diff, path);
+		when(reportMock.getIssues()).thenReturn(Stream.of(issue));
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+
+		verify(apiMock, never()).createDraftNote(anyInt(), anyInt(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyInt(), anyInt());
+		verify(apiMock, never()).publishDraftNotes(anyInt(), anyInt());
+	}
+
+	@Test
+	public void testProcessPublishesPendingDrafts() throws Exception {
+		String summary = CommitCommenter.buildSummary(reportMock);
+		List<GitLabDraftNote> drafts = Arrays.asList(draft(":exclamation: Issue A", path, 3), draft(summary, null, null));
+		when(apiMock.getDraftNotes(projectId, iid)).thenReturn(drafts);
+		MappedIssue issue = new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue A"), diff, path);
+		when(reportMock.getIssues()).thenReturn(Stream.of(issue));
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+
+		verify(apiMock, never()).createDraftNote(anyInt(), anyInt(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyInt(), anyInt());
+		verify(apiMock).publishDraftNotes(projectId, iid);
+	}
+
+	@Test
+	public void testProcessDoesNotPublishOnFailure() throws Exception {
+		MappedIssue issue = new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue A"), diff, path);
+		when(reportMock.getIssues()).thenReturn(Stream.of(issue));
+		doThrow(new BadRequestException()).when(apiMock)
+			.createDraftNote(projectId, iid, ":exclamation: Issue A", "text", "base", "start", "head", path, path, null, 3);
+
+		try {
+			new MergeRequestCommenter(apiMock, iid).process(reportMock);
+		} catch (ProcessException e) {
+			assertThat(e.getMessage(), containsString("src/Main.java:3"));
+			verify(apiMock, never()).publishDraftNotes(anyInt(), anyInt());
+			return;
+		}
+
+		throw new AssertionError("ProcessException should have been thrown.");
+	}
+
+	@Test
+	public void testProcessWithoutVersions() throws Exception {
+		thrown.expect(ProcessException.class);
+		thrown.expectMessage("no diff");
+
+		when(apiMock.getMergeRequestVersions(projectId, iid)).thenReturn(Collections.emptyList());
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+	}
+
+	@Test
+	public void testProcessFailOnFetchingVersions() throws Exception {
+		thrown.expect(ProcessException.class);
+		thrown.expectCause(isA(ProcessingException.class));
+
+		doThrow(new ProcessingException("Connection reset")).when(apiMock).getMergeRequestVersions(projectId, iid);
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+	}
+
+	@Test
+	public void testProcessFailOnFetchingNotes() throws Exception {
+		thrown.expect(IllegalStateException.class);
+		thrown.expectCause(isA(ProcessingException.class));
+
+		doThrow(new ProcessingException("Connection reset")).when(apiMock).getMergeRequestNotes(projectId, iid, 1, 100);
+
+		new MergeRequestCommenter(apiMock, iid).process(reportMock);
+	}
+
+	@Test
+	public void testProcessAgainstStubServer() throws Exception {
+		List<String> requests = new CopyOnWriteArrayList<>();
+		List<Map<String, String>> drafts = new CopyOnWriteArrayList<>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/v4/projects/42/merge_requests/7", exchange -> {
+			String route = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+			requests.add(route);
+			switch (route) {
+				case "GET /api/v4/projects/42/merge_requests/7/versions":
+					respond(exchange, "[{\"id\":2,\"base_commit_sha\":\"base\",\"start_commit_sha\":\"start\",\"head_commit_sha\":\"head\"},{\"id\":1}]");
+					break;
+				case "GET /api/v4/projects/42/merge_requests/7/versions/2":
+					respond(exchange, "{\"id\":2,\"diffs\":[{\"old_path\":\"src/Old.java\",\"new_path\":\"src/Main.java\","
+						+ "\"diff\":\"@@ -1,3 +1,4 @@\\n a\\n+b\\n c\\n d\\n\"}]}");
+					break;
+				case "GET /api/v4/projects/42/merge_requests/7/notes":
+					respond(exchange, "[{\"id\":1,\"body\":\":exclamation: Issue B\",\"position\":{\"new_path\":\"src/Main.java\",\"new_line\":5}}]");
+					break;
+				case "GET /api/v4/projects/42/merge_requests/7/draft_notes":
+					respond(exchange, "[]");
+					break;
+				case "POST /api/v4/projects/42/merge_requests/7/draft_notes":
+					Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+					if ("3".equals(parameters.get("position[new_line]")) && !"2".equals(parameters.get("position[old_line]"))) {
+						// GitLab rejects a note on an unchanged line which isn't positioned by both lines.
+						exchange.sendResponseHeaders(400, -1);
+						exchange.close();
+						break;
+					}
+					drafts.add(parameters);
+					respond(exchange, "{}");
+					break;
+				case "POST /api/v4/projects/42/merge_requests/7/draft_notes/bulk_publish":
+					exchange.sendResponseHeaders(204, -1);
+					exchange.close();
+					break;
+				default:
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+			}
+		});
+		server.start();
+
+		Settings settings = new Settings();
+		settings.setProperty(GitLabPlugin.GITLAB_INSTANCE_URL, "http://localhost:" + server.getAddress().getPort());
+		settings.setProperty(GitLabPlugin.GITLAB_AUTH_TOKEN, "secure");
+		GitLabPluginConfiguration configuration = new GitLabPluginConfiguration(settings);
+		try {
+			MappedIssue issueA = new MappedIssue(MockIssue.mockInlineIssue(path, 3, Severity.MAJOR, "Issue A"), diff, path);
+			MappedIssue issueB = new MappedIssue(MockIssue.mockInlineIssue(path, 5, Severity.MAJOR, "Issue B"), diff, path);
+			when(reportMock.getIssues()).thenReturn(Stream.of(issueA, issueB));
+
+			new MergeRequestCommenter(configuration.createGitLabConnection(), iid).process(reportMock);
+		} finally {
+			configuration.stop();
+			server.stop(0);
+		}
+
+		assertThat("Only the new issue and the summary should be drafted.", drafts.size(), equalTo(2));
+		Map<String, String> draft = drafts.get(0);
+		assertThat(draft, hasEntry("note", ":exclamation: Issue A"));
+		assertThat(draft, hasEntry("position[position_type]", "text"));
+		assertThat(draft, hasEntry("position[base_sha]", "base"));
+		assertThat(draft, hasEntry("position[start_sha]", "start"));
+		assertThat(draft, hasEntry("position[head_sha]", "head"));
+		assertThat(draft, hasEntry("position[old_path]", "src/Old.java"));
+		assertThat(draft, hasEntry("position[new_path]", path));
+		assertThat("The unchanged line should also be positioned by its old line.", draft, hasEntry("position[old_line]", "2"));
+		assertThat(draft, hasEntry("position[new_line]", "3"));
+		assertThat("The summary should not be positioned on the diff.", drafts.get(1).keySet(), contains("note"));
+		assertThat(
+			"The drafts should be published with a single request after they have been created.",
+			requests.stream().filter(request -> request.endsWith("/bulk_publish")).count(),
+			equalTo(1L)
+		);
+		assertThat(requests.get(requests.size() - 1), equalTo("POST /api/v4/projects/42/merge_requests/7/draft_notes/bulk_publish"));
+	}
+
+	private static void respond(HttpExchange exchange, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream outputStream = exchange.getResponseBody()) {
+			outputStream.write(body);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws IOException {
+		Map<String, String> parameters = new LinkedHashMap<>();
+		for (String parameter : query.split("&")) {
+			String[] pair = parameter.split("=", 2);
+			parameters.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+		}
+		return parameters;
+	}
+
+	private static GitLabNote note(String body, String path, Integer line) {
+		GitLabNote note = mock(GitLabNote.class);
+		when(note.getBody()).thenReturn(body);
+		GitLabNotePosition position = position(path, line);
+		when(note.getPosition()).thenReturn(position);
+		return note;
+	}
+
+	private static GitLabDraftNote draft(String body, String path, Integer line) {
+		GitLabDraftNote draft = mock(GitLabDraftNote.class);
+		when(draft.getNote()).thenReturn(body);
+		GitLabNotePosition position = position(path, line);
+		when(draft.getPosition()).thenReturn(position);
+		return draft;
+	}
+
+	private static GitLabNotePosition position(String path, Integer line) {
+		if (path == null) {
+			return null;
+		}
+
+		GitLabNotePosition position = mock(GitLabNotePosition.class);
+		when(position.getNewPath()).thenReturn(path);
+		when(position.getNewLine()).thenReturn(line);
+		return position;
+	}
+}
@@ -1,7 +1,7 @@
 package org.johnnei.sgp.internal.gitlab;
 
 import java.io.IOException;
-import java.util.stream.Stream;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -73,14 +73,12 @@ public class PipelineBreakerTest {
 
 		String hash = "a2b4";
 
-		SonarReport reportMock = mock(SonarReport.class);
-		when(reportMock.getIssues()).thenReturn(Stream.empty());
-		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		SonarReport report = createReport(hash);
 
 		when(gitlabApiMock.createCommitStatus(anyInt(), anyString(), anyString(), anyString(), anyString())).thenThrow(new IOException(
 			"Test exception path"));
 
-		cut.process(reportMock);
+		cut.process(report);
 	}
 
 	@Test
@@ -89,15 +87,13 @@ public class PipelineBreakerTest {
 
 		String hash = "a2b4";
 
-		SonarReport reportMock = mock(SonarReport.class);
 		MappedIssue infoIssue = mockIssue(Severity.INFO);
 		MappedIssue minorIssue = mockIssue(Severity.MINOR);
 		MappedIssue majorIssue = mockIssue(Severity.MAJOR);
 
-		when(reportMock.getIssues()).thenReturn(Stream.of(infoIssue, minorIssue, majorIssue));
-		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		SonarReport report = createReport(hash, infoIssue, minorIssue, majorIssue);
 
-		cut.process(reportMock);
+		cut.process(report);
 
 		verify(gitlabApiMock).createCommitStatus(42, hash, "success", "SonarQube", "No critical (or worse) issues found.");
 	}
@@ -108,15 +104,13 @@ public class PipelineBreakerTest {
 
 		String hash = "a2b4";
 
-		SonarReport reportMock = mock(SonarReport.class);
 		MappedIssue infoIssue = mockIssue(Severity.INFO);
 		MappedIssue minorIssue = mockIssue(Severity.MINOR);
 		MappedIssue criticalIssue = mockIssue(Severity.CRITICAL);
 
-		when(reportMock.getIssues()).thenReturn(Stream.of(infoIssue, minorIssue, criticalIssue));
-		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		SonarReport report = createReport(hash, infoIssue, minorIssue, criticalIssue);
 
-		cut.process(reportMock);
+		cut.process(report);
 
 		verify(gitlabApiMock).createCommitStatus(42, hash, "failed", "SonarQube", "A critical or worse issue has been found.");
 	}
@@ -127,19 +121,25 @@ public class PipelineBreakerTest {
 
 		String hash = "a2b4";
 
-		SonarReport reportMock = mock(SonarReport.class);
 		MappedIssue infoIssue = mockIssue(Severity.INFO);
 		MappedIssue minorIssue = mockIssue(Severity.MINOR);
 		MappedIssue blockerIssue = mockIssue(Severity.BLOCKER);
 
-		when(reportMock.getIssues()).thenReturn(Stream.of(infoIssue, minorIssue, blockerIssue));
-		when(reportMock.getBuildCommitSha()).thenReturn(hash);
+		SonarReport report = createReport(hash, infoIssue, minorIssue, blockerIssue);
 
-		cut.process(reportMock);
+		cut.process(report);
 
 		verify(gitlabApiMock).createCommitStatus(42, hash, "failed", "SonarQube", "A critical or worse issue has been found.");
 	}
 
+	private SonarReport createReport(String hash, MappedIssue... issues) {
+		return new SonarReport.Builder()
+			.setBuildCommitSha(hash)
+			.setProject(projectMock)
+			.setIssues(Arrays.asList(issues))
+			.build();
+	}
+
 	private MappedIssue mockIssue(Severity severity) {
 		PostJobIssue issueMock = mock(PostJobIssue.class);
 		when(issueMock.severity()).thenReturn(severity);
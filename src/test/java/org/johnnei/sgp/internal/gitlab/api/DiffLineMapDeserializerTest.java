@@ -0,0 +1,51 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import java.util.OptionalInt;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabMergeRequestDiff;
+import org.johnnei.sgp.internal.model.diff.DiffLineMap;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiffLineMapDeserializerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	@Test
+	public void testDeserialize() throws Exception {
+		String json = "{\"old_path\":\"src/Old.java\",\"new_path\":\"src/Main.java\",\"diff\":\"@@ -1,2 +1,3 @@\\n a\\n+b\\n c\\n\"}";
+
+		GitLabMergeRequestDiff diff = mapper.readValue(json, GitLabMergeRequestDiff.class);
+
+		assertThat(diff.getOldPath(), equalTo("src/Old.java"));
+		assertThat(diff.getNewPath(), equalTo("src/Main.java"));
+		assertThat(diff.getLineMap().getOldLine(2), equalTo(OptionalInt.empty()));
+		assertThat(diff.getLineMap().getOldLine(3), equalTo(OptionalInt.of(2)));
+	}
+
+	@Test
+	public void testDeserializeNull() throws Exception {
+		GitLabMergeRequestDiff diff = mapper.readValue("{\"diff\":null}", GitLabMergeRequestDiff.class);
+
+		assertThat(diff.getLineMap(), sameInstance(DiffLineMap.empty()));
+	}
+
+	@Test
+	public void testDeserializeMissing() throws Exception {
+		GitLabMergeRequestDiff diff = mapper.readValue("{\"new_path\":\"file\"}", GitLabMergeRequestDiff.class);
+
+		assertThat(diff.getLineMap(), sameInstance(DiffLineMap.empty()));
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testDeserializeNonString() throws Exception {
+		mapper.readValue("{\"diff\":5}", GitLabMergeRequestDiff.class);
+	}
+}
@@ -0,0 +1,66 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+
+public class HunkRangeDeserializerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	@Test
+	public void testDeserialize() throws Exception {
+		String json = "{\"new_path\":\"src/Main.java\",\"diff\":\"--- a/src/Main.java\\n+++ b/src/Main.java\\n"
+			+ "@@ -1,2 +1,3 @@ class \\\"Main\\\" {\\n \\u0041\\n+b\\n@@ -10 +11,4 @@\\n+c\\n\",\"deleted_file\":false}";
+
+		GitLabCommitDiff diff = mapper.readValue(json, GitLabCommitDiff.class);
+
+		assertThat(diff.getNewPath(), equalTo("src/Main.java"));
+		assertThat(diff.getHunkRanges(), contains(new HunkRange(1, 3), new HunkRange(11, 4)));
+	}
+
+	@Test
+	public void testDeserializeLargeDiff() throws Exception {
+		StringBuilder json = new StringBuilder("{\"diff\":\"--- a/file\\n+++ b/file\\n");
+		for (int i = 0; i < 1000; i++) {
+			json.append("@@ -").append(i * 10 + 1).append(",1 +").append(i * 10 + 1).append(",2 @@\\n");
+			for (int j = 0; j < 20; j++) {
+				json.append("+some added line of code which makes the diff large\\n");
+			}
+		}
+		json.append("\"}");
+
+		GitLabCommitDiff diff = mapper.readValue(json.toString(), GitLabCommitDiff.class);
+
+		assertThat(diff.getHunkRanges().size(), equalTo(1000));
+		assertThat(diff.getHunkRanges().get(999), equalTo(new HunkRange(9991, 2)));
+	}
+
+	@Test
+	public void testDeserializeNull() throws Exception {
+		GitLabCommitDiff diff = mapper.readValue("{\"diff\":null}", GitLabCommitDiff.class);
+
+		assertThat(diff.getHunkRanges(), empty());
+	}
+
+	@Test
+	public void testDeserializeMissing() throws Exception {
+		GitLabCommitDiff diff = mapper.readValue("{\"new_path\":\"file\"}", GitLabCommitDiff.class);
+
+		assertThat(diff.getHunkRanges(), empty());
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testDeserializeNonString() throws Exception {
+		mapper.readValue("{\"diff\":5}", GitLabCommitDiff.class);
+	}
+}
@@ -0,0 +1,34 @@
+package org.johnnei.sgp.internal.gitlab.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+
+public class HunkRangeSerializerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		String json = "{\"new_path\":\"src/Main.java\",\"diff\":\"--- a/src/Main.java\\n+++ b/src/Main.java\\n"
+			+ "@@ -1,2 +1,3 @@\\n a\\n+b\\n@@ -10 +11 @@\\n+c\\n@@ -20,1 +22,0 @@\\n-d\\n\"}";
+
+		GitLabCommitDiff diff = mapper.readValue(mapper.writeValueAsString(mapper.readValue(json, GitLabCommitDiff.class)), GitLabCommitDiff.class);
+
+		assertThat(diff.getHunkRanges(), contains(new HunkRange(1, 3), new HunkRange(11, 1), new HunkRange(22, 0)));
+	}
+
+	@Test
+	public void testRoundTripWithoutHunks() throws Exception {
+		GitLabCommitDiff diff = mapper.readValue(mapper.writeValueAsString(mapper.readValue("{\"new_path\":\"file\"}", GitLabCommitDiff.class)), GitLabCommitDiff.class);
+
+		assertThat(diff.getHunkRanges(), empty());
+	}
+}
@@ -0,0 +1,61 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpensAfterThreshold() {
+		CircuitBreaker cut = new CircuitBreaker(3, 1000, Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+
+		cut.onFailure();
+		cut.onFailure();
+		assertThat("Below the threshold requests should pass.", cut.allowRequest(), is(true));
+
+		cut.onFailure();
+		assertThat("Circuit should be open.", cut.allowRequest(), is(false));
+	}
+
+	@Test
+	public void testSuccessResetsFailures() {
+		CircuitBreaker cut = new CircuitBreaker(2, 1000, Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+
+		cut.onFailure();
+		cut.onSuccess();
+		cut.onFailure();
+
+		assertThat("Failures are not consecutive.", cut.allowRequest(), is(true));
+	}
+
+	@Test
+	public void testHalfOpen() {
+		Clock clock = mock(Clock.class);
+		when(clock.millis()).thenReturn(0L);
+		CircuitBreaker cut = new CircuitBreaker(1, 1000, clock);
+
+		cut.onFailure();
+		assertThat(cut.allowRequest(), is(false));
+
+		when(clock.millis()).thenReturn(1000L);
+		assertThat("A trial request should be allowed.", cut.allowRequest(), is(true));
+		assertThat("Only one trial request at a time.", cut.allowRequest(), is(false));
+
+		cut.onFailure();
+		assertThat("Failed trial should reopen the circuit.", cut.allowRequest(), is(false));
+
+		when(clock.millis()).thenReturn(2000L);
+		assertThat(cut.allowRequest(), is(true));
+		cut.onSuccess();
+		assertThat("Successful trial should close the circuit.", cut.allowRequest(), is(true));
+		assertThat(cut.allowRequest(), is(true));
+	}
+}
@@ -0,0 +1,103 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitlabCommitStatus;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.isA;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExecutorAsyncGitLabApiTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private ExecutorService executor;
+
+	private GitLabApi gitlabApiMock;
+
+	private ExecutorAsyncGitLabApi cut;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(2);
+		gitlabApiMock = mock(GitLabApi.class);
+		cut = new ExecutorAsyncGitLabApi(gitlabApiMock, executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testGetCommitComments() throws Exception {
+		Response page = mock(Response.class);
+		when(gitlabApiMock.getCommitComments(5, "a2b4", 2, 100)).thenReturn(page);
+
+		assertThat("Result of the blocking call should be returned.", cut.getCommitComments(5, "a2b4", 2, 100).get(), sameInstance(page));
+	}
+
+	@Test
+	public void testGetCommitDiffs() throws Exception {
+		Response page = mock(Response.class);
+		when(gitlabApiMock.getCommitDiffs(5, "a2b4", 1, 100)).thenReturn(page);
+
+		assertThat("Result of the blocking call should be returned.", cut.getCommitDiffs(5, "a2b4", 1, 100).get(), sameInstance(page));
+	}
+
+	@Test
+	public void testCreateCommitComment() throws Exception {
+		cut.createCommitComment(5, "a2b4", "note", "src/Main.java", 3, "new").get();
+
+		verify(gitlabApiMock).createCommitComment(5, "a2b4", "note", "src/Main.java", 3, "new");
+	}
+
+	@Test
+	public void testCreateCommitStatus() throws Exception {
+		GitlabCommitStatus status = mock(GitlabCommitStatus.class);
+		when(gitlabApiMock.createCommitStatus(5, "a2b4", "success", "SonarQube", "Fine")).thenReturn(status);
+
+		assertThat("Result of the blocking call should be returned.", cut.createCommitStatus(5, "a2b4", "success", "SonarQube", "Fine").get(), equalTo(status));
+	}
+
+	@Test
+	public void testFailureCompletesExceptionally() throws Exception {
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(isA(IOException.class));
+
+		doThrow(new IOException("Test exception path")).when(gitlabApiMock).createCommitComment(5, "a2b4", "note", null, null, null);
+
+		CompletableFuture<Void> future = cut.createCommitComment(5, "a2b4", "note", null, null, null);
+		future.get();
+	}
+
+	@Test
+	public void testErrorResponseCompletesExceptionally() throws Exception {
+		thrown.expect(ExecutionException.class);
+		thrown.expectCause(isA(ServerErrorException.class));
+
+		doThrow(new ServerErrorException(Response.Status.BAD_GATEWAY)).when(gitlabApiMock).createCommitComment(5, "a2b4", "note", null, null, null);
+
+		cut.createCommitComment(5, "a2b4", "note", null, null, null).get();
+	}
+
+}
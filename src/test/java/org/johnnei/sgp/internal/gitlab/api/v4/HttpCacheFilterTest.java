@@ -0,0 +1,184 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.RuntimeDelegate;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.johnnei.sgp.internal.cache.HttpResponseCache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class HttpCacheFilterTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final List<String> receivedEntityTags = new ArrayList<>();
+
+	private HttpServer server;
+
+	private ResteasyClient client;
+
+	private String entityTag;
+
+	private String body;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/v4/projects", this::handle);
+		server.start();
+
+		RuntimeDelegate.setInstance(new ResteasyProviderFactory());
+		HttpResponseCache cache = new HttpResponseCache(temporaryFolder.getRoot().toPath(), 1024 * 1024, 60_000);
+		client = new ResteasyClientBuilder()
+			.register(new HttpCacheFilter(cache, "token"))
+			.build();
+
+		entityTag = "W/\"v1\"";
+		body = "[{\"id\":1}]";
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void testRevalidatesCachedResponse() {
+		assertThat(get(), equalTo("[{\"id\":1}]"));
+
+		Response response = client.target(getUri()).request().get();
+		try {
+			assertThat("Cached response should be served on 304.", response.getStatus(), equalTo(200));
+			assertThat(response.readEntity(String.class), equalTo("[{\"id\":1}]"));
+			assertThat("Pagination headers should be restored.", response.getHeaderString("X-Next-Page"), equalTo("2"));
+		} finally {
+			response.close();
+		}
+
+		assertThat(receivedEntityTags, contains(null, "W/\"v1\""));
+	}
+
+	@Test
+	public void testReplacesChangedResponse() {
+		get();
+		entityTag = "W/\"v2\"";
+		body = "[{\"id\":2}]";
+
+		assertThat(get(), equalTo("[{\"id\":2}]"));
+		assertThat(get(), equalTo("[{\"id\":2}]"));
+		assertThat(receivedEntityTags, contains(null, "W/\"v1\"", "W/\"v2\""));
+	}
+
+	@Test
+	public void testIgnoresResponseWithoutValidators() {
+		entityTag = null;
+
+		get();
+		get();
+
+		assertThat("Responses which can't be revalidated should not be cached.", receivedEntityTags, equalTo(Arrays.asList(null, null)));
+	}
+
+	@Test
+	public void testIgnoresDiffs() {
+		String[] diffPaths = {
+			"/api/v4/projects/1/repository/commits/a2b4/diff?page=1",
+			"/api/v4/projects/1/repository/compare?from=master&to=a2b4",
+			"/api/v4/projects/1/merge_requests/7/versions/2"
+		};
+
+		for (String path : diffPaths) {
+			String uri = String.format("http://localhost:%d%s", server.getAddress().getPort(), path);
+			client.target(uri).request().get(String.class);
+			client.target(uri).request().get(String.class);
+		}
+
+		assertThat(
+			"Diffs should be streamed instead of cached.",
+			receivedEntityTags,
+			equalTo(Arrays.asList(null, null, null, null, null, null))
+		);
+	}
+
+	@Test
+	public void testCachesMergeRequestVersions() {
+		String uri = String.format("http://localhost:%d/api/v4/projects/1/merge_requests/7/versions", server.getAddress().getPort());
+
+		client.target(uri).request().get(String.class);
+		client.target(uri).request().get(String.class);
+
+		assertThat(receivedEntityTags, contains(null, "W/\"v1\""));
+	}
+
+	@Test
+	public void testIgnoresOtherMethods() throws Exception {
+		HttpResponseCache cache = mock(HttpResponseCache.class);
+		ClientRequestContext request = mock(ClientRequestContext.class);
+		when(request.getMethod()).thenReturn("POST");
+
+		HttpCacheFilter cut = new HttpCacheFilter(cache, "token");
+		cut.filter(request);
+		cut.filter(request, mock(ClientResponseContext.class));
+
+		verifyZeroInteractions(cache);
+	}
+
+	private String get() {
+		return client.target(getUri()).request().get(String.class);
+	}
+
+	private String getUri() {
+		return String.format("http://localhost:%d/api/v4/projects?page=1", server.getAddress().getPort());
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String received = exchange.getRequestHeaders().getFirst("If-None-Match");
+		receivedEntityTags.add(received);
+
+		if (entityTag != null && entityTag.equals(received)) {
+			exchange.getResponseHeaders().put("ETag", Collections.singletonList(entityTag));
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().put("Content-Type", Collections.singletonList("application/json"));
+		exchange.getResponseHeaders().put("X-Next-Page", Collections.singletonList("2"));
+		if (entityTag != null) {
+			exchange.getResponseHeaders().put("ETag", Collections.singletonList(entityTag));
+		}
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import org.johnnei.sgp.test.MockPage;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PageIteratorTest {
+
+	private static final GenericType<List<String>> STRING_LIST = new GenericType<List<String>>() {};
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testStreamFollowsNextPageHeader() {
+		Response firstPage = MockPage.of(Arrays.asList("a", "b"), "2");
+		Response secondPage = MockPage.of(Collections.singletonList("c"), "");
+		IntFunction<Response> fetcher = mockFetcher();
+		when(fetcher.apply(1)).thenReturn(firstPage);
+		when(fetcher.apply(2)).thenReturn(secondPage);
+
+		List<String> items = PageIterator.stream(fetcher, STRING_LIST).collect(Collectors.toList());
+
+		assertThat("Items of all pages should be returned in order.", items, equalTo(Arrays.asList("a", "b", "c")));
+		verify(firstPage).close();
+		verify(secondPage).close();
+	}
+
+	@Test
+	public void testStreamIsLazy() {
+		Response firstPage = MockPage.of(Arrays.asList("a", "b"), "2");
+		IntFunction<Response> fetcher = mockFetcher();
+		when(fetcher.apply(1)).thenReturn(firstPage);
+
+		String first = PageIterator.stream(fetcher, STRING_LIST).findFirst().orElse(null);
+
+		assertThat("First item should be found.", first, equalTo("a"));
+		verify(fetcher, never()).apply(2);
+	}
+
+	@Test
+	public void testStreamSkipsEmptyPages() {
+		Response firstPage = MockPage.of(Collections.emptyList(), "2");
+		Response secondPage = MockPage.of(Collections.singletonList("a"), "");
+		IntFunction<Response> fetcher = mockFetcher();
+		when(fetcher.apply(1)).thenReturn(firstPage);
+		when(fetcher.apply(2)).thenReturn(secondPage);
+
+		assertThat("Item of the second page should be found.", PageIterator.stream(fetcher, STRING_LIST).count(), equalTo(1L));
+	}
+
+	@Test
+	public void testStreamStopsOnNonIncreasingPage() {
+		Response firstPage = MockPage.of(Collections.singletonList("a"), "1");
+		IntFunction<Response> fetcher = mockFetcher();
+		when(fetcher.apply(1)).thenReturn(firstPage);
+
+		assertThat("The same page should not be requested again.", PageIterator.stream(fetcher, STRING_LIST).count(), equalTo(1L));
+	}
+
+	@Test
+	public void testStreamFailsOnErrorStatus() {
+		thrown.expect(WebApplicationException.class);
+		thrown.expectMessage("page 1");
+
+		Response errorPage = mock(Response.class);
+		when(errorPage.getStatusInfo()).thenReturn(Response.Status.BAD_GATEWAY);
+		IntFunction<Response> fetcher = mockFetcher();
+		when(fetcher.apply(1)).thenReturn(errorPage);
+
+		PageIterator.stream(fetcher, STRING_LIST).count();
+	}
+
+	@Test
+	public void testGetNextPageFromLinkHeader() {
+		Response response = mock(Response.class);
+		Link link = mock(Link.class);
+		when(link.getUri()).thenReturn(URI.create("https://gitlab.example.com/api/v4/projects?per_page=100&page=3"));
+		when(response.getLink("next")).thenReturn(link);
+
+		assertThat("Page should have been read from the link.", PageIterator.getNextPage(response), equalTo(3));
+	}
+
+	@Test
+	public void testGetNextPageLastPage() {
+		Response response = mock(Response.class);
+		when(response.getHeaderString("X-Next-Page")).thenReturn("");
+
+		assertThat("There is no next page.", PageIterator.getNextPage(response), equalTo(0));
+	}
+
+	@Test
+	public void testGetTotal() {
+		Response response = mock(Response.class);
+		when(response.getHeaderString("X-Total")).thenReturn("42");
+		Response largeResponse = mock(Response.class);
+
+		assertThat(PageIterator.getTotal(response), equalTo(42));
+		assertThat("GitLab leaves the total out for large lists.", PageIterator.getTotal(largeResponse), equalTo(-1));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static IntFunction<Response> mockFetcher() {
+		return mock(IntFunction.class);
+	}
+}
@@ -0,0 +1,93 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RateLimitFilterTest {
+
+	@Test
+	public void testFilterRequestAcquiresPermit() throws Exception {
+		RateLimiter rateLimiter = mock(RateLimiter.class);
+
+		new RateLimitFilter(rateLimiter).filter(mock(ClientRequestContext.class));
+
+		verify(rateLimiter).acquire();
+	}
+
+	@Test(expected = IOException.class)
+	public void testFilterRequestInterrupted() throws Exception {
+		RateLimiter rateLimiter = mock(RateLimiter.class);
+		doThrow(new InterruptedException()).when(rateLimiter).acquire();
+
+		try {
+			new RateLimitFilter(rateLimiter).filter(mock(ClientRequestContext.class));
+		} finally {
+			assertThat("Interrupt flag should be restored.", Thread.interrupted(), equalTo(true));
+		}
+	}
+
+	@Test
+	public void testFilterResponseQuota() {
+		RateLimiter rateLimiter = mock(RateLimiter.class);
+		ClientResponseContext response = mock(ClientResponseContext.class);
+		when(response.getHeaderString(RateLimitFilter.REMAINING_HEADER)).thenReturn("42");
+		when(response.getHeaderString(RateLimitFilter.RESET_HEADER)).thenReturn("1500000060");
+
+		new RateLimitFilter(rateLimiter).filter(mock(ClientRequestContext.class), response);
+
+		verify(rateLimiter).onQuota(42, 1_500_000_060_000L);
+		verify(rateLimiter, never()).onRetryAfter(anyLong());
+	}
+
+	@Test
+	public void testFilterResponseWithoutHeaders() {
+		RateLimiter rateLimiter = mock(RateLimiter.class);
+
+		new RateLimitFilter(rateLimiter).filter(mock(ClientRequestContext.class), mock(ClientResponseContext.class));
+
+		verify(rateLimiter, never()).onQuota(anyLong(), anyLong());
+		verify(rateLimiter, never()).onRetryAfter(anyLong());
+	}
+
+	@Test
+	public void testFilterResponseRetryAfter() {
+		RateLimiter rateLimiter = mock(RateLimiter.class);
+		ClientResponseContext response = mock(ClientResponseContext.class);
+		when(response.getHeaderString(RateLimitFilter.RETRY_AFTER_HEADER)).thenReturn("3");
+
+		new RateLimitFilter(rateLimiter).filter(mock(ClientRequestContext.class), response);
+
+		verify(rateLimiter).onRetryAfter(3000);
+	}
+
+	@Test
+	public void testParseRetryAfterDate() {
+		String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+
+		assertThat(RateLimitFilter.parseRetryAfter(date), allOf(greaterThan(25_000L), lessThanOrEqualTo(30_000L)));
+	}
+
+	@Test
+	public void testParseRetryAfterMalformed() {
+		assertThat(RateLimitFilter.parseRetryAfter("soon"), equalTo(0L));
+		assertThat(RateLimitFilter.parseRetryAfter("-5"), equalTo(0L));
+	}
+}
@@ -0,0 +1,123 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class RateLimiterTest {
+
+	private final MutableClock clock = new MutableClock();
+
+	@Test
+	public void testUnlimited() {
+		RateLimiter cut = new RateLimiter(0, clock);
+
+		for (int i = 0; i < 1000; i++) {
+			assertThat("Permit should be given without waiting.", cut.tryAcquire(), equalTo(0L));
+		}
+	}
+
+	@Test
+	public void testTokenBucket() {
+		RateLimiter cut = new RateLimiter(2, clock);
+
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat("Bucket is empty, should wait for the next token.", cut.tryAcquire(), equalTo(500L));
+
+		clock.advance(500);
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat(cut.tryAcquire(), equalTo(500L));
+
+		clock.advance(10_000);
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat("Bucket should not refill beyond its capacity.", cut.tryAcquire(), equalTo(500L));
+	}
+
+	@Test
+	public void testQuotaExhausted() {
+		RateLimiter cut = new RateLimiter(0, clock);
+		cut.onQuota(0, clock.millis() + 30_000);
+
+		assertThat("Should wait until the quota resets.", cut.tryAcquire(), equalTo(30_000L));
+
+		clock.advance(30_000);
+		assertThat(cut.tryAcquire(), equalTo(0L));
+	}
+
+	@Test
+	public void testQuotaIsConsumedLocally() {
+		RateLimiter cut = new RateLimiter(0, clock);
+		cut.onQuota(RateLimiter.LOW_QUOTA + 1, clock.millis() + 60_000);
+
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat("Quota should now be low, but no request has been spread yet.", cut.tryAcquire(), equalTo(0L));
+		assertThat("Low quota should spread the next requests.", cut.tryAcquire(), greaterThan(0L));
+	}
+
+	@Test
+	public void testLowQuotaIsSpread() {
+		RateLimiter cut = new RateLimiter(0, clock);
+		cut.onQuota(4, clock.millis() + 2_000);
+
+		assertThat(cut.tryAcquire(), equalTo(0L));
+		assertThat("Remaining time should be divided over the remaining quota.", cut.tryAcquire(), equalTo(500L));
+
+		clock.advance(500);
+		assertThat(cut.tryAcquire(), equalTo(0L));
+	}
+
+	@Test
+	public void testRetryAfter() {
+		RateLimiter cut = new RateLimiter(0, clock);
+		cut.onRetryAfter(5_000);
+		cut.onRetryAfter(1_000);
+
+		assertThat("The longest pause should be respected.", cut.tryAcquire(), equalTo(5_000L));
+
+		clock.advance(5_000);
+		assertThat(cut.tryAcquire(), equalTo(0L));
+	}
+
+	@Test
+	public void testAcquire() throws Exception {
+		RateLimiter cut = new RateLimiter(1000);
+
+		for (int i = 0; i < 10; i++) {
+			cut.acquire();
+		}
+	}
+
+	private static final class MutableClock extends Clock {
+
+		private long millis = 1_500_000_000_000L;
+
+		void advance(long delta) {
+			millis += delta;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResilientGitLabApiTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private final GitLabApi apiMock = mock(GitLabApi.class);
+
+	private final ResilientGitLabApi cut = new ResilientGitLabApi(apiMock, new RetryPolicy(3, 1, 2), new CircuitBreaker(10, 60_000));
+
+	@Test
+	public void testRetryIdempotentRequest() throws Exception {
+		GitLabProject project = mock(GitLabProject.class);
+		when(apiMock.getProject(42))
+			.thenThrow(new ProcessingException(new SocketTimeoutException()))
+			.thenThrow(new ServerErrorException(502))
+			.thenReturn(project);
+
+		assertThat(cut.proxy().getProject(42), sameInstance(project));
+		assertThat(cut.getRetryCount(), equalTo(2));
+	}
+
+	@Test
+	public void testGiveUpAfterMaxRetries() throws Exception {
+		thrown.expect(ServerErrorException.class);
+
+		when(apiMock.getProject(42)).thenThrow(new ServerErrorException(502));
+
+		try {
+			cut.proxy().getProject(42);
+		} finally {
+			verify(apiMock, times(4)).getProject(42);
+			assertThat(cut.getRetryCount(), equalTo(3));
+		}
+	}
+
+	@Test
+	public void testDontRetryClientErrors() throws Exception {
+		thrown.expect(NotFoundException.class);
+
+		when(apiMock.getProject(42)).thenThrow(new NotFoundException());
+
+		try {
+			cut.proxy().getProject(42);
+		} finally {
+			verify(apiMock, times(1)).getProject(42);
+		}
+	}
+
+	@Test
+	public void testDontRetryNonIdempotentRequestAfterBadGateway() throws Exception {
+		thrown.expect(ServerErrorException.class);
+
+		doThrow(new ServerErrorException(502)).when(apiMock).createCommitComment(anyInt(), anyString(), anyString(), anyString(), anyInt(), anyString());
+
+		try {
+			cut.proxy().createCommitComment(42, "a2b4", "note", "path", 1, "new");
+		} finally {
+			verify(apiMock, times(1)).createCommitComment(42, "a2b4", "note", "path", 1, "new");
+		}
+	}
+
+	@Test
+	public void testRetryNonIdempotentRequestWhenNotProcessed() throws Exception {
+		doThrow(new ServerErrorException(503))
+			.doThrow(new ClientErrorException(429))
+			.doThrow(new ProcessingException(new ConnectException()))
+			.doNothing()
+			.when(apiMock).createCommitComment(anyInt(), anyString(), anyString(), isNull(String.class), isNull(Integer.class), isNull(String.class));
+
+		cut.proxy().createCommitComment(42, "a2b4", "note", null, null, null);
+
+		verify(apiMock, times(4)).createCommitComment(42, "a2b4", "note", null, null, null);
+		assertThat(cut.getRetryCount(), equalTo(3));
+	}
+
+	@Test
+	public void testDontRetryNonIdempotentRequestAfterTimeout() throws Exception {
+		thrown.expect(ProcessingException.class);
+
+		doThrow(new ProcessingException(new SocketTimeoutException()))
+			.when(apiMock).createCommitComment(anyInt(), anyString(), anyString(), anyString(), anyInt(), anyString());
+
+		try {
+			cut.proxy().createCommitComment(42, "a2b4", "note", "path", 1, "new");
+		} finally {
+			verify(apiMock, times(1)).createCommitComment(42, "a2b4", "note", "path", 1, "new");
+		}
+	}
+
+	@Test
+	public void testRetryFailedResponse() throws Exception {
+		Response failed = mock(Response.class);
+		when(failed.getStatus()).thenReturn(504);
+		Response ok = mock(Response.class);
+		when(ok.getStatus()).thenReturn(200);
+		when(apiMock.getCommitDiffs(anyLong(), anyString(), anyInt(), anyInt())).thenReturn(failed, ok);
+
+		assertThat(cut.proxy().getCommitDiffs(42, "a2b4", 1, 100), sameInstance(ok));
+		verify(failed).close();
+	}
+
+	@Test
+	public void testReturnFailedResponseAfterMaxRetries() throws Exception {
+		Response failed = mock(Response.class);
+		when(failed.getStatus()).thenReturn(500);
+		when(apiMock.getCommitDiffs(anyLong(), anyString(), anyInt(), anyInt())).thenReturn(failed);
+
+		assertThat(cut.proxy().getCommitDiffs(42, "a2b4", 1, 100), sameInstance(failed));
+		verify(apiMock, times(4)).getCommitDiffs(42, "a2b4", 1, 100);
+	}
+
+	@Test
+	public void testCircuitBreakerOpens() throws Exception {
+		thrown.expect(CircuitBreakerOpenException.class);
+
+		ResilientGitLabApi cut = new ResilientGitLabApi(apiMock, new RetryPolicy(0, 1, 1), new CircuitBreaker(2, 60_000));
+		GitLabApi api = cut.proxy();
+		when(apiMock.getProject(42)).thenThrow(new ServerErrorException(500));
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				api.getProject(42);
+			} catch (ServerErrorException e) {
+				// Expected failure which trips the circuit breaker.
+			}
+		}
+
+		try {
+			api.getProject(42);
+		} finally {
+			verify(apiMock, times(2)).getProject(42);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.johnnei.sgp.internal.gitlab.api.v4;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class RetryPolicyTest {
+
+	@Test
+	public void testCanRetry() {
+		RetryPolicy cut = new RetryPolicy(2, 100, 1000);
+
+		assertThat(cut.canRetry(0), is(true));
+		assertThat(cut.canRetry(1), is(true));
+		assertThat(cut.canRetry(2), is(false));
+	}
+
+	@Test
+	public void testGetBackoff() {
+		RetryPolicy cut = new RetryPolicy(10, 100, 1000);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(cut.getBackoff(0), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(100L)));
+			assertThat(cut.getBackoff(2), allOf(greaterThanOrEqualTo(200L), lessThanOrEqualTo(400L)));
+			assertThat("Backoff should be capped.", cut.getBackoff(8), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(1000L)));
+			assertThat("Backoff should not overflow.", cut.getBackoff(100), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(1000L)));
+		}
+	}
+}
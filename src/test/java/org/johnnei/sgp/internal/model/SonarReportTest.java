@@ -1,6 +1,7 @@
 package org.johnnei.sgp.internal.model;
 
 import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +12,7 @@ import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -48,6 +50,29 @@ public class SonarReportTest {
 		assertThat("No info issues are available", cut.countIssuesWithSeverity(Severity.INFO), equalTo(0L));
 	}
 
+	@Test
+	public void testGetIssuesOrderedBySeverity() throws Exception {
+		UnifiedDiff diff = mock(UnifiedDiff.class);
+		MappedIssue firstMajor = mockIssue(Severity.MAJOR, diff);
+		MappedIssue blocker = mockIssue(Severity.BLOCKER, diff);
+		MappedIssue info = mockIssue(Severity.INFO, diff);
+		MappedIssue secondMajor = mockIssue(Severity.MAJOR, diff);
+
+		cut = new SonarReport.Builder()
+			.setBuildCommitSha("a2b4")
+			.setProject(mock(GitLabProject.class))
+			.setIssues(Arrays.asList(firstMajor, blocker, info, secondMajor))
+			.build();
+
+		assertThat(
+			"Issues should be ordered from low to high severity and keep their order within a severity.",
+			cut.getIssues().collect(Collectors.toList()),
+			contains(info, firstMajor, secondMajor, blocker)
+		);
+		assertThat("The issues should be streamable multiple times.", cut.getIssues().count(), equalTo(4L));
+		assertThat(cut.countIssuesWithSeverity(Severity.MAJOR), equalTo(2L));
+	}
+
 	@Test
 	public void testGetIssueCount() throws Exception {
 		assertThat("2 issues were in the collection.", cut.getIssueCount(), equalTo(2));
@@ -84,4 +109,10 @@ public class SonarReportTest {
 		assertThat("2 issues were in the collection.", cut.getCommitShas().count(), equalTo(2L));
 	}
 
+	private static MappedIssue mockIssue(Severity severity, UnifiedDiff diff) {
+		PostJobIssue issueMock = mock(PostJobIssue.class);
+		when(issueMock.severity()).thenReturn(severity);
+		return new MappedIssue(issueMock, diff, "");
+	}
+
 }
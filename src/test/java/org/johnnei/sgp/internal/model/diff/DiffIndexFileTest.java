@@ -0,0 +1,210 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiffIndexFileTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testGetDiffs() throws Exception {
+		List<HunkRange> ranges = Arrays.asList(new HunkRange(20, 3), new HunkRange(5, 0));
+		DiffIndexFile cut = createIndex(Arrays.asList(new UnifiedDiff("a2b4", "src/Main.java", ranges), createDiff("b2b4", "src/Other.java")));
+
+		List<UnifiedDiff> diffs = cut.getDiffs(mockFile("/project/src/Main.java"));
+		assertThat(labels(diffs), contains("a2b4:src/Main.java"));
+		assertThat("Ranges should be restored in order.", new ArrayList<>(diffs.get(0).getRanges()), equalTo(ranges));
+		assertThat(diffs.get(0).getHunkIndex().containsLine(21), is(true));
+		assertThat(labels(cut.getDiffs(mockFile("/project/src/Other.java"))), contains("b2b4:src/Other.java"));
+		assertThat(cut.getDiffs(mockFile("/project/src/Unchanged.java")), empty());
+	}
+
+	@Test
+	public void testGetDiffsWindowsPath() throws Exception {
+		DiffIndexFile cut = createIndex(Collections.singletonList(createDiff("a2b4", "src/Main.java")));
+
+		assertThat(labels(cut.getDiffs(mockFile("D:\\project\\src\\Main.java"))), contains("a2b4:src/Main.java"));
+	}
+
+	@Test
+	public void testGetDiffsOnlyMatchesWholeSegments() throws Exception {
+		DiffIndexFile cut = createIndex(Collections.singletonList(createDiff("a2b4", "Main.java")));
+
+		assertThat(cut.getDiffs(mockFile("/project/src/OtherMain.java")), empty());
+	}
+
+	@Test
+	public void testGetDiffsKeepsOrderOfDiffs() throws Exception {
+		DiffIndexFile cut = createIndex(Arrays.asList(
+			createDiff("a2b4", "src/Main.java"),
+			createDiff("b2b4", "module/src/Main.java"),
+			createDiff("c2b4", "src/Main.java")
+		));
+
+		assertThat(
+			labels(cut.getDiffs(mockFile("/project/module/src/Main.java"))),
+			contains("a2b4:src/Main.java", "b2b4:module/src/Main.java", "c2b4:src/Main.java")
+		);
+	}
+
+	@Test
+	public void testGetDiffsSharesDiffInstances() throws Exception {
+		DiffIndexFile cut = createIndex(Collections.singletonList(createDiff("a2b4", "src/Main.java")));
+		InputFile file = mockFile("/project/src/Main.java");
+
+		assertThat("Issues on the same diff should share it.", cut.getDiffs(file).get(0), sameInstance(cut.getDiffs(file).get(0)));
+		assertThat(cut.findDiff(file, 1).get(), sameInstance(cut.getDiffs(file).get(0)));
+	}
+
+	@Test
+	public void testFindDiff() throws Exception {
+		DiffIndexFile cut = createIndex(Arrays.asList(
+			new UnifiedDiff("a2b4", "src/Main.java", Arrays.asList(new HunkRange(40, 5), new HunkRange(10, 3), new HunkRange(12, 4))),
+			new UnifiedDiff("b2b4", "src/Main.java", Collections.singletonList(new HunkRange(20, 2))),
+			createDiff("c2b4", "src/Other.java")
+		));
+		InputFile file = mockFile("/project/src/Main.java");
+
+		assertThat(label(cut.findDiff(file, 10)), equalTo("a2b4:src/Main.java"));
+		assertThat("Overlapping ranges should be merged.", label(cut.findDiff(file, 15)), equalTo("a2b4:src/Main.java"));
+		assertThat(label(cut.findDiff(file, 44)), equalTo("a2b4:src/Main.java"));
+		assertThat(label(cut.findDiff(file, 21)), equalTo("b2b4:src/Main.java"));
+		assertThat(cut.findDiff(file, 16).isPresent(), is(false));
+		assertThat(cut.findDiff(file, 45).isPresent(), is(false));
+		assertThat(cut.findDiff(file, 9).isPresent(), is(false));
+		assertThat("Issues without a line should be put on the first diff.", label(cut.findDiff(file, null)), equalTo("a2b4:src/Main.java"));
+		assertThat(cut.findDiff(mockFile("/project/src/Unchanged.java"), 10).isPresent(), is(false));
+	}
+
+	@Test
+	public void testFindDiffSkipsDiffsWithoutHunks() throws Exception {
+		DiffIndexFile cut = createIndex(Arrays.asList(
+			new UnifiedDiff("a2b4", "src/Main.java", Collections.emptyList()),
+			createDiff("b2b4", "src/Main.java")
+		));
+
+		assertThat(label(cut.findDiff(mockFile("/project/src/Main.java"), null)), equalTo("b2b4:src/Main.java"));
+	}
+
+	@Test
+	public void testMayContain() throws Exception {
+		DiffIndexFile cut = createIndex(Arrays.asList(createDiff("a2b4", "src/Main.java"), createDiff("a2b4", "Other.java")));
+
+		assertThat(cut.mayContain(mockFile("/project/src/Main.java")), is(true));
+		assertThat(cut.mayContain(mockFile("D:\\project\\Other.java")), is(true));
+		assertThat("Only the file name is checked.", cut.mayContain(mockFile("/project/test/Main.java")), is(true));
+		assertThat(cut.mayContain(mockFile("/project/src/Unchanged.java")), is(false));
+		assertThat(cut.mayContain(mockFile("/project/src/OtherMain.java")), is(false));
+	}
+
+	@Test
+	public void testMayContainPrefersRelativePath() throws Exception {
+		DiffIndexFile cut = createIndex(Collections.singletonList(createDiff("a2b4", "src/Main.java")));
+		InputFile file = mockFile("/project/src/Unchanged.java");
+		when(file.relativePath()).thenReturn("src/Unchanged.java");
+
+		assertThat(cut.mayContain(file), is(false));
+		verify(file, never()).absolutePath();
+	}
+
+	@Test
+	public void testReadDiffs() throws Exception {
+		DiffIndexFile cut = createIndex(Arrays.asList(
+			createDiff("a2b4", "src/Ünïcode.java"),
+			new UnifiedDiff(null, null, Collections.singletonList(new HunkRange(1000000, 12)))
+		));
+
+		List<UnifiedDiff> diffs = cut.readDiffs(null);
+		assertThat("Diffs should be read in the written order.", labels(diffs), contains("a2b4:src/Ünïcode.java", "null:null"));
+		assertThat(diffs.get(1).getFilepath(), nullValue());
+		assertThat(new ArrayList<>(diffs.get(1).getRanges()), equalTo(Collections.singletonList(new HunkRange(1000000, 12))));
+		assertThat("Commit should be relabelled.", labels(cut.readDiffs("f0f0")), contains("f0f0:src/Ünïcode.java", "f0f0:null"));
+	}
+
+	@Test
+	public void testWrap() throws Exception {
+		Path file = temporaryFolder.newFile().toPath();
+		DiffIndexFile.write(file, Collections.singletonList(createDiff("a2b4", "src/Main.java")));
+
+		DiffIndexFile cut = DiffIndexFile.wrap(ByteBuffer.wrap(Files.readAllBytes(file)));
+
+		assertThat(labels(cut.getDiffs(mockFile("/project/src/Main.java"))), contains("a2b4:src/Main.java"));
+	}
+
+	@Test
+	public void testWrapCorrupt() throws Exception {
+		Path file = temporaryFolder.newFile().toPath();
+		DiffIndexFile.write(file, Collections.singletonList(createDiff("a2b4", "src/Main.java")));
+		byte[] bytes = Files.readAllBytes(file);
+
+		thrown.expect(IOException.class);
+		thrown.expectMessage("Corrupt");
+
+		DiffIndexFile.wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1)));
+	}
+
+	@Test
+	public void testWrapUnsupported() throws Exception {
+		thrown.expect(IOException.class);
+		thrown.expectMessage("Unsupported");
+
+		DiffIndexFile.wrap(ByteBuffer.wrap("not a diff index, but long enough".getBytes()));
+	}
+
+	private DiffIndexFile createIndex(Collection<UnifiedDiff> diffs) throws IOException {
+		Path file = temporaryFolder.newFile().toPath();
+		DiffIndexFile.write(file, diffs);
+		return DiffIndexFile.map(file);
+	}
+
+	private static UnifiedDiff createDiff(String commitSha, String path) {
+		return new UnifiedDiff(commitSha, path, Collections.singletonList(new HunkRange(1, 1)));
+	}
+
+	private static List<String> labels(List<UnifiedDiff> diffs) {
+		return diffs.stream().map(diff -> diff.getCommitSha() + ":" + diff.getFilepath()).collect(Collectors.toList());
+	}
+
+	private static String label(Optional<UnifiedDiff> diff) {
+		return diff.map(found -> found.getCommitSha() + ":" + found.getFilepath()).orElse(null);
+	}
+
+	private static InputFile mockFile(String absolutePath) {
+		InputFile file = mock(InputFile.class);
+		when(file.key()).thenReturn(absolutePath);
+		when(file.absolutePath()).thenReturn(absolutePath);
+		return file;
+	}
+}
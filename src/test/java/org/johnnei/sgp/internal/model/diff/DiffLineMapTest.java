@@ -0,0 +1,38 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.OptionalInt;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiffLineMapTest {
+
+	@Test
+	public void testGetOldLine() {
+		DiffLineMap.Builder builder = new DiffLineMap.Builder();
+		builder.addUnchangedLine(1, 1);
+		builder.addUnchangedLine(2, 2);
+		builder.addUnchangedLine(4, 3);
+		for (int i = 0; i < 20; i++) {
+			builder.addUnchangedLine(100 + i * 2, 90 + i * 2);
+		}
+		DiffLineMap cut = builder.build();
+
+		assertThat(cut.getOldLine(0), equalTo(OptionalInt.empty()));
+		assertThat(cut.getOldLine(2), equalTo(OptionalInt.of(2)));
+		assertThat(cut.getOldLine(3), equalTo(OptionalInt.empty()));
+		assertThat(cut.getOldLine(4), equalTo(OptionalInt.of(3)));
+		assertThat(cut.getOldLine(101), equalTo(OptionalInt.empty()));
+		assertThat(cut.getOldLine(138), equalTo(OptionalInt.of(128)));
+		assertThat(cut.getOldLine(139), equalTo(OptionalInt.empty()));
+	}
+
+	@Test
+	public void testBuildWithoutLines() {
+		assertThat(new DiffLineMap.Builder().build(), sameInstance(DiffLineMap.empty()));
+		assertThat(DiffLineMap.empty().getOldLine(1), equalTo(OptionalInt.empty()));
+	}
+}
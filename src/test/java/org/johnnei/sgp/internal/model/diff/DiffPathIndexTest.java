@@ -0,0 +1,115 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiffPathIndexTest {
+
+	@Test
+	public void testGetDiffs() {
+		UnifiedDiff main = mockDiff("src/Main.java");
+		UnifiedDiff other = mockDiff("src/Other.java");
+		DiffPathIndex cut = new DiffPathIndex(Arrays.asList(main, other));
+
+		assertThat(cut.getDiffs(mockFile("/project/src/Main.java")), contains(main));
+		assertThat(cut.getDiffs(mockFile("/project/src/Other.java")), contains(other));
+		assertThat(cut.getDiffs(mockFile("/project/src/Unchanged.java")), empty());
+	}
+
+	@Test
+	public void testGetDiffsWindowsPath() {
+		UnifiedDiff main = mockDiff("src/Main.java");
+		DiffPathIndex cut = new DiffPathIndex(Collections.singletonList(main));
+
+		assertThat(cut.getDiffs(mockFile("D:\\project\\src\\Main.java")), contains(main));
+	}
+
+	@Test
+	public void testGetDiffsOnlyMatchesWholeSegments() {
+		DiffPathIndex cut = new DiffPathIndex(Collections.singletonList(mockDiff("Main.java")));
+
+		assertThat(cut.getDiffs(mockFile("/project/src/OtherMain.java")), empty());
+	}
+
+	@Test
+	public void testGetDiffsKeepsOrderOfDiffs() {
+		UnifiedDiff first = mockDiff("src/Main.java");
+		UnifiedDiff nested = mockDiff("module/src/Main.java");
+		UnifiedDiff second = mockDiff("src/Main.java");
+		DiffPathIndex cut = new DiffPathIndex(Arrays.asList(first, nested, second));
+
+		assertThat(cut.getDiffs(mockFile("/project/module/src/Main.java")), contains(first, nested, second));
+	}
+
+	@Test
+	public void testGetDiffsIsCachedPerKey() {
+		UnifiedDiff main = mockDiff("src/Main.java");
+		DiffPathIndex cut = new DiffPathIndex(Collections.singletonList(main));
+		InputFile file = mockFile("/project/src/Main.java");
+
+		assertThat(cut.getDiffs(file), sameInstance(cut.getDiffs(file)));
+		verify(file, times(1)).absolutePath();
+	}
+
+	@Test
+	public void testFindDiff() {
+		UnifiedDiff empty = new UnifiedDiff("a2b4", "src/Main.java", Collections.emptyList());
+		UnifiedDiff first = new UnifiedDiff("b2b4", "src/Main.java", Collections.singletonList(new HunkRange(10, 3)));
+		UnifiedDiff second = new UnifiedDiff("c2b4", "src/Main.java", Collections.singletonList(new HunkRange(20, 2)));
+		DiffPathIndex cut = new DiffPathIndex(Arrays.asList(empty, first, second));
+		InputFile file = mockFile("/project/src/Main.java");
+
+		assertThat(cut.findDiff(file, 11).get(), sameInstance(first));
+		assertThat(cut.findDiff(file, 21).get(), sameInstance(second));
+		assertThat(cut.findDiff(file, 15).isPresent(), is(false));
+		assertThat("Diffs without hunks should be skipped.", cut.findDiff(file, null).get(), sameInstance(first));
+	}
+
+	@Test
+	public void testMayContain() {
+		DiffPathIndex cut = new DiffPathIndex(Arrays.asList(mockDiff("src/Main.java"), mockDiff("Other.java")));
+
+		assertThat(cut.mayContain(mockFile("/project/src/Main.java")), is(true));
+		assertThat(cut.mayContain(mockFile("D:\\project\\Other.java")), is(true));
+		assertThat("Only the file name is checked.", cut.mayContain(mockFile("/project/test/Main.java")), is(true));
+		assertThat(cut.mayContain(mockFile("/project/src/Unchanged.java")), is(false));
+		assertThat(cut.mayContain(mockFile("/project/src/OtherMain.java")), is(false));
+	}
+
+	@Test
+	public void testMayContainPrefersRelativePath() {
+		DiffPathIndex cut = new DiffPathIndex(Collections.singletonList(mockDiff("src/Main.java")));
+		InputFile file = mockFile("/project/src/Unchanged.java");
+		when(file.relativePath()).thenReturn("src/Unchanged.java");
+
+		assertThat(cut.mayContain(file), is(false));
+		verify(file, never()).absolutePath();
+	}
+
+	private static UnifiedDiff mockDiff(String path) {
+		UnifiedDiff diff = mock(UnifiedDiff.class);
+		when(diff.getFilepath()).thenReturn(path);
+		return diff;
+	}
+
+	private static InputFile mockFile(String absolutePath) {
+		InputFile file = mock(InputFile.class);
+		when(file.key()).thenReturn(absolutePath);
+		when(file.absolutePath()).thenReturn(absolutePath);
+		return file;
+	}
+}
@@ -0,0 +1,77 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.OptionalInt;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class HunkIndexTest {
+
+	@Test
+	public void testContainsLine() {
+		HunkIndex cut = HunkIndex.of(Arrays.asList(new HunkRange(5, 3), new HunkRange(20, 1), new HunkRange(40, 10)));
+
+		assertThat("Line before first range", cut.containsLine(4), is(false));
+		assertThat("Start of range", cut.containsLine(5), is(true));
+		assertThat("Last line of range", cut.containsLine(7), is(true));
+		assertThat("Line after range", cut.containsLine(8), is(false));
+		assertThat("Single line range", cut.containsLine(20), is(true));
+		assertThat("Line between ranges", cut.containsLine(30), is(false));
+		assertThat("Last line of last range", cut.containsLine(49), is(true));
+		assertThat("Line after last range", cut.containsLine(50), is(false));
+	}
+
+	@Test
+	public void testContainsLineUnsortedAndOverlapping() {
+		HunkIndex cut = HunkIndex.of(Arrays.asList(new HunkRange(30, 5), new HunkRange(1, 10), new HunkRange(8, 4), new HunkRange(12, 2)));
+
+		assertThat(cut.containsLine(1), is(true));
+		assertThat("Covered by the overlapping range", cut.containsLine(11), is(true));
+		assertThat("Covered by the adjacent range", cut.containsLine(13), is(true));
+		assertThat(cut.containsLine(14), is(false));
+		assertThat(cut.containsLine(34), is(true));
+		assertThat(cut.containsLine(35), is(false));
+	}
+
+	@Test
+	public void testContainsLineMatchesRanges() {
+		HunkRange[] ranges = { new HunkRange(3, 0), new HunkRange(7, 4), new HunkRange(9, 1), new HunkRange(15, 6), new HunkRange(30, 1) };
+		HunkIndex cut = HunkIndex.of(Arrays.asList(ranges));
+
+		for (int line = 0; line < 40; line++) {
+			final int testedLine = line;
+			boolean expected = Arrays.stream(ranges).anyMatch(range -> range.containsLine(testedLine));
+			assertThat("Line " + line + " doesn't match the ranges", cut.containsLine(line), is(expected));
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		HunkIndex cut = HunkIndex.of(Collections.emptyList());
+
+		assertThat(cut.isEmpty(), is(true));
+		assertThat(cut.containsLine(1), is(false));
+		assertThat(cut.getFirstLine(), equalTo(OptionalInt.empty()));
+	}
+
+	@Test
+	public void testOnlyEmptyRanges() {
+		HunkIndex cut = HunkIndex.of(Collections.singletonList(new HunkRange(4, 0)));
+
+		assertThat("A deletion is still a hunk", cut.isEmpty(), is(false));
+		assertThat(cut.containsLine(4), is(false));
+		assertThat(cut.getFirstLine(), equalTo(OptionalInt.of(4)));
+	}
+
+	@Test
+	public void testGetFirstLine() {
+		HunkIndex cut = HunkIndex.of(Arrays.asList(new HunkRange(12, 2), new HunkRange(3, 1)));
+
+		assertThat("First line should be the start of the first hunk", cut.getFirstLine(), equalTo(OptionalInt.of(12)));
+	}
+}
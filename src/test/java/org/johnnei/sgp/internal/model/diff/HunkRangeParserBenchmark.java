@@ -0,0 +1,106 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link HunkRangeParser} against the regex based parsing it replaced.
+ * <p>
+ * Run {@link #main(String...)} on the test classpath after <code>mvn test-compile</code>. Add the <code>gc</code> profiler
+ * via {@link OptionsBuilder#addProfiler(String)} to compare the allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HunkRangeParserBenchmark {
+
+	/**
+	 * The pattern which was used before the {@link HunkRangeParser} scanned the headers itself.
+	 */
+	private static final Pattern HEADER_REGEX
+		= Pattern.compile("@@\\p{IsWhite_Space}-[0-9]+(?:,[0-9]+)?\\p{IsWhite_Space}\\+([0-9]+)(?:,([0-9]+))?\\p{IsWhite_Space}@@.*");
+
+	/**
+	 * The amount of hunks in the diff. A typical commit touches a handful, a large refactoring hundreds.
+	 */
+	@Param({ "5", "500" })
+	public int hunks;
+
+	private String diff;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder("--- a/src/main/java/org/johnnei/sgp/Example.java\n+++ b/src/main/java/org/johnnei/sgp/Example.java\n");
+		for (int hunk = 0; hunk < hunks; hunk++) {
+			int line = hunk * 40 + 1;
+			builder.append("@@ -").append(line).append(",7 +").append(line + hunk).append(",8 @@ public class Example {\n");
+			builder.append(" \tprivate final String field").append(hunk).append(";\n");
+			builder.append(" \n");
+			builder.append(" \tpublic void method").append(hunk).append("() {\n");
+			builder.append("-\t\tLOGGER.debug(\"Old statement {}\", field").append(hunk).append(");\n");
+			builder.append("+\t\tLOGGER.debug(\"New statement {}\", field").append(hunk).append(");\n");
+			builder.append("+\t\tLOGGER.debug(\"Added statement\");\n");
+			builder.append(" \t}\n");
+			builder.append(" \n");
+		}
+		diff = builder.toString();
+	}
+
+	@Benchmark
+	public List<HunkRange> scanner() {
+		return HunkRangeParser.parse(diff);
+	}
+
+	@Benchmark
+	public List<HunkRange> regex() throws IOException {
+		List<HunkRange> ranges = new ArrayList<>();
+		BufferedReader diffReader = new BufferedReader(new StringReader(diff));
+		String line;
+
+		while ((line = diffReader.readLine()) != null) {
+			if (line.startsWith("@@")) {
+				Matcher matcher = HEADER_REGEX.matcher(line);
+				if (!matcher.matches()) {
+					throw new IllegalArgumentException("Failed to parse hunk header: " + line);
+				}
+
+				int begin = Integer.parseInt(matcher.group(1));
+				int lines = 1;
+				if (matcher.group(2) != null) {
+					lines = Integer.parseInt(matcher.group(2));
+				}
+				ranges.add(new HunkRange(begin, lines));
+			}
+		}
+
+		return ranges;
+	}
+
+	public static void main(String... args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(HunkRangeParserBenchmark.class.getSimpleName()).build()).run();
+	}
+}
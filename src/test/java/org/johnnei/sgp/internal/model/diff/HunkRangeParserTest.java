@@ -0,0 +1,171 @@
+package org.johnnei.sgp.internal.model.diff;
+
+import java.util.List;
+import java.util.OptionalInt;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+
+public class HunkRangeParserTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void testParse() {
+		List<HunkRange> ranges = HunkRangeParser.parse("--- a/file\n+++ b/file\n@@ -1,10 +1,9 @@\n-a\n+b\n@@ -20 +19,3 @@ public void method() {\n+c\n");
+
+		assertThat(ranges, contains(new HunkRange(1, 9), new HunkRange(19, 3)));
+	}
+
+	@Test
+	public void testParseDefaultsLineCountToOne() {
+		assertThat(HunkRangeParser.parse("@@ -0,0 +1 @@\n+[]\n"), contains(new HunkRange(1, 1)));
+	}
+
+	@Test
+	public void testParseWithoutTrailingNewLine() {
+		assertThat(HunkRangeParser.parse("--- a/file\n+++ b/file\n@@ -1,2 +1,3 @@"), contains(new HunkRange(1, 3)));
+	}
+
+	@Test
+	public void testParseCarriageReturns() {
+		assertThat(HunkRangeParser.parse("--- a/file\r\n+++ b/file\r\n@@ -1,2 +4,3 @@\r\n a\r\n"), contains(new HunkRange(4, 3)));
+	}
+
+	@Test
+	public void testParseIgnoresLinesWhichOnlyContainAt() {
+		assertThat(HunkRangeParser.parse("--- a/file\n+++ b/file\n+@@ -1 +1 @@\n @\n"), empty());
+	}
+
+	@Test
+	public void testParseWithoutHunks() {
+		assertThat(HunkRangeParser.parse(""), empty());
+	}
+
+	@Test
+	public void testWriteInChunks() {
+		String diff = "--- a/file\n+++ b/file\n@@ -1,10 +1,9 @@\n-a\n+b\n@@ -20 +19,3 @@\n+c\n";
+
+		HunkRangeParser cut = new HunkRangeParser();
+		char[] characters = diff.toCharArray();
+		for (int i = 0; i < characters.length; i += 3) {
+			cut.write(characters, i, Math.min(3, characters.length - i));
+		}
+		cut.close();
+
+		assertThat(cut.getRanges(), contains(new HunkRange(1, 9), new HunkRange(19, 3)));
+	}
+
+	@Test
+	public void testParseMalformedHeader() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Failed to parse hunk header: @@ -1,a +1 @@");
+
+		HunkRangeParser.parse("@@ -1,a +1 @@\n");
+	}
+
+	@Test
+	public void testParseUnicodeWhitespace() {
+		assertThat(HunkRangeParser.parse("@@\t-1,2\u00A0+3,4\u2003@@\n"), contains(new HunkRange(3, 4)));
+	}
+
+	@Test
+	public void testParseIgnoresOldRangeOverflow() {
+		assertThat(HunkRangeParser.parse("@@ -99999999999 +1,2 @@\n"), contains(new HunkRange(1, 2)));
+	}
+
+	@Test
+	public void testParseNewRangeOverflow() {
+		thrown.expect(NumberFormatException.class);
+		thrown.expectMessage("99999999999");
+
+		HunkRangeParser.parse("@@ -1 +99999999999 @@\n");
+	}
+
+	@Test
+	public void testParseMissingClosingMarker() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Failed to parse hunk header: @@ -1,2 +1,2 @");
+
+		HunkRangeParser.parse("@@ -1,2 +1,2 @\n");
+	}
+
+	@Test
+	public void testParseMissingLineCount() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Failed to parse hunk header: @@ -1, +1,2 @@");
+
+		HunkRangeParser.parse("@@ -1, +1,2 @@\n");
+	}
+
+	@Test
+	public void testParseMissingWhitespace() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Failed to parse hunk header: @@-1 +1 @@");
+
+		HunkRangeParser.parse("@@-1 +1 @@\n");
+	}
+
+	@Test
+	public void testParseRejectsSeparatorControlCharacters() {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("Failed to parse hunk header: @@\u001C-1 +1 @@");
+
+		HunkRangeParser.parse("@@\u001C-1 +1 @@\n");
+	}
+
+	@Test
+	public void testGetLineMap() {
+		String diff = "--- a/file\n+++ b/file\n@@ -1,3 +1,4 @@\n a\n-b\n+c\n+d\n e\n\\ No newline at end of file\n@@ -10,2 +10,3 @@\n f\n\n+g\n";
+
+		HunkRangeParser cut = new HunkRangeParser(true);
+		cut.write(diff, 0, diff.length());
+		cut.close();
+		DiffLineMap lineMap = cut.getLineMap();
+
+		assertThat(lineMap.getOldLine(1), equalTo(OptionalInt.of(1)));
+		assertThat("Added lines have no old line.", lineMap.getOldLine(2), equalTo(OptionalInt.empty()));
+		assertThat("Added lines have no old line.", lineMap.getOldLine(3), equalTo(OptionalInt.empty()));
+		assertThat(lineMap.getOldLine(4), equalTo(OptionalInt.of(3)));
+		assertThat("Lines between hunks are not in the diff.", lineMap.getOldLine(5), equalTo(OptionalInt.empty()));
+		assertThat(lineMap.getOldLine(10), equalTo(OptionalInt.of(10)));
+		assertThat("Stripped empty lines are unchanged lines.", lineMap.getOldLine(11), equalTo(OptionalInt.of(11)));
+		assertThat(lineMap.getOldLine(12), equalTo(OptionalInt.empty()));
+	}
+
+	@Test
+	public void testGetLineMapCarriageReturns() {
+		String diff = "@@ -1,3 +1,3 @@\r\n a\r\n-b\r\n+c\r\n d\r\n";
+
+		HunkRangeParser cut = new HunkRangeParser(true);
+		cut.write(diff, 0, diff.length());
+		cut.close();
+
+		assertThat(cut.getLineMap().getOldLine(3), equalTo(OptionalInt.of(3)));
+	}
+
+	@Test
+	public void testGetLineMapIgnoresOldRangeOverflow() {
+		String diff = "@@ -99999999999 +1 @@\n a\n";
+
+		HunkRangeParser cut = new HunkRangeParser(true);
+		cut.write(diff, 0, diff.length());
+		cut.close();
+
+		assertThat(cut.getLineMap().getOldLine(1), equalTo(OptionalInt.empty()));
+	}
+
+	@Test
+	public void testGetLineMapWhenNotMapping() {
+		thrown.expect(IllegalStateException.class);
+
+		new HunkRangeParser().getLineMap();
+	}
+}
@@ -24,7 +24,7 @@ public class UnifiedDiffTest {
 		when(diff.getDeletedFile()).thenReturn(false);
 		when(diff.getNewPath()).thenReturn("web/src/test/resources/stall-recipes/iron_monger.json");
 		when(diff.getOldPath()).thenReturn("web/src/test/resources/stall-recipes/iron_monger.json");
-		when(diff.getDiff()).thenReturn("--- /dev/null\n+++ b/web/src/test/resources/stall-recipes/iron_monger.json\n@@ -0,0 +1 @@\n+[]\n");
+		when(diff.getHunkRanges()).thenReturn(HunkRangeParser.parse("--- /dev/null\n+++ b/web/src/test/resources/stall-recipes/iron_monger.json\n@@ -0,0 +1 @@\n+[]\n"));
 
 		UnifiedDiff cut = new UnifiedDiff(null, diff);
 
@@ -43,7 +43,7 @@ public class UnifiedDiffTest {
 		when(diff.getDeletedFile()).thenReturn(false);
 		when(diff.getNewPath()).thenReturn("business/pom.xml");
 		when(diff.getOldPath()).thenReturn("business/pom.xml");
-		when(diff.getDiff()).thenReturn("--- a/business/pom.xml\n+++ b/business/pom.xml\n@@ -1,10 +1,9 @@\n-<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n-         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n+<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n   <modelVersion>4.0.0</modelVersion>\n   <parent>\n     <groupId>org.johnnei.ypp</groupId>\n     <artifactId>stallmanagement</artifactId>\n-    <version>1.4.0-SNAPSHOT</version>\n+    <version>1.4.0</version>\n   </parent>\n \n   <artifactId>business</artifactId>\n");
+		when(diff.getHunkRanges()).thenReturn(HunkRangeParser.parse("--- a/business/pom.xml\n+++ b/business/pom.xml\n@@ -1,10 +1,9 @@\n-<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n-         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n+<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n   <modelVersion>4.0.0</modelVersion>\n   <parent>\n     <groupId>org.johnnei.ypp</groupId>\n     <artifactId>stallmanagement</artifactId>\n-    <version>1.4.0-SNAPSHOT</version>\n+    <version>1.4.0</version>\n   </parent>\n \n   <artifactId>business</artifactId>\n"));
 
 		UnifiedDiff cut = new UnifiedDiff(null, diff);
 
@@ -62,7 +62,7 @@ public class UnifiedDiffTest {
 		when(diff.getDeletedFile()).thenReturn(false);
 		when(diff.getNewPath()).thenReturn("src/main/java/org/johnnei/sgp/it/NoIssue.java");
 		when(diff.getOldPath()).thenReturn("src/main/java/org/johnnei/sgp/it/internal/NoIssue.java");
-		when(diff.getDiff()).thenReturn("--- a/src/main/java/org/johnnei/sgp/it/internal/NoIssue.java\n+++ b/src/main/java/org/johnnei/sgp/it/NoIssue.java\n");
+		when(diff.getHunkRanges()).thenReturn(HunkRangeParser.parse("--- a/src/main/java/org/johnnei/sgp/it/internal/NoIssue.java\n+++ b/src/main/java/org/johnnei/sgp/it/NoIssue.java\n"));
 
 		UnifiedDiff cut = new UnifiedDiff(null, diff);
 
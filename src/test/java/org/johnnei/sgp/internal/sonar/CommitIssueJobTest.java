@@ -1,8 +1,11 @@
 package org.johnnei.sgp.internal.sonar;
 
 import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -11,6 +14,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -23,24 +27,31 @@ import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.batch.rule.Severity;
 import org.sonar.api.utils.log.LogTester;
 
+import org.johnnei.sgp.internal.git.LocalGitDiffProvider;
 import org.johnnei.sgp.internal.gitlab.CommitCommenter;
 import org.johnnei.sgp.internal.gitlab.DiffFetcher;
+import org.johnnei.sgp.internal.gitlab.MergeRequestCommenter;
 import org.johnnei.sgp.internal.gitlab.PipelineBreaker;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
 import org.johnnei.sgp.internal.model.MappedIssue;
 import org.johnnei.sgp.internal.model.SonarReport;
+import org.johnnei.sgp.internal.model.diff.DiffIndex;
+import org.johnnei.sgp.internal.model.diff.DiffIndexFile;
+import org.johnnei.sgp.internal.model.diff.DiffPathIndex;
+import org.johnnei.sgp.internal.model.diff.HunkIndex;
 import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.HunkRangeParser;
 import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
 import org.johnnei.sgp.test.MockIssue;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.sameInstance;
-import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -55,6 +66,9 @@ public class CommitIssueJobTest {
 	@Rule
 	public ExpectedException thrown = ExpectedException.none();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private CommitIssueJob cut;
 
 	@Mock
@@ -123,7 +137,7 @@ public class CommitIssueJobTest {
 			" import java.io.IOException;\n" +
 			" import java.nio.file.Files;";
 		GitLabCommitDiff commitDiffOne = mock(GitLabCommitDiff.class);
-		when(commitDiffOne.getDiff()).thenReturn(diff);
+		when(commitDiffOne.getHunkRanges()).thenReturn(HunkRangeParser.parse(diff));
 		when(commitDiffOne.getNewPath()).thenReturn("src/Main.java");
 
 		when(diffFetcherMock.getDiffs()).thenAnswer(invocation -> Collections.singletonList(new UnifiedDiff(hash, commitDiffOne)));
@@ -145,6 +159,51 @@ public class CommitIssueJobTest {
 		assertThat("The iterable of 1 issue should have result in a stream of 1 issue", report.getIssues().count(), equalTo(1L));
 	}
 
+	@Test
+	public void testCreateDiffProvider() throws Exception {
+		CommitIssueJob job = new CommitIssueJob(diffFetcherMock, configurationMock, pipelineBreaker);
+
+		assertThat("GitLab should be used by default.", job.createDiffProvider(), sameInstance(diffFetcherMock));
+
+		when(configurationMock.isLocalDiffSource()).thenReturn(true);
+		when(configurationMock.getRepositoryDirectory()).thenReturn(Paths.get("."));
+
+		assertThat("Local repository should be used.", job.createDiffProvider(), instanceOf(LocalGitDiffProvider.class));
+	}
+
+	@Test
+	public void testCreateDiffIndex() throws Exception {
+		CommitIssueJob job = new CommitIssueJob(diffFetcherMock, configurationMock, pipelineBreaker);
+		List<UnifiedDiff> diffs = new ArrayList<>();
+		for (int i = 0; i < CommitIssueJob.MAPPED_INDEX_THRESHOLD; i++) {
+			diffs.add(new UnifiedDiff("a2b4", "src/File" + i + ".java", Collections.singletonList(new HunkRange(1, 1))));
+		}
+
+		assertThat("Small changes should be indexed on the heap.", job.createDiffIndex(diffs.subList(0, 1)), instanceOf(DiffPathIndex.class));
+
+		when(configurationMock.getWorkingDirectory()).thenReturn(temporaryFolder.getRoot().toPath().resolve(".sonar"));
+		DiffIndex index = job.createDiffIndex(diffs);
+		InputFile file = mock(InputFile.class);
+		when(file.absolutePath()).thenReturn("/project/src/File42.java");
+
+		assertThat("Large changes should be indexed in a mapped file.", index, instanceOf(DiffIndexFile.class));
+		assertThat(index.mayContain(file), equalTo(true));
+		assertThat(index.getDiffs(file).get(0).getFilepath(), equalTo("src/File42.java"));
+		assertThat("Index file should be deleted once mapped.", temporaryFolder.getRoot().toPath().resolve(".sonar").toFile().list(), emptyArray());
+	}
+
+	@Test
+	public void testCreateCommenter() throws Exception {
+		CommitIssueJob job = new CommitIssueJob(diffFetcherMock, configurationMock, pipelineBreaker);
+
+		assertThat("Commit comments should be used by default.", job.createCommenter(), instanceOf(CommitCommenter.class));
+
+		when(configurationMock.isMergeRequestMode()).thenReturn(true);
+		when(configurationMock.getMergeRequestIid()).thenReturn(7);
+
+		assertThat("Draft notes should be used for merge requests.", job.createCommenter(), instanceOf(MergeRequestCommenter.class));
+	}
+
 	@Test
 	public void testExecuteNotFoundInDiff() throws Exception {
 		String hash = "a2b4";
@@ -159,9 +218,8 @@ public class CommitIssueJobTest {
 		UnifiedDiff diffMock = mock(UnifiedDiff.class);
 		when(diffMock.getCommitSha()).thenReturn(hash);
 		when(diffMock.getFilepath()).thenReturn("src/Main.java");
-		HunkRange range = mock(HunkRange.class);
-		when(range.containsLine(anyInt())).thenReturn(false);
-		when(diffMock.getRanges()).thenReturn(Collections.singletonList(range));
+		HunkIndex index = HunkIndex.of(Collections.singletonList(new HunkRange(10, 2)));
+		when(diffMock.getHunkIndex()).thenReturn(index);
 
 		when(diffFetcherMock.getDiffs()).thenAnswer(invocation -> Collections.singletonList(diffMock));
 
@@ -196,16 +254,12 @@ public class CommitIssueJobTest {
 		UnifiedDiff unifiedDiffMock = mock(UnifiedDiff.class);
 		when(unifiedDiffMock.getFilepath()).thenReturn("src/Main.java");
 
-		HunkRange range = mock(HunkRange.class);
-		when(unifiedDiffMock.getRanges()).thenReturn(Collections.singletonList(range));
-		when(range.containsLine(anyInt())).thenReturn(false);
-		when(range.containsLine(eq(3))).thenReturn(true);
+		HunkIndex index = HunkIndex.of(Collections.singletonList(new HunkRange(3, 1)));
+		when(unifiedDiffMock.getHunkIndex()).thenReturn(index);
 
 		UnifiedDiff unifiedDiffMockTwo = mock(UnifiedDiff.class);
-		HunkRange rangeTwo = mock(HunkRange.class);
-		when(unifiedDiffMockTwo.getRanges()).thenReturn(Collections.singletonList(rangeTwo));
-		when(rangeTwo.containsLine(anyInt())).thenReturn(false);
-		when(rangeTwo.containsLine(12)).thenReturn(true);
+		HunkIndex indexTwo = HunkIndex.of(Collections.singletonList(new HunkRange(12, 1)));
+		when(unifiedDiffMockTwo.getHunkIndex()).thenReturn(indexTwo);
 		when(unifiedDiffMockTwo.getFilepath()).thenReturn("src/Main.java");
 
 		// This state seems invalid, but when the analysis contains two commits editing the same file there will be two diff instances for the same file.
@@ -256,9 +310,8 @@ public class CommitIssueJobTest {
 		UnifiedDiff unifiedDiffMock = mock(UnifiedDiff.class);
 		when(unifiedDiffMock.getFilepath()).thenReturn("src/Main.java");
 
-		HunkRange range = mock(HunkRange.class);
-		when(unifiedDiffMock.getRanges()).thenReturn(Collections.singletonList(range));
-		when(range.containsLine(eq(3))).thenReturn(true);
+		HunkIndex index = HunkIndex.of(Collections.singletonList(new HunkRange(3, 1)));
+		when(unifiedDiffMock.getHunkIndex()).thenReturn(index);
 
 		when(diffFetcherMock.getDiffs()).thenAnswer(invocation -> Collections.singletonList(unifiedDiffMock));
 
@@ -297,7 +350,7 @@ public class CommitIssueJobTest {
 			" import java.nio.file.Files;";
 
 		GitLabCommitDiff commitDiffOne = mock(GitLabCommitDiff.class);
-		when(commitDiffOne.getDiff()).thenReturn(diff);
+		when(commitDiffOne.getHunkRanges()).thenReturn(HunkRangeParser.parse(diff));
 		when(commitDiffOne.getOldPath()).thenReturn("src/main/java/org/johnnei/sgp/it/NoIssue.java");
 		when(commitDiffOne.getNewPath()).thenReturn("src/main/java/org/johnnei/sgp/it/NoIssue.java");
 		when(commitDiffOne.getRenamedFile()).thenReturn(false);
@@ -341,7 +394,7 @@ public class CommitIssueJobTest {
 
 		String diff = "--- a/src/main/java/org/johnnei/sgp/it/internal/NoIssue.java\n+++ b/src/main/java/org/johnnei/sgp/it/NoIssue.java\n";
 		GitLabCommitDiff commitDiffOne = mock(GitLabCommitDiff.class);
-		when(commitDiffOne.getDiff()).thenReturn(diff);
+		when(commitDiffOne.getHunkRanges()).thenReturn(HunkRangeParser.parse(diff));
 		when(commitDiffOne.getOldPath()).thenReturn("src/main/java/org/johnnei/sgp/it/internal/NoIssue.java");
 		when(commitDiffOne.getNewPath()).thenReturn("src/main/java/org/johnnei/sgp/it/NoIssue.java");
 		when(commitDiffOne.getRenamedFile()).thenReturn(true);
@@ -1,25 +1,41 @@
 package org.johnnei.sgp.internal.sonar;
 
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.Response;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.LogTester;
 
+import org.johnnei.sgp.internal.cache.ProjectIdCache;
+import org.johnnei.sgp.internal.gitlab.CommentAggregation;
+import org.johnnei.sgp.internal.gitlab.api.v4.AsyncGitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.GitLabApi;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabNamespace;
 import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabProject;
 import org.johnnei.sgp.sonar.GitLabPlugin;
+import org.johnnei.sgp.test.MockPage;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsCollectionContaining.hasItem;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,6 +47,9 @@ public class GitLabPluginConfigurationTest {
 	@Rule
 	public LogTester logTester = new LogTester();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private GitLabPluginConfiguration cut;
 
 	private GitLabApi apiMock;
@@ -41,6 +60,7 @@ public class GitLabPluginConfigurationTest {
 	public void setUp() {
 		apiMock = mock(GitLabApi.class);
 		settingsMock = mock(Settings.class);
+		when(settingsMock.getString("sonar.gitlab.cache.dir")).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
 		cut = new GitLabPluginConfigurationMock(apiMock, settingsMock);
 	}
 
@@ -97,18 +117,213 @@ public class GitLabPluginConfigurationTest {
 		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
 		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
 
-		GitLabProject projectMock = mock(GitLabProject.class);
-		GitLabNamespace namespaceMock = mock(GitLabNamespace.class);
-		when(projectMock.getName()).thenReturn("project");
-		when(projectMock.getNamespace()).thenReturn(namespaceMock);
-		when(namespaceMock.getName()).thenReturn("root");
+		GitLabProject projectMock = mockProject(5, "root", "project");
 
-		when(apiMock.getProjects()).thenReturn(Collections.singletonList(projectMock));
+		when(apiMock.getProjectByPath("root/project")).thenReturn(projectMock);
 
 		cut.initialiseProject();
 
 		assertThat("Initialisation duration should be logged", logTester.logs(), hasItem(containsString("GitLab project")));
 		assertThat("Project should have been initialised based on settings.", cut.getProject(), equalTo(projectMock));
+		verify(apiMock, never()).getProjects();
+	}
+
+	@Test
+	public void testInitialiseFallbackToSearch() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root/project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabProject projectMock = mockProject(5, "root", "project");
+		GitLabProject otherProjectMock = mockProject(6, "other", "project");
+
+		when(apiMock.getProjectByPath("root/project")).thenThrow(new NotFoundException());
+		Response firstPage = MockPage.of(Collections.nCopies(100, otherProjectMock), "2");
+		when(apiMock.searchProjects("project", 1, 100)).thenReturn(firstPage);
+		Response secondPage = MockPage.of(Arrays.asList(otherProjectMock, projectMock), "3");
+		when(apiMock.searchProjects("project", 2, 100)).thenReturn(secondPage);
+
+		cut.initialiseProject();
+
+		assertThat("Project should have been found on the second page.", cut.getProject(), equalTo(projectMock));
+		verify(apiMock, never()).searchProjects("project", 3, 100);
+	}
+
+	@Test
+	public void testInitialiseNotFound() throws Exception {
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("root/project");
+
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root/project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		when(apiMock.getProjectByPath("root/project")).thenThrow(new NotFoundException());
+		Response firstPage = MockPage.empty();
+		when(apiMock.searchProjects("project", 1, 100)).thenReturn(firstPage);
+
+		cut.initialiseProject();
+	}
+
+	@Test
+	public void testInitialiseUsesCachedProjectId() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root/project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabProject projectMock = mockProject(5, "root", "project");
+
+		when(apiMock.getProjectByPath("root/project")).thenReturn(projectMock);
+		when(apiMock.getProject(5)).thenReturn(projectMock);
+
+		cut.initialiseProject();
+		new GitLabPluginConfigurationMock(apiMock, settingsMock).initialiseProject();
+
+		verify(apiMock, times(1)).getProjectByPath("root/project");
+		verify(apiMock).getProject(5);
+	}
+
+	@Test
+	public void testInitialiseUsesCachedProjectIdByPath() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root-group/my-project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabProject projectMock = mockProject(5, "Root Group", "My Project", "root-group/my-project");
+
+		when(apiMock.getProjectByPath("root-group/my-project")).thenReturn(projectMock);
+		when(apiMock.getProject(5)).thenReturn(projectMock);
+
+		cut.initialiseProject();
+		new GitLabPluginConfigurationMock(apiMock, settingsMock).initialiseProject();
+
+		verify(apiMock, times(1)).getProjectByPath("root-group/my-project");
+		verify(apiMock).getProject(5);
+	}
+
+	@Test
+	public void testInitialiseFallbackToSearchByPath() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root/my-project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabProject projectMock = mockProject(5, "Root", "My Project", "root/my-project");
+
+		when(apiMock.getProjectByPath("root/my-project")).thenThrow(new NotFoundException());
+		Response firstPage = MockPage.of(Collections.singletonList(projectMock));
+		when(apiMock.searchProjects("my-project", 1, 100)).thenReturn(firstPage);
+
+		cut.initialiseProject();
+
+		assertThat(cut.getProject(), equalTo(projectMock));
+	}
+
+	@Test
+	public void testInitialiseIgnoresStaleCachedProjectId() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.analyse.project")).thenReturn("root/project");
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		new ProjectIdCache(temporaryFolder.getRoot().toPath()).put("http://localhost.localdomain/", "root/project", 4);
+
+		GitLabProject projectMock = mockProject(5, "root", "project");
+
+		when(apiMock.getProject(4)).thenThrow(new NotFoundException());
+		when(apiMock.getProjectByPath("root/project")).thenReturn(projectMock);
+
+		cut.initialiseProject();
+
+		assertThat("Project should have been resolved again.", cut.getProject(), equalTo(projectMock));
+		assertThat(
+			"Cache should have been updated.",
+			new ProjectIdCache(temporaryFolder.getRoot().toPath()).get("http://localhost.localdomain/", "root/project"),
+			equalTo(Optional.of(5))
+		);
+	}
+
+	@Test
+	public void testGetWorkingDirectory() throws Exception {
+		when(settingsMock.getString("sonar.projectBaseDir")).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+
+		assertThat("Default should be within the project.", cut.getWorkingDirectory(), equalTo(temporaryFolder.getRoot().toPath().resolve(".sonar")));
+
+		when(settingsMock.getString("sonar.working.directory")).thenReturn("target/sonar");
+
+		assertThat(cut.getWorkingDirectory(), equalTo(temporaryFolder.getRoot().toPath().resolve("target/sonar")));
+	}
+
+	@Test
+	public void testGetCacheDirectory() throws Exception {
+		assertThat("Configured directory should be used.", cut.getCacheDirectory(), equalTo(temporaryFolder.getRoot().toPath()));
+
+		when(settingsMock.getString("sonar.gitlab.cache.dir")).thenReturn(null);
+		when(settingsMock.getString("sonar.userHome")).thenReturn("/home/sonar/.sonar");
+
+		assertThat("Directory should be in the SonarQube user home.", cut.getCacheDirectory(), equalTo(Paths.get("/home/sonar/.sonar", "gitlab")));
+	}
+
+	@Test
+	public void testGetDiffCacheSize() throws Exception {
+		assertThat("Cache should be disabled when not configured.", cut.getDiffCacheSize(), equalTo(0L));
+
+		when(settingsMock.hasKey(GitLabPlugin.GITLAB_CACHE_DIFF_SIZE)).thenReturn(true);
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_CACHE_DIFF_SIZE)).thenReturn(64);
+
+		assertThat("Size should be read in megabytes.", cut.getDiffCacheSize(), equalTo(64L * 1024 * 1024));
+	}
+
+	@Test
+	public void testGetHttpCacheSize() throws Exception {
+		assertThat("Cache should be disabled when not configured.", cut.getHttpCacheSize(), equalTo(0L));
+
+		when(settingsMock.hasKey(GitLabPlugin.GITLAB_CACHE_HTTP_SIZE)).thenReturn(true);
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_CACHE_HTTP_SIZE)).thenReturn(32);
+
+		assertThat("Size should be read in megabytes.", cut.getHttpCacheSize(), equalTo(32L * 1024 * 1024));
+	}
+
+	@Test
+	public void testGetHttpCacheAge() throws Exception {
+		assertThat("Default age should be used when not configured.", cut.getHttpCacheAge(), equalTo(7L * 24 * 60 * 60 * 1000));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_CACHE_HTTP_AGE)).thenReturn(60);
+
+		assertThat("Value from settings should be used.", cut.getHttpCacheAge(), equalTo(60_000L));
+	}
+
+	@Test
+	public void testIsLocalDiffSource() throws Exception {
+		assertThat("GitLab should be used by default.", cut.isLocalDiffSource(), is(false));
+
+		when(settingsMock.getString(GitLabPlugin.GITLAB_DIFF_SOURCE)).thenReturn("GIT");
+
+		assertThat("Value from settings should be used.", cut.isLocalDiffSource(), is(true));
+	}
+
+	@Test
+	public void testGetRepositoryDirectory() throws Exception {
+		assertThat("Working directory should be used by default.", cut.getRepositoryDirectory(), equalTo(Paths.get("").toAbsolutePath()));
+
+		when(settingsMock.getString("sonar.projectBaseDir")).thenReturn("/builds/project");
+
+		assertThat("Project directory should be used.", cut.getRepositoryDirectory(), equalTo(Paths.get("/builds/project")));
+	}
+
+	@Test
+	public void testCreateSharedCache() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		cut.createSharedCache().get("key", new TypeReference<Integer>() {}, loads::incrementAndGet);
+		cut.createSharedCache().get("key", new TypeReference<Integer>() {}, loads::incrementAndGet);
+
+		assertThat("Sharing should be disabled by default.", loads.get(), equalTo(2));
+
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.hasKey(GitLabPlugin.GITLAB_CACHE_SHARED_TTL)).thenReturn(true);
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_CACHE_SHARED_TTL)).thenReturn(60);
+		cut.createSharedCache().get("key", new TypeReference<Integer>() {}, loads::incrementAndGet);
+		cut.createSharedCache().get("key", new TypeReference<Integer>() {}, loads::incrementAndGet);
+
+		assertThat("Value should be shared once enabled.", loads.get(), equalTo(3));
 	}
 
 	@Test
@@ -131,6 +346,200 @@ public class GitLabPluginConfigurationTest {
 		verify(settingsMock).getBoolean("sonar.gitlab.pipeline.break");
 	}
 
+	@Test
+	public void testCreateGitLabConnectionIsShared() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabPluginConfiguration configuration = new GitLabPluginConfiguration(settingsMock);
+		configuration.start();
+
+		GitLabApi api = configuration.createGitLabConnection();
+
+		assertThat("The connection should be reused within the batch.", configuration.createGitLabConnection(), sameInstance(api));
+
+		configuration.stop();
+
+		assertThat("A new connection should be created after the pool has been closed.", configuration.createGitLabConnection(), not(sameInstance(api)));
+
+		configuration.stop();
+	}
+
+	@Test
+	public void testCreateAsyncGitLabConnectionIsShared() throws Exception {
+		when(settingsMock.getString("sonar.gitlab.uri")).thenReturn("http://localhost.localdomain/");
+		when(settingsMock.getString("sonar.gitlab.auth.token")).thenReturn("secure");
+
+		GitLabPluginConfiguration configuration = new GitLabPluginConfiguration(settingsMock);
+		configuration.start();
+
+		AsyncGitLabApi api = configuration.createAsyncGitLabConnection();
+
+		assertThat("The connection should be reused within the batch.", configuration.createAsyncGitLabConnection(), sameInstance(api));
+
+		configuration.stop();
+
+		assertThat("A new connection should be created after the pool has been shut down.", configuration.createAsyncGitLabConnection(), not(sameInstance(api)));
+
+		configuration.stop();
+	}
+
+	@Test
+	public void testStopWithoutConnection() throws Exception {
+		GitLabPluginConfiguration configuration = new GitLabPluginConfiguration(settingsMock);
+		configuration.start();
+		configuration.stop();
+	}
+
+	@Test
+	public void testGetMaxConnections() throws Exception {
+		assertThat("Default should be used when not configured.", cut.getMaxConnections(), equalTo(10));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_MAX_CONNECTIONS)).thenReturn(4);
+
+		assertThat("Value from settings should be used.", cut.getMaxConnections(), equalTo(4));
+	}
+
+	@Test
+	public void testIsCompareDiffMode() throws Exception {
+		assertThat("Diffs should be fetched per commit by default.", cut.isCompareDiffMode(), is(false));
+
+		when(settingsMock.getString(GitLabPlugin.GITLAB_DIFF_MODE)).thenReturn("compare");
+
+		assertThat("Value from settings should be used.", cut.isCompareDiffMode(), is(true));
+	}
+
+	@Test
+	public void testGetDiffParallelism() throws Exception {
+		assertThat("Diffs should be fetched one by one by default.", cut.getDiffParallelism(), equalTo(1));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_DIFF_PARALLELISM)).thenReturn(8);
+
+		assertThat("Value from settings should be used.", cut.getDiffParallelism(), equalTo(8));
+	}
+
+	@Test
+	public void testIsCommentLedgerTrusted() throws Exception {
+		assertThat("The ledger should be verified by default.", cut.isCommentLedgerTrusted(), is(false));
+
+		when(settingsMock.getBoolean(GitLabPlugin.GITLAB_COMMENT_LEDGER_TRUST)).thenReturn(true);
+
+		assertThat("Value from settings should be used.", cut.isCommentLedgerTrusted(), is(true));
+	}
+
+	@Test
+	public void testIsNewIssuesOnly() throws Exception {
+		assertThat("All issues should be commented by default.", cut.isNewIssuesOnly(), is(false));
+
+		when(settingsMock.getBoolean(GitLabPlugin.GITLAB_NEW_ISSUES_ONLY)).thenReturn(true);
+
+		assertThat("Value from settings should be used.", cut.isNewIssuesOnly(), is(true));
+	}
+
+	@Test
+	public void testGetMappingParallelism() throws Exception {
+		assertThat("Issues should be mapped on the analysis thread by default.", cut.getMappingParallelism(), equalTo(1));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_MAPPING_PARALLELISM)).thenReturn(4);
+
+		assertThat("Value from settings should be used.", cut.getMappingParallelism(), equalTo(4));
+	}
+
+	@Test
+	public void testGetCommentParallelism() throws Exception {
+		assertThat("Comments should be posted one by one by default.", cut.getCommentParallelism(), equalTo(1));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_COMMENT_PARALLELISM)).thenReturn(4);
+
+		assertThat("Value from settings should be used.", cut.getCommentParallelism(), equalTo(4));
+	}
+
+	@Test
+	public void testGetCommentAggregation() throws Exception {
+		assertThat("Every issue should get a comment by default.", cut.getCommentAggregation(), equalTo(CommentAggregation.NONE));
+
+		when(settingsMock.getString(GitLabPlugin.GITLAB_COMMENT_AGGREGATION)).thenReturn("line");
+		assertThat("Value from settings should be used.", cut.getCommentAggregation(), equalTo(CommentAggregation.LINE));
+
+		when(settingsMock.getString(GitLabPlugin.GITLAB_COMMENT_AGGREGATION)).thenReturn("FILE");
+		assertThat("Value from settings should be used.", cut.getCommentAggregation(), equalTo(CommentAggregation.FILE));
+	}
+
+	@Test
+	public void testGetCommentLimit() throws Exception {
+		assertThat("All comments should be placed by default.", cut.getCommentLimit(), equalTo(0));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_COMMENT_LIMIT)).thenReturn(50);
+
+		assertThat("Value from settings should be used.", cut.getCommentLimit(), equalTo(50));
+	}
+
+	@Test
+	public void testGetMergeRequestIid() throws Exception {
+		assertThat("Comments should be placed on the commits by default.", cut.isMergeRequestMode(), is(false));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_MERGE_REQUEST)).thenReturn(7);
+
+		assertThat("Value from settings should be used.", cut.getMergeRequestIid(), equalTo(7));
+		assertThat("Merge request mode should be enabled by the IID.", cut.isMergeRequestMode(), is(true));
+	}
+
+	@Test
+	public void testGetRateLimit() throws Exception {
+		assertThat("Only GitLab's rate limit should apply by default.", cut.getRateLimit(), equalTo(0));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_RATE_LIMIT)).thenReturn(-5);
+		assertThat("Negative values should disable the limit.", cut.getRateLimit(), equalTo(0));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_RATE_LIMIT)).thenReturn(20);
+		assertThat("Value from settings should be used.", cut.getRateLimit(), equalTo(20));
+	}
+
+	@Test
+	public void testGetRetries() throws Exception {
+		assertThat("Default should be used when not configured.", cut.getRetries(), equalTo(3));
+
+		when(settingsMock.hasKey(GitLabPlugin.GITLAB_HTTP_RETRIES)).thenReturn(true);
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_RETRIES)).thenReturn(0);
+
+		assertThat("Retries should be able to be disabled.", cut.getRetries(), equalTo(0));
+	}
+
+	@Test
+	public void testGetCircuitBreakerSettings() throws Exception {
+		assertThat(cut.getRetryBackoff(), equalTo(500));
+		assertThat(cut.getCircuitThreshold(), equalTo(5));
+		assertThat(cut.getCircuitOpenDuration(), equalTo(30));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_CIRCUIT_THRESHOLD)).thenReturn(2);
+
+		assertThat("Value from settings should be used.", cut.getCircuitThreshold(), equalTo(2));
+	}
+
+	@Test
+	public void testGetIdleTimeout() throws Exception {
+		assertThat("Default should be used when not configured.", cut.getIdleTimeout(), equalTo(30));
+
+		when(settingsMock.getInt(GitLabPlugin.GITLAB_HTTP_IDLE_TIMEOUT)).thenReturn(5);
+
+		assertThat("Value from settings should be used.", cut.getIdleTimeout(), equalTo(5));
+	}
+
+	private static GitLabProject mockProject(int id, String namespace, String name) {
+		return mockProject(id, namespace, name, String.format("%s/%s", namespace, name));
+	}
+
+	private static GitLabProject mockProject(int id, String namespace, String name, String path) {
+		GitLabProject projectMock = mock(GitLabProject.class);
+		when(projectMock.getPathWithNamespace()).thenReturn(path);
+		GitLabNamespace namespaceMock = mock(GitLabNamespace.class);
+		when(projectMock.getId()).thenReturn(id);
+		when(projectMock.getName()).thenReturn(name);
+		when(projectMock.getNamespace()).thenReturn(namespaceMock);
+		when(namespaceMock.getName()).thenReturn(namespace);
+		return projectMock;
+	}
+
 	private static final class GitLabPluginConfigurationMock extends GitLabPluginConfiguration {
 
 		private GitLabApi apiMock;
@@ -0,0 +1,173 @@
+package org.johnnei.sgp.internal.sonar;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.diff.DiffPathIndex;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures how the {@link IssueMapper} scales with its parallelism when all issues of a large project are reported.
+ * <p>
+ * Run {@link #main(String...)} on the test classpath after <code>mvn test-compile</code>. By default the pool size doubles from 1 up to
+ * the amount of available cores, pass the pool sizes as arguments to measure others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueMapperBenchmark {
+
+	private static final int FILES = 5_000;
+
+	private static final int HUNKS_PER_FILE = 20;
+
+	private static final int HUNK_SPACING = 50;
+
+	private static final int HUNK_LENGTH = 10;
+
+	@Param({ "1", "2", "4", "8" })
+	public int parallelism;
+
+	@Param({ "200000" })
+	public int issueCount;
+
+	private DiffPathIndex diffs;
+
+	private List<PostJobIssue> issues;
+
+	@Setup
+	public void setUp() {
+		List<UnifiedDiff> diffList = new ArrayList<>();
+		List<DefaultInputFile> files = new ArrayList<>();
+		for (int file = 0; file < FILES; file++) {
+			String path = String.format("module%d/src/main/java/org/example/File%d.java", file % 10, file);
+			List<HunkRange> ranges = new ArrayList<>();
+			for (int hunk = 0; hunk < HUNKS_PER_FILE; hunk++) {
+				ranges.add(new HunkRange(hunk * HUNK_SPACING + 1, HUNK_LENGTH));
+			}
+
+			GitLabCommitDiff commitDiff = mock(GitLabCommitDiff.class);
+			when(commitDiff.getNewPath()).thenReturn(path);
+			when(commitDiff.getHunkRanges()).thenReturn(ranges);
+			diffList.add(new UnifiedDiff("a2b4", commitDiff));
+			files.add(new DefaultInputFile("project", path).setModuleBaseDir(Paths.get("/workspace/project")));
+		}
+		diffs = new DiffPathIndex(diffList);
+
+		issues = new ArrayList<>(issueCount);
+		for (int i = 0; i < issueCount; i++) {
+			// Every issue is on a changed line, an unmapped issue would log a warning and measure the logger instead of the mapping.
+			int hunk = (i / FILES) % HUNKS_PER_FILE;
+			issues.add(new BenchmarkIssue(files.get(i % FILES), hunk * HUNK_SPACING + 1 + i % HUNK_LENGTH));
+		}
+	}
+
+	@Benchmark
+	public List<MappedIssue> map() {
+		return new IssueMapper(diffs, parallelism).map(issues);
+	}
+
+	public static void main(String... args) throws RunnerException {
+		String[] poolSizes = args.length > 0 ? args : poolSizesUpTo(Runtime.getRuntime().availableProcessors());
+		new Runner(new OptionsBuilder()
+			.include(IssueMapperBenchmark.class.getSimpleName())
+			.param("parallelism", poolSizes)
+			.build()
+		).run();
+	}
+
+	private static String[] poolSizesUpTo(int cores) {
+		List<String> poolSizes = new ArrayList<>();
+		for (int poolSize = 1; poolSize < cores; poolSize *= 2) {
+			poolSizes.add(Integer.toString(poolSize));
+		}
+		poolSizes.add(Integer.toString(cores));
+		return poolSizes.toArray(new String[0]);
+	}
+
+	/**
+	 * Plain issue as mocks are too slow to be called from the benchmark.
+	 */
+	private static final class BenchmarkIssue implements PostJobIssue {
+
+		private final InputComponent inputComponent;
+
+		private final int line;
+
+		BenchmarkIssue(InputComponent inputComponent, int line) {
+			this.inputComponent = inputComponent;
+			this.line = line;
+		}
+
+		@Override
+		public String key() {
+			return null;
+		}
+
+		@Override
+		public RuleKey ruleKey() {
+			return null;
+		}
+
+		@Override
+		public String componentKey() {
+			return inputComponent.key();
+		}
+
+		@Override
+		public InputComponent inputComponent() {
+			return inputComponent;
+		}
+
+		@Override
+		public Integer line() {
+			return line;
+		}
+
+		@Override
+		public String message() {
+			return "Benchmark issue";
+		}
+
+		@Override
+		public Severity severity() {
+			return Severity.MAJOR;
+		}
+
+		@Override
+		public boolean isNew() {
+			return true;
+		}
+	}
+}
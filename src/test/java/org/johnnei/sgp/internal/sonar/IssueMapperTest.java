@@ -0,0 +1,131 @@
+package org.johnnei.sgp.internal.sonar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.batch.rule.Severity;
+
+import org.johnnei.sgp.internal.gitlab.api.v4.model.GitLabCommitDiff;
+import org.johnnei.sgp.internal.model.MappedIssue;
+import org.johnnei.sgp.internal.model.diff.DiffPathIndex;
+import org.johnnei.sgp.internal.model.diff.HunkRange;
+import org.johnnei.sgp.internal.model.diff.UnifiedDiff;
+import org.johnnei.sgp.test.MockIssue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueMapperTest {
+
+	@Test
+	public void testMap() {
+		UnifiedDiff main = createDiff("a2b4", "src/Main.java", new HunkRange(1, 10));
+		UnifiedDiff other = createDiff("a3b5", "src/Other.java", new HunkRange(20, 5));
+		PostJobIssue onMain = MockIssue.mockInlineIssue(new File("/project/src/Main.java"), 5, Severity.MAJOR, "On main");
+		PostJobIssue outsideDiff = MockIssue.mockInlineIssue(new File("/project/src/Main.java"), 15, Severity.MAJOR, "Outside diff");
+		PostJobIssue onOther = MockIssue.mockInlineIssue(new File("/project/src/Other.java"), 22, Severity.MAJOR, "On other");
+		PostJobIssue fileLevel = MockIssue.mockFileIssue(new File("/project/src/Other.java"));
+		PostJobIssue unknownFile = MockIssue.mockInlineIssue(new File("/project/src/Unknown.java"), 1, Severity.MAJOR, "Unknown");
+		PostJobIssue projectLevel = mock(PostJobIssue.class);
+		when(projectLevel.inputComponent()).thenReturn(mock(InputComponent.class));
+
+		IssueMapper cut = new IssueMapper(new DiffPathIndex(Arrays.asList(main, other)), 1);
+
+		List<MappedIssue> issues = cut.map(Arrays.asList(onMain, outsideDiff, onOther, fileLevel, unknownFile, projectLevel));
+
+		assertThat(issues.size(), equalTo(3));
+		assertThat(issues.get(0).getIssue(), sameInstance(onMain));
+		assertThat(issues.get(0).getDiff(), sameInstance(main));
+		assertThat(issues.get(0).getPath(), equalTo("src/Main.java"));
+		assertThat(issues.get(1).getIssue(), sameInstance(onOther));
+		assertThat(issues.get(1).getCommitSha(), equalTo("a3b5"));
+		assertThat(issues.get(2).getIssue(), sameInstance(fileLevel));
+	}
+
+	@Test
+	public void testMapNewIssuesOnly() {
+		UnifiedDiff main = createDiff("a2b4", "src/Main.java", new HunkRange(1, 10));
+		PostJobIssue newIssue = MockIssue.mockInlineIssue(new File("/project/src/Main.java"), 5, Severity.MAJOR, "New");
+		when(newIssue.isNew()).thenReturn(true);
+		PostJobIssue oldIssue = MockIssue.mockInlineIssue(new File("/project/src/Main.java"), 6, Severity.MAJOR, "Old");
+
+		List<PostJobIssue> issues = Arrays.asList(newIssue, oldIssue);
+		DiffPathIndex index = new DiffPathIndex(Collections.singletonList(main));
+
+		List<MappedIssue> newIssuesOnly = new IssueMapper(index, 1, true).map(issues);
+		assertThat(newIssuesOnly.size(), equalTo(1));
+		assertThat(newIssuesOnly.get(0).getIssue(), sameInstance(newIssue));
+		verify(oldIssue, never()).inputComponent();
+
+		assertThat("All issues should be mapped by default.", new IssueMapper(index, 1).map(issues).size(), equalTo(2));
+	}
+
+	@Test
+	public void testMapEmpty() {
+		IssueMapper cut = new IssueMapper(new DiffPathIndex(Collections.emptyList()), 4);
+
+		assertThat(cut.map(Collections.emptyList()), empty());
+	}
+
+	@Test
+	public void testMapInParallelRetainsOrder() {
+		List<UnifiedDiff> diffs = new ArrayList<>();
+		for (int file = 0; file < 20; file++) {
+			diffs.add(createDiff("a2b4", String.format("src/File%d.java", file), new HunkRange(1, 50)));
+		}
+
+		List<PostJobIssue> issues = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			// Every third issue is outside of the diff to check that dropped issues don't affect the order.
+			int line = i % 3 == 0 ? 100 : i % 50 + 1;
+			issues.add(MockIssue.mockInlineIssue(new File(String.format("/project/src/File%d.java", i % 20)), line, Severity.MAJOR, "Issue " + i));
+		}
+
+		DiffPathIndex index = new DiffPathIndex(diffs);
+		List<MappedIssue> sequential = new IssueMapper(index, 1).map(issues);
+		List<MappedIssue> parallel = new IssueMapper(index, 4).map(issues);
+
+		assertThat(parallel.size(), equalTo(sequential.size()));
+		for (int i = 0; i < sequential.size(); i++) {
+			assertThat(parallel.get(i).getIssue(), sameInstance(sequential.get(i).getIssue()));
+			assertThat(parallel.get(i).getDiff(), sameInstance(sequential.get(i).getDiff()));
+		}
+	}
+
+	@Test
+	public void testMapInParallelPropagatesFailure() {
+		PostJobIssue failingIssue = mock(PostJobIssue.class);
+		when(failingIssue.inputComponent()).thenThrow(new IllegalStateException("Test exception path"));
+
+		IssueMapper cut = new IssueMapper(new DiffPathIndex(Collections.emptyList()), 2);
+
+		try {
+			cut.map(Collections.singletonList(failingIssue));
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("Test exception path"));
+			return;
+		}
+
+		throw new AssertionError("Exception of the mapping should have been rethrown.");
+	}
+
+	private static UnifiedDiff createDiff(String commitSha, String path, HunkRange... ranges) {
+		GitLabCommitDiff commitDiff = mock(GitLabCommitDiff.class);
+		when(commitDiff.getNewPath()).thenReturn(path);
+		when(commitDiff.getHunkRanges()).thenReturn(Arrays.asList(ranges));
+		return new UnifiedDiff(commitSha, commitDiff);
+	}
+}
@@ -16,6 +16,7 @@ public class MockIssue {
 		when(inputComponentMock.isFile()).thenReturn(true);
 		when(inputComponentMock.file()).thenReturn(file);
 		when(inputComponentMock.absolutePath()).thenReturn(file.getAbsolutePath());
+		when(inputComponentMock.key()).thenReturn(file.getPath());
 
 		PostJobIssue issueMock = mock(PostJobIssue.class);
 		when(issueMock.inputComponent()).thenReturn(inputComponentMock);
@@ -35,6 +36,7 @@ public class MockIssue {
 		when(inputComponentMock.isFile()).thenReturn(true);
 		when(inputComponentMock.file()).thenReturn(file);
 		when(inputComponentMock.absolutePath()).thenReturn(file.getAbsolutePath());
+		when(inputComponentMock.key()).thenReturn(file.getPath());
 
 		PostJobIssue issueMock = mock(PostJobIssue.class);
 		when(issueMock.inputComponent()).thenReturn(inputComponentMock);
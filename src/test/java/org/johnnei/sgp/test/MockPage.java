@@ -0,0 +1,34 @@
+package org.johnnei.sgp.test;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Creates {@link Response} mocks which represent a page of a GitLab list endpoint.
+ */
+public class MockPage {
+
+	public static Response empty() {
+		return of(Collections.emptyList());
+	}
+
+	public static Response of(List<?> items) {
+		return of(items, "");
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Response of(List<?> items, String nextPage) {
+		Response response = mock(Response.class);
+		when(response.getStatusInfo()).thenReturn(Response.Status.OK);
+		when(response.getStatus()).thenReturn(200);
+		when(response.readEntity(any(GenericType.class))).thenReturn(items);
+		when(response.getHeaderString("X-Next-Page")).thenReturn(nextPage);
+		return response;
+	}
+}